@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+
+package ga;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import utility.Vect;
+
+import chemistry.Element;
+
+import crystallography.Cell;
+import crystallography.Site;
+
+// BenchFixtures makes the structures and GA parameters the benchmarks run on.  The
+// structures are seeded, so every fork and every run of a benchmark sees the same ones.
+
+final class BenchFixtures {
+
+	// a binary Ar-Kr search w/ the two variations and a whole-population guard.  symmetry
+	// is found in-process, so the guard times don't include starting findsym.
+	static final String[] gaArgs = {
+		"--compositionSpace", "2", "Ar", "Kr",
+		"--objectiveFunction", "epa", "generic",
+		"--dryRun", "true",
+		"--verbosity", "1",
+		"--useFindsym", "false",
+		"--minInteratomicDistance", "1.5",
+		"--maxLatticeLength", "60", "--minLatticeLength", "1",
+		"--maxLatticeAngle", "140", "--minLatticeAngle", "40",
+		"--maxNumAtoms", "1000", "--minNumAtoms", "1",
+		"--selection", "probDist", "8", "1",
+		"--variation", "50", "50", "slicer", "0.5", "0.3", "0.5", "0.2", "0", "0",
+		"--variation", "50", "50", "structureMut", "1", "0.5", "0.5",
+		"--useRedundancyGuard", "wholePopulation", "0.1", "0.1", "0.1", "true"
+	};
+
+	private BenchFixtures() { }
+
+	// sets up the GA's parameters for the benchmarks which use them
+	static GAParameters initParams() {
+		GAParameters params = GAParameters.getParams();
+		params.setArgs(gaArgs);
+		params.getRandom().setSeed(1);
+		return params;
+	}
+
+	// n atoms, half Ar and half Kr, on a jittered grid in a slightly oblique cell w/ about
+	// 25 A^3 per atom
+	static Cell makeCell(int n, Random rand) {
+		double len = Math.cbrt(25.0 * n / 0.95);
+		List<Vect> basis = Cell.getVectorsfromLParamsDegrees(len * (0.9 + 0.2 * rand.nextDouble()),
+				len * (0.9 + 0.2 * rand.nextDouble()), len * (0.9 + 0.2 * rand.nextDouble()),
+				80 + 20 * rand.nextDouble(), 80 + 20 * rand.nextDouble(), 80 + 20 * rand.nextDouble());
+
+		int k = (int)Math.ceil(Math.cbrt(n));
+		List<Integer> points = new ArrayList<Integer>();
+		for (int i = 0; i < k * k * k; i++)
+			points.add(i);
+		Collections.shuffle(points, rand);
+
+		Element ar = Element.getElemFromSymbol("Ar");
+		Element kr = Element.getElemFromSymbol("Kr");
+		List<Site> sites = new LinkedList<Site>();
+		for (int i = 0; i < n; i++) {
+			int p = points.get(i);
+			double x = (p % k + 0.5 + 0.2 * (rand.nextDouble() - 0.5)) / k;
+			double y = ((p / k) % k + 0.5 + 0.2 * (rand.nextDouble() - 0.5)) / k;
+			double z = (p / (k * k) + 0.5 + 0.2 * (rand.nextDouble() - 0.5)) / k;
+			sites.add(new Site((i % 2 == 0) ? ar : kr, new Vect(x, y, z, basis)));
+		}
+		return new Cell(basis, sites);
+	}
+
+	// c w/ each atom moved up to amount (fractional) along each lattice vector
+	static Cell perturb(Cell c, double amount, Random rand) {
+		List<Vect> basis = c.getLatticeVectors();
+		List<Site> sites = new LinkedList<Site>();
+		for (Site s : c.getSites()) {
+			List<Double> f = s.getCoords().getComponentsWRTBasis(basis);
+			sites.add(new Site(s.getElement(), new Vect(f.get(0) + amount * (rand.nextDouble() - 0.5),
+					f.get(1) + amount * (rand.nextDouble() - 0.5), f.get(2) + amount * (rand.nextDouble() - 0.5), basis)));
+		}
+		return new Cell(basis, sites);
+	}
+
+	// the same structure in a skewed (but equivalent) cell, for Niggli reduction to undo
+	static Cell skew(Cell c) {
+		List<Vect> l = c.getLatticeVectors();
+		List<Vect> basis = new ArrayList<Vect>();
+		basis.add(l.get(0));
+		basis.add(l.get(1).plus(l.get(0)));
+		basis.add(l.get(2));
+		return new Cell(basis, c.getSites());
+	}
+}
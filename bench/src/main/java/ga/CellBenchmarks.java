@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+
+package ga;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import crystallography.Cell;
+import crystallography.Site;
+
+// CellBenchmarks times the structure comparisons and neighbor searches on cells of 2 to
+// 500 atoms, and the RedundancyGuard check built on top of them.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CellBenchmarks {
+
+	// the number of structures in the guard.  adding them finds their symmetry, which
+	// takes a while for the big ones.
+	private static final int guardSize = 10;
+
+	@Param({"2", "8", "32", "128", "500"})
+	public int numAtoms;
+
+	private Cell cell;
+	private Cell perturbed;
+	private Cell skewed;
+	private RedundancyGuard guard;
+	private StructureOrg query;
+	private int i;
+
+	@Setup
+	public void setup() {
+		BenchFixtures.initParams();
+		Random rand = new Random(numAtoms);
+		// moves the atoms by up to about 0.01 A, well within the misfits.  (perturb() takes
+		// fractional amounts, and the cells are about cbrt(25 * numAtoms) A on a side.)
+		double near = 0.02 / Math.cbrt(25.0 * numAtoms);
+		cell = BenchFixtures.makeCell(numAtoms, rand);
+		perturbed = BenchFixtures.perturb(cell, near, rand);
+		skewed = BenchFixtures.skew(cell);
+
+		// a guard full of copies of the query w/ the atoms moved around, so they share its
+		// lattice and land in its bin.  all but the last are moved too far to match, so
+		// a check compares against each of them and then finds the last one, which is
+		// only perturbed as much as perturbed is.  the query remembers its symmetry
+		// after the first time, so checking it times the comparisons.
+		Cell q = BenchFixtures.makeCell(numAtoms, rand);
+		guard = new RedundancyGuard(Arrays.asList("0.1", "0.1", "0.1", "true"));
+		for (int j = 0; j < guardSize - 1; j++)
+			guard.addStructure(BenchFixtures.perturb(q, 0.3, rand), j + 1);
+		guard.addStructure(BenchFixtures.perturb(q, near, rand), guardSize);
+		query = new StructureOrg(q);
+		if (!cell.matchesCellPBCs(perturbed, 0.1, 0.1, 0.1))
+			throw new IllegalStateException("perturbed should match cell");
+		if (guard.checkStructureOrg(query) == null)
+			throw new IllegalStateException("the query should match the last structure in the guard");
+	}
+
+	@Benchmark
+	public List<Site> getAtomsInSphereSorted() {
+		i = (i + 1) % numAtoms;
+		return cell.getAtomsInSphereSorted(cell.getSite(i).getCoords(), 4.0);
+	}
+
+	// (Cells remember their reduced cell, so this includes making a new one)
+	@Benchmark
+	public Cell getNigliReducedCell() {
+		return new Cell(skewed.getLatticeVectors(), skewed.getSites()).getNigliReducedCell();
+	}
+
+	@Benchmark
+	public boolean matchesCellPBCs() {
+		return cell.matchesCellPBCs(perturbed, 0.1, 0.1, 0.1);
+	}
+
+	@Benchmark
+	public Integer checkStructureOrg() {
+		return guard.checkStructureOrg(query);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+
+package ga;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// VariationBenchmarks times making one offspring w/ each of the variations in
+// BenchFixtures.gaArgs, plus the hard-constraint checks on it, from a generation of 8
+// parents of the given size.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class VariationBenchmarks {
+
+	private static final int numParents = 8;
+
+	@Param({"2", "8", "32", "128", "500"})
+	public int numAtoms;
+
+	// the simple name of the Variation's class
+	@Param({"Slicer", "StructureMut"})
+	public String variation;
+
+	private GAParameters params;
+	private Variation v;
+	private Selection sel;
+	private Generation parents;
+
+	@Setup
+	public void setup() {
+		params = BenchFixtures.initParams();
+		for (Variation w : params.getVariations())
+			if (w.getClass().getSimpleName().equals(variation))
+				v = w;
+		if (v == null)
+			throw new IllegalArgumentException("No " + variation + " variation in the benchmark parameters.");
+		sel = params.getSelection();
+
+		Random rand = new Random(numAtoms);
+		parents = params.makeEmptyGeneration();
+		for (int i = 0; i < numParents; i++) {
+			StructureOrg s = new StructureOrg(BenchFixtures.makeCell(numAtoms, rand));
+			s.setValue(-i);
+			parents.addOrganism(s);
+		}
+		parents.findFitnesses();
+	}
+
+	@Benchmark
+	public Organism doVariation() {
+		Organism o = v.doVariation(parents, params.makeEmptyGeneration(), sel);
+		if (o != null)
+			params.getDevelopment().satisfiesConstraints(o);
+		return o;
+	}
+}
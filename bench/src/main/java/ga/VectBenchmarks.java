@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+
+package ga;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utility.Vect;
+
+import crystallography.Cell;
+import crystallography.SupercellOptimizer;
+
+// VectBenchmarks times Vect arithmetic, which everything in crystallography is built on,
+// and the supercell search, whose cost depends on the lattice but not the number of atoms.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class VectBenchmarks {
+
+	private Vect[] vs;
+	private List<Vect> basis;
+	private Cell cell;
+	private int i;
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(1);
+		vs = new Vect[64];
+		for (int j = 0; j < vs.length; j++)
+			vs[j] = new Vect(rand.nextDouble() * 10, rand.nextDouble() * 10, rand.nextDouble() * 10);
+		basis = Cell.getVectorsfromLParamsDegrees(5, 6, 7, 80, 95, 100);
+		cell = BenchFixtures.makeCell(2, rand);
+	}
+
+	// cycles through the vectors so the JIT can't fold anything into a constant
+	private int next() {
+		i = (i + 1) % vs.length;
+		return i;
+	}
+
+	@Benchmark
+	public Vect plusSubtract() {
+		int j = next();
+		return vs[j].plus(vs[(j + 1) % vs.length]).subtract(vs[(j + 2) % vs.length]);
+	}
+
+	@Benchmark
+	public double dotDistance() {
+		int j = next();
+		return vs[j].dot(vs[(j + 1) % vs.length]) + vs[j].getCartDistanceTo(vs[(j + 2) % vs.length]);
+	}
+
+	@Benchmark
+	public List<Double> changeBasis() {
+		return vs[next()].getComponentsWRTBasis(basis);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public List<List<Integer>> getOptimalSupercell() {
+		return SupercellOptimizer.getOptimalSupercell(cell, false, 4, 2, 20.0, false);
+	}
+}
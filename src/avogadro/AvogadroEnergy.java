@@ -41,8 +41,6 @@ import utility.Utility;
 import crystallography.Cell;
 import crystallography.Site;
 
-import org.openbabel.*;
-
 
 // AvogadroEnergy computes the total energy of a StructureOrg using Avogadro and the given potential.
 // It contains all of the methods and utilities that are specific to Avogadro.
@@ -68,42 +68,18 @@ public class CastepEnergy implements Energy {
 	
 	// runs CASTEP on the input file given and returns the results in a String
 	private String runCastep(String inputDir) {
-		StringBuilder castepOutput = new StringBuilder();
-
-		String s = null;
+		String castepOutput = "";
 		try {
 			// run the castep command. in order to avoid hardcoding thing which are
 			// probably system-dependent, we call a wrapper script which is probably
 			// just "cd $1; castep"
-			Process p = Runtime.getRuntime().exec("callcastep " + inputDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			try {
-				// read the output
-				while ((s = stdInput.readLine()) != null) {
-					castepOutput.append(s + GAUtils.newline());
-					GAOut.out().stdout(s, GAOut.DEBUG);
-				}
-	
-				// print out any errors
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
-				}
-			} finally {
-				stdInput.close();
-				stdError.close();
-			}
-
+			castepOutput = ProcessRunner.run("callcastep " + inputDir);
 		} catch (IOException e) {
 			System.out.println("IOException in CastepEnergy.runCastep: " + e.getMessage());
 			System.exit(-1);
 		}
 
-		return castepOutput.toString();
+		return castepOutput;
 	}
 	
 	private double castepRun(StructureOrg o) {
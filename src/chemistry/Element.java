@@ -34,7 +34,7 @@ public class Element implements Comparable, Serializable {
 	
 	private int Z;
 	
-	private static Element[] elements;
+	private static volatile Element[] elements;
 	// from http://www.science.co.il/PTelements.asp
 	// 		format:
 	// 		Z mass name symbol density group ionization-energy
@@ -213,10 +213,19 @@ public class Element implements Comparable, Serializable {
 		return _Z - 1;
 	}
 	
-	private static void initializeElementsArray() {
-		elements = new Element[elementData.length];
+	// synchronized so that two threads can't each make their own set of Elements
+	private static synchronized void initializeElementsArray() {
+		if (elements != null)
+			return;
+		Element[] result = new Element[elementData.length];
 		for (int i = 0; i < elementData.length; i++)
-			elements[i] = new Element(Integer.parseInt(elementData[i][ZEntryLoc]));
+			result[i] = new Element(Integer.parseInt(elementData[i][ZEntryLoc]));
+		elements = result;
+	}
+	
+	// lots of code compares Elements w/ ==, so make sure deserialized ones are the usual instances
+	private Object readResolve() {
+		return getElemFromZ(Z);
 	}
 	
 	public static Element getElemFromSymbol(String sym) {
@@ -21,6 +21,7 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
 
 package crystallography;
    
+import ga.GAMetrics;
 import ga.GAOut;
 import ga.GAParameters;
 import ga.GAUtils;
@@ -472,7 +473,7 @@ public class Cell implements Serializable {
      * this code is adapted from convasp 5.6.
      * Warning: this code doesn't check if the cell is actually primitive
      */
-    private Cell niggliReducedCell;
+    private volatile Cell niggliReducedCell;
     public Cell getNigliReducedCell() {
     	if (niggliReducedCell != null)
     		return niggliReducedCell;
@@ -536,7 +537,10 @@ public class Cell implements Serializable {
     
     
     private Cell getNiggliCell() {
-    	double TOL = 1e-8;
+    	// the tests below compare squared lengths, so the tolerance has to scale w/ the
+    	// cell. a fixed 1e-8 is below the rounding noise on equal edges of a ~10 Angstrom
+    	// cell, and then steps 1 and 2 swap them back and forth until we hit maxNumIters.
+    	double TOL = 1e-5 * Math.pow(Math.abs(getVolume()), 2.0 / 3.0);
 
         // Initialize matrices for tranformations (3x3).
         double[][] m1 = new double[3][3];
@@ -676,7 +680,7 @@ public class Cell implements Serializable {
                 c = temp1;
                 ksi = temp2;
                 eta = temp3;
-
+                continue;
             }
 
             // Step 7
@@ -823,21 +827,61 @@ public class Cell implements Serializable {
 		
 	}
 	
-	private String fsoOutput;
+	// the lazily computed values in Cell are volatile since Cells are shared between
+	// threads (e.g. the GA's output writer and offspring producers)
+	private volatile String fsoOutput;
 	public String getFSOOutput() {
-		if (fsoOutput == null)
+		if (fsoOutput == null) {
+			long start = GAMetrics.metrics().startTimer();
 			fsoOutput = Isotropy.getFindsymOut(this);
+			GAMetrics.metrics().stopTimer("findsym", start);
+		}
 		return fsoOutput;
 	}
 
 
-	private Cell wyckoffCell;
+	// (holds a whole reduced primitive Cell, so don't save it along with us)
+	private transient volatile Symmetry symmetry;
+	public Symmetry getSymmetry() {
+		if (symmetry == null) {
+			long start = GAMetrics.metrics().startTimer();
+			symmetry = Symmetry.getSymmetry(this);
+			GAMetrics.metrics().stopTimer("symmetry", start);
+		}
+		return symmetry;
+	}
+
+	// findsym gives the symmetrically distinct sites in the standard conventional cell.
+	// w/o findsym, use the reduced primitive cell w/ all its sites, which is also the same
+	// for equivalent structures.  (Symmetry.getWyckoffCell() is findsym's cell, but it drops
+	// the orbits' multiplicities and the origin isn't free in most groups, so comparing two
+	// of them w/ a site shifted to the origin can match e.g. a pair of atoms in P-1 w/ a
+	// single atom on an inversion center of the same lattice.)
+	private volatile Cell wyckoffCell;
 	public Cell getWyckoffCell() {
-		if (wyckoffCell == null)
-			wyckoffCell = Isotropy.getWyckoffCell(this);
+		if (wyckoffCell == null) {
+			if (GAParameters.getParams().usingFindsym()) {
+				long start = GAMetrics.metrics().startTimer();
+				wyckoffCell = Isotropy.getWyckoffCell(this);
+				GAMetrics.metrics().stopTimer("findsym", start);
+			} else
+				wyckoffCell = getSymmetry().getPrimitiveCell();
+		}
 		return wyckoffCell;
 	}
 	
+	// keep the last neighbor list we built around, since the constraint checks in 
+	// development ask for several in a row.  (not worth saving.)
+	private transient volatile NeighborList neighborList;
+	public NeighborList getNeighborList(double cutoff) {
+		NeighborList result = neighborList;
+		if (result == null || result.getCutoff() < cutoff) {
+			result = new NeighborList(this, cutoff);
+			neighborList = result;
+		}
+		return result;
+	}
+	
 	// average position of all the sites.  doesnt necessarily make sense when using PBCs!
 	public Vect getCentroid() {
 		Vect result = new Vect(0.0, 0.0, 0.0);
@@ -995,13 +1039,21 @@ public class Cell implements Serializable {
 		else
 			n2 = other.getNigliReducedCell().getWyckoffCell().getCellWithSiteIShiftedToOrigin(0);
 			*/
+		return matchesWyckoffCell(other.getWyckoffCell(), atomicMisfit, lengthMisfit, angleMisfit);
+	}
+	
+	// matchesCellPBCs() given the other cell's Wyckoff cell, which is all it looks at.
+	// lets callers which keep lots of structures around keep just their Wyckoff cells.
+	public boolean matchesWyckoffCell(Cell otherWyckoff, double atomicMisfit, double lengthMisfit, double angleMisfit) {
 		Cell n1 = this.getWyckoffCell();
 		Cell n2 = null;
 		
-		if (other.getBasisSize() <= 0)
-			n2 = other.getWyckoffCell();
+		if (otherWyckoff == null)
+			return false;
+		else if (otherWyckoff.getBasisSize() <= 0)
+			n2 = otherWyckoff;
 		else
-			n2 = other.getWyckoffCell().getCellWithSiteIShiftedToOrigin(0);
+			n2 = otherWyckoff.getCellWithSiteIShiftedToOrigin(0);
 		
 		if (n1 == null || n2 == null)
 			return false;
@@ -1015,7 +1067,13 @@ public class Cell implements Serializable {
 		for (Element e : n1.getComposition().getElements())
 			if (n2.getNumSitesWithElement(e) != n1.getNumSitesWithElement(e))
 				return false;
-		
+
+		// cheap check before trying the relabelings: they only permute the lengths (and the
+		// angles along w/ them), so if some labeling matches, the sorted lengths and the sorted
+		// angles also agree to within the misfits.
+		if (!sortedLatticeParamsMatch(n1, n2, lengthMisfit, angleMisfit))
+			return false;
+
 		//for (each of the choices of others lattice vectors being considered a, b, and c)
 		for (Cell n1rotated : n1.getCellWithAlternateAxesLabeling()) { 
 			List<Double> parms1 = n1rotated.getLatticeParametersDegrees();
@@ -1048,6 +1106,27 @@ public class Cell implements Serializable {
 		return false;
 	}
 	
+	private static boolean sortedLatticeParamsMatch(Cell c1, Cell c2, double lengthMisfit, double angleMisfit) {
+		List<Double> parms1 = c1.getLatticeParametersDegrees();
+		List<Double> parms2 = c2.getLatticeParametersDegrees();
+
+		double[] lengths1 = {parms1.get(0), parms1.get(1), parms1.get(2)};
+		double[] lengths2 = {parms2.get(0), parms2.get(1), parms2.get(2)};
+		double[] angles1 = {parms1.get(3), parms1.get(4), parms1.get(5)};
+		double[] angles2 = {parms2.get(3), parms2.get(4), parms2.get(5)};
+		Arrays.sort(lengths1);
+		Arrays.sort(lengths2);
+		Arrays.sort(angles1);
+		Arrays.sort(angles2);
+
+		for (int i = 0; i < 3; i++)
+			if (Math.abs(lengths1[i] - lengths2[i]) > lengthMisfit
+					|| Math.abs(angles1[i] - angles2[i]) > angleMisfit)
+				return false;
+
+		return true;
+	}
+
 	private boolean sitesArrayContainsElement(List<Site> sites, Element e) {
 		for (Site s : sites)
 			if (s.getElement() == e)
@@ -1115,16 +1194,16 @@ public class Cell implements Serializable {
 		
 		List<Vect> basisVects = this.getLatticeVectors();
 		
-		Site siteI = this.getSite(i);
-		double iFracX = siteI.getCoords().getComponentsWRTBasis(basisVects).get(0);
-		double iFracY = siteI.getCoords().getComponentsWRTBasis(basisVects).get(1);
-		double iFracZ = siteI.getCoords().getComponentsWRTBasis(basisVects).get(2);
+		double[][] invBasis = Vect.getInverseBasisMatrix(basisVects);
+		double[] iFrac = new double[3];
+		this.getSite(i).getCoords().getComponentsWRTInverseBasis(invBasis, iFrac);
 		
+		double[] sFrac = new double[3];
 		for (Site s : this.getSites()) {
-			
-			double newFracX = s.getCoords().getComponentsWRTBasis(basisVects).get(0) - iFracX;
-			double newFracY = s.getCoords().getComponentsWRTBasis(basisVects).get(1) - iFracY;
-			double newFracZ = s.getCoords().getComponentsWRTBasis(basisVects).get(2) - iFracZ;
+			s.getCoords().getComponentsWRTInverseBasis(invBasis, sFrac);
+			double newFracX = sFrac[0] - iFrac[0];
+			double newFracY = sFrac[1] - iFrac[1];
+			double newFracZ = sFrac[2] - iFrac[2];
 			
 			if (newFracX < 0) newFracX += 1;
 			if (newFracY < 0) newFracY += 1;
@@ -1162,59 +1241,75 @@ public class Cell implements Serializable {
 	//	while(!parallelopipedDefEncompassesSphere(latticeVectors, num, center, dist))
 	//		num++;
 		
-		List<Vect> recipL = this.getRecipLVects();
-		
-		List<Double> cFracCoords = center.getComponentsWRTBasis(this.getLatticeVectors());
-		int maxx = (int)Math.ceil(cFracCoords.get(0) + dist * recipL.get(0).length() / (2 * Math.PI));
-		int minx = (int)Math.floor(cFracCoords.get(0) - dist * recipL.get(0).length() / (2 * Math.PI));
-		int maxy = (int)Math.ceil(cFracCoords.get(1) + dist * recipL.get(1).length() / (2 * Math.PI));
-		int miny = (int)Math.floor(cFracCoords.get(1) - dist * recipL.get(1).length() / (2 * Math.PI));
-		int maxz = (int)Math.ceil(cFracCoords.get(2) + dist * recipL.get(2).length() / (2 * Math.PI));
-		int minz = (int)Math.floor(cFracCoords.get(2) - dist * recipL.get(2).length() / (2 * Math.PI));
+		// rows of the inverse lattice matrix are the reciprocal lattice vectors over 2pi
+		double[][] invL = Vect.getInverseBasisMatrix(latticeVectors);
+		double[] cFracCoords = new double[3];
+		center.getComponentsWRTInverseBasis(invL, cFracCoords);
+		int[] min = new int[3];
+		int[] max = new int[3];
+		for (int d = 0; d < 3; d++) {
+			double reach = dist * Math.sqrt(invL[d][0]*invL[d][0] + invL[d][1]*invL[d][1] + invL[d][2]*invL[d][2]);
+			max[d] = (int)Math.ceil(cFracCoords[d] + reach);
+			min[d] = (int)Math.floor(cFracCoords[d] - reach);
+		}
 		
-		for (int i = minx; i <= maxx; i++) {
-			for (int j = miny; j <= maxy; j++) {
-				for (int k = minz; k <= maxz; k++) {
-					for (Site s : basis) {
-						Vect trialCoords = s.getCoords().plus(latticeVectors.get(0).scalarMult((double)i))
-										    .plus(latticeVectors.get(1).scalarMult((double)j))
-										    .plus(latticeVectors.get(2).scalarMult((double)k));
-						if (center.getCartDistanceTo(trialCoords) <= dist) {
-							if (newSites)
-								result.add(new Site(s.getElement(), trialCoords));
-							else
+		// work on plain arrays here since this gets called a lot
+		double[] c = center.getCartesianArray();
+		double[] l0 = latticeVectors.get(0).getCartesianArray();
+		double[] l1 = latticeVectors.get(1).getCartesianArray();
+		double[] l2 = latticeVectors.get(2).getCartesianArray();
+		double[][] siteCoords = new double[basis.size()][];
+		for (int n = 0; n < basis.size(); n++)
+			siteCoords[n] = basis.get(n).getCoords().getCartesianArray();
+		
+		final List<Double> dists = new ArrayList<Double>();
+		double[] shift = new double[3];
+		for (int i = min[0]; i <= max[0]; i++) {
+			for (int j = min[1]; j <= max[1]; j++) {
+				for (int k = min[2]; k <= max[2]; k++) {
+					for (int d = 0; d < 3; d++)
+						shift[d] = i * l0[d] + j * l1[d] + k * l2[d];
+					for (int n = 0; n < siteCoords.length; n++) {
+						double dx = siteCoords[n][0] + shift[0] - c[0];
+						double dy = siteCoords[n][1] + shift[1] - c[1];
+						double dz = siteCoords[n][2] + shift[2] - c[2];
+						double trialDist = Math.sqrt(dx*dx + dy*dy + dz*dz);
+						if (trialDist <= dist) {
+							Site s = basis.get(n);
+							if (newSites) {
+								result.add(new Site(s.getElement(), new Vect(siteCoords[n][0] + shift[0], 
+										siteCoords[n][1] + shift[1], siteCoords[n][2] + shift[2])));
+								dists.add(trialDist);
+							} else {
+								// sort old sites by where they are in the cell, as before
 								result.add(s);
-							continue;
+								double hx = siteCoords[n][0] - c[0];
+								double hy = siteCoords[n][1] - c[1];
+								double hz = siteCoords[n][2] - c[2];
+								dists.add(Math.sqrt(hx*hx + hy*hy + hz*hz));
+							}
 						}
-						//	result.add(new Site(s.getElement(), trialCoords));
 					}
 				}
 			}
 		}
 		
-		Comparator<Site> c = new Comparator<Site>() {
-			public int compare(Site s1, Site s2) {
-				if (s1.getCoords().getCartDistanceTo(center) > s2.getCoords().getCartDistanceTo(center))
-					return 1;
-				else if (s1.getCoords().getCartDistanceTo(center) == s2.getCoords().getCartDistanceTo(center))
-					return 0;
-				else 
-					return -1;
-			}
-		};
-		
-		/*
-		for (int i = 0; i < result.size(); i++) {
-			System.out.println(result.get(i) + " : " + result.get(i).getCoords().getCartDistanceTo(center));
-			for (int j = 0; j < result.size(); j++) {
-				System.out.println(result.get(j) + " : " + result.get(j).getCoords().getCartDistanceTo(center) 
-						+ " : " + c.compare(result.get(i), result.get(j)));
+		// sort indices by the distances we already have rather than recomputing them 
+		// in the comparator
+		List<Integer> order = new ArrayList<Integer>(result.size());
+		for (int n = 0; n < result.size(); n++)
+			order.add(n);
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(dists.get(i1), dists.get(i2));
 			}
-		}*/
+		});
 		
-		Collections.sort(result, c);
+		List<Site> sorted = new ArrayList<Site>(result.size());
+		for (Integer n : order)
+			sorted.add(result.get(n));
 		
-		return result;
+		return sorted;
 	}
 
 	public Site[] getAtomsInSphereSortedSlow(Vect center, double dist) {
@@ -1442,26 +1537,28 @@ public class Cell implements Serializable {
 	 * Precondition: the perSpeciedMID option has been used
 	 */
 	public boolean satisfiesPerSpeciesMIDs(List<Triplet<Element,Element,Double>> mids) {
+		if (mids.isEmpty())
+			return true;
+		
+		double maxMID = 0;
+		for (Triplet<Element,Element,Double> mid : mids)
+			maxMID = Math.max(maxMID, mid.getThird());
+		NeighborList nl = getNeighborList(maxMID);
+		
 		for (Triplet<Element,Element,Double> mid : mids) {
 			Element a = mid.getFirst();
 			Element b = mid.getSecond();
 			Double minid = mid.getThird();
 			
 			for (int i = 0; i < getNumSites(); i++) {
-				List<Site> sitesInSphere = getAtomsInSphereSorted(getSite(i).getCoords(), minid);
-				
-				if (sitesInSphere.size() <= 1) { // If only one site in sphere, there's no problem
-					continue;  
-				} else { // Otherwise, need to check if atoms match those in the triplet. If so, it fails
-					sitesInSphere.remove(0); // Have to remove the atom at the center of the sphere first
-					
-					for (Site s : sitesInSphere) {  
-						Boolean passed = !( ((getSite(i).getElement() == a) && (s.getElement() == b)) ||
-								((getSite(i).getElement() == b) && (s.getElement() == a)) ); 
-						if (passed == false) { 
-							return false; 
-						}
-					}
+				Element e = getSite(i).getElement();
+				if (e != a && e != b)
+					continue;
+				// it fails if any neighbor in the sphere makes the pair in the triplet
+				for (NeighborList.Neighbor n : nl.getNeighborsSorted(i, minid)) {
+					Element f = getSite(n.getSiteIndex()).getElement();
+					if ((e == a && f == b) || (e == b && f == a))
+						return false;
 				}
 			} 
 		} 
@@ -1470,12 +1567,11 @@ public class Cell implements Serializable {
 	
 
 	public boolean satisfiesMinInteratomicDistance(double minid) {
+		NeighborList nl = getNeighborList(minid);
 		for (int i = 0; i < getNumSites(); i++) {
 			// it's no good if there are any other atoms in the minimum radius sphere
-			List<Site> sitesInSphere = getAtomsInSphereSorted(getSite(i).getCoords(), minid);
-			if (sitesInSphere.size() > 1) {
+			if (nl.hasNeighborWithin(i, minid))
 				return false;
-			}
 		}
 		return true;
 	}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package crystallography;
+
+import java.io.Serializable;
+import java.util.*;
+
+import utility.Vect;
+import chemistry.Composition;
+import chemistry.Element;
+
+// CompactCell is a Cell packed into a few arrays: the lattice vectors as 9 doubles,
+// the sites' fractional coordinates as 3 doubles each, and their species as byte
+// indices into a small table of Elements.  That's about 25 bytes per atom, where a
+// Cell spends well over a hundred on Site, Vect and list node objects, plus whatever
+// symmetry info and reduced cells it's cached.
+//
+// It's meant for things which hold on to structures for the whole run (the
+// RedundancyGuard, the phase diagram entries, checkpoints).  We don't keep a Cell
+// around: getCell() builds a new one from the arrays each time, so callers that need
+// it more than once should hang on to it while they do.
+//
+// Like Cell, IS IMMUTABLE.
+
+public final class CompactCell implements Serializable {
+
+	static final long serialVersionUID = 1l;
+
+	// the lattice vectors' cartesian components, a then b then c
+	private final double[] lattice;
+	// the sites' fractional coordinates, 3 per site
+	private final double[] fracCoords;
+	// the sites' species, as indices into elements
+	private final byte[] species;
+	private final Element[] elements;
+	private final String label;
+
+	public CompactCell(Cell c) {
+		List<Vect> latticeVectors = c.getLatticeVectors();
+		lattice = new double[9];
+		for (int i = 0; i < 3; i++)
+			System.arraycopy(latticeVectors.get(i).getCartesianArray(), 0, lattice, 3*i, 3);
+
+		List<Site> sites = c.getSites();
+		int numSites = sites.size();
+		fracCoords = new double[3 * numSites];
+		species = new byte[numSites];
+		List<Element> elems = new ArrayList<Element>();
+
+		double[][] inverse = Vect.getInverseBasisMatrix(latticeVectors);
+		double[] frac = new double[3];
+		int i = 0;
+		for (Site s : sites) {
+			s.getCoords().getComponentsWRTInverseBasis(inverse, frac);
+			System.arraycopy(frac, 0, fracCoords, 3*i, 3);
+			int e = elems.indexOf(s.getElement());
+			if (e < 0) {
+				e = elems.size();
+				elems.add(s.getElement());
+			}
+			species[i] = (byte)e;
+			i++;
+		}
+		elements = elems.toArray(new Element[elems.size()]);
+		label = c.getLabel();
+	}
+
+	public Cell getCell() {
+		List<Vect> latticeVectors = new ArrayList<Vect>(3);
+		for (int i = 0; i < 3; i++)
+			latticeVectors.add(new Vect(lattice[3*i], lattice[3*i+1], lattice[3*i+2]));
+
+		List<Site> sites = new ArrayList<Site>(species.length);
+		for (int i = 0; i < species.length; i++)
+			sites.add(new Site(elements[species[i]],
+					new Vect(fracCoords[3*i], fracCoords[3*i+1], fracCoords[3*i+2], latticeVectors)));
+
+		return new Cell(latticeVectors, sites, label);
+	}
+
+	// the rest of these don't need a Cell
+
+	public int getNumSites() {
+		return species.length;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	// whether other holds exactly the same structure
+	public boolean sameAs(CompactCell other) {
+		return Arrays.equals(lattice, other.lattice) && Arrays.equals(fracCoords, other.fracCoords)
+				&& Arrays.equals(species, other.species) && Arrays.equals(elements, other.elements)
+				&& (label == null ? other.label == null : label.equals(other.label));
+	}
+
+	public Composition getComposition() {
+		int[] counts = new int[elements.length];
+		for (byte s : species)
+			counts[s]++;
+
+		Map<Element,Integer> components = new HashMap<Element,Integer>();
+		for (int i = 0; i < elements.length; i++)
+			components.put(elements[i], counts[i]);
+
+		return new Composition(components, false);
+	}
+
+	public String toString() {
+		return getCell().toString();
+	}
+}
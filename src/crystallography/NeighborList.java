@@ -0,0 +1,286 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package crystallography;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import utility.Pair;
+import utility.Vect;
+
+// A periodic linked-cell neighbor list.  The sites of a Cell are binned once in fractional
+// space, with bins at least cutoff wide (perpendicular to each face), so that a sphere query
+// of radius <= cutoff only has to look at the sites in the 27 or so surrounding bins instead
+// of every site in a box of periodic images.  Larger queries still give the right answer,
+// they just look at more bins.
+//
+// Cells are immutable, so get these from Cell.getNeighborList() rather than making them
+// directly; that way they get built once and reused.
+
+public class NeighborList {
+	
+	private double cutoff;
+	
+	// a reduced basis for the lattice, and the inverse of the matrix whose columns they are
+	private double[][] lVects;
+	private double[][] invL;
+	
+	// the number of bins along each lattice vector
+	private int[] numBins = new int[3];
+	
+	// cartesian coords of each site after wrapping it into the cell
+	private double[][] wrappedCoords;
+	
+	// binHeads[b] is the first site in bin b, and nextInBin[s] the site after s in the same
+	// bin (or -1)
+	private int[] binHeads;
+	private int[] nextInBin;
+	
+	// (Cell keeps its sites in a LinkedList)
+	private List<Site> sites;
+	
+	public static class Neighbor implements Comparable<Neighbor> {
+		private int siteIndex;
+		private double dist;
+		private double x, y, z;
+		
+		private Neighbor(int _siteIndex, double _dist, double _x, double _y, double _z) {
+			siteIndex = _siteIndex;
+			dist = _dist;
+			x = _x; y = _y; z = _z;
+		}
+		
+		// the index of the neighboring site in the Cell
+		public int getSiteIndex() {
+			return siteIndex;
+		}
+		
+		public double getDistance() {
+			return dist;
+		}
+		
+		// the cartesian coordinates of the periodic image of the site that is the neighbor
+		public Vect getCoords() {
+			return new Vect(x, y, z);
+		}
+		
+		public int compareTo(Neighbor other) {
+			return Double.compare(dist, other.dist);
+		}
+	}
+	
+	public NeighborList(Cell c, double _cutoff) {
+		sites = new ArrayList<Site>(c.getSites());
+		cutoff = _cutoff;
+		
+		List<Vect> latticeVectors = c.getLatticeVectors();
+		lVects = new double[3][];
+		for (int d = 0; d < 3; d++)
+			lVects[d] = latticeVectors.get(d).getCartesianArray();
+		// any basis for the lattice gives the same images, so use a reduced one.  nearly
+		// flat cells (which the GA makes now and then, and later throws out) otherwise
+		// have us searching enormous boxes of bins.
+		reduceBasis(lVects);
+		List<Vect> reducedVectors = new ArrayList<Vect>();
+		for (int d = 0; d < 3; d++)
+			reducedVectors.add(new Vect(lVects[d][0], lVects[d][1], lVects[d][2]));
+		invL = Vect.getInverseBasisMatrix(reducedVectors);
+		
+		// the distance between opposite faces of the cell along lattice vector d is one over
+		// the length of row d of invL
+		int totalBins = 1;
+		for (int d = 0; d < 3; d++) {
+			double width = 1 / Math.sqrt(invL[d][0]*invL[d][0] + invL[d][1]*invL[d][1] + invL[d][2]*invL[d][2]);
+			numBins[d] = Math.max(1, (int)Math.floor(width / Math.max(cutoff, 1e-6)));
+			// no point in having many more bins than sites
+			numBins[d] = Math.min(numBins[d], 2 * (int)Math.ceil(Math.cbrt(c.getNumSites())) + 1);
+			totalBins *= numBins[d];
+		}
+		
+		binHeads = new int[totalBins];
+		for (int b = 0; b < totalBins; b++)
+			binHeads[b] = -1;
+		nextInBin = new int[c.getNumSites()];
+		wrappedCoords = new double[c.getNumSites()][];
+		
+		double[] frac = new double[3];
+		int[] bin = new int[3];
+		for (int s = 0; s < c.getNumSites(); s++) {
+			double[] coords = sites.get(s).getCoords().getCartesianArray();
+			sites.get(s).getCoords().getComponentsWRTInverseBasis(invL, frac);
+			for (int d = 0; d < 3; d++) {
+				double shift = Math.floor(frac[d]);
+				double w = frac[d] - shift;
+				// (roundoff can leave us at exactly 1)
+				if (w >= 1.0) {
+					w -= 1.0;
+					shift += 1;
+				}
+				for (int e = 0; e < 3; e++)
+					coords[e] -= shift * lVects[d][e];
+				bin[d] = Math.min((int)(w * numBins[d]), numBins[d] - 1);
+			}
+			wrappedCoords[s] = coords;
+			int b = binIndex(bin[0], bin[1], bin[2]);
+			nextInBin[s] = binHeads[b];
+			binHeads[b] = s;
+		}
+	}
+	
+	// shortens the basis vectors b by adding integer multiples of the others until that
+	// doesn't help anymore (pairwise Gauss reduction).  b still spans the same lattice.
+	private static void reduceBasis(double[][] b) {
+		boolean changed = true;
+		for (int iter = 0; changed && iter < 100; iter++) {
+			changed = false;
+			for (int i = 0; i < 3; i++) {
+				for (int j = 0; j < 3; j++) {
+					if (i == j)
+						continue;
+					double bjSq = dot(b[j], b[j]);
+					double m = Math.rint(dot(b[i], b[j]) / bjSq);
+					if (m == 0)
+						continue;
+					double[] shorter = new double[3];
+					for (int e = 0; e < 3; e++)
+						shorter[e] = b[i][e] - m * b[j][e];
+					if (dot(shorter, shorter) < dot(b[i], b[i]) * (1 - 1e-10)) {
+						b[i] = shorter;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+	
+	private static double dot(double[] a, double[] b) {
+		return a[0]*b[0] + a[1]*b[1] + a[2]*b[2];
+	}
+	
+	public double getCutoff() {
+		return cutoff;
+	}
+	
+	private int binIndex(int i, int j, int k) {
+		return (i * numBins[1] + j) * numBins[2] + k;
+	}
+	
+	// adds the (images of) sites within dist of center to result, skipping the site with
+	// index exclude when it sits right on center (but not its other images).  stops after the first one found if
+	// firstOnly.  returns the number found.
+	private int findNeighbors(double[] center, double dist, int exclude, boolean firstOnly, List<Neighbor> result) {
+		double[] cFrac = new double[3];
+		for (int d = 0; d < 3; d++)
+			cFrac[d] = invL[d][0]*center[0] + invL[d][1]*center[1] + invL[d][2]*center[2];
+		
+		int[] min = new int[3];
+		int[] max = new int[3];
+		for (int d = 0; d < 3; d++) {
+			double reach = dist * Math.sqrt(invL[d][0]*invL[d][0] + invL[d][1]*invL[d][1] + invL[d][2]*invL[d][2]);
+			min[d] = (int)Math.floor((cFrac[d] - reach) * numBins[d]);
+			max[d] = (int)Math.floor((cFrac[d] + reach) * numBins[d]);
+		}
+		
+		double distSq = dist * dist;
+		int numFound = 0;
+		double[] shift = new double[3];
+		for (int i = min[0]; i <= max[0]; i++) {
+			int bi = mod(i, numBins[0]);
+			int si = floorDiv(i, numBins[0]);
+			for (int j = min[1]; j <= max[1]; j++) {
+				int bj = mod(j, numBins[1]);
+				int sj = floorDiv(j, numBins[1]);
+				for (int k = min[2]; k <= max[2]; k++) {
+					int bk = mod(k, numBins[2]);
+					int sk = floorDiv(k, numBins[2]);
+					for (int e = 0; e < 3; e++)
+						shift[e] = si * lVects[0][e] + sj * lVects[1][e] + sk * lVects[2][e];
+					
+					for (int s = binHeads[binIndex(bi, bj, bk)]; s >= 0; s = nextInBin[s]) {
+						double x = wrappedCoords[s][0] + shift[0];
+						double y = wrappedCoords[s][1] + shift[1];
+						double z = wrappedCoords[s][2] + shift[2];
+						double dx = x - center[0];
+						double dy = y - center[1];
+						double dz = z - center[2];
+						double dSq = dx*dx + dy*dy + dz*dz;
+						if (dSq > distSq || (s == exclude && dSq < 1e-12))
+							continue;
+						numFound++;
+						if (result != null)
+							result.add(new Neighbor(s, Math.sqrt(dSq), x, y, z));
+						if (firstOnly)
+							return numFound;
+					}
+				}
+			}
+		}
+		
+		return numFound;
+	}
+	
+	private static int mod(int a, int n) {
+		int r = a % n;
+		return (r < 0) ? r + n : r;
+	}
+	
+	private static int floorDiv(int a, int n) {
+		return (a - mod(a, n)) / n;
+	}
+	
+	// returns the neighbors within dist of center, sorted by distance
+	public List<Neighbor> getNeighborsSorted(Vect center, double dist) {
+		List<Neighbor> result = new ArrayList<Neighbor>();
+		findNeighbors(center.getCartesianArray(), dist, -1, false, result);
+		Collections.sort(result);
+		return result;
+	}
+	
+	// returns the neighbors within dist of site i, not counting site i itself, sorted by distance
+	public List<Neighbor> getNeighborsSorted(int i, double dist) {
+		List<Neighbor> result = new ArrayList<Neighbor>();
+		findNeighbors(sites.get(i).getCoords().getCartesianArray(), dist, i, false, result);
+		Collections.sort(result);
+		return result;
+	}
+	
+	// true if any other site (or another image of site i) is within dist of site i
+	public boolean hasNeighborWithin(int i, double dist) {
+		return findNeighbors(sites.get(i).getCoords().getCartesianArray(), dist, i, true, null) > 0;
+	}
+	
+	// returns all pairs of sites within dist of each other, as the index of the first site 
+	// paired w/ the neighbor.  each pair shows up twice, once from each end.
+	public List<Pair<Integer,Neighbor>> getAllPairsWithin(double dist) {
+		List<Pair<Integer,Neighbor>> result = new ArrayList<Pair<Integer,Neighbor>>();
+		List<Neighbor> neighbors = new ArrayList<Neighbor>();
+		for (int i = 0; i < sites.size(); i++) {
+			neighbors.clear();
+			findNeighbors(sites.get(i).getCoords().getCartesianArray(), dist, i, false, neighbors);
+			for (Neighbor n : neighbors)
+				result.add(new Pair<Integer,Neighbor>(i, n));
+		}
+		return result;
+	}
+
+}
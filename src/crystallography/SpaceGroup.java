@@ -0,0 +1,949 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+
+
+    */
+
+package crystallography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+// The 230 space group types, each in one standard setting, and the code that recognizes
+// them in the operations Symmetry finds.
+//
+// Each group is written down as its Hall symbol (S. R. Hall, Acta Cryst. A37, 517 (1981)),
+// which we expand into all the operations of the conventional cell, w/ the translations
+// in units of 1/24.  The settings are the ones findsym uses by default: monoclinic groups
+// w/ unique axis b and cell choice 1, origin choice 2 (inversion at the origin) for the
+// groups which have two, and rhombohedral groups on obverse hexagonal axes.
+//
+// identify() looks for a conventional cell (from the rotation axes, as in the
+// International Tables) and an origin in which the operations are one of these groups.
+
+public class SpaceGroup {
+
+	// translations are in units of 1/T
+	private static final int T = 24;
+
+	private int number;
+	private String symbol;
+	private char centering;
+	private String pointGroup;
+
+	// the centering translations, including 0
+	private List<int[]> centeringVectors = new ArrayList<int[]>();
+	// the rotation parts, and for each one translation to go w/ it.  the others are that
+	// one plus the centering translations.
+	private List<int[][]> rotations = new ArrayList<int[][]>();
+	private Map<Integer,int[]> translations = new HashMap<Integer,int[]>();
+
+	private SpaceGroup(int _number, String _symbol) {
+		number = _number;
+		symbol = _symbol;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	// short Hermann-Mauguin symbol, w/ screw axes written e.g. 2_1
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public char getCentering() {
+		return centering;
+	}
+
+	// Hermann-Mauguin symbol of the crystal class
+	public String getPointGroup() {
+		return pointGroup;
+	}
+
+	// the number of operations in the conventional cell, counting the centerings
+	public int getOrder() {
+		return rotations.size() * centeringVectors.size();
+	}
+
+	public static SpaceGroup get(int number) {
+		return (number >= 1 && number <= groups.length) ? groups[number - 1] : null;
+	}
+
+	/* Hall symbols and short Hermann-Mauguin symbols, in order */
+	private static final String table[][] = {
+		{"P 1", "P1"}, {"-P 1", "P-1"}, {"P 2y", "P2"}, {"P 2yb", "P2_1"}, {"C 2y", "C2"},
+		{"P -2y", "Pm"}, {"P -2yc", "Pc"}, {"C -2y", "Cm"}, {"C -2yc", "Cc"}, {"-P 2y", "P2/m"},
+		{"-P 2yb", "P2_1/m"}, {"-C 2y", "C2/m"}, {"-P 2yc", "P2/c"}, {"-P 2ybc", "P2_1/c"},
+		{"-C 2yc", "C2/c"}, {"P 2 2", "P222"}, {"P 2c 2", "P222_1"}, {"P 2 2ab", "P2_12_12"},
+		{"P 2ac 2ab", "P2_12_12_1"}, {"C 2c 2", "C222_1"}, {"C 2 2", "C222"}, {"F 2 2", "F222"},
+		{"I 2 2", "I222"}, {"I 2b 2c", "I2_12_12_1"}, {"P 2 -2", "Pmm2"}, {"P 2c -2", "Pmc2_1"},
+		{"P 2 -2c", "Pcc2"}, {"P 2 -2a", "Pma2"}, {"P 2c -2ac", "Pca2_1"}, {"P 2 -2bc", "Pnc2"},
+		{"P 2ac -2", "Pmn2_1"}, {"P 2 -2ab", "Pba2"}, {"P 2c -2n", "Pna2_1"}, {"P 2 -2n", "Pnn2"},
+		{"C 2 -2", "Cmm2"}, {"C 2c -2", "Cmc2_1"}, {"C 2 -2c", "Ccc2"}, {"A 2 -2", "Amm2"},
+		{"A 2 -2c", "Aem2"}, {"A 2 -2a", "Ama2"}, {"A 2 -2ac", "Aea2"}, {"F 2 -2", "Fmm2"},
+		{"F 2 -2d", "Fdd2"}, {"I 2 -2", "Imm2"}, {"I 2 -2c", "Iba2"}, {"I 2 -2a", "Ima2"},
+		{"-P 2 2", "Pmmm"}, {"-P 2ab 2bc", "Pnnn"}, {"-P 2 2c", "Pccm"}, {"-P 2ab 2b", "Pban"},
+		{"-P 2a 2a", "Pmma"}, {"-P 2a 2bc", "Pnna"}, {"-P 2ac 2", "Pmna"}, {"-P 2a 2ac", "Pcca"},
+		{"-P 2 2ab", "Pbam"}, {"-P 2ab 2ac", "Pccn"}, {"-P 2c 2b", "Pbcm"}, {"-P 2 2n", "Pnnm"},
+		{"-P 2ab 2a", "Pmmn"}, {"-P 2n 2ab", "Pbcn"}, {"-P 2ac 2ab", "Pbca"}, {"-P 2ac 2n", "Pnma"},
+		{"-C 2c 2", "Cmcm"}, {"-C 2ac 2", "Cmce"}, {"-C 2 2", "Cmmm"}, {"-C 2 2c", "Cccm"},
+		{"-C 2a 2", "Cmme"}, {"-C 2a 2ac", "Ccce"}, {"-F 2 2", "Fmmm"}, {"-F 2uv 2vw", "Fddd"},
+		{"-I 2 2", "Immm"}, {"-I 2 2c", "Ibam"}, {"-I 2b 2c", "Ibca"}, {"-I 2b 2", "Imma"},
+		{"P 4", "P4"}, {"P 4w", "P4_1"}, {"P 4c", "P4_2"}, {"P 4cw", "P4_3"}, {"I 4", "I4"},
+		{"I 4bw", "I4_1"}, {"P -4", "P-4"}, {"I -4", "I-4"}, {"-P 4", "P4/m"}, {"-P 4c", "P4_2/m"},
+		{"-P 4a", "P4/n"}, {"-P 4bc", "P4_2/n"}, {"-I 4", "I4/m"}, {"-I 4ad", "I4_1/a"},
+		{"P 4 2", "P422"}, {"P 4ab 2ab", "P42_12"}, {"P 4w 2c", "P4_122"}, {"P 4abw 2nw", "P4_12_12"},
+		{"P 4c 2", "P4_222"}, {"P 4n 2n", "P4_22_12"}, {"P 4cw 2c", "P4_322"}, {"P 4nw 2abw", "P4_32_12"},
+		{"I 4 2", "I422"}, {"I 4bw 2bw", "I4_122"}, {"P 4 -2", "P4mm"}, {"P 4 -2ab", "P4bm"},
+		{"P 4c -2c", "P4_2cm"}, {"P 4n -2n", "P4_2nm"}, {"P 4 -2c", "P4cc"}, {"P 4 -2n", "P4nc"},
+		{"P 4c -2", "P4_2mc"}, {"P 4c -2ab", "P4_2bc"}, {"I 4 -2", "I4mm"}, {"I 4 -2c", "I4cm"},
+		{"I 4bw -2", "I4_1md"}, {"I 4bw -2c", "I4_1cd"}, {"P -4 2", "P-42m"}, {"P -4 2c", "P-42c"},
+		{"P -4 2ab", "P-42_1m"}, {"P -4 2n", "P-42_1c"}, {"P -4 -2", "P-4m2"}, {"P -4 -2c", "P-4c2"},
+		{"P -4 -2ab", "P-4b2"}, {"P -4 -2n", "P-4n2"}, {"I -4 -2", "I-4m2"}, {"I -4 -2c", "I-4c2"},
+		{"I -4 2", "I-42m"}, {"I -4 2bw", "I-42d"}, {"-P 4 2", "P4/mmm"}, {"-P 4 2c", "P4/mcc"},
+		{"-P 4a 2b", "P4/nbm"}, {"-P 4a 2bc", "P4/nnc"}, {"-P 4 2ab", "P4/mbm"}, {"-P 4 2n", "P4/mnc"},
+		{"-P 4a 2a", "P4/nmm"}, {"-P 4a 2ac", "P4/ncc"}, {"-P 4c 2", "P4_2/mmc"}, {"-P 4c 2c", "P4_2/mcm"},
+		{"-P 4ac 2b", "P4_2/nbc"}, {"-P 4ac 2bc", "P4_2/nnm"}, {"-P 4c 2ab", "P4_2/mbc"}, {"-P 4n 2n", "P4_2/mnm"},
+		{"-P 4ac 2a", "P4_2/nmc"}, {"-P 4ac 2ac", "P4_2/ncm"}, {"-I 4 2", "I4/mmm"}, {"-I 4 2c", "I4/mcm"},
+		{"-I 4bd 2", "I4_1/amd"}, {"-I 4bd 2c", "I4_1/acd"}, {"P 3", "P3"}, {"P 31", "P3_1"},
+		{"P 32", "P3_2"}, {"R 3", "R3"}, {"-P 3", "P-3"}, {"-R 3", "R-3"}, {"P 3 2", "P312"},
+		{"P 3 2\"", "P321"}, {"P 31 2c (0 0 1)", "P3_112"}, {"P 31 2\"", "P3_121"},
+		{"P 32 2c (0 0 -1)", "P3_212"}, {"P 32 2\"", "P3_221"}, {"R 3 2\"", "R32"}, {"P 3 -2\"", "P3m1"},
+		{"P 3 -2", "P31m"}, {"P 3 -2\"c", "P3c1"}, {"P 3 -2c", "P31c"}, {"R 3 -2\"", "R3m"},
+		{"R 3 -2\"c", "R3c"}, {"-P 3 2", "P-31m"}, {"-P 3 2c", "P-31c"}, {"-P 3 2\"", "P-3m1"},
+		{"-P 3 2\"c", "P-3c1"}, {"-R 3 2\"", "R-3m"}, {"-R 3 2\"c", "R-3c"}, {"P 6", "P6"},
+		{"P 61", "P6_1"}, {"P 65", "P6_5"}, {"P 62", "P6_2"}, {"P 64", "P6_4"}, {"P 6c", "P6_3"},
+		{"P -6", "P-6"}, {"-P 6", "P6/m"}, {"-P 6c", "P6_3/m"}, {"P 6 2", "P622"},
+		{"P 61 2 (0 0 -1)", "P6_122"}, {"P 65 2 (0 0 1)", "P6_522"}, {"P 62 2c (0 0 1)", "P6_222"},
+		{"P 64 2c (0 0 -1)", "P6_422"}, {"P 6c 2c", "P6_322"}, {"P 6 -2", "P6mm"}, {"P 6 -2c", "P6cc"},
+		{"P 6c -2", "P6_3cm"}, {"P 6c -2c", "P6_3mc"}, {"P -6 2", "P-6m2"}, {"P -6c 2", "P-6c2"},
+		{"P -6 -2", "P-62m"}, {"P -6c -2c", "P-62c"}, {"-P 6 2", "P6/mmm"}, {"-P 6 2c", "P6/mcc"},
+		{"-P 6c 2", "P6_3/mcm"}, {"-P 6c 2c", "P6_3/mmc"}, {"P 2 2 3", "P23"}, {"F 2 2 3", "F23"},
+		{"I 2 2 3", "I23"}, {"P 2ac 2ab 3", "P2_13"}, {"I 2b 2c 3", "I2_13"}, {"-P 2 2 3", "Pm-3"},
+		{"-P 2ab 2bc 3", "Pn-3"}, {"-F 2 2 3", "Fm-3"}, {"-F 2uv 2vw 3", "Fd-3"}, {"-I 2 2 3", "Im-3"},
+		{"-P 2ac 2ab 3", "Pa-3"}, {"-I 2b 2c 3", "Ia-3"}, {"P 4 2 3", "P432"}, {"P 4n 2 3", "P4_232"},
+		{"F 4 2 3", "F432"}, {"F 4d 2 3", "F4_132"}, {"I 4 2 3", "I432"}, {"P 4acd 2ab 3", "P4_332"},
+		{"P 4bd 2ab 3", "P4_132"}, {"I 4bd 2c 3", "I4_132"}, {"P -4 2 3", "P-43m"}, {"F -4 2 3", "F-43m"},
+		{"I -4 2 3", "I-43m"}, {"P -4n 2 3", "P-43n"}, {"F -4c 2 3", "F-43c"}, {"I -4bd 2c 3", "I-43d"},
+		{"-P 4 2 3", "Pm-3m"}, {"-P 4a 2bc 3", "Pn-3n"}, {"-P 4n 2 3", "Pm-3n"}, {"-P 4bc 2bc 3", "Pn-3m"},
+		{"-F 4 2 3", "Fm-3m"}, {"-F 4c 2 3", "Fm-3c"}, {"-F 4vw 2vw 3", "Fd-3m"}, {"-F 4cvw 2vw 3", "Fd-3c"},
+		{"-I 4 2 3", "Im-3m"}, {"-I 4bd 2c 3", "Ia-3d"} };
+
+	private static final SpaceGroup groups[] = new SpaceGroup[table.length];
+	static {
+		for (int i = 0; i < table.length; i++)
+			groups[i] = parseHall(i + 1, table[i][1], table[i][0]);
+	}
+
+	/* Reading Hall symbols */
+
+	private static SpaceGroup parseHall(int number, String symbol, String hall) {
+		SpaceGroup result = new SpaceGroup(number, symbol);
+
+		// the change of origin, in 12ths
+		int[] shift = new int[3];
+		int paren = hall.indexOf('(');
+		if (paren >= 0) {
+			StringTokenizer t = new StringTokenizer(hall.substring(paren + 1, hall.indexOf(')')));
+			for (int i = 0; i < 3; i++)
+				shift[i] = Integer.parseInt(t.nextToken()) * T / 12;
+			hall = hall.substring(0, paren);
+		}
+
+		List<int[][]> genRots = new ArrayList<int[][]>();
+		List<int[]> genTrans = new ArrayList<int[]>();
+
+		StringTokenizer t = new StringTokenizer(hall);
+		String lattice = t.nextToken();
+		boolean centric = lattice.startsWith("-");
+		result.centering = lattice.charAt(centric ? 1 : 0);
+		result.centeringVectors.add(new int[3]);
+		for (int[] v : getCenteringVectors(result.centering)) {
+			result.centeringVectors.add(v);
+			genRots.add(identity());
+			genTrans.add(v);
+		}
+		if (centric) {
+			genRots.add(scale(identity(), -1));
+			genTrans.add(new int[3]);
+		}
+
+		int prevN = 0;
+		for (int pos = 0; t.hasMoreTokens(); pos++) {
+			String s = t.nextToken();
+			int i = 0;
+			boolean improper = s.charAt(i) == '-';
+			if (improper)
+				i++;
+			int n = s.charAt(i++) - '0';
+			int screw = 0;
+			if (i < s.length() && Character.isDigit(s.charAt(i)))
+				screw = s.charAt(i++) - '0';
+			char axis = 0;
+			int[] trans = new int[3];
+			for (; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if ("xyz'\"*".indexOf(c) >= 0)
+					axis = c;
+				else
+					add(trans, getTranslationSymbol(c));
+			}
+			// the default axes: the first is along c, the second along a (or a-b after a
+			// 3 or 6), and a 3 in third place is along the body diagonal
+			if (axis == 0) {
+				if (pos == 0)
+					axis = 'z';
+				else if (pos == 1 && n == 2)
+					axis = (prevN == 3 || prevN == 6) ? '\'' : 'x';
+				else if (pos == 2 && n == 3)
+					axis = '*';
+			}
+			int[][] w = getRotationSymbol(n, axis);
+			if (w == null)
+				throw new IllegalArgumentException("bad Hall symbol " + hall);
+			if (screw != 0) {
+				int[] dir = getAxisDirection(axis);
+				for (int d = 0; d < 3; d++)
+					trans[d] += dir[d] * screw * T / n;
+			}
+			genRots.add(improper ? scale(w, -1) : w);
+			genTrans.add(mod(trans));
+			prevN = n;
+		}
+
+		// close the generators into the whole group (mod whole lattice translations)
+		List<int[][]> allRots = new ArrayList<int[][]>();
+		List<int[]> allTrans = new ArrayList<int[]>();
+		Set<String> seen = new HashSet<String>();
+		allRots.add(identity());
+		allTrans.add(new int[3]);
+		seen.add(opKey(identity(), new int[3]));
+		for (int k = 0; k < allRots.size(); k++)
+			for (int j = 0; j < genRots.size(); j++) {
+				int[][] w = times(genRots.get(j), allRots.get(k));
+				int[] tr = times(genRots.get(j), allTrans.get(k));
+				add(tr, genTrans.get(j));
+				mod(tr);
+				if (seen.add(opKey(w, tr))) {
+					allRots.add(w);
+					allTrans.add(tr);
+				}
+			}
+
+		for (int k = 0; k < allRots.size(); k++) {
+			int[][] w = allRots.get(k);
+			Integer key = rotationKey(w);
+			if (result.translations.containsKey(key))
+				continue;
+			// move the origin: (I|V)(W|t)(I|-V) = (W|t + V - WV)
+			int[] tr = allTrans.get(k).clone();
+			int[] wv = times(w, shift);
+			for (int d = 0; d < 3; d++)
+				tr[d] += shift[d] - wv[d];
+			result.rotations.add(w);
+			result.translations.put(key, mod(tr));
+		}
+		result.pointGroup = Symmetry.classifyPointGroup(result.rotations);
+
+		return result;
+	}
+
+	private static List<int[]> getCenteringVectors(char c) {
+		List<int[]> result = new ArrayList<int[]>();
+		int h = T / 2;
+		switch (c) {
+		case 'P': break;
+		case 'A': result.add(new int[] {0, h, h}); break;
+		case 'B': result.add(new int[] {h, 0, h}); break;
+		case 'C': result.add(new int[] {h, h, 0}); break;
+		case 'I': result.add(new int[] {h, h, h}); break;
+		case 'R': result.add(new int[] {2*T/3, T/3, T/3}); result.add(new int[] {T/3, 2*T/3, 2*T/3}); break;
+		case 'F': result.add(new int[] {0, h, h}); result.add(new int[] {h, 0, h}); result.add(new int[] {h, h, 0}); break;
+		default: throw new IllegalArgumentException("bad lattice symbol " + c);
+		}
+		return result;
+	}
+
+	private static int[] getTranslationSymbol(char c) {
+		int h = T / 2;
+		int q = T / 4;
+		switch (c) {
+		case 'a': return new int[] {h, 0, 0};
+		case 'b': return new int[] {0, h, 0};
+		case 'c': return new int[] {0, 0, h};
+		case 'n': return new int[] {h, h, h};
+		case 'u': return new int[] {q, 0, 0};
+		case 'v': return new int[] {0, q, 0};
+		case 'w': return new int[] {0, 0, q};
+		case 'd': return new int[] {q, q, q};
+		default: throw new IllegalArgumentException("bad translation symbol " + c);
+		}
+	}
+
+	private static int[] getAxisDirection(char axis) {
+		switch (axis) {
+		case 'x': return new int[] {1, 0, 0};
+		case 'y': return new int[] {0, 1, 0};
+		default: return new int[] {0, 0, 1};
+		}
+	}
+
+	// the rotations of Hall's table, on hexagonal axes for the 3s and 6s.  ' and " are
+	// the 2s along a-b and a+b, which is all they mean after an axis along c.
+	private static int[][] getRotationSymbol(int n, char axis) {
+		switch (n) {
+		case 1: return identity();
+		case 2:
+			switch (axis) {
+			case 'x': return new int[][] {{1,0,0},{0,-1,0},{0,0,-1}};
+			case 'y': return new int[][] {{-1,0,0},{0,1,0},{0,0,-1}};
+			case 'z': return new int[][] {{-1,0,0},{0,-1,0},{0,0,1}};
+			case '\'': return new int[][] {{0,-1,0},{-1,0,0},{0,0,-1}};
+			case '"': return new int[][] {{0,1,0},{1,0,0},{0,0,-1}};
+			}
+			return null;
+		case 3:
+			if (axis == 'z')
+				return new int[][] {{0,-1,0},{1,-1,0},{0,0,1}};
+			if (axis == '*')
+				return new int[][] {{0,0,1},{1,0,0},{0,1,0}};
+			return null;
+		case 4:
+			if (axis == 'z')
+				return new int[][] {{0,-1,0},{1,0,0},{0,0,1}};
+			return null;
+		case 6:
+			if (axis == 'z')
+				return new int[][] {{1,-1,0},{1,0,0},{0,0,1}};
+			return null;
+		}
+		return null;
+	}
+
+	/* Recognizing the groups */
+
+	// where identify() found the group: conventional cell vectors (the columns of basis, in
+	// terms of the primitive lattice vectors) and an origin (in fractional coordinates of the
+	// conventional cell) in which the operations are exactly group's.
+	public static class Setting {
+		public SpaceGroup group;
+		public int[][] basis;
+		public double[] origin;
+	}
+
+	// the lattice vectors (in terms of the primitive ones) we look through for the
+	// conventional cell's.  plenty for a reduced primitive cell.
+	private static final int searchRange = 3;
+
+	// rotations and translations are the operations x -> Wx + t of a structure, in fractional
+	// coordinates of a (reduced) primitive cell w/ metric tensor g, found w/ distance
+	// tolerance tol.  returns null if they aren't any of the groups.
+	public static Setting identify(List<int[][]> rotations, List<double[]> translations, double[][] g,
+			String pointGroup, String crystalSystem, double tol) {
+		for (int[][] basis : getConventionalBases(rotations, g, crystalSystem)) {
+			Setting result = tryBasis(rotations, translations, g, pointGroup, basis, tol);
+			if (result != null)
+				return result;
+		}
+		return null;
+	}
+
+	// possible conventional cells, as in ITA: c along the main axis and a, b along the
+	// secondary ones (all for cubic), and b along the 2 for monoclinic.  we try all the
+	// labelings of the axes and leave it to the centering and the matching to sort them out.
+	private static List<int[][]> getConventionalBases(List<int[][]> rotations, double[][] g, String system) {
+		List<int[]> vects = getLatticeVectorsByLength(g);
+		List<int[][]> result = new ArrayList<int[][]>();
+
+		if (system.equals("triclinic")) {
+			result.add(identity());
+		} else if (system.equals("monoclinic")) {
+			int[][] r = findProperRotation(rotations, -1);
+			int[] b = shortestFixedBy(r, vects);
+			// a reduced basis of the plane perpendicular to the axis
+			List<int[]> plane = new ArrayList<int[]>();
+			for (int[] v : vects)
+				if (Arrays.equals(times(r, v), scale(v, -1)))
+					plane.add(v);
+			int[] a0 = plane.get(0);
+			int[] c0 = null;
+			for (int[] v : plane)
+				if (!isZero(cross(a0, v))) {
+					c0 = v;
+					break;
+				}
+			List<int[]> choices = new ArrayList<int[]>();
+			for (int[] u : new int[][] {a0, c0, sum(a0, c0), sum(a0, scale(c0, -1))}) {
+				choices.add(u);
+				choices.add(scale(u, -1));
+			}
+			for (int[] a : choices)
+				for (int[] c : choices)
+					addBasis(result, a, b, c, 2);
+		} else if (system.equals("orthorhombic")) {
+			List<int[]> axes = new ArrayList<int[]>();
+			for (int[][] r : rotations)
+				if (trace(properPart(r)) == -1)
+					addAxis(axes, shortestFixedBy(properPart(r), vects));
+			addPermutations(result, axes);
+		} else if (system.equals("tetragonal") || system.equals("trigonal") || system.equals("hexagonal")) {
+			// a and b are related by the 4 or the 3 (120 degrees)
+			boolean tetragonal = system.equals("tetragonal");
+			int[][] r = tetragonal ? findProperRotation(rotations, 1) : findProperRotation(rotations, 0);
+			if (r == null) {
+				// a 6 then; its square is a 3
+				r = findProperRotation(rotations, 2);
+				r = times(r, r);
+			}
+			int[] c = shortestFixedBy(r, vects);
+			int[] a0 = null;
+			for (int[] v : vects)
+				if (isZero(tetragonal ? sum(times(times(r, r), v), v) : sum(sum(v, times(r, v)), times(times(r, r), v)))) {
+					a0 = v;
+					break;
+				}
+			int[][] rInv = tetragonal ? times(r, times(r, r)) : times(r, r);
+			List<int[]> as = new ArrayList<int[]>();
+			int[] u = a0;
+			do {
+				as.add(u);
+				as.add(scale(u, -1));
+				u = times(r, u);
+			} while (!Arrays.equals(u, a0));
+			for (int[] a : as) {
+				addBasis(result, a, times(r, a), c, 2);
+				addBasis(result, a, times(rInv, a), c, 2);
+			}
+		} else if (system.equals("cubic")) {
+			// along the 4s, or the 2s if there aren't any
+			boolean haveFours = findProperRotation(rotations, 1) != null;
+			List<int[]> axes = new ArrayList<int[]>();
+			for (int[][] r : rotations)
+				if (trace(properPart(r)) == (haveFours ? 1 : -1))
+					addAxis(axes, shortestFixedBy(properPart(r), vects));
+			addPermutations(result, axes);
+		}
+
+		return result;
+	}
+
+	private static void addPermutations(List<int[][]> result, List<int[]> axes) {
+		if (axes.size() != 3)
+			return;
+		int[][] perms = {{0,1,2},{1,2,0},{2,0,1},{1,0,2},{0,2,1},{2,1,0}};
+		for (int[] p : perms)
+			for (int signs = 0; signs < 4; signs++) {
+				int[] a = scale(axes.get(p[0]), (signs & 1) == 0 ? 1 : -1);
+				int[] b = scale(axes.get(p[1]), (signs & 2) == 0 ? 1 : -1);
+				addBasis(result, a, b, axes.get(p[2]), 2);
+			}
+	}
+
+	// adds the basis a, b, c, flipping the vector at flip if needed to make it right handed
+	private static void addBasis(List<int[][]> result, int[] a, int[] b, int[] c, int flip) {
+		int[][] basis = fromColumns(a, b, c);
+		int det = det(basis);
+		if (det == 0 || Math.abs(det) > 4)
+			return;
+		if (det < 0)
+			for (int i = 0; i < 3; i++)
+				basis[i][flip] = -basis[i][flip];
+		for (int[][] other : result)
+			if (Arrays.deepEquals(other, basis))
+				return;
+		result.add(basis);
+	}
+
+	private static void addAxis(List<int[]> axes, int[] u) {
+		if (u == null)
+			return;
+		for (int[] v : axes)
+			if (isZero(cross(u, v)))
+				return;
+		axes.add(u);
+	}
+
+	private static Setting tryBasis(List<int[][]> rotations, List<double[]> translations, double[][] g,
+			String pointGroup, int[][] basis, double tol) {
+		int det = det(basis);
+		int[][] adj = adjugate(basis);
+
+		// the operations in the conventional cell: W' = B^-1 W B, t' = B^-1 t
+		List<int[][]> rots = new ArrayList<int[][]>();
+		List<double[]> trans = new ArrayList<double[]>();
+		for (int k = 0; k < rotations.size(); k++) {
+			int[][] w = times(adj, times(rotations.get(k), basis));
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++) {
+					if (w[i][j] % det != 0)
+						return null;
+					w[i][j] /= det;
+				}
+			rots.add(w);
+			double[] t = times(adj, translations.get(k));
+			for (int d = 0; d < 3; d++)
+				t[d] /= det;
+			trans.add(t);
+		}
+
+		// the primitive lattice vectors are the centering translations of this cell
+		List<int[]> centering = new ArrayList<int[]>();
+		centering.add(new int[3]);
+		for (int k = 0; k < centering.size(); k++)
+			for (int j = 0; j < 3; j++) {
+				int[] v = new int[3];
+				for (int i = 0; i < 3; i++)
+					v[i] = centering.get(k)[i] + adj[i][j] * (T / det);
+				mod(v);
+				boolean have = false;
+				for (int[] c : centering)
+					have = have || Arrays.equals(c, v);
+				if (!have)
+					centering.add(v);
+			}
+		char type = classifyCentering(centering);
+
+		// the metric of the conventional cell
+		double[][] gc = new double[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				for (int k = 0; k < 3; k++)
+					for (int m = 0; m < 3; m++)
+						gc[i][j] += basis[k][i] * g[k][m] * basis[m][j];
+
+		// generators for the rotations, to solve for the origin w/
+		List<Integer> gens = new ArrayList<Integer>();
+		Set<Integer> generated = new HashSet<Integer>();
+		generated.add(rotationKey(identity()));
+		for (int k = 0; k < rots.size() && generated.size() < rots.size(); k++)
+			if (!generated.contains(rotationKey(rots.get(k)))) {
+				gens.add(k);
+				generated = closeRotations(rots, gens);
+			}
+
+		for (SpaceGroup group : groups) {
+			if (group.centering != type || !group.pointGroup.equals(pointGroup) || group.rotations.size() != rots.size())
+				continue;
+			boolean sameRotations = true;
+			for (int[][] w : rots)
+				sameRotations = sameRotations && group.translations.containsKey(rotationKey(w));
+			if (!sameRotations)
+				continue;
+			double[] origin = findOrigin(group, rots, trans, gens, gc, tol);
+			if (origin != null) {
+				Setting result = new Setting();
+				result.group = group;
+				result.basis = basis;
+				result.origin = origin;
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static char classifyCentering(List<int[]> centering) {
+		int h = T / 2;
+		switch (centering.size()) {
+		case 1:
+			return 'P';
+		case 2:
+			int[] v = centering.get(1);
+			if (Arrays.equals(v, new int[] {0, h, h})) return 'A';
+			if (Arrays.equals(v, new int[] {h, 0, h})) return 'B';
+			if (Arrays.equals(v, new int[] {h, h, 0})) return 'C';
+			if (Arrays.equals(v, new int[] {h, h, h})) return 'I';
+			return '?';
+		case 3:
+			for (int[] c : centering)
+				if (Arrays.equals(c, new int[] {2*T/3, T/3, T/3}))
+					return 'R';
+			return '?';
+		case 4:
+			for (int[] c : centering)
+				if (!isZero(c) && c[0] != 0 && c[1] != 0 && c[2] != 0)
+					return '?';
+			return 'F';
+		}
+		return '?';
+	}
+
+	// looks for the origin shift s which makes t + (W - I)s the group's translation for W (up
+	// to a centering) for every operation.  it's enough to get it right for the generators;
+	// which centering goes w/ each of them is a guess, so try them all.
+	private static double[] findOrigin(SpaceGroup group, List<int[][]> rots, List<double[]> trans,
+			List<Integer> gens, double[][] gc, double tol) {
+		int[][] a = new int[3 * gens.size()][3];
+		for (int k = 0; k < gens.size(); k++)
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++)
+					a[3*k + i][j] = rots.get(gens.get(k))[i][j] - (i == j ? 1 : 0);
+		Smith snf = new Smith(a);
+
+		int numCenterings = group.centeringVectors.size();
+		int numGuesses = (int) Math.pow(numCenterings, gens.size());
+		for (int guess = 0; guess < numGuesses; guess++) {
+			double[] rhs = new double[3 * gens.size()];
+			int g = guess;
+			for (int k = 0; k < gens.size(); k++) {
+				int[][] w = rots.get(gens.get(k));
+				int[] tg = group.translations.get(rotationKey(w));
+				int[] c = group.centeringVectors.get(g % numCenterings);
+				g /= numCenterings;
+				for (int i = 0; i < 3; i++)
+					rhs[3*k + i] = (tg[i] + c[i]) / (double) T - trans.get(gens.get(k))[i];
+			}
+			double[] s = snf.solveMod1(rhs);
+
+			boolean allMatch = true;
+			for (int k = 0; k < rots.size() && allMatch; k++) {
+				int[][] w = rots.get(k);
+				int[] tg = group.translations.get(rotationKey(w));
+				double[] ws = times(w, s);
+				boolean matched = false;
+				for (int[] c : group.centeringVectors) {
+					double[] diff = new double[3];
+					for (int i = 0; i < 3; i++) {
+						diff[i] = trans.get(k)[i] + ws[i] - s[i] - (tg[i] + c[i]) / (double) T;
+						diff[i] -= Math.round(diff[i]);
+					}
+					if (length(diff, gc) <= 2 * tol) {
+						matched = true;
+						break;
+					}
+				}
+				allMatch = matched;
+			}
+			if (allMatch) {
+				for (int i = 0; i < 3; i++)
+					s[i] -= Math.floor(s[i]);
+				return s;
+			}
+		}
+		return null;
+	}
+
+	// the images of the point f (in fractional coordinates of the conventional cell) under
+	// the group, wrapped into the cell
+	public List<double[]> getImages(double[] f) {
+		List<double[]> result = new ArrayList<double[]>();
+		for (int[][] w : rotations) {
+			double[] wf = times(w, f);
+			int[] t = translations.get(rotationKey(w));
+			for (int[] c : centeringVectors) {
+				double[] image = new double[3];
+				for (int i = 0; i < 3; i++) {
+					image[i] = wf[i] + (t[i] + c[i]) / (double) T;
+					image[i] -= Math.floor(image[i]);
+				}
+				result.add(image);
+			}
+		}
+		return result;
+	}
+
+	// the metric g (of the conventional cell) averaged over the rotations, so that it has
+	// exactly the lattice's symmetry, like findsym's lattice parameters
+	public double[][] symmetrizeMetric(double[][] g) {
+		double[][] result = new double[3][3];
+		for (int[][] w : rotations)
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++)
+					for (int k = 0; k < 3; k++)
+						for (int l = 0; l < 3; l++)
+							result[i][j] += w[k][i] * g[k][l] * w[l][j] / (double) rotations.size();
+		return result;
+	}
+
+	// Smith normal form U A V = D of a small integer matrix, for solving A s = b mod 1
+	private static class Smith {
+		int rows;
+		long[][] u;
+		long[][] v;
+		long[] diag = new long[3];
+
+		Smith(int[][] a) {
+			rows = a.length;
+			long[][] d = new long[rows][3];
+			for (int i = 0; i < rows; i++)
+				for (int j = 0; j < 3; j++)
+					d[i][j] = a[i][j];
+			u = new long[rows][rows];
+			for (int i = 0; i < rows; i++)
+				u[i][i] = 1;
+			v = new long[3][3];
+			for (int i = 0; i < 3; i++)
+				v[i][i] = 1;
+
+			for (int t = 0; t < Math.min(3, rows); t++) {
+				while (true) {
+					// move the smallest nonzero entry left to (t,t)
+					int pi = -1, pj = -1;
+					for (int i = t; i < rows; i++)
+						for (int j = t; j < 3; j++)
+							if (d[i][j] != 0 && (pi < 0 || Math.abs(d[i][j]) < Math.abs(d[pi][pj]))) {
+								pi = i;
+								pj = j;
+							}
+					if (pi < 0)
+						return;
+					swapRows(d, t, pi);
+					swapRows(u, t, pi);
+					swapColumns(d, t, pj);
+					swapColumns(v, t, pj);
+
+					boolean clean = true;
+					for (int i = t + 1; i < rows; i++) {
+						long q = d[i][t] / d[t][t];
+						addRow(d, i, t, -q);
+						addRow(u, i, t, -q);
+						clean = clean && d[i][t] == 0;
+					}
+					for (int j = t + 1; j < 3; j++) {
+						long q = d[t][j] / d[t][t];
+						addColumn(d, j, t, -q);
+						addColumn(v, j, t, -q);
+						clean = clean && d[t][j] == 0;
+					}
+					if (clean)
+						break;
+				}
+				diag[t] = d[t][t];
+			}
+		}
+
+		// an s w/ A s = b + (some integer vector), assuming there is one.  (when there isn't,
+		// the caller finds out by checking the operations.)
+		double[] solveMod1(double[] b) {
+			double[] ub = new double[rows];
+			for (int i = 0; i < rows; i++)
+				for (int j = 0; j < rows; j++)
+					ub[i] += u[i][j] * b[j];
+			double[] y = new double[3];
+			for (int i = 0; i < 3; i++)
+				y[i] = (diag[i] == 0) ? 0 : ub[i] / diag[i];
+			double[] s = new double[3];
+			for (int i = 0; i < 3; i++)
+				for (int j = 0; j < 3; j++)
+					s[i] += v[i][j] * y[j];
+			return s;
+		}
+
+		private static void swapRows(long[][] m, int i, int j) {
+			long[] tmp = m[i];
+			m[i] = m[j];
+			m[j] = tmp;
+		}
+
+		private static void swapColumns(long[][] m, int i, int j) {
+			for (long[] row : m) {
+				long tmp = row[i];
+				row[i] = row[j];
+				row[j] = tmp;
+			}
+		}
+
+		// row i += q * row j
+		private static void addRow(long[][] m, int i, int j, long q) {
+			for (int k = 0; k < m[i].length; k++)
+				m[i][k] += q * m[j][k];
+		}
+
+		// column i += q * column j
+		private static void addColumn(long[][] m, int i, int j, long q) {
+			for (long[] row : m)
+				row[i] += q * row[j];
+		}
+	}
+
+	/* Lattice vectors and small integer matrices */
+
+	private static List<int[]> getLatticeVectorsByLength(final double[][] g) {
+		List<int[]> result = new ArrayList<int[]>();
+		final Map<int[],Double> lengths = new HashMap<int[],Double>();
+		for (int i = -searchRange; i <= searchRange; i++)
+			for (int j = -searchRange; j <= searchRange; j++)
+				for (int k = -searchRange; k <= searchRange; k++) {
+					int[] v = {i, j, k};
+					if (isZero(v))
+						continue;
+					result.add(v);
+					lengths.put(v, length(new double[] {i, j, k}, g));
+				}
+		result.sort(new java.util.Comparator<int[]>() {
+			public int compare(int[] v1, int[] v2) {
+				return Double.compare(lengths.get(v1), lengths.get(v2));
+			}
+		});
+		return result;
+	}
+
+	// a rotation whose proper part has the given trace (-1, 0, 1, 2 for 2, 3, 4, 6)
+	private static int[][] findProperRotation(List<int[][]> rotations, int trace) {
+		for (int[][] w : rotations)
+			if (trace(properPart(w)) == trace)
+				return properPart(w);
+		return null;
+	}
+
+	// the shortest lattice vector along r's axis
+	private static int[] shortestFixedBy(int[][] r, List<int[]> vects) {
+		for (int[] v : vects)
+			if (Arrays.equals(times(r, v), v))
+				return v;
+		return null;
+	}
+
+	private static Set<Integer> closeRotations(List<int[][]> rots, List<Integer> gens) {
+		List<int[][]> all = new ArrayList<int[][]>();
+		Set<Integer> result = new HashSet<Integer>();
+		all.add(identity());
+		result.add(rotationKey(identity()));
+		for (int k = 0; k < all.size(); k++)
+			for (int j : gens) {
+				int[][] w = times(rots.get(j), all.get(k));
+				if (result.add(rotationKey(w)))
+					all.add(w);
+			}
+		return result;
+	}
+
+	private static double length(double[] x, double[][] g) {
+		double result = 0;
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				result += x[i] * g[i][j] * x[j];
+		return Math.sqrt(Math.max(0, result));
+	}
+
+	// the entries are all in {-1,0,1}
+	private static Integer rotationKey(int[][] w) {
+		int result = 0;
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				result = 3 * result + (w[i][j] + 1);
+		return result;
+	}
+
+	private static String opKey(int[][] w, int[] t) {
+		return rotationKey(w) + " " + t[0] + " " + t[1] + " " + t[2];
+	}
+
+	private static int[][] identity() {
+		return new int[][] {{1,0,0},{0,1,0},{0,0,1}};
+	}
+
+	private static int[][] properPart(int[][] w) {
+		return scale(w, det(w));
+	}
+
+	private static int trace(int[][] w) {
+		return w[0][0] + w[1][1] + w[2][2];
+	}
+
+	private static int det(int[][] w) {
+		return w[0][0]*(w[1][1]*w[2][2] - w[1][2]*w[2][1])
+				- w[0][1]*(w[1][0]*w[2][2] - w[1][2]*w[2][0])
+				+ w[0][2]*(w[1][0]*w[2][1] - w[1][1]*w[2][0]);
+	}
+
+	// det(w) * w^-1
+	private static int[][] adjugate(int[][] w) {
+		int[][] result = new int[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++) {
+				int i1 = (j + 1) % 3, i2 = (j + 2) % 3;
+				int j1 = (i + 1) % 3, j2 = (i + 2) % 3;
+				result[i][j] = w[i1][j1] * w[i2][j2] - w[i1][j2] * w[i2][j1];
+			}
+		return result;
+	}
+
+	private static int[][] fromColumns(int[] a, int[] b, int[] c) {
+		return new int[][] {{a[0], b[0], c[0]}, {a[1], b[1], c[1]}, {a[2], b[2], c[2]}};
+	}
+
+	private static int[][] times(int[][] a, int[][] b) {
+		int[][] result = new int[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				for (int k = 0; k < 3; k++)
+					result[i][j] += a[i][k] * b[k][j];
+		return result;
+	}
+
+	private static int[] times(int[][] w, int[] x) {
+		int[] result = new int[3];
+		for (int i = 0; i < 3; i++)
+			result[i] = w[i][0]*x[0] + w[i][1]*x[1] + w[i][2]*x[2];
+		return result;
+	}
+
+	private static double[] times(int[][] w, double[] x) {
+		double[] result = new double[3];
+		for (int i = 0; i < 3; i++)
+			result[i] = w[i][0]*x[0] + w[i][1]*x[1] + w[i][2]*x[2];
+		return result;
+	}
+
+	private static int[][] scale(int[][] w, int s) {
+		int[][] result = new int[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				result[i][j] = s * w[i][j];
+		return result;
+	}
+
+	private static int[] scale(int[] v, int s) {
+		return new int[] {s * v[0], s * v[1], s * v[2]};
+	}
+
+	private static int[] sum(int[] u, int[] v) {
+		return new int[] {u[0] + v[0], u[1] + v[1], u[2] + v[2]};
+	}
+
+	private static int[] cross(int[] u, int[] v) {
+		return new int[] {u[1]*v[2] - u[2]*v[1], u[2]*v[0] - u[0]*v[2], u[0]*v[1] - u[1]*v[0]};
+	}
+
+	private static boolean isZero(int[] v) {
+		return v[0] == 0 && v[1] == 0 && v[2] == 0;
+	}
+
+	private static void add(int[] v, int[] u) {
+		for (int i = 0; i < 3; i++)
+			v[i] += u[i];
+	}
+
+	private static int[] mod(int[] t) {
+		for (int i = 0; i < 3; i++)
+			t[i] = ((t[i] % T) + T) % T;
+		return t;
+	}
+
+	public String toString() {
+		return number + " (" + symbol + ")";
+	}
+
+}
@@ -0,0 +1,690 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package crystallography;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import chemistry.Element;
+
+import utility.Vect;
+
+// Finds the space group of a Cell in-process, w/o running findsym.  (findsym is still the
+// default; --useFindsym false switches to this.)
+//
+// We find the primitive cell, Niggli reduce it, and then look for the lattice
+// automorphisms of the reduced cell (which all have entries in {-1,0,1}) that, together
+// with some translation, map the structure onto itself.  The operations are given with
+// respect to the reduced primitive cell.  From them we get the crystal class, and then
+// SpaceGroup finds the conventional cell and origin in which they are one of the 230
+// groups in its standard setting.  That gives the International Tables number and, like
+// findsym, the Wyckoff cell: the standard conventional cell w/ one site from each orbit.
+// If the operations aren't any of the groups (a sloppy tolerance can do that), the number
+// is 0 and the whole reduced primitive cell stands in for the Wyckoff cell.
+//
+// Use Cell.getSymmetry() to get the cached result for a cell.
+
+public class Symmetry implements Serializable {
+
+	static final long serialVersionUID = 1l;
+
+	// the distance tolerance (in Angstroms) the operations were found with
+	private double tolerance;
+
+	// the Niggli reduced primitive cell w/ all sites wrapped into it
+	private Cell primitiveCell;
+
+	// the number of lattice points in the original cell
+	private int numLatticePoints;
+
+	// the operations x -> Wx + t in fractional coordinates of primitiveCell
+	private List<int[][]> rotations;
+	private List<double[]> translations;
+
+	// orbits[i] is the index of the lowest-numbered site of primitiveCell that is
+	// equivalent to site i
+	private int[] orbits;
+
+	private String pointGroup;
+
+	// International Tables number, or 0 if we didn't find one
+	private int spaceGroupNumber = 0;
+
+	// the standard conventional cell w/ one site from each orbit (null if we didn't find the space group)
+	private Cell wyckoffCell;
+
+	private Symmetry() {
+	}
+
+	// NB: call Cell.getSymmetry instead to use cached version
+	public static Symmetry getSymmetry(Cell c) {
+		// as with findsym, try a few tolerances and keep the one that finds the most
+		// symmetry.  prefer actual space groups to whatever a sloppy tolerance can produce.
+		Symmetry best = null;
+		for (double tol : Isotropy.accuracies) {
+			Symmetry s = findSymmetry(c, tol);
+			if (best == null || s.getRank() > best.getRank()
+					|| (s.getRank() == best.getRank() && s.getOrder() >= best.getOrder()))
+				best = s;
+		}
+		return best;
+	}
+
+	public static Symmetry findSymmetry(Cell c, double tol) {
+		Symmetry result = new Symmetry();
+		result.tolerance = tol;
+
+		Cell prim = findPrimitiveCell(c, tol);
+		result.numLatticePoints = (prim.getNumSites() == 0 ? 1 : c.getNumSites() / prim.getNumSites());
+		result.primitiveCell = wrapSites(prim.getNigliReducedCell());
+
+		result.findOperations();
+		result.pointGroup = classifyPointGroup(result.rotations);
+		if (result.isGroup())
+			result.findSpaceGroup();
+
+		return result;
+	}
+
+	// 2 for a space group, 1 for a point group which isn't one, 0 for neither
+	private int getRank() {
+		return (spaceGroupNumber > 0 ? 1 : 0) + (isGroup() ? 1 : 0);
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public Cell getPrimitiveCell() {
+		return primitiveCell;
+	}
+
+	public int getNumLatticePoints() {
+		return numLatticePoints;
+	}
+
+	public int getNumOperations() {
+		return rotations.size();
+	}
+
+	// the number of symmetry operations of the original cell, counting the pure translations
+	public int getOrder() {
+		return rotations.size() * numLatticePoints;
+	}
+
+	// i'th operation's rotation part, in the basis of getPrimitiveCell()'s lattice vectors
+	public int[][] getRotation(int i) {
+		int[][] result = new int[3][];
+		for (int j = 0; j < 3; j++)
+			result[j] = rotations.get(i)[j].clone();
+		return result;
+	}
+
+	// i'th operation's translation part, in fractional coordinates of getPrimitiveCell()
+	public double[] getTranslation(int i) {
+		return translations.get(i).clone();
+	}
+
+	// Hermann-Mauguin symbol of the crystal class, or "unknown" if the operations we
+	// found don't make up one of the 32 point groups
+	public String getPointGroup() {
+		return pointGroup;
+	}
+
+	public boolean isGroup() {
+		return !pointGroup.equals("unknown");
+	}
+
+	public String getCrystalSystem() {
+		for (int i = 0; i < pointGroupSymbols.length; i++)
+			if (pointGroupSymbols[i].equals(pointGroup))
+				return crystalSystems[i];
+		return "unknown";
+	}
+
+	public int getSpaceGroupNumber() {
+		return spaceGroupNumber;
+	}
+
+	public String getSpaceGroupSymbol() {
+		return (spaceGroupNumber > 0) ? SpaceGroup.get(spaceGroupNumber).getSymbol() : "unknown";
+	}
+
+	// what findsym calls the Wyckoff cell, or the reduced primitive cell if we didn't find
+	// the space group
+	public Cell getWyckoffCell() {
+		return (wyckoffCell != null) ? wyckoffCell : primitiveCell;
+	}
+
+	public int getOrbitRepresentative(int siteIndex) {
+		return orbits[siteIndex];
+	}
+
+	// the symmetrically distinct sites of the primitive cell
+	public Cell getAsymmetricUnit() {
+		List<Site> sites = new ArrayList<Site>();
+		for (int i = 0; i < orbits.length; i++)
+			if (orbits[i] == i)
+				sites.add(primitiveCell.getSite(i));
+		return new Cell(primitiveCell.getLatticeVectors(), sites, primitiveCell.getLabel());
+	}
+
+	// find the primitive cell by looking for translations that map the structure onto
+	// itself.  returns c itself if it's already primitive (or if we get confused).
+	private static Cell findPrimitiveCell(Cell c, double tol) {
+		int numSites = c.getNumSites();
+		if (numSites == 0)
+			return c;
+
+		List<Site> sites = new ArrayList<Site>(c.getSites());
+		double[][] frac = getFracCoords(c);
+		int s0 = getSiteOfRarestElement(c, sites);
+		NeighborList nl = c.getNeighborList(2 * tol);
+		int[][] identity = {{1,0,0},{0,1,0},{0,0,1}};
+
+		// translations to the sites that look like s0
+		List<double[]> trans = new ArrayList<double[]>();
+		int[] mapping = new int[numSites];
+		for (int j = 0; j < numSites; j++) {
+			if (j == s0 || sites.get(j).getElement() != sites.get(s0).getElement())
+				continue;
+			double[] t = new double[3];
+			for (int d = 0; d < 3; d++)
+				t[d] = wrap(frac[j][d] - frac[s0][d]);
+			t = refineTranslation(c, sites, nl, frac, identity, t, tol, mapping);
+			if (t != null)
+				trans.add(t);
+		}
+
+		int numPoints = trans.size() + 1;
+		if (trans.isEmpty() || numSites % numPoints != 0)
+			return c;
+
+		// choose a basis for the translations from the old lattice vectors and the new
+		// translations.  it has to have volume 1/numPoints of the old cell.  take the
+		// shortest one; it'll be Niggli reduced after anyway.
+		List<double[]> candidates = new ArrayList<double[]>();
+		candidates.add(new double[] {1,0,0});
+		candidates.add(new double[] {0,1,0});
+		candidates.add(new double[] {0,0,1});
+		candidates.addAll(trans);
+		List<Vect> oldVects = c.getLatticeVectors();
+		List<Vect> candidateVects = new ArrayList<Vect>();
+		for (double[] v : candidates)
+			candidateVects.add(new Vect(v[0], v[1], v[2], oldVects));
+
+		double[][] bestBasis = null;
+		double bestLength = Double.MAX_VALUE;
+		for (int i = 0; i < candidates.size(); i++)
+			for (int j = i + 1; j < candidates.size(); j++)
+				for (int k = j + 1; k < candidates.size(); k++) {
+					double det = det(candidates.get(i), candidates.get(j), candidates.get(k));
+					if (Math.abs(Math.abs(det) * numPoints - 1) > 0.1)
+						continue;
+					double length = candidateVects.get(i).length() + candidateVects.get(j).length() + candidateVects.get(k).length();
+					if (length < bestLength) {
+						bestLength = length;
+						double sign = (det < 0 ? -1 : 1);
+						bestBasis = new double[][] {candidates.get(i), candidates.get(j),
+								{sign * candidates.get(k)[0], sign * candidates.get(k)[1], sign * candidates.get(k)[2]}};
+					}
+				}
+		if (bestBasis == null)
+			return c;
+
+		List<Vect> newVects = new ArrayList<Vect>();
+		for (double[] v : bestBasis)
+			newVects.add(new Vect(v[0], v[1], v[2], oldVects));
+
+		// put the sites in the new cell, dropping the copies
+		double[][] inv = Vect.getInverseBasisMatrix(newVects);
+		List<Site> newSites = new ArrayList<Site>();
+		List<double[]> newFracs = new ArrayList<double[]>();
+		for (Site s : sites) {
+			double[] f = new double[3];
+			s.getCoords().getComponentsWRTInverseBasis(inv, f);
+			for (int d = 0; d < 3; d++)
+				f[d] = wrap(f[d]);
+			boolean isCopy = false;
+			for (int i = 0; i < newSites.size() && !isCopy; i++)
+				isCopy = newSites.get(i).getElement() == s.getElement()
+						&& minImageDistance(f, newFracs.get(i), newVects) < tol;
+			if (!isCopy) {
+				newSites.add(new Site(s.getElement(), new Vect(f[0], f[1], f[2], newVects)));
+				newFracs.add(f);
+			}
+		}
+		if (newSites.size() * numPoints != numSites)
+			return c;
+
+		return new Cell(newVects, newSites, c.getLabel());
+	}
+
+	private void findOperations() {
+		rotations = new ArrayList<int[][]>();
+		translations = new ArrayList<double[]>();
+
+		List<Site> sites = new ArrayList<Site>(primitiveCell.getSites());
+		int numSites = sites.size();
+		orbits = new int[numSites];
+		for (int i = 0; i < numSites; i++)
+			orbits[i] = i;
+
+		double[][] frac = getFracCoords(primitiveCell);
+		NeighborList nl = primitiveCell.getNeighborList(2 * tolerance);
+		int s0 = (numSites == 0 ? -1 : getSiteOfRarestElement(primitiveCell, sites));
+
+		double[][] g = getMetric(primitiveCell);
+
+		int[] mapping = new int[numSites];
+		for (int[][] w : getLatticeAutomorphisms(g)) {
+			// look for a translation that goes with it
+			if (numSites == 0) {
+				rotations.add(w);
+				translations.add(new double[3]);
+				continue;
+			}
+			double[] ws0 = times(w, frac[s0]);
+			for (int j = 0; j < numSites; j++) {
+				if (sites.get(j).getElement() != sites.get(s0).getElement())
+					continue;
+				double[] t = new double[3];
+				for (int d = 0; d < 3; d++)
+					t[d] = wrap(frac[j][d] - ws0[d]);
+				t = refineTranslation(primitiveCell, sites, nl, frac, w, t, tolerance, mapping);
+				if (t != null) {
+					rotations.add(w);
+					translations.add(t);
+					for (int i = 0; i < numSites; i++)
+						union(i, mapping[i]);
+					break;
+				}
+			}
+		}
+
+		for (int i = 0; i < numSites; i++)
+			orbits[i] = find(i);
+	}
+
+	private void findSpaceGroup() {
+		SpaceGroup.Setting setting = SpaceGroup.identify(rotations, translations, getMetric(primitiveCell),
+				pointGroup, getCrystalSystem(), tolerance);
+		if (setting == null)
+			return;
+		spaceGroupNumber = setting.group.getNumber();
+
+		// the conventional cell's vectors
+		List<Vect> pVects = primitiveCell.getLatticeVectors();
+		List<Vect> cVects = new ArrayList<Vect>();
+		for (int j = 0; j < 3; j++) {
+			Vect v = Vect.getNullVect(3);
+			for (int i = 0; i < 3; i++)
+				v = v.plus(pVects.get(i).scalarMult((double) setting.basis[i][j]));
+			cVects.add(v);
+		}
+		double[] lengths = {cVects.get(0).length(), cVects.get(1).length(), cVects.get(2).length()};
+
+		// one site from each orbit, moved to the new origin.  the first of its images in the
+		// conventional cell, so that equivalent structures tend to get the same one.
+		List<Element> elements = new ArrayList<Element>();
+		List<double[]> fracs = new ArrayList<double[]>();
+		for (int i = 0; i < orbits.length; i++) {
+			if (orbits[i] != i)
+				continue;
+			Site s = primitiveCell.getSite(i);
+			List<Double> f = s.getCoords().getComponentsWRTBasis(cVects);
+			double[] x = new double[3];
+			for (int d = 0; d < 3; d++)
+				x[d] = f.get(d) - setting.origin[d];
+			double[] first = null;
+			for (double[] image : setting.group.getImages(x))
+				if (first == null || precedes(image, first, lengths))
+					first = image;
+			// wrapped the same way precedes() sees them, so 0.9999.. comes out as 0
+			for (int d = 0; d < 3; d++) {
+				first[d] = wrap(first[d]);
+				if (first[d] > 1 - tolerance / lengths[d])
+					first[d] -= 1;
+			}
+			elements.add(s.getElement());
+			fracs.add(first);
+		}
+
+		// symmetrized and in a standard orientation, like the findsym output's
+		double[][] g = setting.group.symmetrizeMetric(getMetric(new Cell(cVects, new ArrayList<Site>())));
+		double[] l = {Math.sqrt(g[0][0]), Math.sqrt(g[1][1]), Math.sqrt(g[2][2])};
+		List<Vect> vects = Cell.getVectorsfromLParamsDegrees(l[0], l[1], l[2],
+				Math.toDegrees(Math.acos(g[1][2] / l[1] / l[2])),
+				Math.toDegrees(Math.acos(g[0][2] / l[0] / l[2])),
+				Math.toDegrees(Math.acos(g[0][1] / l[0] / l[1])));
+		List<Site> sites = new ArrayList<Site>();
+		for (int i = 0; i < fracs.size(); i++) {
+			double[] f = fracs.get(i);
+			sites.add(new Site(elements.get(i), new Vect(f[0], f[1], f[2], vects)));
+		}
+		wyckoffCell = new Cell(vects, sites, primitiveCell.getLabel());
+	}
+
+	// lexicographic order of fractional coordinates in [0,1), w/ coordinates within the
+	// tolerance of each other (or of 1 and 0) counted as equal
+	private boolean precedes(double[] f1, double[] f2, double[] lengths) {
+		for (int d = 0; d < 3; d++) {
+			double eps = tolerance / lengths[d];
+			double x1 = (f1[d] > 1 - eps) ? f1[d] - 1 : f1[d];
+			double x2 = (f2[d] > 1 - eps) ? f2[d] - 1 : f2[d];
+			if (Math.abs(x1 - x2) > eps)
+				return x1 < x2;
+		}
+		return false;
+	}
+
+	// the matrices w/ entries in {-1,0,1} that take the lattice onto itself.  (for a reduced
+	// cell, that's all of them.)  column i of w says where lattice vector i goes, so choose
+	// each column from the vectors of the right length and then check the angles.
+	private List<int[][]> getLatticeAutomorphisms(double[][] g) {
+		List<List<int[]>> columns = new ArrayList<List<int[]>>();
+		for (int i = 0; i < 3; i++) {
+			List<int[]> candidates = new ArrayList<int[]>();
+			for (int n = 0; n < 27; n++) {
+				int[] u = {n % 3 - 1, (n / 3) % 3 - 1, n / 9 - 1};
+				if (Math.abs(Math.sqrt(metricProduct(u, g, u)) - Math.sqrt(g[i][i])) <= tolerance)
+					candidates.add(u);
+			}
+			columns.add(candidates);
+		}
+		
+		List<int[][]> result = new ArrayList<int[][]>();
+		for (int[] u0 : columns.get(0)) {
+			for (int[] u1 : columns.get(1)) {
+				if (!anglePreserved(u0, 0, u1, 1, g))
+					continue;
+				for (int[] u2 : columns.get(2)) {
+					if (!anglePreserved(u0, 0, u2, 2, g) || !anglePreserved(u1, 1, u2, 2, g))
+						continue;
+					int[][] w = {{u0[0], u1[0], u2[0]},
+								 {u0[1], u1[1], u2[1]},
+								 {u0[2], u1[2], u2[2]}};
+					int det = w[0][0]*(w[1][1]*w[2][2] - w[1][2]*w[2][1])
+							- w[0][1]*(w[1][0]*w[2][2] - w[1][2]*w[2][0])
+							+ w[0][2]*(w[1][0]*w[2][1] - w[1][1]*w[2][0]);
+					if (Math.abs(det) == 1)
+						result.add(w);
+				}
+			}
+		}
+		return result;
+	}
+	
+	// u.G.v, i.e. the dot product of the vectors w/ lattice coordinates u and v
+	private static double metricProduct(int[] u, double[][] g, int[] v) {
+		double result = 0;
+		for (int k = 0; k < 3; k++)
+			for (int m = 0; m < 3; m++)
+				result += u[k] * g[k][m] * v[m];
+		return result;
+	}
+	
+	// true if the images u and v of lattice vectors i and j have about the same dot product
+	private boolean anglePreserved(int[] u, int i, int[] v, int j, double[][] g) {
+		return Math.abs(metricProduct(u, g, v) - g[i][j]) <= tolerance * (Math.sqrt(g[i][i]) + Math.sqrt(g[j][j]));
+	}
+
+	// union-find on orbits, keeping the lowest index as the root
+	private int find(int i) {
+		while (orbits[i] != i) {
+			orbits[i] = orbits[orbits[i]];
+			i = orbits[i];
+		}
+		return i;
+	}
+
+	private void union(int i, int j) {
+		int a = find(i);
+		int b = find(j);
+		if (a < b)
+			orbits[b] = a;
+		else if (b < a)
+			orbits[a] = b;
+	}
+
+	// finds the translation near t0 that best lines up x -> Wx + t with the structure, or
+	// returns null if there isn't one within tol.  t0 comes from a couple of sites and has
+	// their errors, so look a bit further out at first and then average over all the sites.
+	private static double[] refineTranslation(Cell c, List<Site> sites, NeighborList nl, double[][] frac,
+			int[][] w, double[] t0, double tol, int[] mapping) {
+		if (!mapsOntoItself(c, sites, nl, frac, w, t0, 2 * tol, mapping))
+			return null;
+		
+		double[] t = new double[3];
+		for (int i = 0; i < sites.size(); i++) {
+			double[] f = times(w, frac[i]);
+			for (int d = 0; d < 3; d++) {
+				double diff = frac[mapping[i]][d] - f[d] - t0[d];
+				t[d] += diff - Math.round(diff);
+			}
+		}
+		for (int d = 0; d < 3; d++)
+			t[d] = wrap(t0[d] + t[d] / sites.size());
+		
+		if (!mapsOntoItself(c, sites, nl, frac, w, t, tol, mapping))
+			return null;
+		return t;
+	}
+
+	// true if x -> Wx + t takes every site onto one of the same element.  puts
+	// where each site goes in mapping.
+	private static boolean mapsOntoItself(Cell c, List<Site> sites, NeighborList nl, double[][] frac,
+			int[][] w, double[] t, double tol, int[] mapping) {
+		List<Vect> lVects = c.getLatticeVectors();
+		for (int i = 0; i < sites.size(); i++) {
+			double[] f = times(w, frac[i]);
+			Vect image = new Vect(f[0] + t[0], f[1] + t[1], f[2] + t[2], lVects);
+			mapping[i] = -1;
+			for (NeighborList.Neighbor n : nl.getNeighborsSorted(image, tol))
+				if (sites.get(n.getSiteIndex()).getElement() == sites.get(i).getElement()) {
+					mapping[i] = n.getSiteIndex();
+					break;
+				}
+			if (mapping[i] < 0)
+				return false;
+		}
+		return true;
+	}
+
+	// metric tensor of c's lattice
+	private static double[][] getMetric(Cell c) {
+		double[][] l = new double[3][];
+		for (int i = 0; i < 3; i++)
+			l[i] = c.getLatticeVectors().get(i).getCartesianArray();
+		double[][] g = new double[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				g[i][j] = l[i][0]*l[j][0] + l[i][1]*l[j][1] + l[i][2]*l[j][2];
+		return g;
+	}
+
+	private static double[][] getFracCoords(Cell c) {
+		double[][] inv = Vect.getInverseBasisMatrix(c.getLatticeVectors());
+		double[][] result = new double[c.getNumSites()][3];
+		int i = 0;
+		for (Site s : c.getSites())
+			s.getCoords().getComponentsWRTInverseBasis(inv, result[i++]);
+		return result;
+	}
+
+	// the first site of the element with the fewest sites
+	private static int getSiteOfRarestElement(Cell c, List<Site> sites) {
+		Element rarest = null;
+		for (Element e : c.getComposition().getElements())
+			if (rarest == null || c.getNumSitesWithElement(e) < c.getNumSitesWithElement(rarest))
+				rarest = e;
+		for (int i = 0; i < sites.size(); i++)
+			if (sites.get(i).getElement() == rarest)
+				return i;
+		return 0;
+	}
+
+	private static Cell wrapSites(Cell c) {
+		List<Vect> lVects = c.getLatticeVectors();
+		double[][] frac = getFracCoords(c);
+		List<Site> sites = new ArrayList<Site>();
+		int i = 0;
+		for (Site s : c.getSites()) {
+			double[] f = frac[i++];
+			sites.add(new Site(s.getElement(), new Vect(wrap(f[0]), wrap(f[1]), wrap(f[2]), lVects)));
+		}
+		return new Cell(lVects, sites, c.getLabel());
+	}
+
+	private static double wrap(double x) {
+		double result = x - Math.floor(x);
+		// (roundoff can leave us at exactly 1)
+		return (result >= 1.0 ? result - 1.0 : result);
+	}
+
+	private static double minImageDistance(double[] f1, double[] f2, List<Vect> lVects) {
+		double[] d = new double[3];
+		for (int i = 0; i < 3; i++)
+			d[i] = f1[i] - f2[i] - Math.round(f1[i] - f2[i]);
+		return new Vect(d[0], d[1], d[2], lVects).length();
+	}
+
+	private static double[] times(int[][] w, double[] x) {
+		double[] result = new double[3];
+		for (int i = 0; i < 3; i++)
+			result[i] = w[i][0]*x[0] + w[i][1]*x[1] + w[i][2]*x[2];
+		return result;
+	}
+
+	private static double det(double[] a, double[] b, double[] c) {
+		return a[0]*(b[1]*c[2] - b[2]*c[1]) - a[1]*(b[0]*c[2] - b[2]*c[0]) + a[2]*(b[0]*c[1] - b[1]*c[0]);
+	}
+
+	/* The 32 crystal classes, identified by how many operations of each type they have.
+	 * The types are, in order: -6 -4 -3 -2 -1 1 2 3 4 6 (where -2 is a mirror). */
+	private static final String pointGroupSymbols[] = {
+		"1", "-1", "2", "m", "2/m", "222", "mm2", "mmm", "4", "-4", "4/m", "422", "4mm", "-42m",
+		"4/mmm", "3", "-3", "32", "3m", "-3m", "6", "-6", "6/m", "622", "6mm", "-6m2", "6/mmm",
+		"23", "m-3", "432", "-43m", "m-3m" };
+	private static final String crystalSystems[] = {
+		"triclinic", "triclinic", "monoclinic", "monoclinic", "monoclinic", "orthorhombic",
+		"orthorhombic", "orthorhombic", "tetragonal", "tetragonal", "tetragonal", "tetragonal",
+		"tetragonal", "tetragonal", "tetragonal", "trigonal", "trigonal", "trigonal", "trigonal",
+		"trigonal", "hexagonal", "hexagonal", "hexagonal", "hexagonal", "hexagonal", "hexagonal",
+		"hexagonal", "cubic", "cubic", "cubic", "cubic", "cubic" };
+	private static final int pointGroupTypeCounts[][] = {
+		{0,0,0,0,0,1,0,0,0,0}, {0,0,0,0,1,1,0,0,0,0}, {0,0,0,0,0,1,1,0,0,0}, {0,0,0,1,0,1,0,0,0,0},
+		{0,0,0,1,1,1,1,0,0,0}, {0,0,0,0,0,1,3,0,0,0}, {0,0,0,2,0,1,1,0,0,0}, {0,0,0,3,1,1,3,0,0,0},
+		{0,0,0,0,0,1,1,0,2,0}, {0,2,0,0,0,1,1,0,0,0}, {0,2,0,1,1,1,1,0,2,0}, {0,0,0,0,0,1,5,0,2,0},
+		{0,0,0,4,0,1,1,0,2,0}, {0,2,0,2,0,1,3,0,0,0}, {0,2,0,5,1,1,5,0,2,0}, {0,0,0,0,0,1,0,2,0,0},
+		{0,0,2,0,1,1,0,2,0,0}, {0,0,0,0,0,1,3,2,0,0}, {0,0,0,3,0,1,0,2,0,0}, {0,0,2,3,1,1,3,2,0,0},
+		{0,0,0,0,0,1,1,2,0,2}, {2,0,0,1,0,1,0,2,0,0}, {2,0,2,1,1,1,1,2,0,2}, {0,0,0,0,0,1,7,2,0,2},
+		{0,0,0,6,0,1,1,2,0,2}, {2,0,0,4,0,1,3,2,0,0}, {2,0,2,7,1,1,7,2,0,2}, {0,0,0,0,0,1,3,8,0,0},
+		{0,0,8,3,1,1,3,8,0,0}, {0,0,0,0,0,1,9,8,6,0}, {0,6,0,6,0,1,3,8,0,0}, {0,6,8,9,1,1,9,8,6,0} };
+
+	static String classifyPointGroup(List<int[][]> rotations) {
+		int[] counts = new int[10];
+		for (int[][] w : rotations) {
+			int det = w[0][0]*(w[1][1]*w[2][2] - w[1][2]*w[2][1])
+					- w[0][1]*(w[1][0]*w[2][2] - w[1][2]*w[2][0])
+					+ w[0][2]*(w[1][0]*w[2][1] - w[1][1]*w[2][0]);
+			int trace = w[0][0] + w[1][1] + w[2][2];
+			// the type of a proper rotation is determined by its trace (-1, 0, 1, 2, 3 for
+			// 2, 3, 4, 6, 1), and an improper one's by minus its trace
+			int tr = det * trace;
+			if (tr < -1 || tr > 3)
+				return "unknown";
+			int[] properTypes = {6, 7, 8, 9, 5};
+			int type = properTypes[tr + 1];
+			if (det < 0)
+				type = 9 - type; // -n is at the mirrored position in the list
+			counts[type]++;
+		}
+
+		for (int i = 0; i < pointGroupTypeCounts.length; i++)
+			if (Arrays.equals(counts, pointGroupTypeCounts[i]))
+				return pointGroupSymbols[i];
+		return "unknown";
+	}
+
+	private static String formatOperation(int[][] w, double[] t) {
+		String vars[] = {"x", "y", "z"};
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			StringBuilder row = new StringBuilder();
+			for (int j = 0; j < 3; j++) {
+				if (w[i][j] == 0)
+					continue;
+				if (w[i][j] < 0)
+					row.append("-");
+				else if (row.length() > 0)
+					row.append("+");
+				row.append(vars[j]);
+			}
+			if (t[i] > 1e-6 && t[i] < 1 - 1e-6)
+				row.append(String.format("+%.4f", t[i]));
+			result.append(row);
+			if (i < 2)
+				result.append(",");
+		}
+		return result.toString();
+	}
+
+	public String toString() {
+		String newline = System.getProperty("line.separator");
+		StringBuilder result = new StringBuilder();
+
+		result.append("tolerance: " + tolerance + newline);
+		result.append("space group: " + (spaceGroupNumber > 0 ? spaceGroupNumber + " (" + getSpaceGroupSymbol() + ")" : "unknown") + newline);
+		result.append("point group: " + pointGroup + " (" + getCrystalSystem() + ")" + newline);
+		result.append("lattice points per cell: " + numLatticePoints + newline);
+		result.append("operations per primitive cell: " + getNumOperations() + newline);
+		result.append("reduced primitive cell:" + newline);
+		result.append(primitiveCell.toString() + newline);
+		result.append("operations:" + newline);
+		for (int i = 0; i < rotations.size(); i++)
+			result.append("  " + formatOperation(rotations.get(i), translations.get(i)) + newline);
+		result.append("symmetrically distinct sites (element, fractional coords, multiplicity):" + newline);
+		for (int i = 0; i < orbits.length; i++) {
+			if (orbits[i] != i)
+				continue;
+			int multiplicity = 0;
+			for (int o : orbits)
+				if (o == i)
+					multiplicity++;
+			Site s = primitiveCell.getSite(i);
+			result.append("  " + s.getElement().getSymbol() + " ");
+			for (double d : s.getCoords().getComponentsWRTBasis(primitiveCell.getLatticeVectors()))
+				result.append(String.format("%.6f ", d));
+			result.append(multiplicity + newline);
+		}
+		if (wyckoffCell != null) {
+			result.append("Wyckoff cell (standard conventional cell, one site from each orbit):" + newline);
+			result.append(wyckoffCell.toString() + newline);
+		}
+
+		return result.toString();
+	}
+
+}
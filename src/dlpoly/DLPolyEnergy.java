@@ -25,6 +25,7 @@ import ga.Energy;
 import ga.GAOut;
 import ga.GAParameters;
 import ga.GAUtils;
+import ga.ProcessRunner;
 import ga.StructureOrg;
 import ga.UnitsSOCreator;
 import gulp.GulpEnergy;
@@ -46,8 +47,6 @@ import utility.Vect;
 import crystallography.Cell;
 import crystallography.Site;
 
-import org.openbabel.*;
-
 public class DLPolyEnergy implements Energy {
 
 	public DLPolyEnergy(List<String> args) {		
@@ -215,8 +214,9 @@ public class DLPolyEnergy implements Energy {
 				}
 				mass = mass + n.toString();
 				
-				// TODO: partial charge is necessary, and should probably be inputted
-				n = sites.get(loc+l).getElement().getCharge(); y = n.toString().length(); dif = 6 - y; String charge = "";
+				// TODO: partial charge is necessary, and should probably be inputted.  Element
+				// doesn't know one, so every site gets 0 for now.
+				n = 0.0; y = n.toString().length(); dif = 6 - y; String charge = "";
 				for (int m=0; m<dif; m++) {
 					charge = charge + " ";
 				}
@@ -262,36 +262,12 @@ public class DLPolyEnergy implements Energy {
 		
 		
 		// Execute DL_Poly
-		String s = null;
-		BufferedReader stdInput = null;
-		BufferedReader stdError = null;
 		try {
-//			Process p = Runtime.getRuntime().exec("sh calldlpoly" + c.getID());
-			Process p = Runtime.getRuntime().exec("calldlpoly");
-
-			stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-			
-			// read the output
-			while ((s = stdInput.readLine()) != null) {
-				GAOut.out().stdout(s, GAOut.DEBUG, c.getID());
-			}
-
-			// print out any errors
-			while ((s = stdError.readLine()) != null) {
-				System.out.println(s);
-			}			
-			
+//			ProcessRunner.run("sh calldlpoly" + c.getID());
+			ProcessRunner.run("calldlpoly");
 		} catch (IOException e) {
 			System.out.println("IOException in DLPolyEnergy.runDLPoly: " + e.getMessage());
 			System.exit(-1);
-		} finally {
-			if (stdInput != null) 
-				try{ stdInput.close(); } catch (Exception x) { } //ignore
-			if (stdError != null) 
-				try{ stdError.close(); } catch (Exception x) { } //ignore
 		}
 		
 //		System.out.println("here's the path: " + params.getTempDirName() + "/REVCON");
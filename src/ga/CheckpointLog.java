@@ -0,0 +1,436 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import chemistry.Element;
+import crystallography.Cell;
+import crystallography.CompactCell;
+import crystallography.Site;
+import utility.Pair;
+import utility.Vect;
+
+// CheckpointLog is an append-only alternative to saveStateEachIter.  Instead of
+// serializing all of GAParameters every generation, we append one record per generation
+// to <outDir>/checkpoint.log with just what changed: the generation's organisms (only
+// the IDs of ones whose structures we've already written), the structures added to the
+// whole-population RedundancyGuard, and the GARecord, ID counter, and RNG state.
+//
+// The first record holds the run's options.  Resuming (CrystalGA --resumeLog <file>)
+// sets up the parameters from those and then replays the generation records.
+//
+// Records are framed as <int length> <byte type> <payload> <long CRC32 of type and payload>,
+// so a record cut off by a crash is detected and dropped (and overwritten) on resume.
+//
+// Things which live only in the full save files (e.g. a surrogate model's training data
+// or the state of the variations) start out fresh on resume.
+
+public class CheckpointLog implements Serializable {
+
+	static final long serialVersionUID = 1l;
+	
+	public static final String fileName = "checkpoint.log";
+	
+	private static final int magic = 0x47415350; // "GASP"
+	private static final int version = 1;
+	
+	private static final byte headerRecord = 0;
+	private static final byte generationRecord = 1;
+	
+	// organism flags
+	private static final int hasValue = 1;
+	private static final int hasFitness = 2;
+	private static final int newStructure = 4;
+	
+	private File file;
+	
+	// the structure we last wrote for each organism in the latest generation, by ID
+	private Map<Integer,CompactCell> written = new HashMap<Integer,CompactCell>();
+	// how many of the whole-population RedundancyGuard's structures we've written
+	private int numRGStructuresWritten = 0;
+	
+	public CheckpointLog(File _file) {
+		file = _file;
+	}
+	
+	public String toString() {
+		return "CheckpointLog: " + file.getPath();
+	}
+	
+	// appends the state at the end of the generation just finished
+	public void append(GAParameters.GARecord record) {
+		GAParameters params = GAParameters.getParams();
+		try {
+			if (!file.exists() || file.length() == 0)
+				writeRecord(headerRecord, makeHeader(params.getArgList()));
+			writeRecord(generationRecord, makeGeneration(record));
+		} catch (IOException x) {
+			GAOut.out().stdout("Warning: couldn't append to checkpoint log " + file.getPath() + ": " + x.getMessage(), GAOut.WARNING);
+		}
+	}
+	
+	private byte[] makeHeader(List<String> args) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(magic);
+		out.writeInt(version);
+		out.writeInt(args.size());
+		for (String s : args)
+			out.writeUTF(s);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private byte[] makeGeneration(GAParameters.GARecord record) throws IOException {
+		GAParameters params = GAParameters.getParams();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		// the record and counters
+		out.writeInt(record.getGenNum());
+		out.writeInt(params.getCurrentID());
+		out.writeInt(ObjectiveFunction.getNumCalculations());
+		out.writeDouble(record.bestDenEstimate);
+		out.writeDouble(record.bestEnergy);
+		out.writeInt(record.numGensWOImpr);
+		out.writeBoolean(params.getInEndgame());
+		
+		// the RNG. Random doesn't expose its state except by serialization
+		ByteArrayOutputStream randBytes = new ByteArrayOutputStream();
+		ObjectOutputStream randOut = new ObjectOutputStream(randBytes);
+		randOut.writeObject(params.getRandom());
+		randOut.close();
+		out.writeInt(randBytes.size());
+		out.write(randBytes.toByteArray());
+		
+		// the generation
+		Generation g = record.getCurrentGen();
+		out.writeInt(g.getNumOrganisms());
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Organism o : g) {
+			StructureOrg s = (StructureOrg)o;
+			ids.add(s.getID());
+			// (live organisms don't keep a CompactCell, so compare contents)
+			CompactCell c = s.getCompactCell();
+			CompactCell last = written.get(s.getID());
+			boolean isNew = (last == null || !last.sameAs(c));
+			out.writeInt(s.getID());
+			out.writeByte((s.knowsValue() ? hasValue : 0) | (s.knowsFitness() ? hasFitness : 0)
+					| (isNew ? newStructure : 0));
+			if (s.knowsValue())
+				out.writeDouble(s.getValue());
+			if (s.knowsFitness())
+				out.writeDouble(s.getFitness());
+			if (isNew) {
+				out.writeDouble(s.getTotalEnergy());
+				writeCell(out, s.getCell());
+				written.put(s.getID(), c);
+			}
+		}
+		
+		// the new whole-population RedundancyGuard structures.  most of them belong to
+		// organisms we've written, so just refer to those.
+		RedundancyGuard rg = getWholePopRG();
+		List<Pair<CompactCell,Integer>> rgNew = new ArrayList<Pair<CompactCell,Integer>>();
+		if (rg != null)
+			rgNew = rg.getStructuresAfter(numRGStructuresWritten);
+		out.writeInt(rgNew.size());
+		for (Pair<CompactCell,Integer> p : rgNew) {
+			out.writeInt(p.getSecond());
+			CompactCell w = written.get(p.getSecond());
+			boolean known = (w != null && w.sameAs(p.getFirst()));
+			out.writeBoolean(known);
+			if (!known)
+				writeCell(out, p.getFirst().getCell());
+		}
+		numRGStructuresWritten += rgNew.size();
+		
+		// organisms which have left the population won't be written again.  replay
+		// forgets them at the same point, so the references above still resolve.
+		written.keySet().retainAll(ids);
+		
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private void writeRecord(byte type, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 13);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(payload.length + 1);
+		out.writeByte(type);
+		out.write(payload);
+		out.writeLong(crc.getValue());
+		out.flush();
+		
+		// one write, so a crash leaves at worst a truncated last record
+		FileOutputStream fout = new FileOutputStream(file, true);
+		try {
+			fout.write(bytes.toByteArray());
+			fout.getFD().sync();
+		} finally {
+			fout.close();
+		}
+	}
+	
+	// lattice vectors and sites in cartesian coordinates, so they come back exactly
+	private static void writeCell(DataOutputStream out, Cell c) throws IOException {
+		for (Vect v : c.getLatticeVectors())
+			for (double d : v.getCartesianArray())
+				out.writeDouble(d);
+		out.writeBoolean(c.getLabel() != null);
+		if (c.getLabel() != null)
+			out.writeUTF(c.getLabel());
+		out.writeInt(c.getNumSites());
+		for (Site s : c.getSites()) {
+			out.writeShort(s.getElement().getZ());
+			for (double d : s.getCoords().getCartesianArray())
+				out.writeDouble(d);
+		}
+	}
+	
+	private static Cell readCell(DataInputStream in) throws IOException {
+		List<Vect> latticeVectors = new ArrayList<Vect>();
+		for (int i = 0; i < 3; i++)
+			latticeVectors.add(readVect(in));
+		String label = null;
+		if (in.readBoolean())
+			label = in.readUTF();
+		int numSites = in.readInt();
+		List<Site> sites = new ArrayList<Site>(numSites);
+		for (int i = 0; i < numSites; i++) {
+			Element e = Element.getElemFromZ(in.readShort());
+			sites.add(new Site(e, readVect(in)));
+		}
+		return new Cell(latticeVectors, sites, label);
+	}
+	
+	private static Vect readVect(DataInputStream in) throws IOException {
+		double comps[] = new double[3];
+		for (int i = 0; i < 3; i++)
+			comps[i] = in.readDouble();
+		return new Vect(comps);
+	}
+	
+	private static RedundancyGuard getWholePopRG() {
+		Development dev = GAParameters.getParams().getDevelopment();
+		if (dev instanceof StructureDev)
+			return ((StructureDev)dev).getRedundancyGuard();
+		return null;
+	}
+	
+	// sets up GAParameters and its GARecord from the given log so the algorithm
+	// continues after the last generation in it.  appends to the same log from then on.
+	public static void resume(String logFileName) {
+		File f = new File(logFileName);
+		List<Pair<Byte,byte[]>> records = new ArrayList<Pair<Byte,byte[]>>();
+		long goodLength = readRecords(f, records);
+		
+		if (records.size() < 2 || records.get(0).getFirst() != headerRecord)
+			GAParameters.usage("ERROR: " + logFileName + " doesn't contain a checkpointed generation", true);
+		
+		try {
+			// start up with the same options
+			DataInputStream hin = new DataInputStream(new ByteArrayInputStream(records.get(0).getSecond()));
+			if (hin.readInt() != magic || hin.readInt() != version)
+				GAParameters.usage("ERROR: " + logFileName + " isn't a checkpoint log", true);
+			int numArgs = hin.readInt();
+			String args[] = new String[numArgs];
+			for (int i = 0; i < numArgs; i++)
+				args[i] = hin.readUTF();
+			
+			GAParameters params = GAParameters.getParams();
+			params.setResuming(true);
+			params.setArgs(args);
+			GAParameters.GARecord record = params.getRecord();
+			params.setResuming(false);
+			
+			// drop any partial record at the end before we append to it
+			if (goodLength < f.length()) {
+				GAOut.out().stdout("Warning: ignoring incomplete record at the end of " + logFileName, GAOut.WARNING);
+				RandomAccessFile raf = new RandomAccessFile(f, "rw");
+				try {
+					raf.setLength(goodLength);
+				} finally {
+					raf.close();
+				}
+			}
+			
+			CheckpointLog log = new CheckpointLog(f);
+			Map<Integer,StructureOrg> orgs = new HashMap<Integer,StructureOrg>();
+			for (int i = 1; i < records.size(); i++)
+				if (records.get(i).getFirst() == generationRecord)
+					log.replayGeneration(record, orgs, records.get(i).getSecond());
+			record.setCheckpointLog(log);
+			
+			GAOut.out().stdout("Resumed at generation " + record.getGenNum() + " from " + logFileName, GAOut.NOTICE);
+		} catch (IOException x) {
+			GAParameters.usage("ERROR: couldn't read checkpoint log " + logFileName + ": " + x.getMessage(), true);
+		} catch (ClassNotFoundException x) {
+			GAParameters.usage("ERROR: couldn't read checkpoint log " + logFileName + ": " + x.getMessage(), true);
+		}
+	}
+	
+	private void replayGeneration(GAParameters.GARecord record, Map<Integer,StructureOrg> orgs, byte[] payload) 
+			throws IOException, ClassNotFoundException {
+		GAParameters params = GAParameters.getParams();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		
+		int genNum = in.readInt();
+		int currentID = in.readInt();
+		int numCalculations = in.readInt();
+		record.bestDenEstimate = in.readDouble();
+		record.bestEnergy = in.readDouble();
+		record.numGensWOImpr = in.readInt();
+		boolean inEndgame = in.readBoolean();
+		
+		byte randBytes[] = new byte[in.readInt()];
+		in.readFully(randBytes);
+		ObjectInputStream randIn = new ObjectInputStream(new ByteArrayInputStream(randBytes));
+		Random rand = (Random)randIn.readObject();
+		
+		Generation g = params.makeEmptyGeneration();
+		int numOrgs = in.readInt();
+		Set<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < numOrgs; i++) {
+			int id = in.readInt();
+			ids.add(id);
+			int flags = in.readByte();
+			Double value = null, fitness = null;
+			if ((flags & hasValue) != 0)
+				value = in.readDouble();
+			if ((flags & hasFitness) != 0)
+				fitness = in.readDouble();
+			StructureOrg s = orgs.get(id);
+			if ((flags & newStructure) != 0) {
+				double totalEnergy = in.readDouble();
+				s = new StructureOrg(readCell(in));
+				s.setID(id);
+				s.setTotalEnergy(totalEnergy);
+				orgs.put(id, s);
+				written.put(id, s.getCompactCell());
+			} else if (s == null) {
+				throw new IOException("generation " + genNum + " refers to unknown organism " + id);
+			}
+			if (value != null)
+				s.setValue(value);
+			if (fitness != null)
+				s.setFitness(fitness);
+			g.addOrganism(s);
+		}
+		
+		RedundancyGuard rg = getWholePopRG();
+		int numRG = in.readInt();
+		for (int i = 0; i < numRG; i++) {
+			int id = in.readInt();
+			CompactCell c = (in.readBoolean() ? written.get(id) : new CompactCell(readCell(in)));
+			if (c == null)
+				throw new IOException("generation " + genNum + " refers to unknown structure " + id);
+			if (rg != null)
+				rg.addStructure(c, id);
+		}
+		numRGStructuresWritten += numRG;
+		written.keySet().retainAll(ids);
+		
+		// finishGen adds each generation's organisms to the phase diagram
+		if (params.doingPDRun())
+			for (Organism o : g)
+				if (!params.getPDBuilder().containsEntry((StructureOrg)o))
+					params.getPDBuilder().addEntry((StructureOrg)o);
+		
+		// most organisms are only history by the time we're done.  like finishGen,
+		// compact the ones which have left the population.
+		if (record.getCurrentGen() != null)
+			for (Organism o : record.getCurrentGen())
+				if (!g.contains(o))
+					((StructureOrg)o).compact();
+		
+		record.setCurrentGenNum(genNum);
+		record.setCurrentGen(g);
+		params.seedIDs(currentID);
+		ObjectiveFunction.numCalculations = numCalculations;
+		params.setInEndgame(inEndgame);
+		params.setRandom(rand);
+	}
+	
+	// reads all the complete, intact records in f into records, and returns the length 
+	// of the file they take up
+	private static long readRecords(File f, List<Pair<Byte,byte[]>> records) {
+		long goodLength = 0;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			while (true) {
+				int length = in.readInt();
+				if (length < 1 || length > f.length())
+					break;
+				byte type = in.readByte();
+				byte payload[] = new byte[length - 1];
+				in.readFully(payload);
+				long crcValue = in.readLong();
+				
+				CRC32 crc = new CRC32();
+				crc.update(type);
+				crc.update(payload);
+				if (crc.getValue() != crcValue)
+					break;
+				
+				records.add(new Pair<Byte,byte[]>(type, payload));
+				goodLength += 4 + length + 8;
+			}
+		} catch (EOFException x) {
+			// a truncated last record.  we stop at the last good one.
+		} catch (IOException x) {
+			GAParameters.usage("ERROR: couldn't read checkpoint log " + f.getPath() + ": " + x.getMessage(), true);
+		} finally {
+			if (in != null)
+				try { in.close(); } catch (IOException x) { } // ignore
+		}
+		
+		return goodLength;
+	}
+}
@@ -109,13 +109,7 @@ public class ClusterObjFcn extends ObjectiveFunction {
 		ObjectiveFunction energyFcn = ObjFcnFactory.getObjectiveFunctionInstance(org, objFcnArgs);
 
 		// relax the cell - have to wait for it to finish before using results
-		Thread t = energyFcn.evaluate();
-		try {
-			if (t != null)
-				t.join();
-		} catch (InterruptedException x) {
-			GAOut.out().stdout("InterruptedException in energy calc thread in ClusterObjFcn: " + x.getMessage(), GAOut.NOTICE, org.getID());
-		}
+		energyFcn.evaluateAndWait();
 		
 		// updating structure w/ relaxed version is this done in EPA already
 		//org.setValue((new PDAnalyzer(pdbuilder.getPDData())).getEnergyPerAtomAboveHull(org));
@@ -124,15 +118,9 @@ public class ClusterObjFcn extends ObjectiveFunction {
 	}
 
 	// dont update numCalculations when implementing this.. the underlying objfcn will do it
-	public Thread evaluate() {		
+	protected boolean prepareEvaluation() {		
 		// short circuit here if we've done the calculation already
-		if (org.knowsValue())
-			return null;
-		
-		// start the calculation and return the Thread
-		Thread t = new Thread(this);
-		t.start();
-		return t;
+		return !org.knowsValue();
 	}
 	
 	// an ObjectiveFunction should also overload toString();
@@ -26,6 +26,8 @@ import java.io.Serializable;
 // Each ConvergenceCriterion in use should be called exactly once per generation.
 // It will return true if the population is determined to have "converged."
 // By convention, all classes implementing ConvergenceCriterion end in "CC".
+// In a SteadyStateGA run, a "generation" is popSize completed evaluations, so 
+// the generation-counting criteria are really counting evaluations.
 public interface ConvergenceCriterion extends Serializable {
 
 	public Boolean converged(Generation currentGen);
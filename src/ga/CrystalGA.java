@@ -43,7 +43,11 @@ public class CrystalGA {
 
 		params.setSeedGeneration(initialPop);
 		
-		StructureOrg s = (StructureOrg)GeneticAlgorithm.doGeneticAlgorithm();
+		StructureOrg s;
+		if (params.getSteadyState())
+			s = (StructureOrg)SteadyStateGA.doSteadyStateGA();
+		else
+			s = (StructureOrg)GeneticAlgorithm.doGeneticAlgorithm();
 		
 		return s.getCell();
 	}
@@ -68,11 +72,17 @@ public class CrystalGA {
 			GAParameters.setParams((GAParameters)(Utility.readSerializable(aParser.getArgument("rc"))));
 //			GAParameters.getParams().getRandom().setSeed(System.currentTimeMillis());
 			GAParameters.getParams().getCCs().clear();
+		} else if (aParser.hasArguments("resumeLog")) {
+			System.out.println("Resuming from checkpoint log " + aParser.getArgument("resumeLog"));
+			CheckpointLog.resume(aParser.getArgument("resumeLog"));
 		} else {
 			GAParameters.getParams().setArgs(args);
 		}
 		
-		GeneticAlgorithm.doGeneticAlgorithm();
+		if (GAParameters.getParams().getSteadyState())
+			SteadyStateGA.doSteadyStateGA();
+		else
+			GeneticAlgorithm.doGeneticAlgorithm();
 
 	}
 }
@@ -21,11 +21,9 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
 
 package ga;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -187,43 +185,16 @@ public class DFTPPEnergy implements Energy {
 	
 	// runs DFT++ on the input file given and returns the results in a String
 	private static String runDFTPP(String runDir) {
-		StringBuilder output = new StringBuilder();
-
-		String s = null;
+		String output = "";
 		try {
-			// run the gulp command. GULP will only take input from it's stdin,
-			// not from a file. in order to avoid having
-			// to open inputFile and feed it to GULP, we use a wrapper script,
-			// callgulp, which basically is just gulp <$1 .
-			Process p = Runtime.getRuntime().exec("calldftpp " + runDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			try {
-				// read the output
-				while ((s = stdInput.readLine()) != null) {
-					output.append(s + GAUtils.newline());
-					GAOut.out().stdout(s, GAOut.DEBUG);
-				}
-	
-				// print out any errors
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
-				}
-			} finally {
-				stdInput.close();
-				stdError.close();
-			}
-
+			// we use a wrapper script, which is probably just "cd $1; dftpp ..."
+			output = ProcessRunner.run("calldftpp " + runDir);
 		} catch (IOException e) {
 			System.out.println("IOException in DFTPPEnergy.runDFTPP: " + e.getMessage());
 			System.exit(-1);
-		} 
+		}
 
-		return output.toString();
+		return output;
 	}
 	
 	public static Cell parseOutputStructure(Cell origCell, String outDir) {
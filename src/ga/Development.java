@@ -31,5 +31,12 @@ package ga;
 public interface Development {
 	
 	public Boolean doDevelop(Generation g, Organism o);
+	
+	// doDevelop is split into these two parts.  satisfiesConstraints should only look at
+	// o, so that it can be run on any thread.  checkPopulation does anything which depends
+	// on or changes the rest of the population.
+	public Boolean satisfiesConstraints(Organism o);
+	
+	public Boolean checkPopulation(Generation g, Organism o);
 
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import chemistry.Element;
+import crystallography.Cell;
+import utility.Utility;
+
+// An on-disk cache of energy calculations, so that we don't relax the same structure twice,
+// even across restarts or different runs.  Point several runs at the same directory to share it.
+//
+// Entries live in <dir>/<input hash>/<structure key>/, where the input hash covers the energy
+// code's arguments (and the contents of any files they name, e.g. a GULP potential or an
+// INCAR), and the structure key is a fingerprint of the structure's Wyckoff cell: the number
+// of Wyckoff sites of each element, and its sorted lattice lengths and angles, binned.
+// Cell.matchesCell() only accepts cells which agree on all of those to within the misfits, so
+// we only have to compare a candidate to the entries in the few key directories its own
+// fingerprint could be off by that much from.  The bins are a few misfits wide, so that's
+// usually one or two.  Each entry is stored under the keys of both its input and its relaxed
+// structure, since a candidate often matches a relaxed structure which is quite different
+// from its input.
+//
+// We keep the entries of each key directory we've looked in in memory, and only read the
+// directory again when it's been changed (e.g. by another run).  Only that index is shared
+// between threads, so lookups from several evaluation threads can go on at once.
+//
+// Each entry is its own file, written to a temporary name and then renamed into place, so
+// concurrent writers (from this or other runs) never see half-written entries.  At worst, two
+// runs both compute and store the same structure.
+
+public class EnergyCache implements Serializable {
+
+	static final long serialVersionUID = 1l;
+
+	private static final String entrySuffix = ".entry";
+
+	// the fingerprint bins are this many misfits wide
+	private static final double binsPerMisfit = 4;
+
+	// a directory's modification time may only be kept to the second (or worse), so a
+	// directory changed this soon (in ms) before we read it might have changed again since
+	// w/o its time changing
+	private static final long modTimeResolution = 2000;
+
+	private String cacheDir;
+	private double atomicMisfit;
+	private double latticeMisfit;
+	private double angleMisfit;
+
+	private int numHits = 0;
+
+	// the entries of each key directory we've read, by its path.  don't save them w/ the
+	// GAParameters.
+	private transient Map<String,KeyDir> index;
+
+	// the input hash for each list of energy code arguments we've seen, along w/ the
+	// modification times and sizes of the files they name
+	private static Map<List<String>,String> inputHashes = new HashMap<List<String>,String>();
+
+	public static class Entry implements Serializable {
+		static final long serialVersionUID = 1l;
+
+		private Cell input;
+		private Cell relaxed;
+		private double totalEnergy;
+
+		public Entry(Cell _input, Cell _relaxed, double _totalEnergy) {
+			input = _input;
+			relaxed = _relaxed;
+			totalEnergy = _totalEnergy;
+		}
+
+		public Cell getRelaxedCell() {
+			return relaxed;
+		}
+
+		public double getTotalEnergy() {
+			return totalEnergy;
+		}
+	}
+
+	// what we've read from one key directory
+	private static class KeyDir {
+		long modified = -1;
+		long readAt = 0;
+		Set<String> fileNames = new HashSet<String>();
+		List<Entry> entries = new ArrayList<Entry>();
+	}
+
+	public EnergyCache(List<String> args) {
+		if (args == null || args.size() < 4)
+			GAParameters.usage("Not enough parameters given to --energyCache", true);
+
+		cacheDir = args.get(0);
+		atomicMisfit = Double.parseDouble(args.get(1));
+		latticeMisfit = Double.parseDouble(args.get(2));
+		angleMisfit = Double.parseDouble(args.get(3));
+
+		File dir = new File(cacheDir);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			GAParameters.usage("Couldn't make energy cache directory " + cacheDir, true);
+	}
+
+	public String toString() {
+		return "EnergyCache in " + cacheDir + " (misfits " + atomicMisfit + " " + latticeMisfit
+				+ " " + angleMisfit + "), " + numHits + " hits";
+	}
+
+	public synchronized int getNumHits() {
+		return numHits;
+	}
+
+	// returns the cached result for a structure matching c, computed w/ the given energy
+	// code arguments, or null if there isn't one
+	public Entry lookup(Cell c, List<String> energyArgs) {
+		Cell w = c.getWyckoffCell();
+		if (w == null)
+			return null;
+
+		File inputDir = getInputDir(energyArgs);
+		for (String key : getNeighborKeys(w)) {
+			for (Entry e : getEntries(new File(inputDir, key))) {
+				if (matches(e.input, c) || matches(e.relaxed, c)) {
+					synchronized(this) {
+						numHits++;
+					}
+					return e;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private boolean matches(Cell cached, Cell c) {
+		return cached != null && cached.getNumSites() == c.getNumSites()
+				&& cached.matchesCell(c, atomicMisfit, latticeMisfit, angleMisfit);
+	}
+
+	// stores the result of relaxing input
+	public void store(Cell input, List<String> energyArgs, Cell relaxed, double totalEnergy) {
+		Set<String> keys = new LinkedHashSet<String>();
+		for (Cell c : new Cell[] {input, relaxed}) {
+			Cell w = (c == null) ? null : c.getWyckoffCell();
+			if (w != null)
+				keys.add(getStructureKey(w));
+		}
+
+		Entry e = new Entry(input, relaxed, totalEnergy);
+		File inputDir = getInputDir(energyArgs);
+		for (String key : keys) {
+			File keyDir = new File(inputDir, key);
+			if (!keyDir.isDirectory() && !keyDir.mkdirs() && !keyDir.isDirectory()) {
+				GAOut.out().stdout("Warning: couldn't make energy cache directory " + keyDir.getPath(), GAOut.WARNING);
+				continue;
+			}
+
+			String name = UUID.randomUUID().toString() + entrySuffix;
+			File tmp = new File(keyDir, "." + name + ".tmp");
+			File dest = new File(keyDir, name);
+			Utility.writeSerializable(e, tmp.getPath());
+			if (!tmp.renameTo(dest)) {
+				GAOut.out().stdout("Warning: couldn't add entry to energy cache: " + dest.getPath(), GAOut.WARNING);
+				tmp.delete();
+				continue;
+			}
+
+			KeyDir kd = getKeyDir(keyDir);
+			synchronized(kd) {
+				kd.fileNames.add(name);
+				kd.entries.add(e);
+			}
+		}
+	}
+
+	private synchronized KeyDir getKeyDir(File keyDir) {
+		if (index == null)
+			index = new HashMap<String,KeyDir>();
+		KeyDir result = index.get(keyDir.getPath());
+		if (result == null) {
+			result = new KeyDir();
+			index.put(keyDir.getPath(), result);
+		}
+		return result;
+	}
+
+	// the entries in keyDir.  only reads the files we haven't seen, and only if the directory
+	// might have changed since we last read it.
+	private List<Entry> getEntries(File keyDir) {
+		KeyDir kd = getKeyDir(keyDir);
+		synchronized(kd) {
+			long modified = keyDir.lastModified();
+			if (modified != 0 && (modified != kd.modified || kd.readAt - modified < modTimeResolution)) {
+				kd.readAt = System.currentTimeMillis();
+				kd.modified = modified;
+				String[] names = keyDir.list();
+				if (names != null) {
+					for (String name : names) {
+						if (!name.endsWith(entrySuffix) || kd.fileNames.contains(name))
+							continue;
+						Object o = Utility.readSerializable(new File(keyDir, name).getPath());
+						if (!(o instanceof Entry))
+							continue;
+						kd.fileNames.add(name);
+						kd.entries.add((Entry)o);
+					}
+				}
+			}
+			return new ArrayList<Entry>(kd.entries);
+		}
+	}
+
+	private File getInputDir(List<String> energyArgs) {
+		return new File(cacheDir, getInputHash(energyArgs));
+	}
+
+	// w's fingerprint: the number of Wyckoff sites of each element, sorted by symbol, then
+	// the bins of its sorted lattice lengths and angles
+	private String getStructureKey(Cell w) {
+		return getStructureKey(w, getBins(w, 0));
+	}
+
+	private String getStructureKey(Cell w, int[] bins) {
+		Map<String,Integer> counts = new TreeMap<String,Integer>();
+		for (Element e : w.getComposition().getElements())
+			counts.put(e.getSymbol(), w.getNumSitesWithElement(e));
+
+		StringBuilder result = new StringBuilder();
+		for (String symbol : counts.keySet())
+			result.append(symbol + counts.get(symbol));
+		result.append("_" + bins[0] + "," + bins[1] + "," + bins[2]);
+		result.append("_" + bins[3] + "," + bins[4] + "," + bins[5]);
+
+		return result.toString();
+	}
+
+	// the keys of all the directories which might hold an entry matching a structure w/
+	// Wyckoff cell w: every combination of the bins each of its sorted lengths and angles
+	// would be in if it were off by up to the misfit either way.  the bins are wider than
+	// two misfits, so that's at most two per parameter.
+	private List<String> getNeighborKeys(Cell w) {
+		int[] lows = getBins(w, -1);
+		int[] highs = getBins(w, 1);
+
+		List<String> result = new ArrayList<String>();
+		int[] bins = lows.clone();
+		while (true) {
+			result.add(getStructureKey(w, bins));
+			int i = 0;
+			while (i < bins.length && bins[i] == highs[i]) {
+				bins[i] = lows[i];
+				i++;
+			}
+			if (i == bins.length)
+				break;
+			bins[i]++;
+		}
+		return result;
+	}
+
+	// the bins of w's sorted lengths and then its sorted angles, each shifted by dir times
+	// its misfit first
+	private int[] getBins(Cell w, int dir) {
+		List<Double> params = w.getLatticeParametersDegrees();
+		double[] lengths = {params.get(0), params.get(1), params.get(2)};
+		double[] angles = {params.get(3), params.get(4), params.get(5)};
+		Arrays.sort(lengths);
+		Arrays.sort(angles);
+
+		double lengthBin = binsPerMisfit * Math.max(latticeMisfit, 1e-6);
+		double angleBin = binsPerMisfit * Math.max(angleMisfit, 1e-6);
+		int[] result = new int[6];
+		for (int i = 0; i < 3; i++) {
+			result[i] = (int)Math.floor((lengths[i] + dir * latticeMisfit) / lengthBin);
+			result[i + 3] = (int)Math.floor((angles[i] + dir * angleMisfit) / angleBin);
+		}
+		return result;
+	}
+
+	// hash of the energy code's arguments, with the contents of files in place of their names.
+	// we remember the hashes, but not past a change to one of the files.
+	public static String getInputHash(List<String> energyArgs) {
+		List<String> memoKey = new ArrayList<String>(energyArgs);
+		for (String arg : energyArgs) {
+			File f = new File(arg);
+			if (f.isFile())
+				memoKey.add(f.lastModified() + " " + f.length());
+		}
+		synchronized(inputHashes) {
+			String result = inputHashes.get(memoKey);
+			if (result != null)
+				return result;
+		}
+
+		MessageDigest md = null;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException x) {
+			throw new RuntimeException(x);
+		}
+		for (String arg : energyArgs) {
+			File f = new File(arg);
+			if (f.isFile())
+				updateWithFile(md, f);
+			else
+				md.update(arg.getBytes());
+			md.update((byte)0);
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (byte b : md.digest())
+			result.append(String.format("%02x", b));
+
+		synchronized(inputHashes) {
+			inputHashes.put(memoKey, result.toString());
+		}
+		return result.toString();
+	}
+
+	private static void updateWithFile(MessageDigest md, File f) {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(f);
+			byte buf[] = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				md.update(buf, 0, n);
+		} catch (IOException x) {
+			GAOut.out().stdout("Warning: couldn't read " + f.getPath() + " for energy cache: " + x.getMessage(), GAOut.WARNING);
+		} finally {
+			if (in != null)
+				try { in.close(); } catch (IOException x) { } // ignore
+		}
+	}
+
+}
@@ -21,11 +21,13 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
 
 package ga;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import mopac.MopacEnergy;
 import avogadro.AvogadroEnergy;
 import castep.CastepEnergy;
+import crystallography.Cell;
 import dlpoly.DLPolyEnergy;
 import gulp.GulpEnergy;
 import utility.Utility;
@@ -38,12 +40,14 @@ import vasp.VaspEnergy;
 public class EnergyPerAtom extends ObjectiveFunction {
 	
 	Energy energyFcn;
+	List<String> energyArgs;
 	StructureOrg org;
 
 	public EnergyPerAtom (List<String> args, Organism o) {
 		if (args == null || args.size() < 1)
 			GAParameters.usage("Not enough parameters given to EnergyPerAtom", true);
 		
+		energyArgs = new ArrayList<String>(args);
 		String energyType = args.get(0);
 		if (energyType.equalsIgnoreCase("gulp"))
 			energyFcn = new GulpEnergy(Utility.subList(args, 1));
@@ -80,32 +84,81 @@ public class EnergyPerAtom extends ObjectiveFunction {
 		return result.toString();
 	}
 	
-	public Thread evaluate() {		
+	protected boolean prepareEvaluation() {		
 		// short circuit here if we've done the calculation already
 		if (org.knowsValue())
-			return null;
+			return false;
 		
 		// 
 		if (energyFcn.cannotCompute(org)) {
 			GAOut.out().stdout("Energy function could not compute " + org.getID() + ".", GAOut.NOTICE, org.getID());
 			org.setTotalEnergy(Double.POSITIVE_INFINITY);
 			org.setValue(Double.POSITIVE_INFINITY);
-			return null;
+			return false;
+		}
+		
+		// maybe we (or another run) did this structure already
+		EnergyCache cache = GAParameters.getParams().getEnergyCache();
+		if (cache != null) {
+			EnergyCache.Entry e = cache.lookup(org.getCell(), energyArgs);
+			if (e != null) {
+				GAOut.out().stdout("Found org " + org.getID() + " in energy cache.", GAOut.NOTICE, org.getID());
+				GAMetrics.metrics().count("energy_cache_hits", GAMetrics.getKind(energyFcn));
+				org.setCell(e.getRelaxedCell());
+				setEnergy(e.getTotalEnergy());
+				return false;
+			}
 		}
 		
 		// another total energy calculation:
 		numCalculations++;
 		
-		// start the calculation and return the Thread
-		Thread t = new Thread(this);
-		t.start();
-		return t;
+		return true;
 	}
 	
 	public void run() {
+		// the messages from the energy code are about org
+		int oldContext = GAOut.out().setContext(org.getID());
+		try {
+			computeEnergy();
+		} finally {
+			GAOut.out().setContext(oldContext);
+		}
+	}
+	
+	private void computeEnergy() {
+		Cell input = org.getCell();
+		String kind = GAMetrics.getKind(energyFcn);
+		long start = System.nanoTime();
+		double totalEnergy;
+		ProcessRunner.Usage usage;
+		// (always stop, so a failed calculation doesn't leave its Usage on this pooled thread)
+		ProcessRunner.startAccounting();
+		try {
+			totalEnergy = energyFcn.getEnergy(org);
+		} finally {
+			usage = ProcessRunner.stopAccounting();
+		}
+		GAMetrics.metrics().observe("energy", kind, (System.nanoTime() - start) / 1e9);
+		if (usage.getNumRuns() > 0)
+			org.setUsage(usage);
+		// don't trust whatever the energy code left behind when we killed it
+		if (usage.timedOut()) {
+			GAOut.out().stdout("Energy calculation of org " + org.getID() + " timed out.", GAOut.NOTICE, org.getID());
+			GAMetrics.metrics().count("energy_timeouts", kind);
+			totalEnergy = Double.POSITIVE_INFINITY;
+		}
+		if (Double.isInfinite(totalEnergy) || Double.isNaN(totalEnergy))
+			GAMetrics.metrics().count("energy_failures", kind);
 		
-		double totalEnergy = energyFcn.getEnergy(org);
+		EnergyCache cache = GAParameters.getParams().getEnergyCache();
+		if (cache != null && !Double.isInfinite(totalEnergy) && !Double.isNaN(totalEnergy))
+			cache.store(input, energyArgs, org.getCell(), totalEnergy);
 
+		setEnergy(totalEnergy);
+	}
+	
+	private void setEnergy(double totalEnergy) {
 		double value = totalEnergy / org.getCell().getNumSites();
 		
 		org.setTotalEnergy(totalEnergy);
@@ -113,6 +166,5 @@ public class EnergyPerAtom extends ObjectiveFunction {
 		GAOut.out().stdout("Setting value of org " + org.getID() + " to " + value, GAOut.NOTICE, org.getID());
 		
 		org.setValue(value);
-		
 	}
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import pdvisual.PDAnalyzer;
+import pdvisual.PDBuilder;
+
+// EnergyWatchdog reads the energy code's output as it runs (see ProcessRunner) and stops
+// relaxations which are clearly not going anywhere useful.  Once the relaxation has taken
+// at least minSteps steps, if the latest energy per atom is more than margin above
+//   - the worst value in the current population, for epa runs, or
+//   - the convex hull at the organism's composition, for pd runs,
+// we kill the energy code, and the Energy should give the organism an energy of
+// Double.POSITIVE_INFINITY.  Turned on by --earlyAbort.
+//
+// Stopped organisms don't make it into the generation, so the GA has to make others in
+// their place.  Since relaxations start high and come down, use a generous margin and
+// enough steps that a structure which would end up competitive isn't stopped.
+
+public class EnergyWatchdog implements ProcessRunner.OutputHandler {
+
+	// pulls the total energy of the cell out of a line of output, if there is one there
+	public interface EnergyParser {
+		public Double parseEnergy(String line);
+	}
+
+	// GULP optimization steps, e.g.
+	//   Cycle:      1 Energy:     -1234.567890  Gnorm:      1.234567  CPU:    0.010
+	public static final EnergyParser gulpParser = new PatternParser("^\\s*Cycle:\\s+\\d+\\s+Energy:\\s+(\\S+)");
+
+	// VASP ionic steps (on stdout), e.g.
+	//    1 F= -.10813516E+02 E0= -.10813367E+02  d E =-.108135E+02
+	public static final EnergyParser vaspParser = new PatternParser("^\\s*\\d+\\s+F=\\s*(\\S+)");
+
+	private static class PatternParser implements EnergyParser {
+		private Pattern pattern;
+
+		public PatternParser(String regex) {
+			pattern = Pattern.compile(regex);
+		}
+
+		public Double parseEnergy(String line) {
+			Matcher m = pattern.matcher(line);
+			if (!m.find())
+				return null;
+			try {
+				return Double.parseDouble(m.group(1));
+			} catch (NumberFormatException x) {
+				return null;
+			}
+		}
+	}
+
+	private EnergyParser parser;
+	private int numAtoms;
+	private double limit;
+	private int minSteps;
+	private int orgID;
+
+	private int numSteps = 0;
+	private boolean aborted = false;
+
+	private EnergyWatchdog(EnergyParser _parser, StructureOrg o, double _limit, int _minSteps) {
+		parser = _parser;
+		numAtoms = o.getCell().getNumSites();
+		limit = _limit;
+		minSteps = _minSteps;
+		orgID = o.getID();
+	}
+
+	// returns a watchdog for o's energy calculation, or null if we're not doing early aborts
+	// or don't have anything to compare to yet
+	public static EnergyWatchdog make(StructureOrg o, EnergyParser parser) {
+		GAParameters params = GAParameters.getParams();
+		if (!params.getEarlyAbort() || o.getCell().getNumSites() == 0)
+			return null;
+
+		double limit;
+		if (params.doingPDRun()) {
+			PDBuilder pdb = params.getPDBuilder();
+			if (pdb == null)
+				return null;
+			PDAnalyzer pda = pdb.getPDAnalyzer();
+			// (not until we have all the elemental references)
+			if (!pda.hasHull())
+				return null;
+			// NaN if o isn't in the composition space
+			limit = pda.getEnergiesPerAtomOnHull(Collections.singletonList(o.getCell().getComposition()))[0];
+		} else {
+			Generation g = params.getRecord().getCurrentGen();
+			if (g == null || g.getNumOrganisms() == 0)
+				return null;
+			limit = g.getExtremeValues()[1];
+		}
+		if (Double.isInfinite(limit) || Double.isNaN(limit))
+			return null;
+
+		return new EnergyWatchdog(parser, o, limit + params.getEarlyAbortMargin(), params.getEarlyAbortMinSteps());
+	}
+
+	public void startRun() {
+		numSteps = 0;
+		aborted = false;
+	}
+
+	public boolean handleLine(String line) {
+		Double energy = parser.parseEnergy(line);
+		if (energy == null)
+			return true;
+
+		numSteps++;
+		if (numSteps >= minSteps && energy / numAtoms > limit) {
+			GAOut.out().stdout("Stopping energy calculation of org " + orgID + " at step " + numSteps
+					+ ": energy per atom " + energy / numAtoms + " > " + limit, GAOut.NOTICE, orgID);
+			aborted = true;
+			return false;
+		}
+		return true;
+	}
+
+	// true if we stopped the calculation
+	public boolean aborted() {
+		return aborted;
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+// An EvaluationScheduler runs ObjectiveFunction evaluations in the background and
+// hands the Organisms back as their evaluations finish, in order of completion rather
+// than of submission.  This lets the algorithm develop and keep each Organism as soon
+// as its own calculation is done instead of waiting on a whole batch.
+
+public interface EvaluationScheduler {
+	
+	// starts evaluating o with f.  if there is nothing to compute (e.g. o already
+	// knows its value, in which case f may be null), o is handed back by the next 
+	// call to take().
+	public void submit(Organism o, ObjectiveFunction f);
+	
+	// blocks until an evaluation finishes and returns its Organism, or returns
+	// null if there are no evaluations outstanding.  an Organism whose evaluation
+	// threw comes back w/ an infinite value.  if the calling thread is interrupted
+	// while waiting, returns null and leaves the interrupt flag set.
+	public Organism take();
+	
+	// the number of Organisms submitted but not yet handed back by take()
+	public int getNumInFlight();
+	
+	// stops the scheduler. evaluations still running are abandoned.
+	public void shutdown();
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// GAMetrics keeps counts and timings of what the algorithm spends its time on: variations
+// and how often their offspring are kept, the reasons StructureDev throws organisms out,
+// redundancy checks, symmetry finding, energy calculations and writing output.  It's a
+// singleton like GAOut, and the hooks call it whether or not we're using it, but it
+// doesn't do anything until start() is called (see the --metrics option).  After that,
+// we write everything to <outDir>/metrics.json (the current totals) and append it to
+// <outDir>/metrics.csv every interval seconds and at the end of each generation, and, if
+// given a port, answer HTTP requests on localhost:port with the same numbers in
+// Prometheus's text format.
+//
+// Each metric has a name and a kind (e.g. the variation or the rejection reason), which
+// is "all" if there's only one.  There are three sorts of metrics:
+//  - counters: count(name, kind)
+//  - timers: stopTimer(name, kind, startTimer()).  we keep the number of times, the
+//    total and the longest (in seconds).
+//  - histograms: observe(name, kind, seconds).  like timers, but we also count the
+//    observations in each of the buckets below, e.g. for the energy calculations, whose
+//    run times are spread over several orders of magnitude.
+// The variations' acceptance rates (the number of offspring which passed the
+// constraints over the number of tries) are worked out from the variation counters when
+// we write everything out.
+
+public class GAMetrics {
+
+	private static final GAMetrics instance = new GAMetrics();
+
+	public static final String ALL = "all";
+
+	// upper bounds (s) of the histogram buckets
+	private static final double[] buckets = {0.1, 1, 10, 60, 300, 1800, 3600, 4 * 3600, 24 * 3600};
+
+	private static final String jsonFileName = "metrics.json";
+	private static final String csvFileName = "metrics.csv";
+
+	private volatile boolean enabled = false;
+	private long startNanos;
+
+	private ConcurrentMap<String,ConcurrentMap<String,AtomicLong>> counters
+		= new ConcurrentHashMap<String,ConcurrentMap<String,AtomicLong>>();
+	private ConcurrentMap<String,ConcurrentMap<String,Stat>> timers
+		= new ConcurrentHashMap<String,ConcurrentMap<String,Stat>>();
+	private ConcurrentMap<String,ConcurrentMap<String,Stat>> histograms
+		= new ConcurrentHashMap<String,ConcurrentMap<String,Stat>>();
+
+	// where we write the files (null if we don't)
+	private File outDir;
+	private Timer timer;
+	private ServerSocket server;
+
+	private static class Stat {
+		long count = 0;
+		double sum = 0;
+		double max = 0;
+		// the number of observations in each bucket (not cumulative), or null for timers
+		long[] bucketCounts;
+
+		Stat(boolean histogram) {
+			if (histogram)
+				bucketCounts = new long[buckets.length + 1];
+		}
+
+		synchronized void add(double x) {
+			count++;
+			sum += x;
+			max = Math.max(max, x);
+			if (bucketCounts != null) {
+				int i = 0;
+				while (i < buckets.length && x > buckets[i])
+					i++;
+				bucketCounts[i]++;
+			}
+		}
+
+		synchronized Stat copy() {
+			Stat result = new Stat(bucketCounts != null);
+			result.count = count;
+			result.sum = sum;
+			result.max = max;
+			if (bucketCounts != null)
+				result.bucketCounts = bucketCounts.clone();
+			return result;
+		}
+	}
+
+	private GAMetrics() {
+	}
+
+	// singleton
+	public static GAMetrics metrics() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// the kind we use for things done by an object of some class, e.g. a Variation
+	public static String getKind(Object o) {
+		return o.getClass().getSimpleName();
+	}
+
+	public void count(String name) {
+		count(name, ALL, 1);
+	}
+
+	public void count(String name, String kind) {
+		count(name, kind, 1);
+	}
+
+	public void count(String name, String kind, long n) {
+		if (!enabled)
+			return;
+		ConcurrentMap<String,AtomicLong> m = counters.get(name);
+		if (m == null) {
+			counters.putIfAbsent(name, new ConcurrentHashMap<String,AtomicLong>());
+			m = counters.get(name);
+		}
+		AtomicLong c = m.get(kind);
+		if (c == null) {
+			m.putIfAbsent(kind, new AtomicLong());
+			c = m.get(kind);
+		}
+		c.addAndGet(n);
+	}
+
+	// returns the time to give to stopTimer()
+	public long startTimer() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	public void stopTimer(String name, long start) {
+		stopTimer(name, ALL, start);
+	}
+
+	public void stopTimer(String name, String kind, long start) {
+		if (!enabled || start == 0)
+			return;
+		getStat(timers, name, kind, false).add((System.nanoTime() - start) / 1e9);
+	}
+
+	public void observe(String name, String kind, double seconds) {
+		if (!enabled)
+			return;
+		getStat(histograms, name, kind, true).add(seconds);
+	}
+
+	private Stat getStat(ConcurrentMap<String,ConcurrentMap<String,Stat>> stats, String name,
+			String kind, boolean histogram) {
+		ConcurrentMap<String,Stat> m = stats.get(name);
+		if (m == null) {
+			stats.putIfAbsent(name, new ConcurrentHashMap<String,Stat>());
+			m = stats.get(name);
+		}
+		Stat s = m.get(kind);
+		if (s == null) {
+			m.putIfAbsent(kind, new Stat(histogram));
+			s = m.get(kind);
+		}
+		return s;
+	}
+
+	// start keeping track.  write to dir every interval seconds if dir isn't null and
+	// interval > 0, and serve the metrics on localhost:port if port > 0.
+	public synchronized void start(File dir, double interval, int port) {
+		if (enabled)
+			return;
+		startNanos = System.nanoTime();
+		enabled = true;
+		outDir = dir;
+
+		if (outDir != null && interval > 0) {
+			long period = Math.max(1, (long)(interval * 1000));
+			timer = new Timer("metrics", true);
+			timer.scheduleAtFixedRate(new TimerTask() {
+				public void run() {
+					write();
+				}
+			}, period, period);
+		}
+
+		if (port > 0) {
+			try {
+				server = new ServerSocket(port, 10, InetAddress.getByName("127.0.0.1"));
+			} catch (IOException x) {
+				GAOut.out().stdout("Warning: GAMetrics couldn't listen on port " + port + ": " + x.getMessage(), GAOut.WARNING);
+				return;
+			}
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					serve();
+				}
+			}, "metrics-server");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	// write the files one last time and stop the timer and server
+	public synchronized void shutdown() {
+		if (!enabled)
+			return;
+		if (timer != null)
+			timer.cancel();
+		timer = null;
+		write();
+		if (server != null)
+			try {
+				server.close();
+			} catch (IOException x) {
+				// nothing to do
+			}
+		server = null;
+	}
+
+	// writes metrics.json and appends to metrics.csv
+	public synchronized void write() {
+		if (!enabled || outDir == null)
+			return;
+		GAUtils.writeStringToFile(getJSON(), new File(outDir, jsonFileName), false);
+		File csv = new File(outDir, csvFileName);
+		StringBuilder rows = new StringBuilder();
+		if (!csv.exists())
+			rows.append("time,name,kind,statistic,value" + GAUtils.newline());
+		rows.append(getCSVRows());
+		GAUtils.writeStringToFile(rows.toString(), csv, true);
+	}
+
+	private double getElapsedSeconds() {
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	// sorted copies of everything, so the output comes out in the same order each time
+	private Map<String,Map<String,Long>> getCounters() {
+		Map<String,Map<String,Long>> result = new TreeMap<String,Map<String,Long>>();
+		for (Map.Entry<String,ConcurrentMap<String,AtomicLong>> e : counters.entrySet()) {
+			Map<String,Long> m = new TreeMap<String,Long>();
+			for (Map.Entry<String,AtomicLong> c : e.getValue().entrySet())
+				m.put(c.getKey(), c.getValue().get());
+			result.put(e.getKey(), m);
+		}
+		return result;
+	}
+
+	private static Map<String,Map<String,Stat>> copyStats(ConcurrentMap<String,ConcurrentMap<String,Stat>> stats) {
+		Map<String,Map<String,Stat>> result = new TreeMap<String,Map<String,Stat>>();
+		for (Map.Entry<String,ConcurrentMap<String,Stat>> e : stats.entrySet()) {
+			Map<String,Stat> m = new TreeMap<String,Stat>();
+			for (Map.Entry<String,Stat> s : e.getValue().entrySet())
+				m.put(s.getKey(), s.getValue().copy());
+			result.put(e.getKey(), m);
+		}
+		return result;
+	}
+
+	// the fraction of each variation's tries which made an offspring that passed the
+	// constraints (see OffspringProducer and GeneticAlgorithm.makeOffspringOrg())
+	private Map<String,Double> getAcceptanceRates(Map<String,Map<String,Long>> c) {
+		Map<String,Double> result = new TreeMap<String,Double>();
+		Map<String,Long> tries = c.get("variation_tries");
+		Map<String,Long> accepted = c.get("variation_accepted");
+		if (tries == null)
+			return result;
+		for (String kind : tries.keySet()) {
+			Long a = (accepted == null) ? null : accepted.get(kind);
+			result.put(kind, (a == null) ? 0.0 : (double)a / tries.get(kind));
+		}
+		return result;
+	}
+
+	public String getJSON() {
+		Map<String,Map<String,Long>> c = getCounters();
+		String newline = GAUtils.newline();
+		StringBuilder result = new StringBuilder();
+
+		result.append("{" + newline);
+		result.append("  \"time\": " + getElapsedSeconds() + "," + newline);
+		result.append("  \"counters\": {");
+		String sep = newline;
+		for (String name : c.keySet()) {
+			result.append(sep + "    " + quote(name) + ": {");
+			String sep2 = "";
+			for (Map.Entry<String,Long> e : c.get(name).entrySet()) {
+				result.append(sep2 + quote(e.getKey()) + ": " + e.getValue());
+				sep2 = ", ";
+			}
+			result.append("}");
+			sep = "," + newline;
+		}
+		result.append(newline + "  }," + newline);
+
+		result.append("  \"acceptanceRates\": {");
+		sep = "";
+		for (Map.Entry<String,Double> e : getAcceptanceRates(c).entrySet()) {
+			result.append(sep + quote(e.getKey()) + ": " + e.getValue());
+			sep = ", ";
+		}
+		result.append("}," + newline);
+
+		appendJSONStats(result, "timers", copyStats(timers));
+		result.append("," + newline);
+		appendJSONStats(result, "histograms", copyStats(histograms));
+		result.append(newline + "}" + newline);
+
+		return result.toString();
+	}
+
+	private static void appendJSONStats(StringBuilder result, String title, Map<String,Map<String,Stat>> stats) {
+		String newline = GAUtils.newline();
+		result.append("  " + quote(title) + ": {");
+		String sep = newline;
+		for (String name : stats.keySet()) {
+			result.append(sep + "    " + quote(name) + ": {");
+			String sep2 = newline;
+			for (Map.Entry<String,Stat> e : stats.get(name).entrySet()) {
+				Stat s = e.getValue();
+				result.append(sep2 + "      " + quote(e.getKey()) + ": {\"count\": " + s.count
+						+ ", \"sum\": " + s.sum + ", \"max\": " + s.max);
+				if (s.bucketCounts != null) {
+					result.append(", \"buckets\": [");
+					for (int i = 0; i < buckets.length; i++)
+						result.append(buckets[i] + ", ");
+					result.append("\"inf\"], \"bucketCounts\": [");
+					for (int i = 0; i < s.bucketCounts.length; i++)
+						result.append((i == 0 ? "" : ", ") + s.bucketCounts[i]);
+					result.append("]");
+				}
+				result.append("}");
+				sep2 = "," + newline;
+			}
+			result.append(newline + "    }");
+			sep = "," + newline;
+		}
+		result.append(newline + "  }");
+	}
+
+	private String getCSVRows() {
+		Map<String,Map<String,Long>> c = getCounters();
+		String newline = GAUtils.newline();
+		String time = Double.toString(getElapsedSeconds());
+		StringBuilder result = new StringBuilder();
+
+		for (String name : c.keySet())
+			for (Map.Entry<String,Long> e : c.get(name).entrySet())
+				result.append(time + "," + name + "," + e.getKey() + ",count," + e.getValue() + newline);
+		for (Map.Entry<String,Double> e : getAcceptanceRates(c).entrySet())
+			result.append(time + ",variation_acceptance_rate," + e.getKey() + ",rate," + e.getValue() + newline);
+
+		Map<String,Map<String,Stat>> stats = copyStats(timers);
+		stats.putAll(copyStats(histograms));
+		for (String name : stats.keySet()) {
+			for (Map.Entry<String,Stat> e : stats.get(name).entrySet()) {
+				Stat s = e.getValue();
+				String prefix = time + "," + name + "," + e.getKey() + ",";
+				result.append(prefix + "count," + s.count + newline);
+				result.append(prefix + "sum," + s.sum + newline);
+				result.append(prefix + "max," + s.max + newline);
+				if (s.bucketCounts != null)
+					for (int i = 0; i < s.bucketCounts.length; i++)
+						result.append(prefix + "le_" + (i < buckets.length ? Double.toString(buckets[i]) : "inf")
+								+ "," + s.bucketCounts[i] + newline);
+			}
+		}
+
+		return result.toString();
+	}
+
+	// the Prometheus text exposition format (version 0.0.4)
+	public String getPrometheusText() {
+		Map<String,Map<String,Long>> c = getCounters();
+		StringBuilder result = new StringBuilder();
+
+		for (String name : c.keySet()) {
+			String metric = "gasp_" + name + "_total";
+			result.append("# TYPE " + metric + " counter\n");
+			for (Map.Entry<String,Long> e : c.get(name).entrySet())
+				result.append(metric + label(e.getKey(), null) + " " + e.getValue() + "\n");
+		}
+
+		Map<String,Double> rates = getAcceptanceRates(c);
+		if (!rates.isEmpty()) {
+			result.append("# TYPE gasp_variation_acceptance_rate gauge\n");
+			for (Map.Entry<String,Double> e : rates.entrySet())
+				result.append("gasp_variation_acceptance_rate" + label(e.getKey(), null) + " " + e.getValue() + "\n");
+		}
+
+		Map<String,Map<String,Stat>> t = copyStats(timers);
+		for (String name : t.keySet()) {
+			String metric = "gasp_" + name + "_seconds";
+			result.append("# TYPE " + metric + " summary\n");
+			for (Map.Entry<String,Stat> e : t.get(name).entrySet()) {
+				String l = label(e.getKey(), null);
+				result.append(metric + "_sum" + l + " " + e.getValue().sum + "\n");
+				result.append(metric + "_count" + l + " " + e.getValue().count + "\n");
+			}
+		}
+
+		Map<String,Map<String,Stat>> h = copyStats(histograms);
+		for (String name : h.keySet()) {
+			String metric = "gasp_" + name + "_seconds";
+			result.append("# TYPE " + metric + " histogram\n");
+			for (Map.Entry<String,Stat> e : h.get(name).entrySet()) {
+				Stat s = e.getValue();
+				long cumulative = 0;
+				for (int i = 0; i < s.bucketCounts.length; i++) {
+					cumulative += s.bucketCounts[i];
+					String le = (i < buckets.length) ? Double.toString(buckets[i]) : "+Inf";
+					result.append(metric + "_bucket" + label(e.getKey(), le) + " " + cumulative + "\n");
+				}
+				String l = label(e.getKey(), null);
+				result.append(metric + "_sum" + l + " " + s.sum + "\n");
+				result.append(metric + "_count" + l + " " + s.count + "\n");
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static String label(String kind, String le) {
+		String result = "{kind=\"" + kind.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		if (le != null)
+			result += ",le=\"" + le + "\"";
+		return result + "}";
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	// answers every request w/ the metrics, one connection at a time
+	private void serve() {
+		ServerSocket ss = server;
+		while (ss != null && !ss.isClosed()) {
+			Socket s = null;
+			try {
+				s = ss.accept();
+				s.setSoTimeout(5000);
+				readRequest(s.getInputStream());
+				byte[] body = getPrometheusText().getBytes("UTF-8");
+				OutputStream out = s.getOutputStream();
+				out.write(("HTTP/1.0 200 OK\r\n"
+						+ "Content-Type: text/plain; version=0.0.4\r\n"
+						+ "Content-Length: " + body.length + "\r\n"
+						+ "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+				out.write(body);
+				out.flush();
+			} catch (IOException x) {
+				// closed, or a client went away.  keep going unless it's the former.
+			} finally {
+				if (s != null)
+					try {
+						s.close();
+					} catch (IOException x) {
+						// nothing to do
+					}
+			}
+		}
+	}
+
+	// skips the request line and headers (up to the first blank line).  we don't care
+	// what they asked for.
+	private static void readRequest(InputStream in) throws IOException {
+		int prev = -1;
+		int b;
+		while ((b = in.read()) >= 0) {
+			if (b == '\r')
+				continue;
+			if (b == '\n' && prev == '\n')
+				return;
+			prev = b;
+		}
+	}
+}
@@ -19,17 +19,46 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
     
     */
 
+
 package ga;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// GAOut is where the messages from all over the code go.  Messages come in from the
+// energy calculation threads and the offspring producers as well as the main thread, so
+// stdout() doesn't write anything itself: it checks the level first (so it's cheap to call
+// w/ messages no one will see; callers which would have to do real work to make a message
+// should check isLogging() first), then puts the message in a ring buffer, which a single
+// writer thread empties to the screen in order.  Handing a message off doesn't take any
+// locks, and only waits if the writer is ringSize messages behind.
+//
+// Messages about an organism are headed by "Organism <ID>" the first time we see it.  If
+// a message doesn't say which organism it's about, it's about the one the thread is
+// working on, if any (see setContext()).  With --orgLogs <level>, the messages about each
+// organism at or below level also go to <outDir>/orgLogs/<ID>.log, whatever the verbosity.
+//
+// flush() waits until everything given to stdout() so far has been written.  Code which
+// prints straight to System.out should flush first so the output stays in order.  A
+// shutdown hook flushes too, so nothing is lost when we exit.
 
 public class GAOut implements Serializable {
 	final static long serialVersionUID = 1l;
 	
-	private static GAOut instance;
-	
 	// output levels
 	public static final int DEBUG = 5;
 	public static final int INFO = 4;
@@ -37,24 +66,236 @@ public class GAOut implements Serializable {
 	public static final int WARNING = 2;
 	public static final int CRITICAL = 1;
 	
-	private List<Integer> orgsSeen;
+	private static final String[] levelNames = {"", "CRITICAL", "WARNING", "NOTICE", "INFO", "DEBUG"};
+	
+	// must be a power of 2
+	private static final int ringSize = 1 << 12;
+	// how long the writer sleeps when there's nothing to do (ns).  it's woken up early
+	// when a message comes in.
+	private static final long writerSleep = 100 * 1000 * 1000;
+	
+	private static final String orgLogDirName = "orgLogs";
+	
+	private static final GAOut instance = new GAOut();
+	
+	private static class Message {
+		String text;
+		int level;
+		int structureID;
+		long time;
+		boolean toStdout;
+		boolean toOrgLog;
+	}
+	
+	private transient AtomicReferenceArray<Message> ring;
+	// the number of slots handed out to stdout() callers
+	private transient AtomicLong claimed;
+	// the number of messages the writer has taken out of the ring, and the number it's
+	// done writing
+	private transient volatile long taken;
+	private transient volatile long written;
+	private transient Thread writer;
+	private transient volatile boolean writerWaiting = false;
+	
+	// the organism each thread is working on (0 if none)
+	private transient ThreadLocal<int[]> context;
+	
+	// only used by the writer thread
+	private transient Set<Integer> orgsSeen;
+	private transient SimpleDateFormat timeFormat;
 	
 	private GAOut() {
-		orgsSeen = new ArrayList<Integer>();
+		ring = new AtomicReferenceArray<Message>(ringSize);
+		claimed = new AtomicLong();
+		taken = 0;
+		written = 0;
+		orgsSeen = new HashSet<Integer>();
+		timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		context = new ThreadLocal<int[]>() {
+			protected int[] initialValue() {
+				return new int[1];
+			}
+		};
+		
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeMessages();
+			}
+		}, "gaout-writer");
+		writer.setDaemon(true);
+		writer.start();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, "gaout-flush"));
 	}
 	
 	// singleton
 	public static GAOut out() {
-		if (instance == null)
-			instance = new GAOut();
-
 		return instance;
 	}
 	
+	// there's only one GAOut
+	private Object readResolve() {
+		return instance;
+	}
+	
+	// whether a message at level would go anywhere
+	public boolean isLogging(int level) {
+		GAParameters params = GAParameters.getParams();
+		return level <= params.getVerbosity() || level <= params.getOrgLogLevel();
+	}
+	
+	// sets the organism the current thread is working on (0 for none), which messages
+	// that don't name one are about.  returns the old one, to be put back when we're done.
+	public int setContext(int structureID) {
+		int[] c = context.get();
+		int result = c[0];
+		c[0] = Math.max(0, structureID);
+		return result;
+	}
+	
 	public void stdout(String message, int level) {
 		stdout(message, level, -1);
 	}
 	
+	public void stdout(String message, int level, int structureID) {
+		GAParameters params = GAParameters.getParams();
+		boolean toStdout = level <= params.getVerbosity();
+		if (!toStdout && level > params.getOrgLogLevel())
+			return;
+		
+		if (structureID <= 0)
+			structureID = context.get()[0];
+		boolean toOrgLog = structureID > 0 && level <= params.getOrgLogLevel() && !params.getDryRun();
+		if (!toStdout && !toOrgLog)
+			return;
+		
+		Message m = new Message();
+		m.text = message;
+		m.level = level;
+		m.structureID = structureID;
+		m.time = System.currentTimeMillis();
+		m.toStdout = toStdout;
+		m.toOrgLog = toOrgLog;
+		put(m);
+	}
+	
+	private void put(Message m) {
+		long seq = claimed.getAndIncrement();
+		// wait for the writer to make room
+		while (seq - taken >= ringSize && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(100 * 1000);
+		}
+		ring.set((int)(seq & (ringSize - 1)), m);
+		if (writerWaiting)
+			LockSupport.unpark(writer);
+	}
+	
+	// waits (a while) until everything given to stdout() before now has been written
+	public void flush() {
+		if (Thread.currentThread() == writer)
+			return;
+		long target = claimed.get();
+		long deadline = System.currentTimeMillis() + 10 * 1000;
+		while (written < target && writer.isAlive() && System.currentTimeMillis() < deadline) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(100 * 1000);
+		}
+	}
+	
+	// the writer thread.  takes whatever's in the ring and writes it out in one go.
+	private void writeMessages() {
+		List<Message> batch = new ArrayList<Message>();
+		long next = 0;
+		while (true) {
+			int slot = (int)(next & (ringSize - 1));
+			Message m = ring.get(slot);
+			if (m != null) {
+				ring.set(slot, null);
+				next++;
+				taken = next;
+				batch.add(m);
+				if (batch.size() < ringSize / 4)
+					continue;
+			}
+			
+			if (!batch.isEmpty()) {
+				try {
+					write(batch);
+				} catch (RuntimeException x) {
+					System.out.println("Exception while writing output: " + x);
+				}
+				batch.clear();
+				written = next;
+				continue;
+			}
+			
+			// nothing to do.  check again after saying we're waiting so we don't miss a wakeup.
+			writerWaiting = true;
+			if (ring.get(slot) == null)
+				LockSupport.parkNanos(writerSleep);
+			writerWaiting = false;
+		}
+	}
+	
+	private void write(List<Message> batch) {
+		StringBuilder screen = new StringBuilder();
+		Map<Integer,StringBuilder> orgLogs = new LinkedHashMap<Integer,StringBuilder>();
+		String newline = GAUtils.newline();
+		
+		for (Message m : batch) {
+			if (m.toStdout) {
+				if (m.structureID > 0) {
+					if (orgsSeen.add(m.structureID))
+						screen.append(possiblyColorifyStringByStructID("Organism " + m.structureID, m.structureID) + newline);
+					screen.append(possiblyColorifyStringByStructID("   " + m.text, m.structureID) + newline);
+				} else {
+					screen.append(m.text + newline);
+				}
+			}
+			if (m.toOrgLog) {
+				StringBuilder log = orgLogs.get(m.structureID);
+				if (log == null) {
+					log = new StringBuilder();
+					orgLogs.put(m.structureID, log);
+				}
+				log.append(timeFormat.format(new Date(m.time)) + " " + levelNames[Math.max(0, Math.min(DEBUG, m.level))]
+						+ " " + m.text + newline);
+			}
+		}
+		
+		if (screen.length() > 0) {
+			PrintStream out = System.out;
+			out.print(screen);
+			out.flush();
+		}
+		
+		if (!orgLogs.isEmpty()) {
+			File dir = new File(GAParameters.getParams().getOutDirName(), orgLogDirName);
+			dir.mkdirs();
+			for (Map.Entry<Integer,StringBuilder> e : orgLogs.entrySet()) {
+				FileWriter w = null;
+				try {
+					w = new FileWriter(new File(dir, e.getKey() + ".log"), true);
+					w.write(e.getValue().toString());
+				} catch (IOException x) {
+					System.out.println("GAOut: couldn't write log of organism " + e.getKey() + ": " + x.getMessage());
+				} finally {
+					if (w != null)
+						try {
+							w.close();
+						} catch (IOException x) {
+							// nothing to do
+						}
+				}
+			}
+		}
+	}
+	
 	private String possiblyColorifyStringByStructID(String s, int id) {
 		
 		// valid ansi color codes go from 30 to 38
@@ -66,18 +307,4 @@ public class GAOut implements Serializable {
 
 	}
 	
-	public void stdout(String message, int level, int structureID) {
-		if (level <= GAParameters.getParams().getVerbosity()) {
-			if (structureID > 0) {
-				if (!orgsSeen.contains(structureID)) {
-					orgsSeen.add(structureID);
-					System.out.println(possiblyColorifyStringByStructID("Organism " + structureID,structureID));
-				}
-				System.out.println(possiblyColorifyStringByStructID("   " + message,structureID));
-			} else {
-				System.out.println(message);
-			}
-		}
-	}
-	
 }
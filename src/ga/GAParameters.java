@@ -31,6 +31,7 @@ import chemistry.Element;
 import utility.ArgumentParser;
 import utility.Pair;
 import utility.Utility;
+import utility.SplitRandom;
 import utility.Triplet;
 import vasp.VaspIn;
 import vasp.VaspOut;
@@ -95,7 +96,8 @@ public class GAParameters implements Serializable {
 	String inputFile;
 	List<Pair<String,String[]>> argmap;
 	
-	// one Random for use by the whole program
+	// one Random for use by the main thread.  OffspringProducer keys its tasks' streams
+	// off of it, so it's saved with the rest of the state.
 	Random rand;
 	
 	// These are all the different parameters the program can take from the command line
@@ -122,6 +124,10 @@ public class GAParameters implements Serializable {
 	private double maxNearestNeighborLength = 0;
 	private boolean useNiggliReducedCell = false;
 	private boolean use2DNiggliReducedCell = false;
+	// find symmetry (for Wyckoff cells and the per-structure symmetry files) w/
+	// crystallography.Symmetry rather than findsym.  stored this way around so that save files
+	// from before we had it still use findsym.
+	private boolean noFindsym = false;
 	private boolean useSubstrate = false;
 	private Cell substrate = null;
 	private boolean writeHartkeFile = false;
@@ -131,7 +137,36 @@ public class GAParameters implements Serializable {
 	// default output dir is set in setArgs after we know the runTitle
 	private String outDirName;
 	private Boolean keepTempFiles = true;
+	// if set, the temp files (e.g. the energy codes' run directories) go here instead of
+	// under the output directory.  meant for node-local disks or tmpfs.
+	private String scratchDirName = null;
+	// stop relaxations which get earlyAbortMargin eV/atom above the worst organism (or the
+	// hull), after at least earlyAbortMinSteps steps.  see EnergyWatchdog.
+	private boolean earlyAbort = false;
+	private double earlyAbortMargin = 0;
+	private int earlyAbortMinSteps = 0;
+	// kill energy calculations which run longer than energyTimeout seconds (0 = never), and
+	// try them again up to energyRetries times, waiting energyRetryWait seconds before the
+	// first retry and twice as long before each one after that.  see ProcessRunner.
+	private double energyTimeout = 0;
+	private int energyRetries = 0;
+	private double energyRetryWait = 0;
 	private boolean saveStateEachIter = false;
+	// append each generation to a CheckpointLog in the output directory
+	private boolean checkpointLog = false;
+	// keep GAMetrics, writing them out every metricsInterval seconds (0 = only at the end
+	// of each generation) and serving them on localhost:metricsPort (0 = don't)
+	private boolean metrics = false;
+	private double metricsInterval = 0;
+	private int metricsPort = 0;
+	// also write the messages about each organism at or below this level to its own log
+	// file (0 = don't).  see GAOut.
+	private int orgLogLevel = 0;
+	// the options we were started with (w/ the input file's options inlined),
+	// so a CheckpointLog can start us up the same way again
+	private List<String> argList = null;
+	// set while we're being restarted from a CheckpointLog
+	private transient boolean resuming = false;
 	
 	// singleton
 	private GARecord record = null;
@@ -143,6 +178,8 @@ public class GAParameters implements Serializable {
 	private List<String> objFcnArgs;
 	private int minPopSize = 0;
 	private int numCalcsInParallel = 1;
+	// make offspring on this many threads (see OffspringProducer)
+	private int numVariationThreads = 1;
 	// vars holds the variations that run on each generation to make the next generation.
 	// each Variation is run the number of times stored in the corresponding location in
 	// numToMake.
@@ -151,6 +188,8 @@ public class GAParameters implements Serializable {
 	private Vector<Double> endgameVarProbs = null;
 	private Boolean inEndgame = false;
 	private int endGameNumGens = 50;
+	// use SteadyStateGA rather than the generational GeneticAlgorithm
+	private boolean steadyState = false;
 	
 	// population related options
 	private int popSize = 40;
@@ -158,6 +197,14 @@ public class GAParameters implements Serializable {
 	private List<String> redundancyGuardArgs = null;
 	private boolean useSurrogate = false;
 	private List<String> surrogateArgs = null;
+	// screen offspring w/ a cheap model before the energy calculations (null if not)
+	private List<String> surrogateScreenArgs = null;
+	// trade organisms w/ other runs (null if not).  see IslandModel.
+	private List<String> islandArgs = null;
+	// shared on-disk cache of relaxed structures and energies (null if not used)
+	private EnergyCache energyCache = null;
+	// the GULP executable for GulpEnergy to run directly, w/o callgulp or files (null to use callgulp)
+	private String gulpCommand = null;
 //	private static boolean unitsOnly = false;
 	
 	// constituents holds key-value pairs of the form (Atomic symbol, quantity) where the
@@ -182,7 +229,7 @@ public class GAParameters implements Serializable {
 	// singleton
 	private GAParameters() {
 	    // initialize our prng
-		rand = new Random();
+		rand = new SplitRandom();
 		// initialize variations and convergence criteria vectors
 		vars = new Vector<Variation>();
 		initialVarProbs = new Vector<Double>();
@@ -215,7 +262,8 @@ public class GAParameters implements Serializable {
 			GAOut.out().stdout(errorStr, GAOut.CRITICAL);
 			GAOut.out().stdout("", GAOut.CRITICAL);
 		}
-		System.out.println("Usage: ga <options> (--f <input-file> OR --r <resume-file>)");
+		GAOut.out().flush();
+		System.out.println("Usage: ga <options> (--f <input-file> OR --r <resume-file> OR --resumeLog <checkpoint log>)");
 		System.out.println("Arguments are case-insensitive.  All arguments can be passed in the input-file.");
 		System.out.println("Optional flags [Current value]:");
 		System.out.println("   --help : displays this message with parameters' default values");
@@ -225,7 +273,13 @@ public class GAParameters implements Serializable {
 		System.out.println("   --outDir : specify the output directory");
 		System.out.println("   --dryRun : don't save any output to disk");
 		System.out.println("   --keepTempFiles <true|false>");
+		System.out.println("   --scratchDir <directory> : put temporary files under directory (e.g. a node-local tmpfs)");
+		System.out.println("   --earlyAbort <margin (eV/atom)> <min steps> : stop GULP and VASP relaxations which go margin above the worst organism (or the hull)");
+		System.out.println("   --energyTimeout <seconds> <number of retries> <first retry wait (s)> : kill energy calculations which run too long, and retry them");
 		System.out.println("   --saveStateEachIter <true|false>");
+		System.out.println("   --checkpointLog <true|false> : append each generation to <outDir>/checkpoint.log");
+		System.out.println("   --orgLogs <level> : write each organism's messages at or below level (1-5) to <outDir>/orgLogs/<ID>.log");
+		System.out.println("   --metrics <interval (s)> [port] : write timings and counts to <outDir>/metrics.json and metrics.csv, and serve them on localhost:port");
 		System.out.println("   --popSize <n> : use a non-initial population size of n");
 		System.out.println("   --promotion <n> : promote n best structures (or the whole CH) to next gen");
 //		System.out.println("   --constituents <fix stoichiometry?> <stoichiometry (e.g. Mn 1 O 2)>");
@@ -234,9 +288,13 @@ public class GAParameters implements Serializable {
 		System.out.println("   --optimizeDensity <weight of adaptation> <num orgs to avg. over>");
 		System.out.println("   --useRedundancyGuard <wholePopulation|perGeneration|both> <atomic misfit> <lattice misfit> <angle misfit> <use PBCs?>");
 		System.out.println("   --useSurrogateModel <gulp header file> <potentials_specification file> <refit frequency>");
+		System.out.println("   --surrogateScreen <number kept> <number made> <model: pairs [cutoff] [bin width] | gulp> : only calculate the energies of the offspring a cheap model likes best");
+		System.out.println("   --energyCache <directory> <atomic misfit> <lattice misfit> <angle misfit> : reuse energies of matching structures");
+		System.out.println("   --gulpCommand <gulp command> : run GULP directly, w/ the input on its stdin and w/o temp files, instead of through callgulp");
 		System.out.println("   --endgameNumGens <n>");
 		System.out.println("   --useNiggliReducedCell <true|false>");
 		System.out.println("   --use2DNiggliReducedCell <true|false>");
+		System.out.println("   --useFindsym <true|false> : find symmetry w/ findsym (default) or in-process (space group number and Wyckoff cell like findsym's, but no Wyckoff letters; compares whole reduced primitive cells and writes <id>.sym files in place of .fso)");
 		System.out.println("   --useSubstrate <true|false> <path to substrate POSCAR file");
 		System.out.println("   --writeHartkeFile <boolean>");
 		System.out.println("   --colorOutput <boolean>");
@@ -263,6 +321,9 @@ public class GAParameters implements Serializable {
 		System.out.println("   --objectiveFunction <epa/pd> dftpp <dftpp_inputs> <cautious?> <element ppFile.fhi>*");
 		System.out.println("   --objectiveFunction <epa/pd> generic");
 		System.out.println("   --parallelize <numCalcsInParallel> <minPopSize>");
+		System.out.println("   --steadyState <true|false> : don't wait for whole generations (not for pd runs)");
+		System.out.println("   --numVariationThreads <n> : make offspring on n threads (not for steadyState runs)");
+		System.out.println("   --islands <island number> <number of islands> <gens between migrations> <number of migrants> <topology: ring|all> <dir <directory> | socket <host:port>*> : trade organisms w/ other runs (see IslandModel)");
 		System.out.println("Variation Algorithms");
 		System.out.println("   --variation <percentage> <percentage> slicer <thicknessMean> <thicknessSigma> <majorShiftFrac> <minorShiftFrac> <maxAmplitude> <maxFreq> <growParents?> <doublingProb>");
 		System.out.println("   --variation <percentage> <percentage> structureMut <rate> <sigmaAtoms> <sigmaLattice>");
@@ -317,6 +378,15 @@ public class GAParameters implements Serializable {
 			aParser = new ArgumentParser(args, inputFileName);
 		}
 		
+		// remember the combined set of arguments
+		argList = new ArrayList<String>();
+		for (Pair<String,List<String>> p : aParser.getOptions()) {
+			if (p.getFirst().equalsIgnoreCase("f"))
+				continue;
+			argList.add("--" + p.getFirst());
+			argList.addAll(p.getSecond());
+		}
+		
 		// parse the combined set of arguments
 		for (Pair<String,List<String>> p : aParser.getOptions()) {
 			String flag = p.getFirst();
@@ -367,6 +437,8 @@ public class GAParameters implements Serializable {
 				useNiggliReducedCell = Boolean.parseBoolean(arguments.get(0));
 			else if (flag.equalsIgnoreCase("use2DNiggliReducedCell"))
 				use2DNiggliReducedCell = Boolean.parseBoolean(arguments.get(0));
+			else if (flag.equalsIgnoreCase("useFindsym"))
+				noFindsym = !Boolean.parseBoolean(arguments.get(0));
 			else if (flag.equalsIgnoreCase("use2DNiggliReducedCell")) {
 				useSubstrate = Boolean.parseBoolean(arguments.get(0));
 				if (useSubstrate)
@@ -375,14 +447,52 @@ public class GAParameters implements Serializable {
 				popSize = Integer.parseInt(arguments.get(0));
 			else if (flag.equalsIgnoreCase("keepTempFiles"))
 				keepTempFiles = Boolean.parseBoolean(arguments.get(0));
+			else if (flag.equalsIgnoreCase("scratchDir"))
+				scratchDirName = arguments.get(0);
+			else if (flag.equalsIgnoreCase("earlyAbort")) {
+				if (arguments.size() < 2)
+					GAParameters.usage("Not enough parameters given to --earlyAbort", true);
+				earlyAbort = true;
+				earlyAbortMargin = Double.parseDouble(arguments.get(0));
+				earlyAbortMinSteps = Integer.parseInt(arguments.get(1));
+			}
+			else if (flag.equalsIgnoreCase("energyTimeout")) {
+				if (arguments.size() < 3)
+					GAParameters.usage("Not enough parameters given to --energyTimeout", true);
+				energyTimeout = Double.parseDouble(arguments.get(0));
+				energyRetries = Integer.parseInt(arguments.get(1));
+				energyRetryWait = Double.parseDouble(arguments.get(2));
+			}
 			else if (flag.equalsIgnoreCase("saveStateEachIter"))
 				saveStateEachIter = Boolean.parseBoolean(arguments.get(0));
+			else if (flag.equalsIgnoreCase("checkpointLog"))
+				checkpointLog = Boolean.parseBoolean(arguments.get(0));
+			else if (flag.equalsIgnoreCase("orgLogs"))
+				orgLogLevel = Integer.parseInt(arguments.get(0));
+			else if (flag.equalsIgnoreCase("metrics")) {
+				if (arguments.size() < 1)
+					GAParameters.usage("Not enough parameters given to --metrics", true);
+				metrics = true;
+				metricsInterval = Double.parseDouble(arguments.get(0));
+				if (arguments.size() >= 2)
+					metricsPort = Integer.parseInt(arguments.get(1));
+			}
 			else if (flag.equalsIgnoreCase("useRedundancyGuard")) {
 				redundancyGuardType = arguments.get(0);
 				redundancyGuardArgs = Utility.subList(arguments, 1);
 			} else if (flag.equalsIgnoreCase("useSurrogateModel")) {
 				useSurrogate = true;
 				surrogateArgs =  arguments;
+			} else if (flag.equalsIgnoreCase("surrogateScreen")) {
+				if (arguments.size() < 3)
+					GAParameters.usage("Not enough parameters given to --surrogateScreen", true);
+				surrogateScreenArgs = arguments;
+			} else if (flag.equalsIgnoreCase("energyCache")) {
+				energyCache = new EnergyCache(arguments);
+			} else if (flag.equalsIgnoreCase("gulpCommand")) {
+				if (arguments.size() < 1)
+					GAParameters.usage("Not enough parameters given to --gulpCommand", true);
+				gulpCommand = String.join(" ", arguments);
 			} else if (flag.equalsIgnoreCase("optimizeDensity")) {
 				optimizeDensity = true;
 				if (optimizeDensity) {
@@ -407,6 +517,18 @@ public class GAParameters implements Serializable {
 				numCalcsInParallel = Integer.parseInt(arguments.get(0));
 				minPopSize = Integer.parseInt(arguments.get(1));
 			}
+			else if (flag.equalsIgnoreCase("numVariationThreads"))
+				numVariationThreads = Integer.parseInt(arguments.get(0));
+			else if (flag.equalsIgnoreCase("islands")) {
+				if (arguments.size() < 7)
+					GAParameters.usage("Not enough parameters given to --islands", true);
+				islandArgs = arguments;
+				// so islands started w/ the same seed don't all do the same thing
+				long islandNum = Long.parseLong(arguments.get(0));
+				getRandom().setSeed(getRandom().nextLong() ^ (islandNum * 0x9E3779B97F4A7C15L));
+			}
+			else if (flag.equalsIgnoreCase("steadyState"))
+				steadyState = Boolean.parseBoolean(arguments.get(0));
 			else if (flag.equalsIgnoreCase("selection")) {
 				if (arguments.get(0).equalsIgnoreCase("probDist"))
 					sel = new ProbDistSelection( Utility.subList(arguments, 1));
@@ -522,6 +644,14 @@ public class GAParameters implements Serializable {
 		String objFcnType = objFcnArgs.get(0);
 		if (objFcnType.equalsIgnoreCase("pd") && this.getCompSpace().getNumDimensions() < 2)
 			usage("ERROR: Can't use pd objFun w/ < 2 dimensions.", true);
+		if (steadyState && doingPDRun())
+			usage("ERROR: Can't use steadyState w/ pd objFun.", true);
+		if (steadyState && numVariationThreads > 1)
+			System.out.println("WARNING: numVariationThreads is ignored for steadyState runs.");
+		if (steadyState && surrogateScreenArgs != null)
+			System.out.println("WARNING: surrogateScreen is ignored for steadyState runs.");
+		if (steadyState && islandArgs != null)
+			System.out.println("WARNING: islands is ignored for steadyState runs.");
 		if (vars == null || vars.size() == 0)
 			System.out.println("WARNING: Given no variation operators.");
 	}
@@ -550,6 +680,28 @@ public class GAParameters implements Serializable {
 		result.append("maxLatticeAngle: " + maxLatticeAngle + newline);
 		result.append("minLatticeAngle: " + minLatticeAngle + newline);
 		result.append("dValue: " + dValue + newline);
+		result.append("steadyState: " + steadyState + newline);
+		result.append("numVariationThreads: " + numVariationThreads + newline);
+		if (surrogateScreenArgs != null)
+			result.append("surrogateScreen: " + surrogateScreenArgs + newline);
+		if (islandArgs != null)
+			result.append("islands: " + islandArgs + newline);
+		result.append("useFindsym: " + usingFindsym() + newline);
+		result.append("checkpointLog: " + checkpointLog + newline);
+		if (orgLogLevel > 0)
+			result.append("orgLogs: " + orgLogLevel + newline);
+		if (metrics)
+			result.append("metrics: " + metricsInterval + " " + metricsPort + newline);
+		if (energyCache != null)
+			result.append("energyCache: " + energyCache + newline);
+		if (scratchDirName != null)
+			result.append("scratchDir: " + scratchDirName + newline);
+		if (earlyAbort)
+			result.append("earlyAbort: " + earlyAbortMargin + " " + earlyAbortMinSteps + newline);
+		if (energyTimeout > 0)
+			result.append("energyTimeout: " + energyTimeout + " " + energyRetries + " " + energyRetryWait + newline);
+		if (gulpCommand != null)
+			result.append("gulpCommand: " + gulpCommand + newline);
 
 		result.append(newline);
 		// actually should really not try to get an objective function until after we've already
@@ -603,14 +755,50 @@ public class GAParameters implements Serializable {
 		return new Structures();
 	}
 	
+	public EvaluationScheduler makeEvaluationScheduler() {
+		return new PooledEvaluationScheduler(numCalcsInParallel);
+	}
+	
+	// trades organisms w/ the other islands, or null if we're not doing that
+	public IslandModel makeIslandModel() {
+		if (islandArgs == null)
+			return null;
+		return new IslandModel(islandArgs);
+	}
+	
+	// the number of islands in the run (1 w/o --islands)
+	public int getNumIslands() {
+		return (islandArgs == null) ? 1 : Integer.parseInt(islandArgs.get(1));
+	}
+	
+	// the offspring pre-screen, or null if we're not doing that
+	public SurrogateScreen makeSurrogateScreen() {
+		if (surrogateScreenArgs == null)
+			return null;
+		return new SurrogateScreen(surrogateScreenArgs);
+	}
+	
 	public void seedIDs(int s) {
 		currentID = s;
 	}
 	
+	// the last ID handed out
+	public int getCurrentID() {
+		return currentID;
+	}
+	
+	public void setRandom(Random r) {
+		rand = r;
+	}
+	
 	public void setInEndgame(Boolean b) {
 		inEndgame = b;
 	}
 	
+	public boolean getInEndgame() {
+		return inEndgame;
+	}
+	
 	//singleton
 	public Object clone() throws CloneNotSupportedException {
 	    throw new CloneNotSupportedException(); 
@@ -634,9 +822,23 @@ public class GAParameters implements Serializable {
 	
 	private int currentID = 0;
 	public int getNewOrgID() {
+		if (deferOrgIDs.get() != null)
+			return 0;
 		currentID++;
 		return currentID;
 	}
+	
+	// organisms made on a thread while this is set get ID 0, and whoever set it gives them
+	// their IDs when they're used.  OffspringProducer's tasks set it so that IDs are given
+	// out in the order the offspring are used rather than the order they're made.
+	private static ThreadLocal<Boolean> deferOrgIDs = new ThreadLocal<Boolean>();
+	
+	public static void setDeferOrgIDs(boolean defer) {
+		if (defer)
+			deferOrgIDs.set(Boolean.TRUE);
+		else
+			deferOrgIDs.remove();
+	}
 
 	public Selection getSelection() {
 		return sel;
@@ -725,10 +927,24 @@ public class GAParameters implements Serializable {
 		return verbosity;
 	}
 	
+	// OffspringProducer's tasks each get their own random streams for the organisms they
+	// make, so the results don't depend on how many threads there are or how they're scheduled
+	private static ThreadLocal<Random> workerRandom = new ThreadLocal<Random>();
+	
 	public Random getRandom() {
+		Random r = workerRandom.get();
+		if (r != null)
+			return r;
 		return rand;
 	}
 	
+	public static void setWorkerRandom(Random r) {
+		if (r == null)
+			workerRandom.remove();
+		else
+			workerRandom.set(r);
+	}
+	
 	public Boolean getOptimizeDensity() {
 		return optimizeDensity;
 	}
@@ -790,9 +1006,43 @@ public class GAParameters implements Serializable {
 		return new ArrayList<String>(surrogateArgs);
 	}
 	
+	public EnergyCache getEnergyCache() {
+		return energyCache;
+	}
+	
+	public boolean getEarlyAbort() {
+		return earlyAbort;
+	}
+	
+	public double getEarlyAbortMargin() {
+		return earlyAbortMargin;
+	}
+	
+	public int getEarlyAbortMinSteps() {
+		return earlyAbortMinSteps;
+	}
+	
+	public double getEnergyTimeout() {
+		return energyTimeout;
+	}
+	
+	public int getEnergyRetries() {
+		return energyRetries;
+	}
+	
+	public double getEnergyRetryWait() {
+		return energyRetryWait;
+	}
+	
+	public String getGulpCommand() {
+		return gulpCommand;
+	}
+	
 	public String getTempDirName() {
 		if (outDirName == null)
 			return "/tmp";
+		else if (scratchDirName != null)
+			return scratchDirName + "/" + new File(outDirName).getName() + "/temp";
 		else
 			return outDirName + "/temp";
 	}
@@ -805,6 +1055,10 @@ public class GAParameters implements Serializable {
 		return useNiggliReducedCell;
 	}
 	
+	public boolean usingFindsym() {
+		return !noFindsym;
+	}
+	
 	public boolean using2DNiggliReducedCell() {
 		return use2DNiggliReducedCell;
 	}
@@ -825,6 +1079,34 @@ public class GAParameters implements Serializable {
 		return saveStateEachIter;
 	}
 	
+	public boolean getCheckpointLog() {
+		return checkpointLog;
+	}
+	
+	public int getOrgLogLevel() {
+		return orgLogLevel;
+	}
+	
+	public boolean getMetrics() {
+		return metrics;
+	}
+	
+	public double getMetricsInterval() {
+		return metricsInterval;
+	}
+	
+	public int getMetricsPort() {
+		return metricsPort;
+	}
+	
+	public List<String> getArgList() {
+		return argList;
+	}
+	
+	public void setResuming(boolean r) {
+		resuming = r;
+	}
+	
 	public int getMinPopSize() {
 		return minPopSize;
 	}
@@ -844,6 +1126,14 @@ public class GAParameters implements Serializable {
 		return numCalcsInParallel;
 	}
 	
+	public int getNumVariationThreads() {
+		return numVariationThreads;
+	}
+	
+	public boolean getSteadyState() {
+		return steadyState;
+	}
+	
 	public List<Pair<StructureOrgCreator,Integer>> getInitialOrgCreators() {
 		return initialOrgCreators;
 	}
@@ -904,6 +1194,11 @@ public class GAParameters implements Serializable {
 		private int currentGenNum = 0;
 		private Generation currentGen = null;
 		
+		private CheckpointLog checkpointLog = null;
+		
+		// writes the output files in the background
+		private transient OutputWriter writer = null;
+		
 		//
 		double bestDenEstimate;
 		
@@ -915,9 +1210,9 @@ public class GAParameters implements Serializable {
 			outDirName = params.getOutDirName();
 			tempDirName = params.getTempDirName();
 
-			// make the output directory
+			// make the output directory (or reuse it if we're picking up where it left off)
 			outDir = new File(outDirName);
-			if (!params.getDryRun() && !outDir.mkdir()) 
+			if (!params.getDryRun() && !outDir.mkdir() && !(resuming && outDir.isDirectory())) 
 				GAParameters.usage("ERROR: Can't create directory " + outDirName, true);
 			
 			// make the output files
@@ -925,7 +1220,7 @@ public class GAParameters implements Serializable {
 			
 			// make the temp directory
 			tempDir = new File(tempDirName);
-			tempDir.mkdir();
+			tempDir.mkdirs();
 			
 			// save the run parameters to a file
 			paramFile = new File(outDir, paramFileName);
@@ -975,40 +1270,74 @@ public class GAParameters implements Serializable {
 			return f.getPath();
 		}
 		
+		// findsym's output goes in <id>.fso.  our own symmetry info isn't in findsym's format,
+		// so it goes in <id>.sym instead.
 		private String makeFindSymPath(StructureOrg s) {
-			File f = new File(outDir, Integer.toString(s.getID()) + ".fso");
+			String suffix = GAParameters.getParams().usingFindsym() ? ".fso" : ".sym";
+			File f = new File(outDir, Integer.toString(s.getID()) + suffix);
 			return f.getPath();
 		}
 		
+		// start keeping GAMetrics if we're doing that.  called by the main algorithm before
+		// it starts (so also when we've been resumed from a save).
+		public void startMetrics() {
+			GAParameters params = GAParameters.getParams();
+			if (params.getMetrics())
+				GAMetrics.metrics().start(params.getDryRun() ? null : outDir, params.getMetricsInterval(), params.getMetricsPort());
+		}
+		
 		// this writes status info to the screen, saves data to files, and updates
 		// the generation counter.  it should be called by the main algorithm at the
 		// end of each generation.
 		public void finishGen(Generation g) {
 			GAParameters params = GAParameters.getParams();
+			long start = GAMetrics.metrics().startTimer();
 			
-			// write the generation header (generation x N)
-			GAUtils.writeStringToFile("generation " + Integer.toString(currentGenNum) + " " + g.getNumOrganisms() + newline, outFile, true);
+			// the generation header (generation x N) and energy-sorted index (i.e. lowest to highest).
+			// organisms whose energies we calculated in this run also get the wall time (s), CPU
+			// time (s) and peak memory (kB) of the calculation at the ends of their lines.
+			final StringBuilder index = new StringBuilder();
+			index.append("generation " + Integer.toString(currentGenNum) + " " + g.getNumOrganisms() + newline);
+			for (Organism o : g.getOrganismsSorted()) {
+				StructureOrg s = (StructureOrg) o;
+				index.append(Integer.toString(s.getID()) + " ");
+				index.append(Double.toString(s.getValue()) + " ");
+				index.append(makePOSCARPath(s));
+				if (s.getUsage() != null)
+					index.append(" " + s.getUsage());
+				index.append(newline);
+			}
 			
-			// save structures and findsym outputs
+			// the structures and their paths.  Cells are immutable, so the writer can have them.
+			// assume here that our organisms are StructureOrgs
+			final List<Cell> cells = new ArrayList<Cell>();
+			final List<String> poscarPaths = new ArrayList<String>();
+			final List<String> findSymPaths = new ArrayList<String>();
 			for (Organism o : g) {
-				// assume here that our organisms are StructureOrgs
 				StructureOrg s = (StructureOrg)(o);
-				// save the structure
-				VaspIn.writePoscar(s.getCell(), makePOSCARPath(s), false);
-				// save the findsym output
-				File outFindSym = new File(makeFindSymPath(s));
-				GAUtils.writeStringToFile(s.getCell().getFSOOutput(), outFindSym, false);
+				cells.add(s.getCell());
+				poscarPaths.add(makePOSCARPath(s));
+				findSymPaths.add(makeFindSymPath(s));
 			}
 			
-			// write energy-sorted index (i.e. lowest to highest)
-			for (Organism o : g.getOrganismsSorted()) {
-				StructureOrg s = (StructureOrg) o;
-				StringBuilder info = new StringBuilder();
-				info.append(Integer.toString(s.getID()) + " ");
-				info.append(Double.toString(s.getValue()) + " ");
-				info.append(makePOSCARPath(s) + newline);
-				GAUtils.writeStringToFile(info.toString(), outFile, true);
-			}
+			// save structures and findsym outputs, then the index in one append
+			final boolean findsym = usingFindsym();
+			getWriter().submit(new Runnable() {
+				public void run() {
+					long writeStart = GAMetrics.metrics().startTimer();
+					for (int i = 0; i < cells.size(); i++) {
+						VaspIn.writePoscar(cells.get(i), poscarPaths.get(i), false);
+						// the findsym output (or our own symmetry info)
+						File outFindSym = new File(findSymPaths.get(i));
+						if (findsym)
+							GAUtils.writeStringToFile(cells.get(i).getFSOOutput(), outFindSym, false);
+						else
+							GAUtils.writeStringToFile(cells.get(i).getSymmetry().toString(), outFindSym, false);
+					}
+					GAUtils.writeStringToFile(index.toString(), outFile, true);
+					GAMetrics.metrics().stopTimer("write_output", writeStart);
+				}
+			});
 			
 			
 			// update the best density info
@@ -1033,16 +1362,27 @@ public class GAParameters implements Serializable {
 			
 			// update phase diagram stuff
 			if (params.doingPDRun()) {
+				long pdStart = GAMetrics.metrics().startTimer();
 				String pdbuilder_out_fname = outDirName + "/gen" + currentGenNum + ".pdb.tgz";
 				for (Organism o : g.organisms)
 					if (! params.getPDBuilder().containsEntry((StructureOrg)o))
 						params.getPDBuilder().addEntry((StructureOrg)o);
-				Utility.writeSerializable((params.getPDBuilder().getPDData()), pdbuilder_out_fname);
+				// the phase diagram keeps every organism for the rest of the run.  the
+				// ones which have just left the population only keep their structures
+				// compactly from here on.
+				if (currentGen != null)
+					for (Organism o : currentGen.organisms)
+						if (! g.contains(o))
+							((StructureOrg)o).compact();
+				getWriter().writeSerializable((params.getPDBuilder().getPDData()), pdbuilder_out_fname);
+				GAMetrics.metrics().stopTimer("pd_update", pdStart);
 			//	new TernPD3D(params.getPDBuilder().getPDData());
 			}
 			
-			if (verbosity >= 1)
+			if (verbosity >= 1) {
+				GAOut.out().flush();
 				System.out.println(getGenSummary(g));
+			}
 			
 			currentGenNum++;
 			currentGen = g;
@@ -1054,6 +1394,15 @@ public class GAParameters implements Serializable {
 				if (verbosity >= 3)
 					System.out.println("Wrote save file to "+ save_out_fname);
 			}
+			
+			if (params.getCheckpointLog() && !params.getDryRun()) {
+				if (checkpointLog == null)
+					checkpointLog = new CheckpointLog(new File(outDir, CheckpointLog.fileName));
+				checkpointLog.append(this);
+			}
+			
+			GAMetrics.metrics().stopTimer("finish_gen", start);
+			GAMetrics.metrics().write();
 		}
 		
 		double bestEnergy = 0;
@@ -1089,19 +1438,43 @@ public class GAParameters implements Serializable {
 			return currentGen;
 		}
 		
+		public void setCurrentGen(Generation g) {
+			currentGen = g;
+		}
+		
+		public void setCheckpointLog(CheckpointLog l) {
+			checkpointLog = l;
+		}
+		
 		public double getBestDensityEstimate() {
 			return bestDenEstimate;
 		}
 	
+		private OutputWriter getWriter() {
+			if (writer == null)
+				writer = new OutputWriter();
+			return writer;
+		}
+		
 		public void cleanup() {	
+			// finish writing the output
+			getWriter().flush();
+			GAMetrics.metrics().shutdown();
+			
 			if(!GAParameters.getParams().getKeepTempFiles()) {
 				// delete temporary files
 				if (tempDir != null && tempDir.exists())
 					try {
+						// (deleteDirectory() only empties it)
 						GAUtils.deleteDirectory(tempDir);
+						tempDir.delete();
 					} catch (IOException x) {
 						GAOut.out().stdout("Error deleting temp directory: " + x.getMessage(), GAOut.WARNING);
 					}
+				// under a scratch directory, the temp directory has a parent of its own
+				// for this run.  (delete() leaves it alone unless it's empty.)
+				if (tempDir != null && GAParameters.getParams().scratchDirName != null)
+					tempDir.getParentFile().delete();
 			}
 		}
 
@@ -36,6 +36,9 @@ public abstract class Generation implements Iterable<Organism>, Serializable {
 	// all the organisms
 	protected Vector<Organism> organisms;
 	
+	// the {bestValue, worstValue} the current fitnesses were normalized against
+	private double[] fitnessExtremes = null;
+	
 	protected Generation() {		
 		organisms = new Vector<Organism>();
 	}
@@ -167,17 +170,11 @@ public abstract class Generation implements Iterable<Organism>, Serializable {
 		}
 		
 		//Calculate the organisms' fitnesses by normalization relative to the best (1) and worst (0)
-		double[] extremes = getExtremeValues();
-		double bestValue = extremes[0];
-		double worstValue = extremes[1];
+		fitnessExtremes = getExtremeValues();
 		Iterator<Organism> j = iterator();
 		while (j.hasNext()) {
 			o = j.next();
-			// just in case:
-			if (bestValue == worstValue)
-				o.setFitness(1);
-			else
-				o.setFitness((o.getValue() - worstValue)/(bestValue - worstValue));
+			setFitnessFromExtremes(o);
 		}
 		
 		// some output
@@ -185,4 +182,32 @@ public abstract class Generation implements Iterable<Organism>, Serializable {
 			GAOut.out().stdout("Org " + i.getID() + "; value: " + i.getValue() + "; fitness: "+ i.getFitness(), GAOut.NOTICE, i.getID());
 
 	}
+	
+	// like findFitnesses(), but for when a few organisms have been added or removed 
+	// since fitnesses were last found.  the old organisms only need new fitnesses if 
+	// the best or worst value has changed.
+	public void updateFitnesses() {
+		if (organisms.size() < 1)
+			return;
+		
+		double[] extremes = getExtremeValues();
+		boolean extremesMoved = (fitnessExtremes == null || extremes[0] != fitnessExtremes[0]
+				|| extremes[1] != fitnessExtremes[1]);
+		fitnessExtremes = extremes;
+		
+		for (Organism o : organisms)
+			if (extremesMoved || !o.knowsFitness())
+				setFitnessFromExtremes(o);
+	}
+	
+	// normalization relative to the best (1) and worst (0)
+	private void setFitnessFromExtremes(Organism o) {
+		double bestValue = fitnessExtremes[0];
+		double worstValue = fitnessExtremes[1];
+		// just in case:
+		if (bestValue == worstValue)
+			o.setFitness(1);
+		else
+			o.setFitness((o.getValue() - worstValue)/(bestValue - worstValue));
+	}
 }
@@ -35,57 +35,18 @@ public class GenericEnergy implements Energy {
 	}
 	
 	// runs VASP on the input file given and returns the results in a String
-	private String runGeneric(String inputDir) {
-		StringBuilder output = new StringBuilder();
-
-		String s = null;
+	private String runGeneric(String inputDir, ProcessRunner.OutputHandler watchdog) {
+		String output = "";
 		try {
 			//  we call a wrapper script which is probably
 			// just, e.g.,  "cd $1; vasp" for simple set ups
-			Process p = Runtime.getRuntime().exec("callgeneric " + inputDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			try {
-				// read the output
-				while ((s = stdInput.readLine()) != null) {
-					output.append(s + GAUtils.newline());
-					GAOut.out().stdout(s, GAOut.DEBUG);
-				}
-	
-				// print out any errors
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
-				}
-			} finally {
-				stdInput.close();
-				stdError.close();
-		    	  try {
-		    		  p.getErrorStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-		    	  try {
-		    		  p.getOutputStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-		    	  try {
-		    		  p.getInputStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-			}
-
+			output = ProcessRunner.run("callgeneric " + inputDir, null, null, watchdog);
 		} catch (IOException e) {
 			System.out.println("IOException in GenericEnergy.runGeneric: " + e.getMessage());
 			System.exit(-1);
 		}
 
-		return output.toString();
+		return output;
 	}
 	
 	private double genericRun(StructureOrg o) {
@@ -103,10 +64,13 @@ public class GenericEnergy implements Energy {
 		VaspIn vaspin = new VaspIn(o.getCell(), null, null, null);
 		vaspin.makePOSCAR(outDir.getAbsolutePath() + "/");
 	
-		// run 
-		String output = runGeneric(outDir.getAbsolutePath());
+		// run.  the output is assumed to look like VASP's.
+		EnergyWatchdog watchdog = EnergyWatchdog.make(o, EnergyWatchdog.vaspParser);
+		String output = runGeneric(outDir.getAbsolutePath(), watchdog);
 		
 		GAOut.out().stdout(output, GAOut.DEBUG, o.getID());
+		if (watchdog != null && watchdog.aborted())
+			return Double.POSITIVE_INFINITY;
 
 		// store the relaxed structure back into o
 		Cell newCell = VaspOut.getPOSCAR(outDir.getAbsolutePath() + "/CONTCAR");
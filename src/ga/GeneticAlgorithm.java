@@ -38,17 +38,29 @@ public class GeneticAlgorithm {
 	public static Organism doGeneticAlgorithm() {
 		GAParameters params = GAParameters.getParams();
 		
+		params.getRecord().startMetrics();
+		GAMetrics metrics = GAMetrics.metrics();
+		
 		// Create the objects for the algorithms
 		Selection sel = params.getSelection();
-		Development dev = params.getDevelopment();
 		Promotion pro = params.getPromotion();
 		
 		// Create the initial population 
 		Generation parents = null;  
-		Generation offspring = params.getRecord().getCurrentGen();		
+		Generation offspring = params.getRecord().getCurrentGen();
+		
+		// runs the energy calculations in the background
+		EvaluationScheduler sched = params.makeEvaluationScheduler();
+		// makes the offspring, on several threads if we're doing that
+		OffspringProducer producer = new OffspringProducer(params.getNumVariationThreads(), params.makeSurrogateScreen());
+		// trades organisms w/ the other islands, if we're doing that
+		IslandModel islands = params.makeIslandModel();
+		// the value of ObjectiveFunction.getNumCalculations() when each organism was made,
+		// for the Hartke output
+		Map<Organism,Integer> calcNums = new HashMap<Organism,Integer>();
 		
-		// the main algorithm loop:
-		while (!converged(offspring)) {
+		// the main algorithm loop (which also stops, w/ the usual cleanup, if we're interrupted):
+		while (!converged(offspring) && !Thread.currentThread().isInterrupted()) {
 			// the wheel of life turns
 			parents = offspring;
 			offspring = GAParameters.getParams().makeEmptyGeneration();
@@ -56,77 +68,136 @@ public class GeneticAlgorithm {
 			// do promotions (except for the first generation)
 			if (params.getRecord().getGenNum() != 0)
 				pro.doPromotion(parents, offspring);
+			if (islands != null)
+				islands.migrate(parents, offspring);
 			
 			// make the offspring generation
-			while (!madeEnough(offspring)) {
-				List<Pair<Organism, Integer>> organisms = new ArrayList<Pair<Organism,Integer>>();	
-				List<Thread> threads = new ArrayList<Thread>();
-				
-				for (int i = 0; i < params.getNumCalcsInParallel(); i++) {
-					// make a new organism
-					Organism newOrg = getNewOrg(parents, offspring, sel);
-					if (newOrg == null)
-						continue;
-					organisms.add(new Pair<Organism,Integer>(newOrg, 1 + ObjectiveFunction.getNumCalculations()));
-					
-					// some status info
-					GAOut.out().stdout(newOrg.toString(), GAOut.DEBUG, newOrg.getID());
-					
-					// start the energy computation
-					if (!newOrg.knowsValue())
-						threads.add(params.getObjectiveFunctionInstance(newOrg).evaluate());
-				}
-				
-				// wait for the energy computations
-				try {
-					for (Thread t : threads)
-						if (t != null)
-							t.join();
-				
-				} catch (InterruptedException x) {
-					GAOut.out().stdout("InterruptedException in energy calc thread: " + x.getMessage(), GAOut.WARNING);
-				}
-				// re-develop each of the organisms and possibly add it to the offspring generation
-				for (Pair<Organism,Integer> o : organisms) {
-					StructureOrg s = (StructureOrg)o.getFirst();
-					if (dev != null && !dev.doDevelop(offspring, s)) {
-						s.setSOCreator(null);
-					} else {
-						GAOut.out().stdout("Adding organism " + s.getID() + " to generation " + params.getRecord().getGenNum() + ".", GAOut.NOTICE, s.getID());
-	
-						offspring.addOrganism(s);
-						// if it was in the first gen, mark its creator as having successfully created
-						StructureOrgCreator soc;
-						if ((soc = s.getSOCreator()) != null) {
-							decrementSOCUsageCount(soc);
-							// get rid of the references to SoC's once theyre no longer needed so we dont serialize them
-							s.setSOCreator(null);
-						}		
-					}
-					// write Hartke output if required
-					if (GAParameters.getParams().getWriteHartkeFile()) {
-						String hLine = s.getID() + " " + o.getSecond() + " " 
-									   + s.getTotalEnergy() + " " + (s.knowsValue()?s.getValue():"infinity") 
-									   + " " + offspring.contains(s) + "\n";
-						Utility.writeStringToFile(hLine, GAParameters.getParams().getHartkeOutFile(), true);
-					}
-					
-				}
-			}
+			long start = metrics.startTimer();
+			fillGeneration(parents, offspring, sel, sched, calcNums, producer);
+			metrics.stopTimer("fill_generation", start);
 			
 			// find the organisms' fitnesses
 			GAOut.out().stdout("Starting fitness evaluations...", GAOut.WARNING);
 
+			start = metrics.startTimer();
 			offspring.findFitnesses();
+			metrics.stopTimer("find_fitnesses", start);
 			
 			// prints and saves status/progress info and whatnot
 			GAParameters.getParams().getRecord().finishGen(offspring);
 		}
+		sched.shutdown();
+		producer.shutdown();
+		if (islands != null)
+			islands.shutdown();
 		GAParameters.getParams().getRecord().cleanup();
 		
 		return offspring.getNthBestOrganism(1);
 	}
 	
+	// makes organisms and evaluates them on sched until the offspring generation is big enough.
+	// if producer isn't null, it makes the offspring (but not the initial population), and
+	// hears about all the organisms we evaluate.
+	static void fillGeneration(Generation parents, Generation offspring, Selection sel, 
+			EvaluationScheduler sched, Map<Organism,Integer> calcNums, OffspringProducer producer) {
+		// the initial population isn't made by the producer
+		OffspringProducer maker = producer;
+		if (GAParameters.getParams().getRecord().getGenNum() == 0)
+			maker = null;
+		if (maker != null)
+			maker.startGeneration(parents, offspring, sel);
+		
+		while (!madeEnough(offspring)) {
+			// keep numCalcsInParallel energy computations going
+			while (sched.getNumInFlight() < GAParameters.getParams().getNumCalcsInParallel() && wantMore(offspring, sched)) {
+				// make a new organism
+				Organism newOrg;
+				if (maker != null)
+					newOrg = maker.next();
+				else
+					newOrg = getNewOrg(parents, offspring, sel);
+				if (newOrg == null)
+					break;
+				submitOrg(newOrg, sched, calcNums);
+			}
+			
+			// wait for the next energy computation to finish
+			Organism o = sched.take();
+			if (o == null)
+				break;
+			if (producer != null)
+				producer.evaluated(o);
+			try {
+				addToGeneration(o, offspring, calcNums.get(o));
+			} finally {
+				calcNums.remove(o);
+			}
+		}
+		
+		// don't leave any of this generation's organisms behind
+		Organism o;
+		while ((o = sched.take()) != null) {
+			if (producer != null)
+				producer.evaluated(o);
+			try {
+				addToGeneration(o, offspring, calcNums.get(o));
+			} finally {
+				calcNums.remove(o);
+			}
+		}
+		
+		if (maker != null)
+			maker.finishGeneration();
+	}
+	
+	// starts the energy computation of a new organism
+	static void submitOrg(Organism newOrg, EvaluationScheduler sched, Map<Organism,Integer> calcNums) {
+		GAParameters params = GAParameters.getParams();
+		
+		calcNums.put(newOrg, 1 + ObjectiveFunction.getNumCalculations());
+		
+		// some status info
+		if (GAOut.out().isLogging(GAOut.DEBUG))
+			GAOut.out().stdout(newOrg.toString(), GAOut.DEBUG, newOrg.getID());
+		
+		if (newOrg.knowsValue())
+			sched.submit(newOrg, null);
+		else
+			sched.submit(newOrg, params.getObjectiveFunctionInstance(newOrg));
+	}
+	
+	// re-develop an evaluated organism and possibly add it to the offspring generation.
+	// returns true if it was added.
+	static boolean addToGeneration(Organism o, Generation offspring, Integer calcNum) {
+		GAParameters params = GAParameters.getParams();
+		Development dev = params.getDevelopment();
+		
+		StructureOrg s = (StructureOrg)o;
+		if (dev != null && !dev.doDevelop(offspring, s)) {
+			s.setSOCreator(null);
+		} else {
+			GAOut.out().stdout("Adding organism " + s.getID() + " to generation " + params.getRecord().getGenNum() + ".", GAOut.NOTICE, s.getID());
+
+			offspring.addOrganism(s);
+			// if it was in the first gen, mark its creator as having successfully created
+			StructureOrgCreator soc;
+			if ((soc = s.getSOCreator()) != null) {
+				decrementSOCUsageCount(soc);
+				// get rid of the references to SoC's once theyre no longer needed so we dont serialize them
+				s.setSOCreator(null);
+			}		
+		}
+		// write Hartke output if required
+		if (params.getWriteHartkeFile()) {
+			String hLine = s.getID() + " " + calcNum + " " 
+						   + s.getTotalEnergy() + " " + (s.knowsValue()?s.getValue():"infinity") 
+						   + " " + offspring.contains(s) + "\n";
+			Utility.writeStringToFile(hLine, params.getHartkeOutFile(), true);
+		}
+		
+		return offspring.contains(s);
+	}
+	
 	private static void decrementSOCUsageCount(StructureOrgCreator soc) {
 		List<Pair<StructureOrgCreator,Integer>> ioc = GAParameters.getParams().getInitialOrgCreators();
 		for (int i = 0; i < ioc.size(); i++) {
@@ -212,7 +283,7 @@ public class GeneticAlgorithm {
 		return newOrg;
 	}
 	
-	private static Organism makeOffspringOrg(Generation parents, Generation offspring, Selection sel) {
+	static Organism makeOffspringOrg(Generation parents, Generation offspring, Selection sel) {
 		GAParameters params = GAParameters.getParams();
 		Vector<Variation> vars = params.getVariations();
 		Development dev = params.getDevelopment();
@@ -235,14 +306,30 @@ public class GeneticAlgorithm {
 		do { // some output
 			GAOut.out().stdout("Starting variation " + v + " (done " + offspring.getNumOrganisms()
 					+ " of " + params.getPopSize() + ").", GAOut.WARNING);
-			newOrg = v.doVariation(parents, offspring, sel);
+			newOrg = doVariation(v, parents, offspring, sel);
 			if (newOrg == null) // if the chosen variation can't make a child, try another variation
 				return makeOffspringOrg(parents, offspring, sel);
 		} while (dev != null && !dev.doDevelop(offspring, newOrg));
 		
+		GAMetrics.metrics().count("variation_accepted", GAMetrics.getKind(v));
 		return newOrg;
 	}
 	
+	// runs v, keeping track of the time it takes and whether it made anything for GAMetrics
+	static Organism doVariation(Variation v, Generation parents, Generation offspring, Selection sel) {
+		GAMetrics metrics = GAMetrics.metrics();
+		String kind = GAMetrics.getKind(v);
+		
+		metrics.count("variation_tries", kind);
+		long start = metrics.startTimer();
+		Organism result = v.doVariation(parents, offspring, sel);
+		metrics.stopTimer("variation", kind, start);
+		if (result == null)
+			metrics.count("variation_failures", kind);
+		
+		return result;
+	}
+	
 	private static Boolean madeEnough(Generation offspring) {
 		GAParameters params = GAParameters.getParams();
 		// the 0th generation is special
@@ -263,6 +350,15 @@ public class GeneticAlgorithm {
 		}
 	}
 	
+	// whether it's worth starting more energy calculations for the offspring generation, 
+	// given the ones already running.  we don't cap the 0th generation since its size
+	// is set by the StructureOrgCreators.
+	private static boolean wantMore(Generation offspring, EvaluationScheduler sched) {
+		if (GAParameters.getParams().getRecord().getGenNum() == 0)
+			return true;
+		return offspring.getNumOrganisms() + sched.getNumInFlight() < GAParameters.getParams().getPopSize();
+	}
+	
 	public static Boolean converged(Generation currentGen) {
 		if(currentGen == null)
 			return false;
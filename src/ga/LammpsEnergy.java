@@ -194,46 +194,16 @@ Atoms
 
 	// runs Lammps on the input file given and returns the results in a String
 	private static String runLAMMPS(String runDir) {
-		StringBuilder lammpsOutput = new StringBuilder();
-
-		String s = null;
+		String lammpsOutput = "";
 		try {
-			// run the gulp command. GULP will only take input from it's stdin,
-			// not from a file. in order to avoid having
-			// to open inputFile and feed it to GULP, we use a wrapper script,
-			// callgulp, which basically is just gulp <$1 .
-			Process p = Runtime.getRuntime().exec("calllammps " + runDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			try {
-				// read the output
-				while ((s = stdInput.readLine()) != null) {
-					lammpsOutput.append(s + GAUtils.newline());
-					GAOut.out().stdout(s, GAOut.DEBUG);
-				}
-	
-				// print out any errors
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
-				}
-			} finally {
-				stdInput.close();
-				stdError.close();
-			    p.getOutputStream().close();
-			    p.getInputStream().close();
-			    p.getErrorStream().close();
-			}
-
+			// we use a wrapper script, which is probably just "cd $1; lammps ..."
+			lammpsOutput = ProcessRunner.run("calllammps " + runDir);
 		} catch (IOException e) {
 			System.out.println("IOException in LammpsEnergy.runLammps: " + e.getMessage());
 			System.exit(-1);
-		} 
+		}
 
-		return lammpsOutput.toString();
+		return lammpsOutput;
 	}
 
 	// Does a Lammps run on the StructureOrg c. 
@@ -21,6 +21,9 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
 
 package ga;
 
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Future;
+
 // ObjectiveFunction is an abstract class which specifies the interface to
 // function we want to minimize.
 
@@ -28,8 +31,37 @@ public abstract class ObjectiveFunction implements Runnable {
 	
 	protected static int numCalculations = 0;
 	
+	// does any checks and bookkeeping needed before the calculation is run, and
+	// returns false if the calculation can be skipped (e.g. the value is already known).
 	// remember to update numCalculations when implementing this
-	public abstract Thread evaluate();
+	protected abstract boolean prepareEvaluation();
+	
+	// starts the calculation on a new Thread and returns it, or null if there
+	// was nothing to compute
+	public Thread evaluate() {
+		if (!prepareEvaluation())
+			return null;
+		
+		Thread t = new Thread(this);
+		t.start();
+		return t;
+	}
+	
+	// starts the calculation on one of cs's threads instead of on a new Thread.
+	// the result of the returned Future is o.  returns null if there was nothing to compute.
+	public <T> Future<T> evaluate(CompletionService<T> cs, T o) {
+		if (!prepareEvaluation())
+			return null;
+		
+		return cs.submit(this, o);
+	}
+	
+	// does the calculation in the calling thread.  useful for ObjectiveFunctions
+	// which wrap other ObjectiveFunctions.
+	public void evaluateAndWait() {
+		if (prepareEvaluation())
+			run();
+	}
 	
 	public static int getNumCalculations() {
 		return numCalculations;
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import utility.SplitRandom;
+
+// OffspringProducer makes offspring for the generational GA, possibly on a pool of worker
+// threads.  Each offspring is made by a task which chooses a variation and applies it until
+// it makes an organism that passes Development.satisfiesConstraints(), just like
+// GeneticAlgorithm.makeOffspringOrg().  We keep a few more tasks going than there are
+// threads, and next() hands out their results in the order the tasks were started, after
+// running the population checks (Development.checkPopulation()) and giving out IDs on
+// the calling thread.  Like makeOffspringOrg(), we count a variation as accepted only once
+// its organism has passed both halves of the development.  With fewer than two threads, the tasks just run on the calling
+// thread when their results are needed.  If we have a SurrogateScreen which is ready, we
+// make its numMade candidates at a time and only hand out the best numKept of them.
+//
+// Each task gets its own random stream (see GAParameters.getRandom()), keyed by the
+// offspring's place in the generation and the number of times we've tried to fill that
+// place, under a seed drawn from the main Random once per generation.  Each variation the
+// task tries gets a stream split off from the task's.  So a run depends only on its seed,
+// not on the number of threads or how they're scheduled, and since the main Random is
+// saved with the rest of the state, a resumed run continues with the same streams.  The
+// variations and Selection must get their Random from GAParameters.getRandom() each time
+// and not keep any state of their own between calls.
+
+public class OffspringProducer {
+	
+	// tasks kept going per thread
+	private static final int tasksPerThread = 2;
+	
+	private ExecutorService pool;
+	private int numThreads;
+	
+	// the tasks, in the order their results should be used
+	private LinkedList<Task> pending;
+	
+	// picks the offspring worth calculating the energies of, if we're doing that, and
+	// the ones it picked which we haven't handed out yet
+	private SurrogateScreen screen;
+	private LinkedList<Organism> screened = new LinkedList<Organism>();
+	
+	// the current generation
+	private Generation parents;
+	private Generation offspring;
+	private Selection sel;
+	private long genSeed;
+	// the number of offspring places we've started tasks for
+	private int numPlaces;
+	
+	private class Task {
+		int place;
+		int attempt;
+		// the variation the task is restricted to, or -1 if it chooses
+		int varNum;
+		FutureTask<Organism> future;
+		Organism result;
+	}
+	
+	public OffspringProducer(int _numThreads, SurrogateScreen _screen) {
+		numThreads = Math.max(1, _numThreads);
+		screen = _screen;
+		if (numThreads > 1)
+			pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "offspring");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		pending = new LinkedList<Task>();
+	}
+	
+	public String toString() {
+		return "OffspringProducer. numThreads = " + numThreads + ", pending = " + pending.size();
+	}
+	
+	// start making offspring from parents.  offspring is the generation they're for.
+	public void startGeneration(Generation _parents, Generation _offspring, Selection _sel) {
+		finishGeneration();
+		parents = _parents;
+		offspring = _offspring;
+		sel = _sel;
+		genSeed = GAParameters.getParams().getRandom().nextLong();
+		numPlaces = 0;
+		
+		// the parents have all been evaluated.  this is how the screen learns about the
+		// initial population, or the one we resumed from.
+		if (screen != null) {
+			for (Organism o : parents)
+				screen.addResult(o);
+			GAOut.out().stdout(screen.getReport(), GAOut.NOTICE);
+		}
+	}
+	
+	// drop any offspring made but not used.  (the caller has gotten back all the ones
+	// it's going to from the energy calculations.)
+	public void finishGeneration() {
+		for (Task t : pending)
+			t.future.cancel(true);
+		pending.clear();
+		screened.clear();
+		if (screen != null)
+			screen.forgetUnevaluated();
+	}
+	
+	public void shutdown() {
+		finishGeneration();
+		if (pool != null)
+			pool.shutdownNow();
+	}
+	
+	// returns the next offspring organism, which has passed the whole Development, or
+	// null if the calling thread has been interrupted (the GA is stopping)
+	public Organism next() {
+		if (screen != null && screen.ready()) {
+			while (screened.isEmpty()) {
+				if (Thread.currentThread().isInterrupted())
+					return null;
+				screenBatch();
+			}
+			return screened.removeFirst();
+		}
+		
+		GAParameters params = GAParameters.getParams();
+		Development dev = params.getDevelopment();
+		
+		while (true) {
+			Task t = nextTask();
+			if (Thread.currentThread().isInterrupted())
+				return null;
+			Organism o = t.result;
+			if (o != null) {
+				o.setID(params.getNewOrgID());
+				if (dev == null || dev.checkPopulation(offspring, o)) {
+					countAccepted(t);
+					return o;
+				}
+			}
+			
+			// like makeOffspringOrg(), make sure we eventually use an organism from the same
+			// variation, so we don't short variations which tend to make duplicates.  the
+			// retry takes the place of the failed task, so the order the offspring come out 
+			// in doesn't depend on how many tasks we keep going.
+			pending.addFirst(startTask(t.place, t.attempt + 1, (o == null) ? -1 : t.varNum));
+		}
+	}
+	
+	// an organism whose energy we've calculated, for the screen to learn from
+	public void evaluated(Organism o) {
+		if (screen != null)
+			screen.addResult(o);
+	}
+	
+	// makes the screen's numMade candidates and queues up the numKept of them it likes best
+	// which pass the population checks.  the rest are dropped.  gives up (queueing nothing)
+	// if the calling thread is interrupted.
+	private void screenBatch() {
+		GAParameters params = GAParameters.getParams();
+		Development dev = params.getDevelopment();
+		
+		List<Organism> candidates = new ArrayList<Organism>();
+		Map<Organism,Task> tasks = new IdentityHashMap<Organism,Task>();
+		while (candidates.size() < screen.getNumMade()) {
+			Task t = nextTask();
+			if (Thread.currentThread().isInterrupted())
+				return;
+			if (t.result != null) {
+				candidates.add(t.result);
+				tasks.put(t.result, t);
+			} else
+				pending.addFirst(startTask(t.place, t.attempt + 1, -1));
+		}
+		
+		for (Organism o : screen.rank(candidates)) {
+			if (screened.size() >= screen.getNumKept())
+				break;
+			o.setID(params.getNewOrgID());
+			if (dev == null || dev.checkPopulation(offspring, o)) {
+				countAccepted(tasks.get(o));
+				screen.kept(o);
+				screened.add(o);
+			}
+		}
+	}
+	
+	// t's organism passed the population checks too
+	private void countAccepted(Task t) {
+		Variation v = GAParameters.getParams().getVariations().get(t.varNum);
+		GAMetrics.metrics().count("variation_accepted", GAMetrics.getKind(v));
+	}
+	
+	// waits for the result of the first pending task, keeping enough others going.  if
+	// we're interrupted, the task's result is null and the interrupt flag stays set.
+	private Task nextTask() {
+		int numWanted = (pool == null) ? 1 : tasksPerThread * numThreads;
+		while (pending.size() < numWanted)
+			pending.add(startTask(numPlaces++, 0, -1));
+		
+		Task t = pending.removeFirst();
+		try {
+			if (pool == null)
+				t.future.run();
+			t.result = t.future.get();
+		} catch (InterruptedException x) {
+			GAOut.out().stdout("Interrupted while making offspring.", GAOut.WARNING);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException x) {
+			// the variation or development threw, which would've stopped the serial GA too
+			throw new RuntimeException("Exception while making offspring", x.getCause());
+		}
+		return t;
+	}
+	
+	private Task startTask(int place, int attempt, int varNum) {
+		final Task t = new Task();
+		t.place = place;
+		t.attempt = attempt;
+		t.varNum = varNum;
+		
+		final SplitRandom rand = SplitRandom.forKeys(genSeed, place, attempt);
+		final Generation taskParents = parents;
+		final Generation taskOffspring = offspring;
+		final Selection taskSel = sel;
+		
+		t.future = new FutureTask<Organism>(new Callable<Organism>() {
+			public Organism call() {
+				// next() and screenBatch() give out the IDs
+				GAParameters.setDeferOrgIDs(true);
+				try {
+					return makeOffspringOrg(taskParents, taskOffspring, taskSel, t, rand);
+				} finally {
+					GAParameters.setWorkerRandom(null);
+					GAParameters.setDeferOrgIDs(false);
+				}
+			}
+		});
+		if (pool != null)
+			pool.execute(t.future);
+		
+		return t;
+	}
+	
+	// see GeneticAlgorithm.makeOffspringOrg().  sets t.varNum to the variation used.
+	private static Organism makeOffspringOrg(Generation parents, Generation offspring, Selection sel,
+			Task t, SplitRandom rand) {
+		GAParameters params = GAParameters.getParams();
+		Vector<Variation> vars = params.getVariations();
+		Development dev = params.getDevelopment();
+		
+		int varNum = t.varNum;
+		while (true) {
+			// pick a variation, v, according to inputted probabilities
+			if (varNum < 0) {
+				do {
+					varNum = rand.nextInt(vars.size());
+				} while (rand.nextDouble() > params.getVarProb(varNum));
+			}
+			Variation v = vars.get(varNum);
+			t.varNum = varNum;
+			
+			// the variation (and the Selection it uses) gets its own stream
+			GAParameters.setWorkerRandom(rand.split());
+			Organism newOrg;
+			do {
+				if (Thread.currentThread().isInterrupted())
+					return null;
+				GAOut.out().stdout("Starting variation " + v + ".", GAOut.INFO);
+				newOrg = GeneticAlgorithm.doVariation(v, parents, offspring, sel);
+			} while (newOrg != null && dev != null && !dev.satisfiesConstraints(newOrg));
+			
+			if (newOrg != null)
+				return newOrg;
+			
+			// if the chosen variation can't make a child, try another variation
+			varNum = -1;
+		}
+	}
+}
@@ -175,38 +175,16 @@ public class OhmmsEnergy implements Energy {
 
 	// runs OHMMS on the input file given and returns the results in a String
 	private static String runOHMMS(String runDir) {
-		StringBuilder ohmmsOutput = new StringBuilder();
-
-		String s = null;
+		String ohmmsOutput = "";
 		try {
-			// run the gulp command. GULP will only take input from it's stdin,
-			// not from a file. in order to avoid having
-			// to open inputFile and feed it to GULP, we use a wrapper script,
-			// callgulp, which basically is just gulp <$1 .
-			Process p = Runtime.getRuntime().exec("callohmms " + runDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			// read the output
-			while ((s = stdInput.readLine()) != null) {
-				ohmmsOutput.append(s + GAUtils.newline());
-				GAOut.out().stdout(s, GAOut.DEBUG);
-			}
-
-			// print out any errors
-			while ((s = stdError.readLine()) != null) {
-				System.out.println(s);
-			}
-
+			// we use a wrapper script, which is probably just "cd $1; qmcapp ..."
+			ohmmsOutput = ProcessRunner.run("callohmms " + runDir);
 		} catch (IOException e) {
 			System.out.println("IOException in OhmmsEnergy.runOhmms: " + e.getMessage());
 			System.exit(-1);
 		}
 
-		return ohmmsOutput.toString();
+		return ohmmsOutput;
 	}
 
 	// Does a OHMMS run on the StructureOrg c. 
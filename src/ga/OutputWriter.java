@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+// OutputWriter runs batches of output-writing jobs (e.g. all of a generation's POSCARs
+// and index lines) in order on a background thread, so the algorithm can get on with the
+// next generation while they go to disk.  At most maxQueuedBatches batches wait at once;
+// submit() blocks beyond that, so a slow disk can't make us queue up unbounded output.
+//
+// flush() waits for everything submitted so far.  GARecord.cleanup() calls it, and so
+// does a shutdown hook, so output isn't lost when we exit (even through System.exit()).
+
+public class OutputWriter {
+	
+	private static final int maxQueuedBatches = 4;
+	
+	private BlockingQueue<Runnable> queue;
+	private Thread thread;
+	
+	public OutputWriter() {
+		queue = new ArrayBlockingQueue<Runnable>(maxQueuedBatches);
+		thread = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					Runnable batch = null;
+					try {
+						batch = queue.take();
+					} catch (InterruptedException x) {
+						continue;
+					}
+					try {
+						batch.run();
+					} catch (RuntimeException x) {
+						GAOut.out().stdout("Exception while writing output: " + x, GAOut.WARNING);
+					}
+				}
+			}
+		}, "output-writer");
+		// the shutdown hook finishes our work, so don't keep the JVM alive otherwise
+		thread.setDaemon(true);
+		thread.start();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, "output-writer-flush"));
+	}
+	
+	public String toString() {
+		return "OutputWriter. queued batches: " + queue.size();
+	}
+	
+	// runs batch on the writer thread after everything submitted before it.  output
+	// isn't dropped if we're interrupted: we keep trying and set the interrupt flag
+	// again once it's queued.
+	public void submit(Runnable batch) {
+		// e.g. a batch which itself wants to write something
+		if (Thread.currentThread() == thread) {
+			batch.run();
+			return;
+		}
+		
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					queue.put(batch);
+					return;
+				} catch (InterruptedException x) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	// like Utility.writeSerializable(), but only the serialization happens now, so that 
+	// we write a snapshot of s even if it changes before the file gets written
+	public void writeSerializable(Serializable s, final String fName) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(s);
+			oos.close();
+		} catch (IOException x) {
+			GAOut.out().stdout("IOException in OutputWriter.writeSerializable: " + x.getMessage(), GAOut.WARNING);
+			return;
+		}
+		
+		submit(new Runnable() {
+			public void run() {
+				GZIPOutputStream gz = null;
+				try {
+					gz = new GZIPOutputStream(new FileOutputStream(fName));
+					bytes.writeTo(gz);
+				} catch (IOException x) {
+					GAOut.out().stdout("IOException in OutputWriter.writeSerializable: " + x.getMessage(), GAOut.WARNING);
+				} finally {
+					if (gz != null)
+						try { gz.close(); } catch (IOException x) { } // ignore
+				}
+			}
+		});
+	}
+	
+	// waits until everything submitted so far has been written.  like submit(), keeps
+	// waiting if we're interrupted and sets the flag again afterwards.
+	public void flush() {
+		if (Thread.currentThread() == thread)
+			return;
+		
+		final CountDownLatch done = new CountDownLatch(1);
+		submit(new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		boolean interrupted = false;
+		while (done.getCount() > 0) {
+			try {
+				done.await();
+			} catch (InterruptedException x) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Jama.Matrix;
+
+import chemistry.Element;
+
+import crystallography.Cell;
+import crystallography.Site;
+
+// PairDescriptorModel is a cheap SurrogateScreen.Model.  We describe a structure by its
+// composition and, for each pair of species, a smoothed histogram of the distances between
+// atoms of those species out to a cutoff (per atom), and fit the energy per atom as a linear
+// function of that by ridge regression.  It's refit from all the data whenever it's asked
+// for a prediction after learning something new, which is cheap: there are only a few dozen
+// features.  It's no substitute for the real thing, but is often good enough to tell the
+// hopeless candidates from the promising ones.
+//
+// args: [cutoff (Angstroms, default 6)] [bin width (Angstroms, default 0.5)]
+
+public class PairDescriptorModel implements SurrogateScreen.Model {
+
+	// don't predict anything until we've seen this many structures
+	private static final int minEntries = 10;
+	// ridge penalty, relative to the mean diagonal of X^T X
+	private static final double ridge = 1e-3;
+	// how far past the training data a descriptor can go before we won't predict for it
+	private static final double slack = 0.05;
+
+	private double cutoff = 6.0;
+	private double binWidth = 0.5;
+	private int numBins;
+
+	private Map<Element,Integer> elemIndexes = new HashMap<Element,Integer>();
+	private int numElems;
+	private int numFeatures;
+
+	private List<double[]> descriptors = new ArrayList<double[]>();
+	private List<Double> energies = new ArrayList<Double>();
+	// the largest value of each feature in the training data
+	private double[] featureMax;
+	private double[] weights = null;
+	private boolean needsFit = false;
+
+	public PairDescriptorModel(List<String> args) {
+		if (args.size() >= 1)
+			cutoff = Double.parseDouble(args.get(0));
+		if (args.size() >= 2)
+			binWidth = Double.parseDouble(args.get(1));
+		numBins = (int)Math.ceil(cutoff / binWidth);
+
+		List<Element> elems = GAParameters.getParams().getCompSpace().getElements();
+		for (Element e : elems)
+			elemIndexes.put(e, elemIndexes.size());
+		numElems = elems.size();
+		numFeatures = numElems + numElems * numElems * numBins;
+		featureMax = new double[numFeatures];
+	}
+
+	public String toString() {
+		return "pairs (cutoff " + cutoff + ", bin width " + binWidth + ", " + descriptors.size() + " entries)";
+	}
+
+	public void addEntry(StructureOrg o) {
+		double[] d = getDescriptor(o.getCell());
+		for (int i = 0; i < numFeatures; i++)
+			featureMax[i] = Math.max(featureMax[i], d[i]);
+		descriptors.add(d);
+		energies.add(o.getEnergyPerAtom());
+		needsFit = true;
+	}
+
+	public boolean isReady() {
+		return descriptors.size() >= minEntries;
+	}
+
+	// NaN if o looks too unlike anything we've seen, e.g. has atoms closer together than
+	// in any of the training structures.  linear models extrapolate badly, and the GA's
+	// unrelaxed offspring are often just that sort of thing.
+	public double predictEnergyPerAtom(StructureOrg o) {
+		if (needsFit)
+			fit();
+		if (weights == null)
+			return Double.NaN;
+
+		double[] d = getDescriptor(o.getCell());
+		double result = 0;
+		for (int i = 0; i < numFeatures; i++) {
+			if (d[i] > featureMax[i] * (1 + slack) + slack)
+				return Double.NaN;
+			result += weights[i] * d[i];
+		}
+		return result;
+	}
+
+	// solves (X^T X + lambda I) w = X^T y
+	private void fit() {
+		needsFit = false;
+		if (!isReady())
+			return;
+
+		// we only need to get the order of the good structures right, and the awful ones
+		// (atoms on top of each other, etc.) would swamp a least squares fit, so we pretend
+		// anything above the median is at the median
+		List<Double> sorted = new ArrayList<Double>(energies);
+		Collections.sort(sorted);
+		double cap = sorted.get(sorted.size() / 2);
+
+		double[][] xtx = new double[numFeatures][numFeatures];
+		double[][] xty = new double[numFeatures][1];
+		for (int n = 0; n < descriptors.size(); n++) {
+			double[] d = descriptors.get(n);
+			double e = Math.min(cap, energies.get(n));
+			for (int i = 0; i < numFeatures; i++) {
+				if (d[i] == 0)
+					continue;
+				xty[i][0] += d[i] * e;
+				for (int j = 0; j < numFeatures; j++)
+					xtx[i][j] += d[i] * d[j];
+			}
+		}
+		double trace = 0;
+		for (int i = 0; i < numFeatures; i++)
+			trace += xtx[i][i];
+		double lambda = ridge * trace / numFeatures + 1e-10;
+		for (int i = 0; i < numFeatures; i++)
+			xtx[i][i] += lambda;
+
+		try {
+			Matrix w = new Matrix(xtx).solve(new Matrix(xty));
+			double[] newWeights = new double[numFeatures];
+			for (int i = 0; i < numFeatures; i++)
+				newWeights[i] = w.get(i, 0);
+			weights = newWeights;
+		} catch (RuntimeException x) {
+			GAOut.out().stdout("Warning: PairDescriptorModel fit failed: " + x.getMessage(), GAOut.WARNING);
+		}
+	}
+
+	// composition fractions, then a histogram per (ordered) pair of species.  each distance
+	// is spread over the nearby bins w/ a gaussian, and damped smoothly to zero at the cutoff.
+	private double[] getDescriptor(Cell c) {
+		double[] result = new double[numFeatures];
+		int numSites = c.getNumSites();
+		if (numSites == 0)
+			return result;
+
+		double sigma = binWidth / 2;
+		for (Site s : c.getSites()) {
+			Integer a = elemIndexes.get(s.getElement());
+			if (a == null)
+				continue;
+			result[a] += 1.0 / numSites;
+			for (Site n : c.getAtomsInSphereSorted(s.getCoords(), cutoff, true)) {
+				Integer b = elemIndexes.get(n.getElement());
+				double r = s.getCoords().getCartDistanceTo(n.getCoords());
+				if (b == null || r < 1e-6)
+					continue;
+				double damp = 0.5 * (Math.cos(Math.PI * r / cutoff) + 1) / numSites;
+				int offset = numElems + (a * numElems + b) * numBins;
+				int nearest = (int)(r / binWidth);
+				for (int k = Math.max(0, nearest - 2); k <= Math.min(numBins - 1, nearest + 2); k++) {
+					double dr = r - (k + 0.5) * binWidth;
+					result[offset + k] += damp * Math.exp(-dr * dr / (2 * sigma * sigma));
+				}
+			}
+		}
+		return result;
+	}
+}
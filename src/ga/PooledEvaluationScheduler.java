@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// PooledEvaluationScheduler implements EvaluationScheduler.  It runs the evaluations
+// on a fixed-size pool of worker threads and collects them through a CompletionService,
+// so at most numThreads calculations run at once and the threads are reused rather
+// than created for each Organism.  It should only be used from one thread (i.e. the
+// main algorithm loop).
+//
+// If an evaluation throws, we log why and hand its Organism back w/ an infinite energy,
+// like any other failed calculation, so that the caller still hears about it.
+
+public class PooledEvaluationScheduler implements EvaluationScheduler {
+	
+	private ExecutorService pool;
+	private CompletionService<Organism> completions;
+	
+	// evaluations which were short-circuited and so never went to the pool
+	private LinkedList<Organism> finished;
+	
+	// the Organism each running evaluation is for
+	private Map<Future<Organism>,Organism> running = new HashMap<Future<Organism>,Organism>();
+	
+	public PooledEvaluationScheduler(int numThreads) {
+		pool = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				// don't keep the JVM alive for abandoned calculations
+				Thread t = new Thread(r, "energy-calc");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		completions = new ExecutorCompletionService<Organism>(pool);
+		finished = new LinkedList<Organism>();
+	}
+	
+	public String toString() {
+		return "PooledEvaluationScheduler. numInFlight = " + getNumInFlight();
+	}
+	
+	public void submit(Organism o, ObjectiveFunction f) {
+		Future<Organism> future = (f == null) ? null : f.evaluate(completions, o);
+		if (future == null)
+			finished.add(o);
+		else
+			running.put(future, o);
+	}
+	
+	// also returns null if we're interrupted while waiting, w/ the thread's interrupt
+	// flag set again
+	public Organism take() {
+		if (!finished.isEmpty())
+			return finished.removeFirst();
+		if (running.isEmpty())
+			return null;
+		
+		Future<Organism> future;
+		try {
+			future = completions.take();
+		} catch (InterruptedException x) {
+			GAOut.out().stdout("Interrupted while waiting for energy calc.", GAOut.WARNING);
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		Organism o = running.remove(future);
+		
+		try {
+			future.get();
+		} catch (InterruptedException x) {
+			// (can't happen: it's done)
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException x) {
+			Throwable cause = x.getCause();
+			GAOut.out().stdout("Warning: energy calc of org " + o.getID() + " failed: " + cause, GAOut.WARNING, o.getID());
+			if (GAOut.out().isLogging(GAOut.DEBUG)) {
+				StringWriter trace = new StringWriter();
+				cause.printStackTrace(new PrintWriter(trace));
+				GAOut.out().stdout(trace.toString(), GAOut.DEBUG, o.getID());
+			}
+			if (o instanceof StructureOrg)
+				((StructureOrg)o).setTotalEnergy(Double.POSITIVE_INFINITY);
+			o.setValue(Double.POSITIVE_INFINITY);
+		}
+		
+		return o;
+	}
+	
+	public int getNumInFlight() {
+		return running.size() + finished.size();
+	}
+	
+	public void shutdown() {
+		pool.shutdownNow();
+		finished.clear();
+		running.clear();
+	}
+}
@@ -163,7 +163,8 @@ public final class ProbDistSelection implements Selection, Serializable {
 		
 		// get the mapping from organisms to selection probabilities
 		Map<Organism, Double> probMap = findProbabilities(g);
-		GAOut.out().stdout(getProbMapString(probMap), GAOut.DEBUG);
+		if (GAOut.out().isLogging(GAOut.DEBUG))
+			GAOut.out().stdout(getProbMapString(probMap), GAOut.DEBUG);
 		
 		// select n random, distinct organisms according to the calculated selection probabilities
 		for (int i = 0; i < n; i++) {
@@ -174,8 +175,9 @@ public final class ProbDistSelection implements Selection, Serializable {
 			resultList.add(o);
 		
 			// some status info
-			GAOut.out().stdout("Selected organism " + o.getID() + " (fitness " 
-					+ o.getFitness() + ", probability " + probMap.get(o) + ")", GAOut.DEBUG, o.getID());
+			if (GAOut.out().isLogging(GAOut.DEBUG))
+				GAOut.out().stdout("Selected organism " + o.getID() + " (fitness " 
+						+ o.getFitness() + ", probability " + probMap.get(o) + ")", GAOut.DEBUG, o.getID());
 		}
 		
 		StructureOrg[] result = new StructureOrg[resultList.size()];
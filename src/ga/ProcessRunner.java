@@ -0,0 +1,483 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+// ProcessRunner runs the external programs (usually the call* wrapper scripts) which do
+// the energy calculations.  We can hand the program its input on its stdin rather than
+// in a file, and we read its stdout as it's written, passing each line to an
+// OutputHandler which may stop the run early.  stderr is drained at the same time on
+// another thread, so a chatty program can't block on a full pipe.
+//
+// Between startAccounting() and stopAccounting() (i.e. during an organism's energy
+// calculation; see EnergyPerAtom), we also
+//   - kill runs which go over the --energyTimeout, along with everything they started
+//     (mpirun and friends), and retry them w/ a doubling wait in between, and
+//   - add up the wall time, CPU time and peak resident memory of the runs.
+// On Linux, we get the program's process tree from /proc: we start it through sh, which
+// tells us its pid before exec'ing the program, and then look at the tree every second or
+// so.  The CPU time and memory numbers are from those samples, so runs much shorter than
+// a second come out as zero.  Elsewhere, we can only kill the program itself and don't
+// record CPU time or memory.
+
+public class ProcessRunner {
+
+	public interface OutputHandler {
+		// called before each attempt at the run, so anything counted for the last attempt
+		// (which timed out) can be forgotten
+		public void startRun();
+		// called w/ each line of the program's stdout as it comes.  return false to kill
+		// the program.
+		public boolean handleLine(String line);
+	}
+
+	// what the runs made on one thread between startAccounting() and stopAccounting() used
+	public static class Usage implements Serializable {
+		static final long serialVersionUID = 1l;
+
+		private int numRuns = 0;
+		private double wallTime = 0;
+		private double cpuTime = 0;
+		private long peakRSS = 0;
+		private boolean timedOut = false;
+
+		private void add(double wall, double cpu, long rss, boolean _timedOut) {
+			numRuns++;
+			wallTime += wall;
+			cpuTime += cpu;
+			peakRSS = Math.max(peakRSS, rss);
+			timedOut = _timedOut;
+		}
+
+		public int getNumRuns() {
+			return numRuns;
+		}
+
+		// seconds
+		public double getWallTime() {
+			return wallTime;
+		}
+
+		// seconds, summed over the whole process tree
+		public double getCPUTime() {
+			return cpuTime;
+		}
+
+		// kB, summed over the whole process tree
+		public long getPeakRSS() {
+			return peakRSS;
+		}
+
+		// true if the last run was killed for taking too long
+		public boolean timedOut() {
+			return timedOut;
+		}
+
+		public String toString() {
+			return Math.round(10 * wallTime) / 10.0 + " " + Math.round(10 * cpuTime) / 10.0 + " " + peakRSS;
+		}
+	}
+
+	private static ThreadLocal<Usage> usage = new ThreadLocal<Usage>();
+
+	private static final File procDir = new File("/proc/self/stat");
+	// USER_HZ, which is 100 on all the Linuxes we know of
+	private static final double clockTicks = 100.0;
+
+	public static void startAccounting() {
+		usage.set(new Usage());
+	}
+
+	public static Usage stopAccounting() {
+		Usage result = usage.get();
+		usage.remove();
+		return result;
+	}
+
+	// runs command (split on whitespace, like Runtime.exec(String)) and returns its stdout
+	public static String run(String command) throws IOException {
+		return run(command, null, null, null);
+	}
+
+	// runs command in workDir (the current directory if null), w/ input (if not null) on
+	// its stdin, passing its stdout to handler (if not null) line by line.  returns all of
+	// the stdout, up to where the handler stopped the run, if it did.  if the run times
+	// out and we're out of retries, returns whatever output we got.
+	public static String run(String command, File workDir, String input, OutputHandler handler)
+			throws IOException {
+		GAParameters params = GAParameters.getParams();
+		if (usage.get() == null || params.getEnergyTimeout() <= 0)
+			return runOnce(command, workDir, input, handler, 0);
+
+		long timeout = (long)(params.getEnergyTimeout() * 1000);
+		long wait = (long)(params.getEnergyRetryWait() * 1000);
+		for (int attempt = 0; ; attempt++) {
+			boolean lastTry = attempt >= params.getEnergyRetries();
+			try {
+				String result = runOnce(command, workDir, input, handler, timeout);
+				if (!usage.get().timedOut() || lastTry)
+					return result;
+			} catch (IOException x) {
+				// e.g. couldn't fork
+				if (lastTry)
+					throw x;
+				GAOut.out().stdout("Warning: couldn't run " + command + ": " + x.getMessage(), GAOut.WARNING);
+			}
+			GAOut.out().stdout("Trying " + command + " again in " + wait / 1000.0 + " s.", GAOut.NOTICE);
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted");
+			}
+			wait *= 2;
+		}
+	}
+
+	private static String runOnce(String command, File workDir, String input, OutputHandler handler, long timeout)
+			throws IOException {
+		List<String> cmd = new ArrayList<String>();
+		StringTokenizer t = new StringTokenizer(command);
+		while (t.hasMoreTokens())
+			cmd.add(t.nextToken());
+
+		Usage u = usage.get();
+		boolean usingProc = u != null && procDir.exists() && !cmd.isEmpty();
+		if (usingProc)
+			cmd.addAll(0, Arrays.asList("sh", "-c", "echo $$; exec \"$0\" \"$@\""));
+
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		if (workDir != null)
+			pb.directory(workDir);
+		if (handler != null)
+			handler.startRun();
+		long startTime = System.currentTimeMillis();
+		final Process p = pb.start();
+
+		StringBuilder output = new StringBuilder();
+		Thread errDrainer = drainStderr(p);
+		Thread inFeeder = feedStdin(p, input);
+		BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		Monitor monitor = null;
+		try {
+			String s;
+			if (usingProc && (s = stdInput.readLine()) != null) {
+				try {
+					monitor = new Monitor(p, command, Integer.parseInt(s.trim()), timeout);
+				} catch (NumberFormatException x) {
+					// shouldn't happen, but don't lose the line if it does
+					output.append(s + GAUtils.newline());
+				}
+			}
+			if (monitor == null && timeout > 0)
+				monitor = new Monitor(p, command, -1, timeout);
+			if (monitor != null)
+				monitor.start();
+
+			while ((s = stdInput.readLine()) != null) {
+				output.append(s + GAUtils.newline());
+				if (handler != null && !handler.handleLine(s)) {
+					GAOut.out().stdout("Stopping " + command + " early.", GAOut.NOTICE);
+					if (monitor != null)
+						monitor.killTree();
+					p.destroy();
+					break;
+				}
+			}
+			p.waitFor();
+			errDrainer.join();
+			if (inFeeder != null)
+				inFeeder.join();
+			if (monitor != null) {
+				monitor.finish();
+				monitor.join();
+			}
+		} catch (InterruptedException x) {
+			if (monitor != null)
+				monitor.killTree();
+			p.destroy();
+			Thread.currentThread().interrupt();
+		} finally {
+			if (monitor != null)
+				monitor.finish();
+			try { stdInput.close(); } catch (IOException x) { } // ignore
+			try { p.getOutputStream().close(); } catch (IOException x) { } // ignore
+			try { p.getErrorStream().close(); } catch (IOException x) { } // ignore
+		}
+
+		if (u != null) {
+			double wall = (System.currentTimeMillis() - startTime) / 1000.0;
+			if (monitor == null)
+				u.add(wall, 0, 0, false);
+			else
+				u.add(wall, monitor.cpuTime, monitor.peakRSS, monitor.timedOut);
+		}
+
+		return output.toString();
+	}
+
+	// watches a run: samples its process tree's CPU time and memory, if we know its pid,
+	// and kills the tree if it goes over time
+	private static class Monitor extends Thread {
+		private Process p;
+		private String command;
+		private int pid;
+		private long deadline;
+
+		private boolean done = false;
+		volatile boolean timedOut = false;
+		volatile double cpuTime = 0;
+		volatile long peakRSS = 0;
+
+		public Monitor(Process _p, String _command, int _pid, long timeout) {
+			super("process monitor");
+			setDaemon(true);
+			p = _p;
+			command = _command;
+			pid = _pid;
+			deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : 0;
+		}
+
+		public void run() {
+			// sample often at first, to catch short runs
+			long interval = 100;
+			while (true) {
+				if (pid > 0)
+					sample();
+				if (deadline > 0 && System.currentTimeMillis() > deadline) {
+					GAOut.out().stdout("Warning: killing " + command + ", which went over the energy timeout.", GAOut.WARNING);
+					timedOut = true;
+					killTree();
+					p.destroy();
+					return;
+				}
+				synchronized (this) {
+					if (done)
+						return;
+					try {
+						wait(interval);
+					} catch (InterruptedException x) {
+						return;
+					}
+					if (done)
+						return;
+				}
+				interval = Math.min(1000, 2 * interval);
+			}
+		}
+
+		public synchronized void finish() {
+			done = true;
+			notify();
+		}
+
+		private void sample() {
+			double cpu = 0;
+			long rss = 0;
+			for (int i : getTree()) {
+				String[] stat = readStat(i);
+				if (stat == null)
+					continue;
+				// utime, stime, cutime, cstime: the reaped children's times are in the
+				// parent's cutime and cstime
+				for (int j = 11; j <= 14; j++)
+					cpu += Long.parseLong(stat[j]) / clockTicks;
+				rss += readRSS(i);
+			}
+			cpuTime = Math.max(cpuTime, cpu);
+			peakRSS = Math.max(peakRSS, rss);
+		}
+
+		// pid and all its descendants
+		private List<Integer> getTree() {
+			List<Integer> result = new ArrayList<Integer>();
+			if (pid <= 0)
+				return result;
+			Map<Integer,List<Integer>> children = new HashMap<Integer,List<Integer>>();
+			String[] entries = new File("/proc").list();
+			if (entries != null)
+				for (String e : entries) {
+					if (!Character.isDigit(e.charAt(0)))
+						continue;
+					String[] stat = readStat(Integer.parseInt(e));
+					if (stat == null)
+						continue;
+					Integer ppid = Integer.valueOf(stat[1]);
+					if (!children.containsKey(ppid))
+						children.put(ppid, new ArrayList<Integer>());
+					children.get(ppid).add(Integer.valueOf(e));
+				}
+			result.add(pid);
+			for (int i = 0; i < result.size(); i++)
+				if (children.containsKey(result.get(i)))
+					result.addAll(children.get(result.get(i)));
+			return result;
+		}
+
+		// TERM, then KILL for anything which didn't listen
+		public void killTree() {
+			List<Integer> tree = getTree();
+			if (tree.isEmpty())
+				return;
+			signal("TERM", tree);
+			// give them a couple of seconds to clean up
+			for (int i = 0; i < 20 && anyAlive(tree); i++)
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			if (anyAlive(tree))
+				signal("KILL", tree);
+		}
+
+		private static boolean anyAlive(List<Integer> pids) {
+			for (Integer i : pids) {
+				String[] stat = readStat(i);
+				if (stat != null && !stat[0].equals("Z"))
+					return true;
+			}
+			return false;
+		}
+
+		private static void signal(String sig, List<Integer> pids) {
+			List<String> cmd = new ArrayList<String>();
+			cmd.add("kill");
+			cmd.add("-" + sig);
+			for (Integer i : pids)
+				cmd.add(i.toString());
+			try {
+				Process k = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+				// some of them may be gone already, which is fine
+				k.getInputStream().close();
+				k.waitFor();
+			} catch (IOException x) {
+				GAOut.out().stdout("Warning: couldn't kill " + pids + ": " + x.getMessage(), GAOut.WARNING);
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// the fields of /proc/<pid>/stat after the command name (which may have spaces in it),
+	// so that [0] is the state, [1] the ppid, [11] utime, etc.  null if the process is gone.
+	private static String[] readStat(int pid) {
+		String line = readFirstLine(new File("/proc/" + pid + "/stat"));
+		if (line == null || line.lastIndexOf(')') < 0)
+			return null;
+		String[] result = line.substring(line.lastIndexOf(')') + 1).trim().split("\\s+");
+		return (result.length > 14) ? result : null;
+	}
+
+	// resident memory in kB, or 0 if the process is gone
+	private static long readRSS(int pid) {
+		BufferedReader r = null;
+		try {
+			r = new BufferedReader(new FileReader("/proc/" + pid + "/status"));
+			String line;
+			while ((line = r.readLine()) != null)
+				if (line.startsWith("VmRSS:"))
+					return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+		} catch (IOException x) {
+			// gone
+		} finally {
+			if (r != null)
+				try { r.close(); } catch (IOException x) { } // ignore
+		}
+		return 0;
+	}
+
+	private static String readFirstLine(File f) {
+		BufferedReader r = null;
+		try {
+			r = new BufferedReader(new FileReader(f));
+			return r.readLine();
+		} catch (IOException x) {
+			return null;
+		} finally {
+			if (r != null)
+				try { r.close(); } catch (IOException x) { } // ignore
+		}
+	}
+
+	// print out any errors
+	private static Thread drainStderr(final Process p) {
+		Thread result = new Thread("stderr drainer") {
+			public void run() {
+				BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+				String s;
+				try {
+					while ((s = stdError.readLine()) != null)
+						System.out.println(s);
+				} catch (IOException x) {
+					// the process is gone
+				}
+			}
+		};
+		result.setDaemon(true);
+		result.start();
+		return result;
+	}
+
+	// write input to the process's stdin and close it.  a separate thread, since the
+	// program may start writing its output before it's read all of its input.
+	private static Thread feedStdin(final Process p, final String input) {
+		if (input == null) {
+			try {
+				p.getOutputStream().close();
+			} catch (IOException x) { } // ignore
+			return null;
+		}
+
+		Thread result = new Thread("stdin feeder") {
+			public void run() {
+				Writer w = new OutputStreamWriter(p.getOutputStream());
+				try {
+					w.write(input);
+				} catch (IOException x) {
+					// the program quit w/o reading all its input, which is its business
+				} finally {
+					try { w.close(); } catch (IOException x) { } // ignore
+				}
+			}
+		};
+		result.setDaemon(true);
+		result.start();
+		return result;
+	}
+
+}
@@ -24,28 +24,69 @@ package ga;
 import java.io.*;
 import java.util.*;
 
+import chemistry.Element;
 import crystallography.Cell;
+import crystallography.CompactCell;
+import utility.Pair;
 
 // RedundancyGuard is used by the algorithm to avoid considering identical
 // StructureOrgs more than once.  It stores a Map of all structures "seen"
 // to their Organism IDs.  Then, other algorithms (e.g. StructureDev) may
 // check Organisms against the list of those already seen. 
+//
+// The full structure comparisons are expensive, so the structures are also
+// indexed by some cheap invariants which any two matching structures must share.
+// With PBCs, these are the number of Wyckoff sites of each element and the
+// sorted lattice lengths of the Wyckoff cell, binned by latticeMisfit; a new 
+// structure is only compared against those in the same or adjacent bins.
+// Without PBCs, it's just the composition.
+//
+// A long run sees a lot of structures, so they're kept as CompactCells.  With PBCs, 
+// the comparisons only need the Wyckoff cells of the structures we've seen, so the 
+// index holds (compact) copies of those, which also saves redoing findsym on them.
+//
+// With --islands, the structures the other islands have seen are added too, under
+// negative IDs (see IslandModel.remoteID()).  checkStructureOrg() counts them, so we
+// don't evaluate what another island already has, and checkLocalStructureOrg() doesn't.
 
 public class RedundancyGuard implements Serializable {
 	static final long serialVersionUID = 1;
 
 	// holds all the structures the algorithm has "seen"
 	// and maps them to their Organism IDs
-	Map<Cell,Integer> structures;
+	Map<CompactCell,Integer> structures;
 	
 	private double atomicMisfit;
 	private double latticeMisfit;
 	private double angleMisfit;
 	private boolean usePBCs;
 	
+	// what we compare new structures against, bucketed by getIndexKey().  rebuilt 
+	// from structures if we're resumed from a save file made before we had it.
+	private Map<String,List<Seen>> index;
+	
+	// the entries of structures in the order they were added, so that getStructuresAfter()
+	// (called at every checkpoint) doesn't have to walk all of them.  made from structures 
+	// when we're read back in.
+	private transient List<Pair<CompactCell,Integer>> added;
+	
+	// a structure we've seen (its Wyckoff cell with PBCs) and its Organism's ID
+	private static class Seen implements Serializable {
+		static final long serialVersionUID = 1;
+		
+		final CompactCell cell;
+		final int id;
+		
+		Seen(CompactCell _cell, int _id) {
+			cell = _cell;
+			id = _id;
+		}
+	}
+	
 	public RedundancyGuard(List<String> args) {
 		// initialize structures
-		structures = new HashMap<Cell,Integer>();
+		structures = new LinkedHashMap<CompactCell,Integer>();
+		index = new HashMap<String,List<Seen>>();
 		
 		// parse args
 		if (args == null || args.size() < 3)
@@ -72,7 +113,148 @@ public class RedundancyGuard implements Serializable {
 		if (s.getCell().getBasisSize() < 1) {
 			GAOut.out().stdout("Warning: RedundancyGuard got passed structure with no sites. Ignoring it...", GAOut.NOTICE, o.getID());
 		} else {
-			structures.put(s.getCell(), new Integer(s.getID()));
+			addStructure(s.getCell(), s.getID());
+		}
+	}
+	
+	public void addStructure(Cell c, int id) {
+		addStructure(new CompactCell(c), id);
+	}
+	
+	public void addStructure(CompactCell c, int id) {
+		addToIndex(c, id);
+		List<Pair<CompactCell,Integer>> all = getAdded();
+		if (structures.put(c, new Integer(id)) == null)
+			all.add(new Pair<CompactCell,Integer>(c, id));
+		else
+			// (keeps its place but gets the new ID)
+			added = null;
+	}
+	
+	public int getNumStructures() {
+		return structures.size();
+	}
+	
+	// the structures (and their IDs) we've been given since we had n of them
+	public List<Pair<CompactCell,Integer>> getStructuresAfter(int n) {
+		List<Pair<CompactCell,Integer>> all = getAdded();
+		return new ArrayList<Pair<CompactCell,Integer>>(all.subList(Math.min(n, all.size()), all.size()));
+	}
+	
+	private List<Pair<CompactCell,Integer>> getAdded() {
+		if (added == null) {
+			// structures from old save files aren't kept in order
+			if (!(structures instanceof LinkedHashMap))
+				structures = new LinkedHashMap<CompactCell,Integer>(structures);
+			added = new ArrayList<Pair<CompactCell,Integer>>();
+			for (Map.Entry<CompactCell,Integer> e : structures.entrySet())
+				added.add(new Pair<CompactCell,Integer>(e.getKey(), e.getValue()));
+		}
+		return added;
+	}
+	
+	private Map<String,List<Seen>> getIndex() {
+		if (index == null) {
+			index = new HashMap<String,List<Seen>>();
+			for (Map.Entry<CompactCell,Integer> e : structures.entrySet())
+				addToIndex(e.getKey(), e.getValue());
+		}
+		return index;
+	}
+	
+	// what structures get compared by: the Wyckoff cell w/ PBCs, otherwise the cell itself
+	private Cell getMatchCell(Cell c) {
+		return (usePBCs ? c.getWyckoffCell() : c);
+	}
+	
+	private void addToIndex(CompactCell c, int id) {
+		Cell k = getMatchCell(c.getCell());
+		int[] bin = getLengthsBin(k);
+		// the structure can never match anything
+		if (usePBCs && bin == null)
+			return;
+		
+		String key = getIndexKey(k, bin);
+		List<Seen> bucket = getIndex().get(key);
+		if (bucket == null) {
+			bucket = new LinkedList<Seen>();
+			getIndex().put(key, bucket);
+		}
+		bucket.add(new Seen(usePBCs ? new CompactCell(k) : c, id));
+	}
+	
+	// the keys of all the buckets which might hold a match for c
+	private List<String> getNeighborKeys(Cell c) {
+		List<String> result = new ArrayList<String>();
+		Cell m = getMatchCell(c);
+		
+		if (!usePBCs) {
+			result.add(getIndexKey(m, null));
+			return result;
+		}
+		
+		int[] bin = getLengthsBin(m);
+		if (bin == null)
+			return result;
+		for (int i = -1; i <= 1; i++)
+			for (int j = -1; j <= 1; j++)
+				for (int k = -1; k <= 1; k++) {
+					int[] nbin = {bin[0] + i, bin[1] + j, bin[2] + k};
+					result.add(getIndexKey(m, nbin));
+				}
+		
+		return result;
+	}
+	
+	// the composition part of the key is the number of Wyckoff sites of each element 
+	// with PBCs (Cell.matchesCellPBCs() compares Wyckoff cells) or the plain composition 
+	// without them.  elements are sorted by symbol so the key doesn't depend on site order.
+	// k is the structure's getMatchCell().
+	private String getIndexKey(Cell k, int[] lengthsBin) {
+		Map<String,Integer> counts = new TreeMap<String,Integer>();
+		for (Element e : k.getComposition().getElements())
+			counts.put(e.getSymbol(), k.getNumSitesWithElement(e));
+		
+		StringBuilder result = new StringBuilder();
+		for (String sym : counts.keySet())
+			result.append(sym + counts.get(sym) + " ");
+		if (lengthsBin != null)
+			result.append(lengthsBin[0] + "," + lengthsBin[1] + "," + lengthsBin[2]);
+		
+		return result.toString();
+	}
+	
+	// the sorted lattice lengths of c's Wyckoff cell in units of latticeMisfit.
+	// matchesCellPBCs() tries each labeling of the axes and requires each length
+	// to agree to within latticeMisfit, so the sorted lengths of matching cells
+	// agree to within latticeMisfit too and land in the same or adjacent bins.
+	// returns null if there's no Wyckoff cell (i.e. nothing can match).
+	private int[] getLengthsBin(Cell w) {
+		if (!usePBCs)
+			return null;
+		if (w == null)
+			return null;
+		
+		double[] lengths = w.getCellLengths();
+		Arrays.sort(lengths);
+		double binWidth = Math.max(latticeMisfit, 1e-6);
+		int[] result = new int[lengths.length];
+		for (int i = 0; i < lengths.length; i++)
+			result[i] = (int)Math.floor(lengths[i] / binWidth);
+		
+		return result;
+	}
+	
+	// save files from before we kept CompactCells have Cells in structures and index
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		Map<?,?> old = structures;
+		if (!old.isEmpty() && !(old.keySet().iterator().next() instanceof CompactCell)) {
+			structures = new LinkedHashMap<CompactCell,Integer>();
+			for (Map.Entry<?,?> e : old.entrySet())
+				structures.put(new CompactCell((Cell)e.getKey()), (Integer)e.getValue());
+			index = null;
 		}
 	}
 	
@@ -87,15 +269,44 @@ public class RedundancyGuard implements Serializable {
 	// returns an ID of a matching StructureOrg if we've seen it before,
 	// null otherwise
 	public Integer checkStructureOrg(StructureOrg s1) {
+		return checkStructureOrg(s1, false);
+	}
+	
+	// like checkStructureOrg(), but only against the structures this island has seen
+	public Integer checkLocalStructureOrg(StructureOrg s1) {
+		return checkStructureOrg(s1, true);
+	}
+	
+	private Integer checkStructureOrg(StructureOrg s1, boolean localOnly) {
+		long start = GAMetrics.metrics().startTimer();
+		Integer result = findMatch(s1, localOnly);
+		GAMetrics.metrics().stopTimer("redundancy_check", start);
+		if (result != null)
+			GAMetrics.metrics().count("redundancy_matches");
+		return result;
+	}
+	
+	private Integer findMatch(StructureOrg s1, boolean localOnly) {
 		Cell s = s1.getCell();
+		
+		// only compare against structures which share s's invariants
+		List<Seen> candidates = new ArrayList<Seen>();
+		for (String key : getNeighborKeys(s)) {
+			List<Seen> bucket = getIndex().get(key);
+			if (bucket != null)
+				candidates.addAll(bucket);
+		}
 
-		for (Cell t : structures.keySet()) {
+		GAMetrics.metrics().count("redundancy_comparisons", GAMetrics.ALL, candidates.size());
+		for (Seen t : candidates) {
+			if (localOnly && t.id < 0)
+				continue;
 			if (usePBCs) {
-				if (s.matchesCell(t, atomicMisfit, latticeMisfit, angleMisfit))
-					return structures.get(t);
+				if (s.matchesWyckoffCell(t.cell.getCell(), atomicMisfit, latticeMisfit, angleMisfit))
+					return t.id;
 			} else {
-				if (s.matchesCellNoPBCs(t, atomicMisfit))
-					return structures.get(t);
+				if (s.matchesCellNoPBCs(t.cell.getCell(), atomicMisfit))
+					return t.id;
 			}
 		} 
 
@@ -63,16 +63,20 @@ public final class Slicer implements Variation {
 	private double maxAmplitude;
 	private int maxFreq;
 	
-	// these constants are recalculated upon _each_ call to doVariation
-	private double amplitude;
-	private double split;
-	private double etaFreq;
-	private double zetaFreq;
-	private double thickness;
-	private int axis;
 	private boolean growParents;
 	private double doublingProb;
 	
+	// these constants are recalculated upon _each_ call to doVariation.  they're kept
+	// out of the Slicer itself since offspring may be made on several threads at once.
+	private static class Cut {
+		double amplitude;
+		double split;
+		double etaFreq;
+		double zetaFreq;
+		double thickness;
+		int axis;
+	}
+	
 	public Slicer(List<String> args) {
 		if (args == null || args.size() < 6)
 			GAParameters.usage("Not enough parameters given to Slicer", true);
@@ -152,15 +156,18 @@ public final class Slicer implements Variation {
 		Random rand = params.getRandom();
 		
 		// calculate the parameters of this slicing
-		amplitude = maxAmplitude * rand.nextDouble();
-		etaFreq = Math.PI * rand.nextInt(2*maxFreq+1);	
-		zetaFreq = Math.PI * rand.nextInt(2*maxFreq+1);
-		axis = rand.nextInt(3);
-		split = rand.nextDouble();
-		thickness = GAUtils.renormZeroOne(thicknessMean + thicknessSigma * rand.nextGaussian());
+		Cut cut = new Cut();
+		cut.amplitude = maxAmplitude * rand.nextDouble();
+		cut.etaFreq = Math.PI * rand.nextInt(2*maxFreq+1);	
+		cut.zetaFreq = Math.PI * rand.nextInt(2*maxFreq+1);
+		cut.axis = rand.nextInt(3);
+		cut.split = rand.nextDouble();
+		cut.thickness = GAUtils.renormZeroOne(thicknessMean + thicknessSigma * rand.nextGaussian());
+		int axis = cut.axis;
 		
-		GAOut.out().stdout("amp:"+amplitude+" etaFreq:"+etaFreq+" zetaFreq:"+zetaFreq
-				+" axis:"+axis+" split:"+split+" thickness:"+thickness, GAOut.DEBUG);
+		if (GAOut.out().isLogging(GAOut.DEBUG))
+			GAOut.out().stdout("amp:"+cut.amplitude+" etaFreq:"+cut.etaFreq+" zetaFreq:"+cut.zetaFreq
+					+" axis:"+axis+" split:"+cut.split+" thickness:"+cut.thickness, GAOut.DEBUG);
 
 		//choose two random parents' Structures
 		StructureOrg[] ps = (StructureOrg[])(sel.doSelection(parents, 2));
@@ -245,13 +252,13 @@ public final class Slicer implements Variation {
 		// parent a's contribution 
 		for (int j = 0; j < a.getNumSites(); j++) {
 			Site s = new Site(a.getSite(j).getElement(), a.getSite(j).getCoords().plusWRT(new Vect(shiftA), basis));
-			if (isAbove(s)) 
+			if (isAbove(s, cut)) 
 				newSites.add(s);
 		}
 		// parent b's contribution
 		for (int j = 0; j < b.getNumSites(); j++) {
 			Site s = new Site(b.getSite(j).getElement(), b.getSite(j).getCoords().plusWRT(new Vect(shiftB), basis));
-			if (!isAbove(s)) 
+			if (!isAbove(s, cut)) 
 				newSites.add(s);
 		}
 	
@@ -266,9 +273,11 @@ public final class Slicer implements Variation {
 	
 	// if the site is within thickness/2 of the value of f(s), then we're above (or inside)
 	// the cut.  otherwise not.
-	private Boolean isAbove(Site s) {
+	private Boolean isAbove(Site s, Cut cut) {
 		List<Double> coords = s.getCoords().getCartesianComponents();
-		double fSplit = f(s);
+		double fSplit = f(s, cut);
+		int axis = cut.axis;
+		double thickness = cut.thickness;
 		return Math.abs(coords.get(axis) - fSplit) < thickness/2
 				|| Math.abs(coords.get(axis) - fSplit - 1) < thickness/2
 				|| Math.abs(coords.get(axis) - fSplit + 1) < thickness/2;
@@ -276,7 +285,7 @@ public final class Slicer implements Variation {
 	
 	// returns a double f(site) which is value of our semi-random cell-periodic function 
 	// as a function of the non-axis coordinates of site
-	private double f(Site site) {
+	private double f(Site site, Cut cut) {
 		//
 		List<Double> coords = site.getCoords().getCartesianComponents();
 		Vect coordsVec = new Vect(coords);
@@ -285,10 +294,10 @@ public final class Slicer implements Variation {
 		int zeta = 0, eta = 0;
 		do {
 			zeta = (zeta + 1) % 3;
-		} while (zeta == axis);
+		} while (zeta == cut.axis);
 		do {
 			eta = (eta + 1) % 3;
-		} while (eta == zeta || eta == axis);
+		} while (eta == zeta || eta == cut.axis);
 		//make unit vectors in the off-slice directions
 		double[] etaCoords = {0d,0d,0d};
 		double[] zetaCoords = {0d,0d,0d};
@@ -297,7 +306,7 @@ public final class Slicer implements Variation {
 		Vect etaVec = new Vect(etaCoords);
 		Vect zetaVec = new Vect(zetaCoords);
 		
-		return split + amplitude/2 * (Math.sin(coordsVec.dot(etaVec)*etaFreq))*(Math.sin(coordsVec.dot(zetaVec)*zetaFreq));
+		return cut.split + cut.amplitude/2 * (Math.sin(coordsVec.dot(etaVec)*cut.etaFreq))*(Math.sin(coordsVec.dot(zetaVec)*cut.zetaFreq));
 	}
 	
 	// just for testing
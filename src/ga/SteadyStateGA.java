@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// SteadyStateGA is an alternative to GeneticAlgorithm which does away with the 
+// barrier between generations.  It keeps a single pool of the popSize best organisms
+// and, as soon as any energy calculation finishes, develops the new organism, puts it 
+// in the pool (bumping out the worst one), and starts a new variation from the current 
+// pool.  All numCalcsInParallel calculation slots are kept busy the whole time.
+//
+// The initial population is made just as in the generational algorithm.  After that, 
+// every popSize completed evaluations count as a "generation": the record is written out
+// and the ConvergenceCriterions are checked then.  So e.g. maxNumGens n means n*popSize
+// evaluations.
+//
+// Phase diagram runs aren't supported since the pool's values would go stale as the
+// convex hull changes.
+//
+// The record (and checkpoint log, etc.) hold on to the Generations they're given, so
+// each pseudo-generation is recorded as a snapshot of the pool rather than the pool itself.
+
+public class SteadyStateGA {
+	
+	public static Organism doSteadyStateGA() {
+		GAParameters params = GAParameters.getParams();
+		params.getRecord().startMetrics();
+		Selection sel = params.getSelection();
+		
+		// runs the energy calculations in the background
+		EvaluationScheduler sched = params.makeEvaluationScheduler();
+		// the value of ObjectiveFunction.getNumCalculations() when each organism was made,
+		// for the Hartke output
+		Map<Organism,Integer> calcNums = new HashMap<Organism,Integer>();
+		
+		// make the initial population unless we're resuming
+		Generation pool = params.getRecord().getCurrentGen();
+		if (pool == null) {
+			pool = params.makeEmptyGeneration();
+			GeneticAlgorithm.fillGeneration(null, pool, sel, sched, calcNums, null);
+			pool.findFitnesses();
+			params.getRecord().finishGen(snapshot(pool));
+		} else {
+			pool = snapshot(pool);
+		}
+		trimPool(pool);
+		
+		// the main algorithm loop (which also stops, w/ the usual cleanup, if we're interrupted):
+		mainLoop:
+		while (!GeneticAlgorithm.converged(pool)) {
+			int numEvaluated = 0;
+			while (numEvaluated < params.getPopSize()) {
+				// keep numCalcsInParallel energy computations going
+				while (sched.getNumInFlight() < params.getNumCalcsInParallel())
+					GeneticAlgorithm.submitOrg(GeneticAlgorithm.makeOffspringOrg(pool, pool, sel), sched, calcNums);
+				
+				// wait for the next energy computation to finish and put it in the pool
+				Organism o = sched.take();
+				if (o == null) {
+					if (Thread.currentThread().isInterrupted())
+						break mainLoop;
+					continue;
+				}
+				numEvaluated++;
+				// (development can also change the pool when o replaces a similar organism)
+				try {
+					GeneticAlgorithm.addToGeneration(o, pool, calcNums.get(o));
+				} finally {
+					calcNums.remove(o);
+				}
+				trimPool(pool);
+			}
+			
+			// prints and saves status/progress info and whatnot
+			params.getRecord().finishGen(snapshot(pool));
+		}
+		sched.shutdown();
+		params.getRecord().cleanup();
+		
+		return pool.getNthBestOrganism(1);
+	}
+	
+	// a copy of the pool as it is now
+	private static Generation snapshot(Generation pool) {
+		Generation result = GAParameters.getParams().makeEmptyGeneration();
+		for (Organism o : pool)
+			result.addOrganism(o);
+		return result;
+	}
+	
+	// removes the worst organisms until the pool is back down to popSize and
+	// brings the fitnesses up to date
+	private static void trimPool(Generation pool) {
+		int popSize = GAParameters.getParams().getPopSize();
+		
+		while (pool.getNumOrganisms() > popSize) {
+			Organism worst = pool.getOrganism(0);
+			for (Organism o : pool)
+				if (o.getValue() > worst.getValue())
+					worst = o;
+			GAOut.out().stdout("Removing organism " + worst.getID() + " from the pool.", GAOut.INFO, worst.getID());
+			pool.removeOrganism(worst);
+		}
+		
+		pool.updateFitnesses();
+	}
+
+}
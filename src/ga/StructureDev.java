@@ -30,6 +30,7 @@ import utility.Utility;
 import utility.Vect;
 import vasp.VaspOut;
 import crystallography.Cell;
+import crystallography.NeighborList;
 import crystallography.Site;
 
 // StructureDev implements Development and is the Development operation
@@ -80,10 +81,32 @@ public final class StructureDev implements Development, Serializable {
 		return result.toString();
 	}
 	
+	// the whole-population RedundancyGuard, or null if we're not using one
+	public RedundancyGuard getRedundancyGuard() {
+		return rGuard;
+	}
+	
+	// the surrogate model, or null if we're not using one
+	public GulpSurrogate getSurrogate() {
+		return surrogate;
+	}
+	
 	// remove unphysical candidate crystals based on hard constraints
 	public Boolean doDevelop(Generation gen, Organism o) {
+		return satisfiesConstraints(o) && checkPopulation(gen, o);
+	}
+	
+	// the hard constraints which only depend on the organism itself.  these don't touch
+	// any shared state, so OffspringProducer runs them on its worker threads.
+	public Boolean satisfiesConstraints(Organism o) {
+		long start = GAMetrics.metrics().startTimer();
+		Boolean result = checkConstraints(o);
+		GAMetrics.metrics().stopTimer("dev_constraints", start);
+		return result;
+	}
+	
+	private Boolean checkConstraints(Organism o) {
 		StructureOrg s = (StructureOrg)o;
-		Structures g = (Structures)gen;
 		
 		GAParameters params = GAParameters.getParams();
 		// double maxid = params.getMaxInteratomicDistance();
@@ -101,18 +124,18 @@ public final class StructureDev implements Development, Serializable {
 			GAOut.out().stdout("Organism " + s.getID() + " failed: had null cell.", GAOut.NOTICE, s.getID());
 	//		if (rGuard != null)
 	//			rGuard.removeStructureOrg(s);
-			return false;
+			return reject("nullCell");
 		}
 		
 		if (s.knowsValue() && Double.isNaN(s.getEnergyPerAtom())) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed: had NaN energy. Something must have gone wrong with the energy calc.", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("nanEnergy");
 		}
 		
 		// fail if cell is bad
 		if (s.getCell().isMalformed()) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed: had malformed cell.", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("malformedCell");
 		}
 		
 		if(params.usingSubstrate()) {
@@ -137,13 +160,13 @@ public final class StructureDev implements Development, Serializable {
 		if (minid != -1) {
 			if (! s.getCell().satisfiesMinInteratomicDistance(minid)) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed minimum interatomic distance constraint." , GAOut.NOTICE, s.getID());
-				return false;
+				return reject("minDistance");
 			}
 		}
 		
 		if (!s.getCell().satisfiesPerSpeciesMIDs(params.getPerSpeciesMIDs())) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed per-species minimum interatomic distance constraint." , GAOut.NOTICE, s.getID());
-			return false;
+			return reject("perSpeciesMinDistance");
 		}
 		
 		// use the Niggli reduced cell 
@@ -151,7 +174,7 @@ public final class StructureDev implements Development, Serializable {
 			s.standardize();
 			if (!s.isReduced()) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed Niggli reduction.", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("niggli");
 			}
 		}
 		
@@ -161,7 +184,7 @@ public final class StructureDev implements Development, Serializable {
 			s.standardize2D();
 			if (!s.isReduced()) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed 2D Niggli reduction.", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("niggli2D");
 			}
 		}
 		
@@ -171,12 +194,12 @@ public final class StructureDev implements Development, Serializable {
 		if (minatoms != -1 && structure.getNumSites() < minatoms) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed min number of atoms constraint: (numAtoms = "
 					+ structure.getNumSites() + ").", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("minAtoms");
 		}
 		if (maxatoms != -1 && structure.getNumSites() > maxatoms) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed max number of atoms constraint: (numAtoms = "
 					+ structure.getNumSites() + ").", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("maxAtoms");
 		}
 		
 		// dont want to do this the first generation
@@ -184,19 +207,19 @@ public final class StructureDev implements Development, Serializable {
 			GAOut.out().stdout("Organism " + s.getID() + " failed minimum (" + params.getMinNumSpecies() 
 					+ ") number of species constraint: (composition = "
 					+ structure.getComposition().toString() + ").", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("minSpecies");
 		}
 		
 		// sanity check on the energy
 		if (Double.isInfinite(s.getEnergyPerAtom())) {
 			GAOut.out().stdout("Organism " + s.getID() + " discarded: energy is inf.", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("infiniteEnergy");
 		}
 		if (params.getDoNonnegativityConstraint()) {
 			if (s.knowsValue() && s.getValue() >= 0) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed value nonnegativity constraint: (value = "
 						+ s.getValue() + ").", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("nonnegativity");
 			}
 		} 
 		
@@ -213,12 +236,12 @@ public final class StructureDev implements Development, Serializable {
 			if(minll != -1 && lLengths[i] < minll) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed min lattice length constraint: (lLengths["
 						+ i + "] == " + lLengths[i] + ").", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("minLatticeLength");
 			}
 			if(maxll != -1 && lLengths[i] > maxll) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed max lattice length constraint: (lLengths["
 						+ i + "] == " + lLengths[i] + ").", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("maxLatticeLength");
 			}
 		}
 		
@@ -228,12 +251,12 @@ public final class StructureDev implements Development, Serializable {
 			if(minla != -1 && lAngles[i] < minla) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed min lattice angle constraint (lAngles["
 						+ i + "] == " + lAngles[i] + ").", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("minLatticeAngle");
 			}
 			if(maxla != -1 && lAngles[i] > maxla) {
 				GAOut.out().stdout("Organism " + s.getID() + " failed max lattice angle constraint (lAngles["
 						+ i + "] == " + lAngles[i] + ").", GAOut.NOTICE, s.getID());
-				return false;
+				return reject("maxLatticeAngle");
 			}
 		}
 		
@@ -241,7 +264,7 @@ public final class StructureDev implements Development, Serializable {
 		if (structure.getHeight() > GAParameters.getParams().getMaxCellHeight()) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed max cell height constraint"
 					, GAOut.NOTICE, s.getID());
-			return false;
+			return reject("maxCellHeight");
 		}
 		
 		// check the stoichiometry
@@ -270,7 +293,7 @@ public final class StructureDev implements Development, Serializable {
 		// make sure composition is in compSpace
 		if (!params.getCompSpace().contains(s.getCell().getComposition())) {
 			GAOut.out().stdout("Organism " + s.getID() + " failed stoichiometry constraint.", GAOut.NOTICE, s.getID());
-			return false;
+			return reject("stoichiometry");
 		}
 		
 		// check nearest neighbors
@@ -279,6 +302,7 @@ public final class StructureDev implements Development, Serializable {
 			if (excludedPairs != null) {
 				// for all the atoms in the structure
 				List<Site> sites = structure.getSites();
+				NeighborList nl = structure.getNeighborList(params.getMaxNearestNeighborLength());
 				for (int i = 0; i < sites.size(); i++) {
 					String symbol = sites.get(i).getElement().getSymbol();
 					// check if there is a constraint on this species.  set otherSymb to the
@@ -299,18 +323,36 @@ public final class StructureDev implements Development, Serializable {
 					if (otherSymb == null)
 						continue;
 					// the current atom shouldnt have nearest neighbor with symbol otherSymb
-					List<Site> atomsInSphere = structure.getAtomsInSphereSorted(sites.get(i).getCoords(), params.getMaxNearestNeighborLength());
-					if (atomsInSphere.size() < 2)
+					List<NeighborList.Neighbor> neighbors = nl.getNeighborsSorted(i, params.getMaxNearestNeighborLength());
+					if (neighbors.isEmpty())
 						continue;
-					String nearestNeighbor = atomsInSphere.get(1).getElement().getSymbol();
+					String nearestNeighbor = sites.get(neighbors.get(0).getSiteIndex()).getElement().getSymbol();
 					if (otherSymb.equalsIgnoreCase(nearestNeighbor)) {
 						GAOut.out().stdout("Organism " + s.getID() + " failed nearest neighbor constraint.", GAOut.NOTICE, s.getID());
-						return false;
+						return reject("nearestNeighbor");
 					}
 				}
 			}
 		}
 		
+		return true;
+	}
+	
+	// the checks against the generation and the rest of the population (redundancy guards,
+	// dValue, surrogate model).  these may change g and the whole-population RG.
+	public Boolean checkPopulation(Generation gen, Organism o) {
+		long start = GAMetrics.metrics().startTimer();
+		Boolean result = checkAgainstPopulation(gen, o);
+		GAMetrics.metrics().stopTimer("dev_population", start);
+		return result;
+	}
+	
+	private Boolean checkAgainstPopulation(Generation gen, Organism o) {
+		StructureOrg s = (StructureOrg)o;
+		Structures g = (Structures)gen;
+		
+		GAParameters params = GAParameters.getParams();
+		
 		// check redundancy guards ;
 		// check against the perGeneration RG
 		if (usePerGenRG) {
@@ -328,7 +370,7 @@ public final class StructureDev implements Development, Serializable {
 					GAOut.out().stdout("perGeneration RedundancyGuard removing " + orgID
 							+ " and replacing with " + s.getID(), GAOut.INFO, s.getID());
 				}
-				return false;
+				return reject("perGenerationRedundancy");
 			} 
 		}
 		
@@ -336,9 +378,9 @@ public final class StructureDev implements Development, Serializable {
 		if (useWholePopRG && !s.knowsValue()) {
 			Integer orgID = rGuard.checkStructureOrg(s);
 			if (orgID != null) {
-				GAOut.out().stdout("Organism " + s.getID() + " failed wholePopulation redundancy guard (looks like org "
-						 + orgID + ").", GAOut.NOTICE, s.getID());
-				return false;
+				GAOut.out().stdout("Organism " + s.getID() + " failed wholePopulation redundancy guard (looks like "
+						 + IslandModel.describeID(orgID) + ").", GAOut.NOTICE, s.getID());
+				return reject("wholePopulationRedundancy");
 			} 
 		}
 
@@ -357,7 +399,7 @@ public final class StructureDev implements Development, Serializable {
 						GAOut.out().stdout("dValue rule removing " + orgs[0].getID()
 								+ " and replacing with " + o.getID(), GAOut.INFO, s.getID());
 					}
-					return false;
+					return reject("dValue");
 				}
 			}
 		
@@ -365,7 +407,7 @@ public final class StructureDev implements Development, Serializable {
 		if (s.knowsValue() && params.usingSurrogateModel()) {
 			surrogate.addEntry(s);
 			if (surrogate.fails(s))
-				return false;
+				return reject("surrogate");
 		}
 		
 		// if we're using the RedundancyGuards, add o to the list
@@ -375,4 +417,10 @@ public final class StructureDev implements Development, Serializable {
 		
 		return true;
 	}
+	
+	// counts the reason we're throwing an organism out for GAMetrics
+	private static Boolean reject(String reason) {
+		GAMetrics.metrics().count("dev_rejections", reason);
+		return false;
+	}
 }
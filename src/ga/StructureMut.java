@@ -125,7 +125,8 @@ public final class StructureMut implements Variation {
 		StructureOrg result = new StructureOrg(new Cell(newVects, newSites));
 		
 		GAOut.out().stdout("StructureMut created new StructureOrg:", GAOut.DEBUG, result.getID());
-		GAOut.out().stdout(result.toString(), GAOut.DEBUG, result.getID());		
+		if (GAOut.out().isLogging(GAOut.DEBUG))
+			GAOut.out().stdout(result.toString(), GAOut.DEBUG, result.getID());		
 		
 		return result;
 	}	
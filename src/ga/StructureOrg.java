@@ -32,6 +32,7 @@ import chemistry.Element;
 import utility.Vect;
 
 import crystallography.Cell;
+import crystallography.CompactCell;
 import crystallography.Site;
 
 // StructureOrg extends Organism and has a Structure. It is the type of
@@ -42,18 +43,42 @@ public final class StructureOrg extends Organism implements IComputedEntry, Seri
 	
 	static final long serialVersionUID = 1l;
 	
-	private Cell structure;
+	// null once we've been compact()ed
+	private volatile Cell structure;
+	// our structure packed up for keeping around.  only made by compact(), so a live
+	// organism just holds its Cell.
+	private volatile CompactCell compactStructure = null;
 	private Boolean reduced = false;
 	private StructureOrgCreator SOCreator = null;
 	
 	private double totalEnergy = Double.NaN;
+	// what this organism's energy calculation cost, if we did one
+	private ProcessRunner.Usage usage = null;
 	
 	public StructureOrg(Cell s) {
 		structure = s;
 	}
 	
 	public Cell getCell() {
-		return structure;
+		Cell s = structure;
+		return (s != null ? s : compactStructure.getCell());
+	}
+	
+	// our structure packed up.  unless we've been compact()ed, this is a new copy
+	// which we don't keep.
+	public synchronized CompactCell getCompactCell() {
+		CompactCell c = compactStructure;
+		return (c != null ? c : new CompactCell(structure));
+	}
+	
+	// for organisms which have left the population but are still kept for the record
+	// (e.g. phase diagram entries): swap the Cell for a CompactCell.  getCell() still
+	// works, but builds a new Cell each time.
+	public synchronized void compact() {
+		if (structure == null)
+			return;
+		compactStructure = new CompactCell(structure);
+		structure = null;
 	}
 	
 	
@@ -61,8 +86,9 @@ public final class StructureOrg extends Organism implements IComputedEntry, Seri
 		setCell(s, true);
 	}
 		
-	public void setCell(Cell s, boolean invalidateEnergies) {
+	public synchronized void setCell(Cell s, boolean invalidateEnergies) {
 		structure = s;
+		compactStructure = null;
 		// changing the structure invalidates the energy and fitness and satisfiesConstraints
 		if (invalidateEnergies) {
 			value = null;
@@ -71,12 +97,12 @@ public final class StructureOrg extends Organism implements IComputedEntry, Seri
 	}
 	
 	public void standardize() {
-		structure = structure.getCellWithAllAtomsInCell().getNigliReducedCell();
+		setCell(getCell().getCellWithAllAtomsInCell().getNigliReducedCell(), false);
 		reduced = true;
 	}
 	
 	public void standardize2D() {
-		structure = structure.getCellWithAllAtomsInCell().getNigliReduced2DCell();
+		setCell(getCell().getCellWithAllAtomsInCell().getNigliReduced2DCell(), false);
 		reduced = true;
 	}
 	
@@ -88,13 +114,21 @@ public final class StructureOrg extends Organism implements IComputedEntry, Seri
 		totalEnergy = t;
 	}
 	
+	public ProcessRunner.Usage getUsage() {
+		return usage;
+	}
+	
+	public void setUsage(ProcessRunner.Usage u) {
+		usage = u;
+	}
+	
 	public String toString() {
 		StringBuilder result = new StringBuilder();
 		String newline = GAUtils.newline();
 		
 		result.append("StructureOrg " + getID() + ":" + newline);
 		result.append("Total Energy: " + totalEnergy + " Value: " + value + newline);
-		result.append(structure.toString());
+		result.append(getCell().toString());
 		
 		return result.toString();
 	}
@@ -147,12 +181,14 @@ public final class StructureOrg extends Organism implements IComputedEntry, Seri
 
 	@Override
 	public double getEnergyPerAtom() {
-		return getTotalEnergy() / structure.getNumSites();
+		Cell s = structure;
+		return getTotalEnergy() / (s != null ? s.getNumSites() : compactStructure.getNumSites());
 	}
 
 	@Override
 	public Composition getComposition() {
-		return structure.getComposition();
+		Cell s = structure;
+		return (s != null ? s.getComposition() : compactStructure.getComposition());
 	}
 
 	@Override
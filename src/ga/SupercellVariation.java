@@ -80,7 +80,7 @@ public class SupercellVariation  implements Variation {
 		}
 		
 		// double one of the dimensions
-		int doubleDim = (int)(Math.random() * Constants.numDimensions);
+		int doubleDim = rand.nextInt(Constants.numDimensions);
 		for (int i = 0; i < Constants.numDimensions; i++)
 			coefs.get(doubleDim).set(i, coefs.get(doubleDim).get(i) * scaleFactor);
 				
@@ -95,7 +95,8 @@ public class SupercellVariation  implements Variation {
 		}
 		
 		GAOut.out().stdout("SupercellVariation created new StructureOrg:", GAOut.DEBUG, result.getID());
-		GAOut.out().stdout(result.toString(), GAOut.DEBUG, result.getID());			
+		if (GAOut.out().isLogging(GAOut.DEBUG))
+			GAOut.out().stdout(result.toString(), GAOut.DEBUG, result.getID());			
 		
 		return result;
 	}
@@ -158,12 +158,8 @@ public class SurfaceObjFcn extends ObjectiveFunction {
 		ObjectiveFunction energyFcn = ObjFcnFactory.getObjectiveFunctionInstance(org, objFcnArgs);
 
 		// relax the cell - have to wait for it to finish before using results
-		Thread t = energyFcn.evaluate();
 		try {
-			if (t != null)
-				t.join();
-		} catch (InterruptedException x) {
-			GAOut.out().stdout("InterruptedException in energy calc thread in SurfaceObjFcn: " + x.getMessage(), GAOut.WARNING, org.getID());
+			energyFcn.evaluateAndWait();
 		} catch (Exception x) {
 			GAOut.out().stdout("ERROR: exception in SurfaceObjFcn:run", GAOut.CRITICAL);
 			x.printStackTrace();
@@ -176,15 +172,9 @@ public class SurfaceObjFcn extends ObjectiveFunction {
 	}
 
 	// dont update numCalculations when implementing this.. the underlying objfcn will do it
-	public Thread evaluate() {		
+	protected boolean prepareEvaluation() {		
 		// short circuit here if we've done the calculation already
-		if (org.knowsValue())
-			return null;
-		
-		// start the calculation and return the Thread
-		Thread t = new Thread(this);
-		t.start();
-		return t;
+		return !org.knowsValue();
 	}
 	
 	// an ObjectiveFunction should also overload toString();
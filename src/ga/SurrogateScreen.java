@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package ga;
+
+import chemistry.Composition;
+import gulp.GulpSurrogate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pdvisual.PDAnalyzer;
+import utility.Utility;
+
+// SurrogateScreen sits between OffspringProducer and the energy calculations.  Once its
+// Model can make predictions, the producer makes numMade candidate offspring at a time, and
+// only the numKept of them with the best predicted values go on to the real objective
+// function; the rest are thrown away.  Set up by --surrogateScreen.  The models:
+//   - pairs: ridge regression of the energy per atom on histograms of the distances between
+//     each pair of species (see PairDescriptorModel), trained on every organism we've done
+//     the energy calculation for
+//   - gulp: the energy of the GulpSurrogate's fitted potentials (needs --useSurrogateModel)
+//
+// We rank candidates by predicted energy per atom, or, in pd runs, by the predicted energy
+// per atom above the current hull at their compositions.  To see how well the model is
+// doing, we keep the prediction for each organism we send on and compare it w/ the real
+// energy when that comes back.
+
+public class SurrogateScreen {
+
+	public interface Model {
+		// learn from an organism whose energy we've calculated
+		public void addEntry(StructureOrg o);
+		// true once the model can make predictions
+		public boolean isReady();
+		// predicted energy per atom, or NaN if the model doesn't know.  the candidates the
+		// model doesn't know about go after the ones it likes, in the order they were made.
+		public double predictEnergyPerAtom(StructureOrg o);
+	}
+
+	// the energies of the GulpSurrogate's potentials, which StructureDev fits as it goes
+	private static class GulpModel implements Model {
+		private GulpSurrogate surrogate;
+
+		public GulpModel(GulpSurrogate _surrogate) {
+			surrogate = _surrogate;
+		}
+
+		public void addEntry(StructureOrg o) {
+			// StructureDev hands the surrogate its entries
+		}
+
+		public boolean isReady() {
+			return true;
+		}
+
+		public double predictEnergyPerAtom(StructureOrg o) {
+			return surrogate.predictTotalEnergy(o.getCell()) / o.getCell().getNumSites();
+		}
+
+		public String toString() {
+			return "gulp";
+		}
+	}
+
+	// the number of recent predictions we check the ordering of
+	private static final int orderWindow = 100;
+
+	private Model model;
+	private int numKept;
+	private int numMade;
+
+	// the organisms we've learned from, by ID
+	private Set<Integer> seen = new HashSet<Integer>();
+	// the predicted energy per atom of each organism we sent on, and of the candidates
+	// from the last call to rank()
+	private Map<Integer,Double> predictions = new HashMap<Integer,Double>();
+	private Map<Organism,Double> lastPredictions = new HashMap<Organism,Double>();
+
+	// accuracy stats, from when we got each prediction's real energy
+	private int numScreened = 0;
+	private int numChecked = 0;
+	private double sumAbsErr = 0;
+	private double sumSqErr = 0;
+	private LinkedList<double[]> recent = new LinkedList<double[]>();
+
+	public SurrogateScreen(List<String> args) {
+		if (args == null || args.size() < 3)
+			GAParameters.usage("Not enough parameters given to SurrogateScreen", true);
+		numKept = Integer.parseInt(args.get(0));
+		numMade = Integer.parseInt(args.get(1));
+		if (numKept < 1 || numMade < numKept)
+			GAParameters.usage("SurrogateScreen: need 1 <= number kept <= number made", true);
+
+		String modelType = args.get(2);
+		if (modelType.equalsIgnoreCase("pairs")) {
+			model = new PairDescriptorModel(Utility.subList(args, 3));
+		} else if (modelType.equalsIgnoreCase("gulp")) {
+			Development dev = GAParameters.getParams().getDevelopment();
+			if (!(dev instanceof StructureDev) || ((StructureDev)dev).getSurrogate() == null)
+				GAParameters.usage("SurrogateScreen: the gulp model needs --useSurrogateModel", true);
+			model = new GulpModel(((StructureDev)dev).getSurrogate());
+		} else {
+			GAParameters.usage("Unknown SurrogateScreen model " + modelType, true);
+		}
+	}
+
+	public String toString() {
+		return "SurrogateScreen: keep " + numKept + " of " + numMade + ", model " + model;
+	}
+
+	public int getNumKept() {
+		return numKept;
+	}
+
+	public int getNumMade() {
+		return numMade;
+	}
+
+	// learn from o, if it knows its energy and we haven't seen it before.  if we made a
+	// prediction for it, see how we did.
+	public void addResult(Organism o) {
+		StructureOrg s = (StructureOrg)o;
+		// (whether or not its calculation worked, we're done waiting for it)
+		Double predicted = predictions.remove(s.getID());
+		if (!s.knowsValue() || !seen.add(s.getID()))
+			return;
+		double epa = s.getEnergyPerAtom();
+		if (Double.isNaN(epa) || Double.isInfinite(epa))
+			return;
+
+		if (predicted != null) {
+			numChecked++;
+			sumAbsErr += Math.abs(predicted - epa);
+			sumSqErr += (predicted - epa) * (predicted - epa);
+			recent.add(new double[] {predicted, epa});
+			if (recent.size() > orderWindow)
+				recent.removeFirst();
+		}
+
+		model.addEntry(s);
+	}
+
+	// true once the model can make predictions
+	public boolean ready() {
+		return model.isReady();
+	}
+
+	// candidates sorted from best to worst predicted value.  we remember the predictions
+	// for the ones the caller says it kept (see kept()).
+	public List<Organism> rank(List<Organism> candidates) {
+		double[] refs = getReferences(candidates);
+		final Map<Organism,Double> scores = new HashMap<Organism,Double>();
+		Map<Organism,Double> epas = new HashMap<Organism,Double>();
+		List<Organism> result = new ArrayList<Organism>();
+		for (int i = 0; i < candidates.size(); i++) {
+			Organism o = candidates.get(i);
+			double epa = model.predictEnergyPerAtom((StructureOrg)o);
+			epas.put(o, epa);
+			double score = Double.POSITIVE_INFINITY;
+			// NaN if e.g. GULP didn't like it
+			if (!Double.isNaN(epa) && !Double.isInfinite(epa))
+				score = epa - refs[i];
+			scores.put(o, score);
+			result.add(o);
+		}
+		Collections.sort(result, new Comparator<Organism>() {
+			public int compare(Organism o1, Organism o2) {
+				return Double.compare(scores.get(o1), scores.get(o2));
+			}
+		});
+		lastPredictions = epas;
+		numScreened += candidates.size();
+		return result;
+	}
+
+	// o, from the last call to rank(), is going on to the real energy calculation
+	public void kept(Organism o) {
+		Double epa = lastPredictions.get(o);
+		if (epa != null && !Double.isNaN(epa) && !Double.isInfinite(epa)) {
+			GAOut.out().stdout("Surrogate screen predicts " + epa + " eV/atom for org " + o.getID(), GAOut.NOTICE, o.getID());
+			predictions.put(o.getID(), epa);
+		}
+	}
+
+	// the organisms we kept which haven't come back from their energy calculations by now
+	// never will (the producer dropped them at the end of the generation, or the
+	// calculation threw), so forget their predictions
+	public void forgetUnevaluated() {
+		predictions.clear();
+	}
+
+	// the energy per atom of the current hull at each candidate's composition in pd runs,
+	// otherwise (or if we don't have a hull yet, or it's outside the hull) 0
+	private double[] getReferences(List<Organism> candidates) {
+		double[] result = new double[candidates.size()];
+		GAParameters params = GAParameters.getParams();
+		if (!params.doingPDRun() || params.getPDBuilder() == null)
+			return result;
+
+		PDAnalyzer pda = new PDAnalyzer(params.getPDBuilder().getPDData());
+		// (not until we have all the elemental references)
+		if (!pda.hasHull())
+			return result;
+
+		List<Composition> comps = new ArrayList<Composition>();
+		for (Organism o : candidates)
+			comps.add(((StructureOrg)o).getCell().getComposition());
+		double[] hull = pda.getEnergiesPerAtomOnHull(comps);
+		for (int i = 0; i < result.length; i++)
+			if (!Double.isNaN(hull[i]))
+				result[i] = hull[i];
+		return result;
+	}
+
+	// a summary of how the model is doing
+	public String getReport() {
+		StringBuilder result = new StringBuilder();
+		result.append("Surrogate screen (" + model + "): " + numScreened + " candidates screened, "
+				+ numChecked + " predictions checked");
+		if (numChecked > 0) {
+			result.append(", MAE " + sumAbsErr / numChecked + " eV/atom");
+			result.append(", RMSE " + Math.sqrt(sumSqErr / numChecked) + " eV/atom");
+		}
+		// the fraction of pairs of recent organisms which the model put in the right order
+		int numPairs = 0;
+		int numRight = 0;
+		double[][] r = recent.toArray(new double[0][]);
+		for (int i = 0; i < r.length; i++)
+			for (int j = i + 1; j < r.length; j++) {
+				double[] a = r[i];
+				double[] b = r[j];
+				if (a[1] == b[1])
+					continue;
+				numPairs++;
+				if ((a[0] < b[0]) == (a[1] < b[1]))
+					numRight++;
+			}
+		if (numPairs > 0)
+			result.append(", " + ((double)numRight / numPairs) + " of pairs of the last " + recent.size() + " in the right order");
+		return result.toString();
+	}
+}
@@ -24,7 +24,9 @@ package gulp;
 import ga.Energy;
 import ga.GAOut;
 import ga.GAParameters;
+import ga.EnergyWatchdog;
 import ga.GAUtils;
+import ga.ProcessRunner;
 import ga.StructureOrg;
 import ga.UnitsSOCreator;
 
@@ -36,7 +38,6 @@ import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import utility.Utility;
 import utility.Vect;
 
 import crystallography.Cell;
@@ -151,94 +152,52 @@ public class GulpEnergy implements Energy {
 		return result.toString();
 	}
 
-	// Returns the name of a GULP input file for the crystal c, where we can
-	// either
-	// optimize the structure or not.
-	private String gulpInputFile(StructureOrg c, String potlStr) {
-		GAParameters params = GAParameters.getParams();
-		String ans = new String("Maybe file creation failed.");
+	// Returns the GULP input for the crystal c.  GULP writes the relaxed structure to cifFile.
+	private String gulpInput(StructureOrg c, String potlStr, String cifFile) {
 		String newline = GAUtils.newline();
 		
 		StringBuilder out = new StringBuilder();
-		
-		// create the GULP input file
-		//File f = File.createTempFile(params.getRunTitle() + "." + c.getID() + ".", ".gin",new File(params.getTempDirName()));
-		File f = new File(params.getTempDirName(),params.getRunTitle() + "." + c.getID() + ".gin");
-		// store the filename
-		ans = f.getPath();
 
 		// only output a cif if we're optimizing the structure
 		out.append(headerStr + newline);		
 		out.append(newline);
-		out.append("output cif " + ans + ".cif");
+		out.append("output cif " + cifFile);
 		out.append(newline);
 		out.append(structureToString(c.getCell(), speciesWithShell));
 		out.append(newline);
 		out.append(potlStr);
 
-		// write the file
-		Utility.writeStringToFile(out.toString(), f.getPath());
-
-		return ans;
+		return out.toString();
 	}
 
 	// runs GULP on the input file given and returns the results in a String
 	public static String runGULP(String inputFile) {
-		StringBuilder gulpOutput = new StringBuilder();
-
-		String s = null;
-		BufferedReader stdInput = null;
-		BufferedReader stdError = null;
-		Process p = null;
+		String gulpOutput = "";
 		try {
 			// run the gulp command. GULP will only take input from it's stdin,
 			// not from a file. in order to avoid having
 			// to open inputFile and feed it to GULP, we use a wrapper script,
 			// callgulp, which basically is just gulp <$1 .
-			p = Runtime.getRuntime().exec("callgulp " + inputFile);
-
-			stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			// read the output
-			while ((s = stdInput.readLine()) != null) {
-				gulpOutput.append(s + GAUtils.newline());
-				GAOut.out().stdout(s, GAOut.DEBUG);
-			}
-
-			// print out any errors
-			while ((s = stdError.readLine()) != null) {
-				System.out.println(s);
-			}
+			gulpOutput = ProcessRunner.run("callgulp " + inputFile);
+		} catch (IOException e) {
+			System.out.println("IOException in GulpEnergy.runGulp: " + e.getMessage());
+			System.exit(-1);
+		}
 
+		return gulpOutput;
+	}
+	
+	// runs GULP on the given input, which we feed to callgulp through its stdin
+	public static String runGULPOnInput(String input, ProcessRunner.OutputHandler watchdog) {
+		String gulpOutput = "";
+		try {
+			gulpOutput = ProcessRunner.run("callgulp /dev/stdin", null, input, watchdog);
 		} catch (IOException e) {
 			System.out.println("IOException in GulpEnergy.runGulp: " + e.getMessage());
 			System.exit(-1);
-		} finally {
-			if (stdInput != null) 
-				try{ stdInput.close(); } catch (Exception x) { } //ignore
-			if (stdError != null) 
-				try{ stdError.close(); } catch (Exception x) { } //ignore
-			try {
-				p.getErrorStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			try {
-				p.getOutputStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			try {
-				p.getInputStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 		}
 
-		return gulpOutput.toString();
+		return gulpOutput;
 	}
 
 	// Does a Lennard-Jones GULP run on the StructureOrg c. If optimize is true,
@@ -247,16 +206,22 @@ public class GulpEnergy implements Energy {
 		double finalEnergy = Double.POSITIVE_INFINITY;
 		
 	//	speciesWithShell = swShell;
+		
+		if (GAParameters.getParams().getGulpCommand() != null)
+			return gulpDirectRun(c, relax);
 
-		String inputFile = gulpInputFile(c, potlStr);
+		GAParameters params = GAParameters.getParams();
+		String cifFileName = new File(params.getTempDirName(), params.getRunTitle() + "." + c.getID() + ".gin.cif").getPath();
 		GAOut.out().stdout("Starting GULP computation on organism " + c.getID(), GAOut.NOTICE, c.getID());
 	
-		String gulpOutput = runGULP(inputFile);
+		EnergyWatchdog watchdog = EnergyWatchdog.make(c, EnergyWatchdog.gulpParser);
+		String gulpOutput = runGULPOnInput(gulpInput(c, potlStr, cifFileName), watchdog);
+		if (watchdog != null && watchdog.aborted())
+			return Double.POSITIVE_INFINITY;
 
 		// if we're optimizing the structure, store the results of the run
 		if (relax) {
 			// update c to be the structure in GULP's output
-			String cifFileName = inputFile + ".cif";
 			Cell a = Cell.parseCif(new File(cifFileName));
 			if (a == null) {
 				GAOut.out().stdout("Warning: bad GULP CIF.  Not updating structure.", GAOut.NOTICE, c.getID());
@@ -273,6 +238,108 @@ public class GulpEnergy implements Energy {
 		return finalEnergy;
 	}
 	
+	// like gulpRun(), but runs the --gulpCommand itself w/ the input on its stdin, w/o callgulp
+	// or any files.  the relaxed structure comes from GULP's output instead of a CIF.
+	private double gulpDirectRun(StructureOrg c, Boolean relax) {
+		String newline = GAUtils.newline();
+		String input = headerStr + newline + newline + structureToString(c.getCell(), speciesWithShell) 
+				+ newline + potlStr;
+		
+		GAOut.out().stdout("Starting GULP computation on organism " + c.getID(), GAOut.NOTICE, c.getID());
+		EnergyWatchdog watchdog = EnergyWatchdog.make(c, EnergyWatchdog.gulpParser);
+		String gulpOutput;
+		try {
+			gulpOutput = ProcessRunner.run(GAParameters.getParams().getGulpCommand(), null, input, watchdog);
+		} catch (IOException x) {
+			GAOut.out().stdout("Warning: couldn't run GULP: " + x.getMessage(), GAOut.WARNING, c.getID());
+			return Double.POSITIVE_INFINITY;
+		}
+		if (watchdog != null && watchdog.aborted())
+			return Double.POSITIVE_INFINITY;
+		
+		if (relax) {
+			Cell a = parseFinalCell(gulpOutput, c.getCell());
+			if (a == null) {
+				GAOut.out().stdout("Warning: couldn't read relaxed structure from GULP output.  Not updating structure.", GAOut.NOTICE, c.getID());
+			} else {
+				c.setCell(a);
+			}
+		}
+		
+		double finalEnergy = parseFinalEnergy(gulpOutput, cautious);
+		
+		GAOut.out().stdout("Energy of org " + c.getID() + ": " + finalEnergy + " ", GAOut.NOTICE, c.getID());
+
+		return finalEnergy;
+	}
+	
+	// reads the relaxed structure from GULP's output.  input is the structure GULP was given,
+	// with the sites in the same order.  the lattice vectors are only printed if they changed
+	// (e.g. not for conv runs), so otherwise we keep input's.  returns null if the output 
+	// doesn't have the final coordinates.
+	public static Cell parseFinalCell(String gulpOutput, Cell input) {
+		List<Vect> latticeVectors = input.getLatticeVectors();
+		List<double[]> fracCoords = new ArrayList<double[]>();
+		
+		BufferedReader r = new BufferedReader(new StringReader(gulpOutput));
+		String line;
+		try {
+			while ((line = r.readLine()) != null) {
+				if (line.contains("Final Cartesian lattice vectors")) {
+					// a blank line, then the vectors
+					latticeVectors = new ArrayList<Vect>();
+					while (latticeVectors.size() < 3 && (line = r.readLine()) != null) {
+						StringTokenizer t = new StringTokenizer(line);
+						if (t.countTokens() < 3)
+							continue;
+						latticeVectors.add(new Vect(Double.parseDouble(t.nextToken()), 
+								Double.parseDouble(t.nextToken()), Double.parseDouble(t.nextToken())));
+					}
+				} else if (line.contains("Final fractional coordinates of atoms")) {
+					// a table between dashed lines, e.g.
+					//      1  Na    c     0.000000    0.000000    0.000000    0.000000
+					fracCoords.clear();
+					int numDashedLines = 0;
+					while (numDashedLines < 3 && (line = r.readLine()) != null) {
+						if (line.trim().startsWith("---")) {
+							numDashedLines++;
+							continue;
+						}
+						if (numDashedLines < 2)
+							continue;
+						StringTokenizer t = new StringTokenizer(line);
+						if (t.countTokens() < 6)
+							continue;
+						t.nextToken();
+						t.nextToken();
+						// only keep the cores
+						if (!t.nextToken().equals("c"))
+							continue;
+						fracCoords.add(new double[] {Double.parseDouble(t.nextToken()), 
+								Double.parseDouble(t.nextToken()), Double.parseDouble(t.nextToken())});
+					}
+				}
+			}
+		} catch (IOException x) {
+			GAOut.out().stdout("GulpEnergy.parseFinalCell: IOException: " + x.getLocalizedMessage(), GAOut.CRITICAL);
+			return null;
+		} catch (NumberFormatException x) {
+			GAOut.out().stdout("GulpEnergy.parseFinalCell: " + x.getMessage(), GAOut.NOTICE);
+			return null;
+		}
+		
+		if (latticeVectors.size() != 3 || fracCoords.size() != input.getNumSites())
+			return null;
+		
+		List<Site> sites = new ArrayList<Site>();
+		for (int i = 0; i < fracCoords.size(); i++) {
+			double[] f = fracCoords.get(i);
+			sites.add(new Site(input.getSite(i).getElement(), new Vect(f[0], f[1], f[2], latticeVectors)));
+		}
+		
+		return new Cell(latticeVectors, sites, input.getLabel());
+	}
+	
 	public static double parseFinalEnergy(String gulpOutput, boolean cautious) {
 		Double finalEnergy = Double.POSITIVE_INFINITY;
 		
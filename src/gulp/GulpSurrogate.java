@@ -37,8 +37,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
-import com.sun.org.apache.xml.internal.serializer.utils.Utils;
-
 import chemistry.Composition;
 import chemistry.CompositionSpace;
 import chemistry.Element;
@@ -180,7 +178,7 @@ public class GulpSurrogate implements Serializable {
 		StringBuilder gulpInput = new StringBuilder();
 		String nl = System.getProperty("line.separator");
 		gulpInput.append(headerStr + nl);
-		gulpInput.append(GulpEnergy.structureToString(c) + nl);
+		gulpInput.append(GulpEnergy.structureToString(c, new ArrayList<String>()) + nl);
 		for (int i = 0; i < pots.size(); i++)
 			gulpInput.append(pots.get(i).toGulpPotlStr(null) + nl);
 			
@@ -189,6 +187,15 @@ public class GulpSurrogate implements Serializable {
 		return GulpEnergy.parseFinalEnergy(GulpEnergy.runGULP("temp"), false) + shift;
 	}
 	
+	// the total energy of c w/ the current potentials, or NaN if GULP couldn't do it
+	public double predictTotalEnergy(Cell c) {
+		try {
+			return evaluateTotalEnergy(c);
+		} catch (RuntimeException x) {
+			return Double.NaN;
+		}
+	}
+	
 	private List<List<Integer>> getInitPinnedParms() {
 		List<List<Integer>> newPinnedParams = new ArrayList<List<Integer>>();
 		for (int i = 0; i < pots.size(); i++) {
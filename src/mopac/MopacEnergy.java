@@ -25,6 +25,7 @@ import ga.Energy;
 import ga.GAOut;
 import ga.GAParameters;
 import ga.GAUtils;
+import ga.ProcessRunner;
 import ga.StructureOrg;
 import ga.UnitsSOCreator;
 
@@ -35,7 +36,6 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -121,51 +121,11 @@ public class MopacEnergy implements Energy {
 		String input = writeInput(c);		
 
 		// Execute MOPAC
-		String s = null;
-		BufferedReader stdInput = null;
-		BufferedReader stdError = null;
-		Process p = null;
 		try {
-			p = Runtime.getRuntime().exec(execpath + " " + input);
-
-			stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			// read the output
-			while ((s = stdInput.readLine()) != null) {
-				GAOut.out().stdout(s, GAOut.DEBUG);
-			}
-
-			// print out any errors
-			while ((s = stdError.readLine()) != null) {
-				System.out.println(s);
-			}		
-
+			ProcessRunner.run(execpath + " " + input);
 		} catch (IOException e) {
 			System.out.println("IOException in MopacEnergy.runMopac: " + e.getMessage());
 			System.exit(-1);
-		} finally {
-			if (stdInput != null) 
-				try{ stdInput.close(); } catch (Exception x) { } //ignore
-			if (stdError != null) 
-				try{ stdError.close(); } catch (Exception x) { } //ignore
-			try {
-				p.getErrorStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			try {
-				p.getOutputStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			try {
-				p.getInputStream().close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 		}
 
 		// Parse final structure, set as return structure
@@ -53,9 +53,9 @@ public class GulpEPAObjFcn extends ObjectiveFunction {
 	}
 
 	@Override
-	public Thread evaluate() {
+	protected boolean prepareEvaluation() {
 		// TODO Auto-generated method stub
-		return null;
+		return false;
 	}
 
 	@Override
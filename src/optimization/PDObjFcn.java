@@ -49,31 +49,21 @@ public class PDObjFcn extends ObjectiveFunction {
 	}
 
 	// TODO: remember to update numCalculations when implementing this
-	public Thread evaluate() {		
+	protected boolean prepareEvaluation() {		
 		// short circuit here if we've done the calculation already
-		if (org.knowsValue()) // TODO: have to update due to changing phase diagram ???
-			return null;
+		// TODO: have to update due to changing phase diagram ???
 		
 		// another total energy calculation:
 		// not necessary to increment here since it's done when we use EnergyPerAtom under the covers
 	//	numCalculations++;
 		
-		// start the calculation and return the Thread
-		Thread t = new Thread(this);
-		t.start();
-		return t;
+		return !org.knowsValue();
 	}
 	
 	public void run() {
 		
 		// relax the cell - have to wait for it to finish before using results
-		Thread t = energyFcn.evaluate();
-		try {
-				t.join();
-		} catch (InterruptedException x) {
-			if (GAParameters.getParams().getVerbosity() >= 3)
-				System.out.println("InterruptedException in energy calc thread in PDObjFcn: " + x.getMessage());
-		}
+		energyFcn.evaluateAndWait();
 		
 		// updating structure w/ relaxed version is this done in EPA already
 		org.setValue((new PDAnalyzer(GAParameters.getParams().getPDBuilder().getPDData())).getEnergyPerAtomAboveHull(org));
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package pdvisual;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import Jama.Matrix;
+
+import chemistry.Element;
+
+// IncrementalHull keeps the lower convex hull of a set of entries in composition-energy
+// space up to date as entries are added, so PDBuilder doesn't have to run qconvex over
+// everything each time.  Entries are known by their index in the builder's list.
+//
+// Each facet is a simplex of numElements entries, and we keep the hyperplane through it as
+// a vector of "chemical potentials" mu, so that the facet's energy per atom at fractional
+// composition x is mu.x.  The lower hull is a convex function of x, so its energy at x is
+// just the largest mu.x over all the facets, which is how we answer queries.
+//
+// Adding an entry (beneath-beyond): the facets whose planes pass above the new point are
+// the ones it can "see".  If there aren't any, the entry is above the hull (and will stay
+// there, since the hull only goes down) and we forget it.  Otherwise we remove the visible
+// facets and make new ones from the new point and each ridge on the edge of the visible
+// region, except the ones which would be vertical (i.e. when the new point's composition
+// is in the ridge's span, as when it's on an edge of the composition simplex, or has the
+// same composition as the vertex it replaces).  So adding an entry costs time proportional
+// to the number of facets, not the number of entries.
+//
+// We can't make a hull until we have an entry for each element; until then we just hold on
+// to the entries and add them once we can.
+
+public class IncrementalHull implements Serializable {
+	static final long serialVersionUID = 1;
+
+	// how far below the hull a point has to be to change it (eV/atom)
+	public static double E_TOL = 1e-9;
+
+	private static class Facet implements Serializable {
+		static final long serialVersionUID = 1;
+
+		// entry indices, sorted
+		int[] verts;
+		double[] mu;
+	}
+
+	private List<Element> elements;
+	private int dim;
+
+	// fractional compositions and energies per atom of the entries we're using, by index
+	private Map<Integer,double[]> fracs = new LinkedHashMap<Integer,double[]>();
+	private Map<Integer,Double> energies = new LinkedHashMap<Integer,Double>();
+
+	private List<Facet> facets = null;
+	// the lowest elemental entry for each element, and the other entries, until we have a hull
+	private int[] refs;
+	private List<Integer> waiting = new LinkedList<Integer>();
+
+	public IncrementalHull(List<Element> _elements) {
+		elements = new ArrayList<Element>(_elements);
+		dim = elements.size();
+		refs = new int[dim];
+		Arrays.fill(refs, -1);
+	}
+
+	public boolean isReady() {
+		return facets != null;
+	}
+
+	public int getNumFacets() {
+		return (facets == null) ? 0 : facets.size();
+	}
+
+	// adds the entry w/ the given index.  returns true if the hull changed.
+	public boolean add(int index, IComputedEntry e) {
+		double epa = e.getEnergyPerAtom();
+		if (Double.isNaN(epa) || Double.isInfinite(epa))
+			return false;
+		double[] x = new double[dim];
+		for (int i = 0; i < dim; i++)
+			x[i] = e.getComposition().getFractionalCompo(elements.get(i));
+
+		if (facets != null)
+			return insert(index, x, epa);
+
+		// no hull yet
+		fracs.put(index, x);
+		energies.put(index, epa);
+		int elem = getElementIndex(x);
+		if (elem < 0) {
+			waiting.add(index);
+		} else if (refs[elem] < 0 || epa < energies.get(refs[elem])) {
+			if (refs[elem] >= 0)
+				forget(refs[elem]);
+			refs[elem] = index;
+		} else {
+			forget(index);
+		}
+
+		for (int r : refs)
+			if (r < 0)
+				return false;
+
+		// start w/ the simplex of the elements and add the rest
+		facets = new ArrayList<Facet>();
+		Facet f = makeFacet(refs.clone());
+		if (f == null)
+			throw new RuntimeException("IncrementalHull: elemental references are degenerate?");
+		facets.add(f);
+		for (Integer i : waiting) {
+			double[] wx = fracs.remove(i);
+			double we = energies.remove(i);
+			insert(i, wx, we);
+		}
+		waiting = null;
+		return true;
+	}
+
+	private boolean insert(int index, double[] x, double epa) {
+		List<Facet> visible = new ArrayList<Facet>();
+		for (Facet f : facets)
+			if (dot(f.mu, x) > epa + E_TOL)
+				visible.add(f);
+		if (visible.isEmpty())
+			return false;
+
+		fracs.put(index, x);
+		energies.put(index, epa);
+
+		// the ridges on the edge of the visible region are the ones which only belong to one
+		// visible facet
+		Map<List<Integer>,int[]> ridges = new LinkedHashMap<List<Integer>,int[]>();
+		for (Facet f : visible) {
+			for (int skip = 0; skip < dim; skip++) {
+				int[] ridge = new int[dim - 1];
+				for (int i = 0, j = 0; i < dim; i++)
+					if (i != skip)
+						ridge[j++] = f.verts[i];
+				List<Integer> key = toList(ridge);
+				if (ridges.containsKey(key))
+					ridges.put(key, null);
+				else
+					ridges.put(key, ridge);
+			}
+		}
+		facets.removeAll(visible);
+
+		for (int[] ridge : ridges.values()) {
+			if (ridge == null)
+				continue;
+			int[] verts = new int[dim];
+			System.arraycopy(ridge, 0, verts, 0, dim - 1);
+			verts[dim - 1] = index;
+			Arrays.sort(verts);
+			Facet f = makeFacet(verts);
+			if (f != null)
+				facets.add(f);
+		}
+
+		// forget about the vertices which aren't on the hull anymore
+		for (Facet f : visible)
+			for (int v : f.verts)
+				if (!isVertex(v))
+					forget(v);
+
+		return true;
+	}
+
+	// the facet through the given entries, or null if it would be vertical
+	private Facet makeFacet(int[] verts) {
+		double[][] x = new double[dim][];
+		double[][] e = new double[dim][1];
+		for (int i = 0; i < dim; i++) {
+			x[i] = fracs.get(verts[i]);
+			e[i][0] = energies.get(verts[i]);
+		}
+		Matrix m = new Matrix(x);
+		if (Math.abs(m.det()) < PDBuilder.DET_TOL)
+			return null;
+
+		Facet result = new Facet();
+		result.verts = verts;
+		result.mu = m.solve(new Matrix(e)).getColumnPackedCopy();
+		return result;
+	}
+
+	private boolean isVertex(int index) {
+		for (Facet f : facets)
+			for (int v : f.verts)
+				if (v == index)
+					return true;
+		return false;
+	}
+
+	private void forget(int index) {
+		fracs.remove(index);
+		energies.remove(index);
+	}
+
+	// the element x is pure, or -1 if it isn't
+	private int getElementIndex(double[] x) {
+		for (int i = 0; i < dim; i++)
+			if (Math.abs(x[i] - 1) < PDAnalyzer.COMP_TOL)
+				return i;
+		return -1;
+	}
+
+	// the energy per atom of the hull at fractional composition x (in the order of the
+	// elements given to the constructor)
+	public double getEnergyPerAtomOnHull(double[] x) {
+		if (facets == null)
+			throw new IllegalStateException("IncrementalHull: no hull yet");
+		double result = Double.NEGATIVE_INFINITY;
+		for (Facet f : facets)
+			result = Math.max(result, dot(f.mu, x));
+		return result;
+	}
+
+	// the facets, as lists of entry indices
+	public List<List<Integer>> getFacets() {
+		List<List<Integer>> result = new LinkedList<List<Integer>>();
+		if (facets != null)
+			for (Facet f : facets)
+				result.add(toList(f.verts));
+		return result;
+	}
+
+	// the chemical potentials of each facet, in the same order as getFacets()
+	public double[][] getFacetPlanes() {
+		double[][] result = new double[getNumFacets()][];
+		for (int i = 0; i < result.length; i++)
+			result[i] = facets.get(i).mu.clone();
+		return result;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double result = 0;
+		for (int i = 0; i < a.length; i++)
+			result += a[i] * b[i];
+		return result;
+	}
+
+	private static List<Integer> toList(int[] a) {
+		List<Integer> result = new ArrayList<Integer>(a.length);
+		for (int i : a)
+			result.add(i);
+		return result;
+	}
+}
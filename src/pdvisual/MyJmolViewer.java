@@ -36,8 +36,6 @@ import org.jmol.adapter.smarter.SmarterJmolAdapter;
 import org.jmol.api.JmolAdapter;
 import org.jmol.api.JmolSimpleViewer;
 
-import com.sun.xml.internal.bind.v2.schemagen.xmlschema.List;
-
 import crystallography.Cell;
 
 public class MyJmolViewer {
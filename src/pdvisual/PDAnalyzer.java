@@ -27,6 +27,11 @@ import chemistry.*;
 import crystallography.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * PDAnalyzer.java
@@ -54,6 +59,14 @@ public class PDAnalyzer implements IPDAnalyzer {
      * 
      */
     public static double NEG_COMP_TOL = -0.00000001;
+
+    /**
+     * batches of hull queries (see getEnergiesPerAtomOnHull()) are only split up
+     * among threads if each thread would get at least this many (queries x facets)
+     */
+    public static int MIN_WORK_PER_THREAD = 100000;
+    private static ExecutorService pool = null;
+
     PDData pdd;
 
     public PDAnalyzer(PDData _pdd) {
@@ -519,33 +532,131 @@ public class PDAnalyzer implements IPDAnalyzer {
      * @return
      */
     public double getEnergyPerAtomOnHull(Composition c) {
+        // the planes through the facets come from the hull, so we don't need to find
+        // which facet c is in
+        return pdd.getEnergyPerAtomOnHull(c);
+    }
 
-        // for numerical reasons it's best to do this in two steps:
-        //  1) search to see if there is a stable vertex at the given composition
+    /**
+     * true if there's a hull to query, i.e. the phase diagram has all of its
+     * elemental references
+     */
+    public boolean hasHull() {
+        return pdd.getFacetPlanes().length > 0;
+    }
 
-        List<IComputedEntry> entries = pdd.getAllEntries();
-        for (int i = 0; i < entries.size(); i++) {
-            if (pdd.isStable(i) && entries.get(i).getComposition() == c) {
-                return entries.get(i).getEnergyPerAtom();
+    /**
+     * returns the energy/atom on the hull at each of the given compositions,
+     * or NaN for those which aren't in this phase diagram's composition space.
+     *
+     * we get the facets' planes once and put everything in flat arrays, so this
+     * is much cheaper than calling getEnergyPerAtomOnHull() for each composition.
+     * big batches are split up among a few threads.
+     */
+    public double[] getEnergiesPerAtomOnHull(List<Composition> comps) {
+        List<Element> elements = pdd.getElements();
+        final int dim = elements.size();
+        double[][] planeArray = pdd.getFacetPlanes();
+        if (planeArray.length == 0)
+            throw new IllegalArgumentException("PDAnalyzer: no hull");
+
+        final int numFacets = planeArray.length;
+        final double[] planes = new double[numFacets * dim];
+        for (int f = 0; f < numFacets; f++)
+            System.arraycopy(planeArray[f], 0, planes, f * dim, dim);
+
+        final int numQueries = comps.size();
+        final double[] x = new double[numQueries * dim];
+        final double[] result = new double[numQueries];
+        int q = 0;
+        for (Composition c : comps) {
+            double total = 0;
+            for (int j = 0; j < dim; j++) {
+                x[q * dim + j] = c.getFractionalCompo(elements.get(j));
+                total += x[q * dim + j];
             }
+            if (Math.abs(total - 1) > COMP_TOL)
+                result[q] = Double.NaN;
+            q++;
         }
 
-        //	2) otherwise it's probably at the interior of a facet so things work out ok
-        //		if we look for the facet it's in and do the linear combination thing
+        int numChunks = (int)Math.min(Runtime.getRuntime().availableProcessors(),
+                (long)numQueries * numFacets / MIN_WORK_PER_THREAD);
+        if (numChunks <= 1) {
+            evaluate(planes, numFacets, dim, x, result, 0, numQueries);
+            return result;
+        }
 
-        // get the facet in which the composition lies
+        List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < numChunks; i++) {
+            final int start = (int)((long)numQueries * i / numChunks);
+            final int end = (int)((long)numQueries * (i + 1) / numChunks);
+            chunks.add(new Callable<Object>() {
+                public Object call() {
+                    evaluate(planes, numFacets, dim, x, result, start, end);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> f : getPool().invokeAll(chunks))
+                f.get();
+        } catch (Exception e) {
+            // shouldn't happen, but we can always just do it all here
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            evaluate(planes, numFacets, dim, x, result, 0, numQueries);
+        }
+        return result;
+    }
 
-        List<Integer> facet = getFacet(c);
+    /**
+     * returns the distance above the hull of each of the given entries, or
+     * NaN for those not in this phase diagram's composition space.
+     * see getEnergiesPerAtomOnHull().
+     */
+    public double[] getEnergiesPerAtomAboveHull(List<? extends IComputedEntry> entries) {
+        List<Composition> comps = new ArrayList<Composition>(entries.size());
+        for (IComputedEntry e : entries)
+            comps.add(e.getComposition());
+        double[] result = getEnergiesPerAtomOnHull(comps);
+        int i = 0;
+        for (IComputedEntry e : entries) {
+            result[i] = e.getEnergyPerAtom() - result[i];
+            i++;
+        }
+        return result;
+    }
 
-        // make a list of Compositions from which the given Composition will be made
-        List<IComputedEntry> basis = new LinkedList<IComputedEntry>();
-        for (Integer i : facet) {
-            basis.add(pdd.getEntry(i));
+    // the hull is the highest of the facets' planes.  fills in result[start..end),
+    // except where it's NaN already.
+    private static void evaluate(double[] planes, int numFacets, int dim, double[] x,
+            double[] result, int start, int end) {
+        for (int q = start; q < end; q++) {
+            if (Double.isNaN(result[q]))
+                continue;
+            double best = Double.NEGATIVE_INFINITY;
+            for (int f = 0; f < numFacets; f++) {
+                double e = 0;
+                for (int j = 0; j < dim; j++)
+                    e += planes[f * dim + j] * x[q * dim + j];
+                if (e > best)
+                    best = e;
+            }
+            result[q] = best;
         }
+    }
 
-        // get coefficient of each constituent
-        MixedPhase mphase = new MixedPhase(c, basis);
-        return mphase.getEnergyPerAtom();
+    private static synchronized ExecutorService getPool() {
+        if (pool == null)
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "hull");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        return pool;
     }
 
 
@@ -26,7 +26,6 @@ import Jama.Matrix;
 import chemistry.*;
 import crystallography.*;
 
-import ga.GAOut;
 import ga.GAParameters;
 import ga.Organism;
 
@@ -44,7 +43,10 @@ import java.util.*;
  * External interface consists of two calls:
  *  - construct a PDBuilder object - give it various info about the system
  *  - call getPDData() - to get the finished PDData object
- * Most actual computation will be done during the getPDData call.
+ * 
+ * The convex hull is kept up to date as entries are added (see IncrementalHull),
+ * so getPDData() doesn't have to start from scratch, and we hand out the same
+ * PDData until another entry is added.
  * 
  * @author wtipton
  *
@@ -61,128 +63,86 @@ public class PDBuilder implements Serializable {
     protected List<IComputedEntry> entries;
     protected List<Element> elements;
     protected Map<Element, Double> chempots;
+    
+    // the lower hull of the entries.  null in PDBuilders saved before we kept one.
+    private IncrementalHull hull;
+    // the entries we have, and the last PDData we made and its analyzer (null if they're
+    // out of date)
+    private transient Set<IComputedEntry> entrySet;
+    private transient PDData pdData;
+    private transient PDAnalyzer pdAnalyzer;
 
     public PDBuilder(List<IComputedEntry> _entries, List<Element> _elements, Map<Element, Double> _chempots) {
-        entries = new LinkedList<IComputedEntry>(_entries);
+        entries = new ArrayList<IComputedEntry>(_entries);
         elements = new LinkedList<Element>(_elements);
         chempots = new HashMap<Element, Double>(_chempots);
     }
     
-    public void addEntry(IComputedEntry c) {
+    public synchronized void addEntry(IComputedEntry c) {
+    	getHull();
     	entries.add(c);
+    	entrySet.add(c);
+    	hull.add(entries.size() - 1, c);
+    	pdData = null;
+    	pdAnalyzer = null;
+    }
+    
+    private IncrementalHull getHull() {
+    	if (hull == null || entrySet == null) {
+    		// e.g. read in from an old save file
+    		entries = new ArrayList<IComputedEntry>(entries);
+    		hull = new IncrementalHull(elements);
+    		for (int i = 0; i < entries.size(); i++)
+    			hull.add(i, entries.get(i));
+    		entrySet = Collections.newSetFromMap(new IdentityHashMap<IComputedEntry,Boolean>());
+    		entrySet.addAll(entries);
+    		pdData = null;
+    		pdAnalyzer = null;
+    	}
+    	return hull;
     }
 
-    public PDData getPDData() {
+    // an analyzer for the current hull, so that callers who query it for every organism
+    // don't each make their own
+    public synchronized PDAnalyzer getPDAnalyzer() {
+    	if (pdAnalyzer == null)
+    		pdAnalyzer = new PDAnalyzer(getPDData());
+    	return pdAnalyzer;
+    }
 
-        PDData newPDData = new PDData(entries, elements, chempots);
-        
-        /*
-         * qconvex doesn't like when we have a number of equals to the dimension of the convex hull space
-         * Ex: when we have a binary (dim 2) with only 2 entries basically a trivially immiscible system
-         * qconvex would throw something like: qhull   error: not enough points (2) to construct initial simplex (need 3)
-         * 
-         * In this case we just return directly the PDData and we don't compute the convexhull
-         * 
-         * Geoffroy, 21 october 2008
-         */
-
-        if (entries.size() == elements.size()) {
-            List<List<Integer>> facets = new LinkedList<List<Integer>>();
-            List<Integer> list = new LinkedList<Integer>();
-            for (int i = 0; i < entries.size(); i++) {
-                list.add(i);
-            }
-            facets.add(list);
-            newPDData.setFacets(facets);
-            return newPDData;
-        }
+    public synchronized PDData getPDData() {
+    	getHull();
+    	if (pdData != null)
+    		return pdData;
 
-        // find the convex hull
-        PDConvexable convexableData = new PDConvexable(newPDData); 
-        Convexhull chull = new Convexhull(convexableData, false);
-        List<List<Integer>> facets = chull.getFaLists();
-        
-        newPDData.setCHullVolume(chull.getVolume());
+    	// a copy, so that adding entries later doesn't change this PDData (or the
+    	// list while someone's writing it out)
+        PDData newPDData = new PDData(new ArrayList<IComputedEntry>(entries), elements, chempots);
         
-        // remove vertical facets:
-        // note that the PDk option in qconvex is not good for this as it is susceptible
-        // to precision error
-        /**
-         * Fri Jul 18 01:59:29 EDT 2008 Chris
-         * One, of probably several ways to remove vertical facets is to determine when the
-         * matrix c[i][j] == amount of i^th element in composition of j^th vertex and
-         * dim(c) = numElement x numElement has a determinant of zero (i.e., 
-         * it lies in a subspace of the composition space
-         * Example: facets in Li-Ti-O include some which lie along the Ti-O axis
-         *          and are parallel to the energy axis 
-         */
-        Iterator<List<Integer>> iFacet = facets.iterator();
-        while (iFacet.hasNext()) {
-            List<Integer> facet = iFacet.next();
-            boolean needToRemove = false;
-            //build array 
-            double[][] C = new double[elements.size()][elements.size()];
-
-            for (int i = 0; i < facet.size(); i++) {
-                Composition ci = entries.get(facet.get(i)).getComposition();
-                for (int j = 0; j < elements.size(); j++) {
-                    C[j][i] = ci.getFractionalCompo(elements.get(j));
-                }
-            }
-            Matrix m = new Matrix(C);
-            if (Math.abs(m.det()) < DET_TOL) {
-                needToRemove = true;
-            }
-            if (needToRemove) {
-    			GAOut.out().stdout("removing facet (all vertices on vertical face of hull):", GAOut.DEBUG);
-                for (int i = 0; i < facet.size(); i++) {
-                	GAOut.out().stdout(newPDData.getEntry(facet.get(i)).toString(), GAOut.DEBUG);
-                }
-                iFacet.remove();
-            }
-        }
-        /**
-         * remove facets where the formation energy of
-         * one of the points on the facet is positive (i.e., it is part of the
-         * convex hull, but in the Eform > 0 space)
-         * 
-         * and lastly, in the case where points with negative formation energy exist,
-         * and no points with positive formation energy exist, we have the "flat"
-         * facet whose endpoints are the elemental phases, and we want to remove this
-         */
-        iFacet = facets.iterator();
-        List<Double> eforms = newPDData.getFormEnergiesPerAtom();
+        List<List<Integer>> facets = hull.getFacets();
+        newPDData.setFacets(facets);
+        newPDData.setFacetPlanes(hull.getFacetPlanes());
         
-        boolean haveNegEformEntries = false;
-        for (Double e : eforms) {
-        	if (e < 0) {
-        		haveNegEformEntries = true;
-        		break;
+        // the volume between the hull and the plane through the elemental references
+        double volume = 0;
+        int dim = elements.size();
+        double factorial = 1;
+        for (int i = 2; i < dim; i++)
+        	factorial *= i;
+        List<Double> eforms = hull.isReady() ? newPDData.getFormEnergiesPerAtom() : null;
+        for (List<Integer> facet : facets) {
+        	double[][] m = new double[dim][dim];
+        	double height = 0;
+        	for (int i = 0; i < dim; i++) {
+        		Composition ci = entries.get(facet.get(i)).getComposition();
+        		for (int j = 0; j < dim - 1; j++)
+        			m[i][j] = ci.getFractionalCompo(elements.get(j));
+        		m[i][dim - 1] = 1;
+        		height -= eforms.get(facet.get(i)) / dim;
         	}
+        	volume += Math.abs(new Matrix(m).det()) / factorial * height;
         }
-        
-        while (iFacet.hasNext()) {
-            List<Integer> facet = iFacet.next();
-            boolean removeFacet = false;
-            for (Integer ivert : facet) {
-                if (eforms.get(ivert) > EFORM_TOL) {
-                    removeFacet = true;
-                    break;
-                }
-            }
-            if (!removeFacet && haveNegEformEntries) {
-            	removeFacet = true;
-                for (Integer ivert : facet) {
-                	// remove facet if eforms of all endpoints are essentially 0
-                	removeFacet &= Math.abs(eforms.get(ivert)) < EFORM_TOL;
-                }
-            }
-            if (removeFacet) {
-                iFacet.remove();
-            }
-        }
-
-        newPDData.setFacets(facets);
+        newPDData.setCHullVolume(volume);
 
         // compute the adjacent facets
         // build the adjacency list
@@ -214,13 +174,13 @@ public class PDBuilder implements Serializable {
         }
         newPDData.setAdjacencyList(adjacencyList);
 
+        pdData = newPDData;
         return newPDData;
     }
 
-	public boolean containsEntry(IComputedEntry o) {
-		for (IComputedEntry e : entries)
-			if (o == e) // just compare references?
-				return true;
-		return false;
+	public synchronized boolean containsEntry(IComputedEntry o) {
+		// just compare references
+		getHull();
+		return entrySet.contains(o);
 	}
 }
@@ -23,6 +23,7 @@ package pdvisual;
 
 import java.util.*;
 import java.io.*;
+import Jama.Matrix;
 import chemistry.*;
 
 /**
@@ -84,6 +85,11 @@ public class PDData implements Serializable, IPDPlottable {
     private List<List<Integer>> indxFacets;
     // Keep a record of which facets are adjacent.
     private List<List<Integer>> adjacencyList;
+    // The hyperplane through each facet, as the energy per atom of each element at
+    // that facet (so a facet's energy per atom at fractional composition x is
+    // facetPlanes[i].x).  In the same order as indxFacets; made from them if no one
+    // gave them to us.
+    private double[][] facetPlanes;
 
     public PDData(List<IComputedEntry> all, List<Element> els, Map<Element, Double> cps, List<List<Integer>> f) {
         checkInputParameters(all, els);
@@ -226,6 +232,55 @@ public class PDData implements Serializable, IPDPlottable {
 
     public void setFacets(List<List<Integer>> f) {
         indxFacets = f;
+        facetPlanes = null;
+    }
+
+    public void setFacetPlanes(double[][] planes) {
+        facetPlanes = planes;
+    }
+
+    public double[][] getFacetPlanes() {
+        if (facetPlanes == null) {
+            int dim = elements.size();
+            double[][] planes = new double[indxFacets.size()][];
+            for (int f = 0; f < planes.length; f++) {
+                List<Integer> facet = indxFacets.get(f);
+                double[][] x = new double[dim][dim];
+                double[][] e = new double[dim][1];
+                for (int i = 0; i < dim; i++) {
+                    IComputedEntry ent = allICEs.get(facet.get(i));
+                    for (int j = 0; j < dim; j++)
+                        x[i][j] = ent.getComposition().getFractionalCompo(elements.get(j));
+                    e[i][0] = ent.getEnergyPerAtom();
+                }
+                planes[f] = new Matrix(x).solve(new Matrix(e)).getColumnPackedCopy();
+            }
+            facetPlanes = planes;
+        }
+        return facetPlanes;
+    }
+
+    /**
+     * returns the energy per atom of the convex hull at the given composition.
+     * the hull is convex, so that's the highest of the facets' planes there.
+     */
+    public double getEnergyPerAtomOnHull(Composition c) {
+        double[] x = new double[elements.size()];
+        double total = 0;
+        for (int j = 0; j < x.length; j++) {
+            x[j] = c.getFractionalCompo(elements.get(j));
+            total += x[j];
+        }
+        if (Math.abs(total - 1) > PDAnalyzer.COMP_TOL || getFacetPlanes().length == 0)
+            throw new IllegalArgumentException("Composition " + c + " isn't on the hull");
+        double result = Double.NEGATIVE_INFINITY;
+        for (double[] mu : getFacetPlanes()) {
+            double e = 0;
+            for (int j = 0; j < x.length; j++)
+                e += mu[j] * x[j];
+            result = Math.max(result, e);
+        }
+        return result;
     }
 
     public Set<Integer> getIndxStableEntries() {
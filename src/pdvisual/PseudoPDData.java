@@ -25,7 +25,6 @@ import java.util.*;
 
 import chemistry.*;
 import crystallography.*;
-import com.sun.org.apache.bcel.internal.classfile.Utility;
 
 public class PseudoPDData implements IPDPlottable {
 	
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package utility;
+
+import java.util.Random;
+
+// A Random which can be split into independent streams, following the SplitMix64
+// generator (Steele, Lea and Flood, "Fast splittable pseudorandom number generators",
+// OOPSLA 2014).  Its state is just two longs, so it's cheap to make one per task and to
+// serialize along with the rest of the GA's state.  Unlike java.util.Random, it does no
+// locking or CAS, so each instance should only be used by one thread at a time.
+//
+// split() makes a new stream from this one (and advances this one), and forKeys() makes
+// the stream belonging to a list of keys (e.g. generation, organism and operator numbers)
+// under some root seed, without touching any other stream.  Either way, the result only
+// depends on the seeds, not on which thread asks or when.
+
+public class SplitRandom extends Random {
+
+	static final long serialVersionUID = 1l;
+
+	private static final long goldenGamma = 0x9e3779b97f4a7c15L;
+
+	private long state;
+	private long gamma;
+
+	public SplitRandom() {
+		this(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+	}
+
+	public SplitRandom(long seed) {
+		this(seed, goldenGamma);
+	}
+
+	private SplitRandom(long _state, long _gamma) {
+		super(_state);
+		state = _state;
+		gamma = _gamma;
+	}
+
+	// the stream belonging to keys under root.  different lists of keys give independent streams.
+	public static SplitRandom forKeys(long root, long... keys) {
+		long s = mix64(root);
+		for (long k : keys)
+			s = mix64(s ^ mix64(k + goldenGamma));
+		return new SplitRandom(s, mixGamma(s + goldenGamma));
+	}
+
+	// a new, independent stream
+	public SplitRandom split() {
+		return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	public void setSeed(long seed) {
+		state = seed;
+		gamma = goldenGamma;
+		// clears Random's saved gaussian
+		super.setSeed(seed);
+	}
+
+	protected int next(int bits) {
+		return (int)(mix64(nextSeed()) >>> (64 - bits));
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * 0x1.0p-53;
+	}
+
+	private long nextSeed() {
+		return (state += gamma);
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	// gammas must be odd, and ones with too few bit transitions make poor streams
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return (Long.bitCount(z ^ (z >>> 1)) < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+	public static void main(String args[]) {
+		SplitRandom r = new SplitRandom(42);
+		for (int i = 0; i < 5; i++)
+			System.out.println(r.nextInt(100) + " " + r.nextDouble() + " " + forKeys(42, 1, i).nextLong());
+	}
+
+}
@@ -21,6 +21,10 @@ This file is part of the Genetic Algorithm for Structure and Phase Prediction (G
 
 package utility;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
 
@@ -43,9 +47,9 @@ public class Vect implements Serializable {
 	static final long serialVersionUID = 1l;
 	
 	/* fractional coordinates */
-	private List<Double> frac;
+	private double[] frac;
 	/* cartesian coordinates */
-	private List<Double> cart;
+	private double[] cart;
 	/* basis given in cartesian coordinates */
 	private List<Vect> basis;
 	
@@ -57,10 +61,10 @@ public class Vect implements Serializable {
 		
 		if (_basis != null) {
 			basis = _basis;
-			frac = cartComps;
+			frac = toArray(cartComps);
 			setCartCoordToMatchFracCoord();
 		} else
-			cart = new ArrayList<Double>(cartComps);
+			cart = toArray(cartComps);
 	}
 	public Vect(Double _u, Double _v, Double _w) {
 		this(_u,_v,_w,null);	
@@ -69,8 +73,7 @@ public class Vect implements Serializable {
 	public Vect(Double _u, Double _v, Double _w, List<Vect> _basis) {
 		if (_basis != null) {
 			basis = _basis;
-			frac = new ArrayList<Double>();
-			frac.add(_u); frac.add(_v); frac.add(_w);
+			frac = new double[] {_u, _v, _w};
 			// A null basis indicates that u,v,and w are cartesian coords,
 			// i.e. the basis is the standard unit vectors 
 			// Make sure our basis has three vectors 
@@ -78,8 +81,7 @@ public class Vect implements Serializable {
 				throw new IllegalArgumentException("ThreeVector given basis with other than 3 vectors.");
 			setCartCoordToMatchFracCoord();
 		} else {
-			cart = new ArrayList<Double>();
-			cart.add(_u); cart.add(_v); cart.add(_w);
+			cart = new double[] {_u, _v, _w};
 		}
 	}
 	
@@ -87,6 +89,29 @@ public class Vect implements Serializable {
 		this(ds[0], ds[1], ds[2]);
 	}
 	
+	// takes ownership of cartComps, so don't use it after
+	private static Vect fromCartArray(double[] cartComps) {
+		Vect result = new Vect(0.0, 0.0, 0.0);
+		result.cart = cartComps;
+		return result;
+	}
+	
+	private static double[] toArray(List<Double> l) {
+		if (l == null)
+			return null;
+		double[] result = new double[l.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = l.get(i);
+		return result;
+	}
+	
+	private static List<Double> toList(double[] a) {
+		List<Double> result = new ArrayList<Double>(a.length);
+		for (double d : a)
+			result.add(d);
+		return result;
+	}
+	
 	public Vect leftMultByMatrix(Matrix m) {
 		if (m.getColumnDimension() != this.getDimension())
 			throw new RuntimeException("dims dont match in Vect.leftMultByMatrix");
@@ -95,28 +120,101 @@ public class Vect implements Serializable {
 	}
 	
 	public double[][] getPackedCartComps() {
-		List<Double> ccomps = getCartesianComponents();
-		double result[][] = new double[ccomps.size()][1];
-		for (int i = 0; i < ccomps.size(); i++)
-			result[i][0] = ccomps.get(i);
+		double result[][] = new double[cart.length][1];
+		for (int i = 0; i < cart.length; i++)
+			result[i][0] = cart[i];
 		return result;
 	}
 
 	public List<Double> getCartesianComponents() {
-		return new ArrayList<Double>(cart);
+		return toList(cart);
+	}
+	
+	/* The methods below don't allocate (or only allocate once), for use in hot loops. */
+	
+	public double getCartComponent(int i) {
+		return cart[i];
+	}
+	
+	// returns a copy of the cartesian components
+	public double[] getCartesianArray() {
+		return cart.clone();
+	}
+	
+	public double getCartDistanceSquaredTo(Vect other) {
+		if (other.cart.length != cart.length)
+			throw new RuntimeException("Vector: trying to get distance between vectors of different lengths.");
+		
+		double sum = 0.0;
+		for (int i = 0; i < cart.length; i++) {
+			double d = other.cart[i] - cart[i];
+			sum += d*d;
+		}
+		return sum;
+	}
+	
+	// returns the inverse of the matrix whose columns are the given basis vectors.  pass
+	// it to getComponentsWRTInverseBasis() to find the components of many Vects with
+	// respect to the same basis without redoing the inversion each time.
+	public static double[][] getInverseBasisMatrix(List<Vect> basis) {
+		int dim = basis.get(0).getDimension();
+		if (basis.size() != dim)
+			throw new RuntimeException("Vector: trying get components wrt basis of wrong size.");
+		
+		if (dim != 3) {
+			Matrix B = new Matrix(dim,dim);
+			for (int i = 0; i < dim; i++)
+				for (int j = 0; j < dim; j++)
+					B.set(i, j, basis.get(j).cart[i]);
+			if (Math.abs(B.det()) < Constants.epsilon)
+				throw new IllegalArgumentException("ThreeVector.getComponentsWRTBasis given degenerate basis.");
+			return B.inverse().getArray();
+		}
+		
+		// columns of B are the basis vectors
+		double[] a = basis.get(0).cart;
+		double[] b = basis.get(1).cart;
+		double[] c = basis.get(2).cart;
+		double det = a[0]*(b[1]*c[2] - b[2]*c[1]) - b[0]*(a[1]*c[2] - a[2]*c[1]) + c[0]*(a[1]*b[2] - a[2]*b[1]);
+		if (Math.abs(det) < Constants.epsilon)
+			throw new IllegalArgumentException("ThreeVector.getComponentsWRTBasis given degenerate basis.");
+		
+		// rows of the inverse are the cross products of the other two columns, over the determinant
+		double[][] inv = new double[3][3];
+		inv[0][0] = (b[1]*c[2] - b[2]*c[1]) / det;
+		inv[0][1] = (b[2]*c[0] - b[0]*c[2]) / det;
+		inv[0][2] = (b[0]*c[1] - b[1]*c[0]) / det;
+		inv[1][0] = (c[1]*a[2] - c[2]*a[1]) / det;
+		inv[1][1] = (c[2]*a[0] - c[0]*a[2]) / det;
+		inv[1][2] = (c[0]*a[1] - c[1]*a[0]) / det;
+		inv[2][0] = (a[1]*b[2] - a[2]*b[1]) / det;
+		inv[2][1] = (a[2]*b[0] - a[0]*b[2]) / det;
+		inv[2][2] = (a[0]*b[1] - a[1]*b[0]) / det;
+		return inv;
+	}
+	
+	// puts our components with respect to a basis in result, given the basis's 
+	// inverse from getInverseBasisMatrix()
+	public void getComponentsWRTInverseBasis(double[][] inverse, double[] result) {
+		for (int i = 0; i < cart.length; i++) {
+			double entry = 0;
+			for (int j = 0; j < cart.length; j++)
+				entry += inverse[i][j] * cart[j];
+			result[i] = entry;
+		}
 	}
 	
 	private void setCartCoordToMatchFracCoord() {
-		if (basis.isEmpty() || frac.size() != basis.get(0).getDimension())
+		if (basis.isEmpty() || frac.length != basis.get(0).getDimension())
 			throw new RuntimeException("Vect.getCartCompsFromNoncartComps");
 		
 		int dim = basis.get(0).getDimension();
-		List<Double> result = new ArrayList<Double>();
+		double[] result = new double[dim];
 		for (int i = 0; i < dim; i++){
 			double entry = 0;
 			for (int j = 0; j < dim; j++)
-				entry += frac.get(j) * basis.get(j).getCartesianComponents().get(i);
-			result.add(entry);
+				entry += frac[j] * basis.get(j).cart[i];
+			result[i] = entry;
 		}
 		cart = result;
 	}
@@ -136,52 +234,44 @@ public class Vect implements Serializable {
 	
 	// returns this x other
 	public Vect cross(Vect other) {
-		List<Double> comps1 = this.getCartesianComponents();
-		double a1 = comps1.get(0);
-		double a2 = comps1.get(1);
-		double a3 = comps1.get(2);
-		List<Double> comps2 = other.getCartesianComponents();
-		double b1 = comps2.get(0);
-		double b2 = comps2.get(1);
-		double b3 = comps2.get(2);
+		double a1 = cart[0];
+		double a2 = cart[1];
+		double a3 = cart[2];
+		double b1 = other.cart[0];
+		double b2 = other.cart[1];
+		double b3 = other.cart[2];
 		
-		return new Vect(a2*b3 - a3*b2, a3*b1 - a1*b3, a1*b2 - a2*b1);
+		return fromCartArray(new double[] {a2*b3 - a3*b2, a3*b1 - a1*b3, a1*b2 - a2*b1});
 	}
 	
 	public Vect plus(Vect v) {
-		List<Double> vComps = v.getCartesianComponents();
-		List<Double> ourComps = getCartesianComponents();
-		List<Double> newComps = new ArrayList<Double>();
-		
-		if (vComps.size() != ourComps.size())
+		if (v.cart.length != cart.length)
 			throw new RuntimeException("Vector: trying to add vectors of different lengths");
 		
-		for (int i = 0; i < vComps.size(); i++)
-			newComps.add(vComps.get(i) + ourComps.get(i));
+		double[] newComps = new double[cart.length];
+		for (int i = 0; i < cart.length; i++)
+			newComps[i] = v.cart[i] + cart[i];
 
-		return new Vect(newComps);
+		return fromCartArray(newComps);
 	}
 	
 	public Vect subtract(Vect v) {
-		List<Double> vComps = v.getCartesianComponents();
-		List<Double> ourComps = getCartesianComponents();
-		List<Double> newComps = new ArrayList<Double>();
-		
-		if (vComps.size() != ourComps.size())
+		if (v.cart.length != cart.length)
 			throw new RuntimeException("Vector: trying to subtract vectors of different lengths");
 		
-		for (int i = 0; i < vComps.size(); i++)
-			newComps.add(vComps.get(i) - ourComps.get(i));
+		double[] newComps = new double[cart.length];
+		for (int i = 0; i < cart.length; i++)
+			newComps[i] = v.cart[i] - cart[i];
 		
-		return new Vect(newComps);
+		return fromCartArray(newComps);
 	}
 	
 	public Vect scalarMult(Double s) {
-		List<Double> newV = new ArrayList<Double>();
-		for (int i = 0; i < getDimension(); i++)
-			newV.add(s * cart.get(i));
+		double[] newV = new double[cart.length];
+		for (int i = 0; i < cart.length; i++)
+			newV[i] = s * cart[i];
 
-		return new Vect(newV);
+		return fromCartArray(newV);
 	}
 	
 	private static Vect xhat = null;
@@ -206,7 +296,7 @@ public class Vect implements Serializable {
 	}
 	
 	public Vect changeBasis(List<Vect> basis) {
-		return new Vect(this.frac, basis);
+		return new Vect(toList(this.frac), basis);
 	}
 
 	/* Find the coordinates of our ThreeVector with respect to an alternate basis.
@@ -225,49 +315,22 @@ public class Vect implements Serializable {
 		if (basis.size() != dim)
 			throw new RuntimeException("Vector: trying get components wrt basis of wrong size.");
 
-		List<Double> cartComps = getCartesianComponents();
-		Matrix X = new Matrix(dim,1);
-		for (int i = 0; i < dim; i++)
-			X.set(i, 0, cartComps.get(i));
-
-		Matrix B = new Matrix(dim,dim);
-		for (int i = 0; i < dim; i++)
-			for (int j = 0; j < dim; j++)
-				B.set(i, j, basis.get(j).getCartesianComponents().get(i));
-		
-		if (Math.abs(B.det()) < Constants.epsilon)
-			throw new IllegalArgumentException("ThreeVector.getComponentsWRTBasis given degenerate basis.");
-		
-		Matrix A = B.inverse().times(X);
-		
-		List<Double> result = new ArrayList<Double>();
-		for (int i = 0; i < dim; i++)
-			result.add(A.get(i, 0));
+		double[] result = new double[dim];
+		getComponentsWRTInverseBasis(getInverseBasisMatrix(basis), result);
 		
-		return result;
+		return toList(result);
 	}
 	
 	public double getCartDistanceTo(Vect other) {
-		List<Double> otherCCs = other.getCartesianComponents();
-		List<Double> thisCCs = getCartesianComponents();
-		
-		if (otherCCs.size() != thisCCs.size())
-			throw new RuntimeException("Vector: trying to get distance between vectors of different lengths.");
-		
-		double sum = 0.0;
-		for (int i = 0; i < getDimension(); i++)
-			sum += (otherCCs.get(i)-thisCCs.get(i))*(otherCCs.get(i)-thisCCs.get(i));
-		
-		return Math.sqrt(sum);
+		return Math.sqrt(getCartDistanceSquaredTo(other));
 	}
 	
 	public String toString() {
 		StringBuilder result = new StringBuilder();
-		List<Double> cartCoords = getCartesianComponents();
 		result.append(getDimension());
 		result.append("-Vector: ( ");
 		for (int i = 0; i < getDimension(); i++) {
-			result.append(cartCoords.get(i));
+			result.append(cart[i]);
 			result.append(" ");
 		}
 		result.append(")");
@@ -306,26 +369,22 @@ public class Vect implements Serializable {
 	}
 	
 	public Double dot(Vect v) {
-		List<Double> vComps = v.getCartesianComponents();
-		List<Double> ourComps = getCartesianComponents();
-		
-		if (vComps.size() != ourComps.size())
+		if (v.cart.length != cart.length)
 			throw new RuntimeException("Vector: trying to dot vectors of different lengths");
 		
-		Double result = 0.0;
-		for (int i = 0; i < getDimension(); i++)
-			result += vComps.get(i)*ourComps.get(i);
+		double result = 0.0;
+		for (int i = 0; i < cart.length; i++)
+			result += v.cart[i]*cart[i];
 		return result;
 	}
 	
 	public int getDimension() {
-		return cart.size();
+		return cart.length;
 	}
 	
 	public Double length() {
-		List<Double> cartComps = getCartesianComponents();
-		Double resultSquared = 0.0;
-		for (Double c : cartComps)
+		double resultSquared = 0.0;
+		for (double c : cart)
 			resultSquared += c*c;
 		return Math.sqrt(resultSquared);
 	}
@@ -348,18 +407,14 @@ public class Vect implements Serializable {
 	}
 	
 	public Vect getSumNormalized(Double n) {
-		List<Double> cartComps = getCartesianComponents();
 		double sum = 0;
-		for (Double d : cartComps)
+		for (double d : cart)
 			sum += d;
 		return this.scalarMult(n / sum);
 	} 
 	
 	public static Vect getNullVect(int numDims) {
-		List<Double> comps = new ArrayList<Double>();
-		for (int i = 0; i < numDims; i++)
-			comps.add(0.0);
-		return new Vect(comps);
+		return fromCartArray(new double[numDims]);
 	}
 	
 	public static boolean pointsAreCollinear(Vect p1, Vect p2, Vect p3, double epsilon) {
@@ -368,6 +423,31 @@ public class Vect implements Serializable {
 		return v1.cross(v2).length() < epsilon;
 	}
 	
+	// We used to keep the coordinates in List<Double>s.  Both forms can be read back 
+	// in, so save files written before the change still resume.
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("frac", Object.class),
+		new ObjectStreamField("cart", Object.class),
+		new ObjectStreamField("basis", List.class) };
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("frac", frac);
+		fields.put("cart", cart);
+		fields.put("basis", basis);
+		out.writeFields();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		Object f = fields.get("frac", null);
+		Object c = fields.get("cart", null);
+		frac = (f instanceof List ? toArray((List<Double>)f) : (double[])f);
+		cart = (c instanceof List ? toArray((List<Double>)c) : (double[])c);
+		basis = (List<Vect>)fields.get("basis", null);
+	}
+	
 	/*
 	 * For the sake of testing the ThreeVector class
 	 */
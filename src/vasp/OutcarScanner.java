@@ -0,0 +1,384 @@
+/*
+ * Copyright 2011-2014 Will Tipton, Richard Hennig, Ben Revard, Stewart Wenner
+
+This file is part of the Genetic Algorithm for Structure and Phase Prediction (GASP).
+
+    GASP is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GASP is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GASP.  If not, see <http://www.gnu.org/licenses/>.
+    
+    
+    */
+
+package vasp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import utility.Vect;
+
+import crystallography.Cell;
+import crystallography.Site;
+
+// OutcarScanner reads OUTCARs through memory-mapped windows and matches keywords against
+// the raw bytes of each line, so we only make Strings out of the few lines we actually
+// parse.  Configurations are handed to a ConfigHandler as soon as they're complete rather
+// than collected, so long relaxations can be processed in bounded memory.  getFinalEnergy()
+// scans backwards from the end of the file, since the last energy is usually near there.
+//
+// Used by VaspOut.getConfigs() and VaspOut.getFinalEnergy(), which describe the formats.
+
+public class OutcarScanner {
+	
+	// files are mapped this much at a time
+	private static final int windowSize = 1 << 26;
+	// and scanned backwards this much at a time
+	private static final int tailBlockSize = 1 << 16;
+	
+	private static final byte[] iterationKey = ascii("Iteration");
+	private static final byte[] positionKey = ascii("POSITION");
+	private static final byte[] totalForceKey = ascii("TOTAL-FORCE");
+	private static final byte[] lvectsKey = ascii("direct lattice vectors");
+	private static final byte[] stressKey = ascii("in kB");
+	private static final byte[] energyKey = ascii(" energy  without entropy"); // two spaces between energy and without :p
+	private static final byte[] totenKey = ascii("TOTEN");
+	private static final byte[] successKey = ascii(VaspOut.vaspSuccessString);
+	
+	public interface ConfigHandler {
+		// return false to stop scanning
+		public boolean handleConfig(VaspConfig c);
+	}
+	
+	private FileChannel channel;
+	private long fileSize;
+	
+	// the current window of the file
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	
+	// the current line, w/o its line terminator
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	
+	private OutcarScanner(FileChannel _channel) throws IOException {
+		channel = _channel;
+		fileSize = channel.size();
+	}
+	
+	private static byte[] ascii(String s) {
+		byte[] result = new byte[s.length()];
+		for (int i = 0; i < s.length(); i++)
+			result[i] = (byte)s.charAt(i);
+		return result;
+	}
+	
+	// reads configurations from outcarFileName and passes them to handler in order.
+	// origCell gives the species of the sites.
+	public static void scanConfigs(String outcarFileName, Cell origCell, ConfigHandler handler) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(outcarFileName, "r");
+		try {
+			new OutcarScanner(file.getChannel()).scan(outcarFileName, origCell, handler);
+		} finally {
+			file.close();
+		}
+	}
+	
+	private void scan(String outcarFileName, Cell origCell, ConfigHandler handler) {
+		List<Site> origSites = new ArrayList<Site>(origCell.getSites());
+		
+		int currentConfigNum = 0;
+		VaspConfig currentConf = null;
+		List<Vect> lVects = new ArrayList<Vect>();
+		List<Site> sites = new ArrayList<Site>();
+		while (nextLine()) {
+			if (isIterationLine(currentConfigNum+1)) {
+				if (currentConfigNum > 0) {
+					currentConf.setCell(new Cell(lVects, sites, "Configuration " + currentConfigNum + " from " + outcarFileName));
+					if (!handler.handleConfig(currentConf))
+						return;
+				}
+				currentConf = new VaspConfig();
+				lVects = new ArrayList<Vect>();
+				sites = new ArrayList<Site>();
+				currentConfigNum++;
+			} else if (isForcesHeader()) {
+				nextLine(); // skip a line of hyphens
+				List<Vect> forces = new ArrayList<Vect>();
+				for (Site s : origSites) {
+					nextLine();
+					double[] d = parseDoubles(0, 6);
+					sites.add(new Site(s.getElement(), new Vect(d[0], d[1], d[2])));
+					forces.add(new Vect(d[3], d[4], d[5]));
+				}
+				currentConf.setForces(forces);
+			} else if (indexOf(lvectsKey, 0) >= 0) {
+				for (int i = 0; i < 3; i++) {
+					nextLine();
+					lVects.add(new Vect(parseDoubles(0, 3)));
+				}
+			} else if (indexOf(stressKey, 0) >= 0) {
+				// want 6 tokens starting with the 3rd
+				double stress[] = parseDoubles(2, VaspConfig.STRESS_LEN);
+				for (int i = 0; i < VaspConfig.STRESS_LEN; i++)
+					stress[i] /= 1602.0;
+				// TODO: the 1602 is copied from the potfit parser. no idea where it came from.
+				currentConf.setStress(stress);
+			} else if (indexOf(energyKey, 0) >= 0) {
+				// we want the 7th token
+				currentConf.setTotalEnergy(parseDoubles(6, 1)[0]);
+			}
+		}
+		if (currentConf != null && currentConf.energyHasBeenSet()) {
+			currentConf.setCell(new Cell(lVects, sites, "Configuration " + currentConfigNum + " from " + outcarFileName));
+			handler.handleConfig(currentConf);
+		}
+	}
+	
+	// the last energy (the number in a "TOTEN = <number> eV" line) in outcarFileName, or
+	// Double.POSITIVE_INFINITY if there isn't one.  if cautious, also returns 
+	// Double.POSITIVE_INFINITY if the run didn't reach the required accuracy.
+	public static double getFinalEnergy(String outcarFileName, boolean cautious) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(outcarFileName, "r");
+		try {
+			return new OutcarScanner(file.getChannel()).getFinalEnergy(cautious);
+		} finally {
+			file.close();
+		}
+	}
+	
+	private double getFinalEnergy(boolean cautious) throws IOException {
+		Double energy = null;
+		boolean runConvergedSuccessfully = false;
+		
+		// read whole lines in blocks from the end of the file until we know the answer
+		long end = fileSize;
+		int blockSize = tailBlockSize;
+		while (end > 0 && (energy == null || (cautious && !runConvergedSuccessfully))) {
+			long start = Math.max(0, end - blockSize);
+			MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			
+			// skip the partial line at the start of the block
+			int first = 0;
+			if (start > 0) {
+				while (first < block.limit() - 1 && block.get(first) != '\n')
+					first++;
+				if (first >= block.limit() - 1) {
+					// no whole line in the block.  try again w/ a bigger one
+					blockSize *= 2;
+					continue;
+				}
+				first++;
+			}
+			
+			// the lines in this block, from the last one back
+			int lineEnd = block.limit();
+			while (lineEnd > first) {
+				int lineStart = lineEnd - 1;
+				if (lineStart >= first && block.get(lineStart) == '\n')
+					lineStart--;
+				while (lineStart >= first && block.get(lineStart) != '\n')
+					lineStart--;
+				lineStart++;
+				
+				setLine(block, lineStart, lineEnd);
+				if (energy == null)
+					energy = parseToten();
+				if (!runConvergedSuccessfully && indexOf(successKey, 0) >= 0)
+					runConvergedSuccessfully = true;
+				lineEnd = lineStart;
+			}
+			
+			end = start + first;
+			blockSize = tailBlockSize;
+		}
+		
+		if (energy == null || (cautious && !runConvergedSuccessfully))
+			return Double.POSITIVE_INFINITY;
+		
+		return energy;
+	}
+	
+	// the number from "TOTEN *= *[-\.0-9]* eV" in the current line, or null
+	private Double parseToten() {
+		int from = 0;
+		int i;
+		while ((i = indexOf(totenKey, from)) >= 0) {
+			from = i + 1;
+			i += totenKey.length;
+			while (i < lineLength && line[i] == ' ')
+				i++;
+			if (i >= lineLength || line[i] != '=')
+				continue;
+			i++;
+			while (i < lineLength && line[i] == ' ')
+				i++;
+			int numStart = i;
+			while (i < lineLength && (line[i] == '-' || line[i] == '.' || (line[i] >= '0' && line[i] <= '9')))
+				i++;
+			if (i + 2 < lineLength && line[i] == ' ' && line[i+1] == 'e' && line[i+2] == 'V' && i > numStart) {
+				try {
+					return Double.parseDouble(new String(line, numStart, i - numStart, StandardCharsets.US_ASCII));
+				} catch (NumberFormatException x) {
+					// e.g. "--" or "1.2.3". not a match
+				}
+			}
+		}
+		return null;
+	}
+	
+	// is the current line "-- Iteration <n>" (e.g. "----- Iteration    3(   1)  -----")?
+	private boolean isIterationLine(int n) {
+		int i = indexOf(iterationKey, 0);
+		if (i < 0)
+			return false;
+		
+		// the hyphens (and maybe spaces) before
+		int j = i - 1;
+		while (j >= 0 && line[j] == ' ')
+			j--;
+		if (j < 0 || line[j] != '-')
+			return false;
+		
+		// and the ionic step number after
+		j = i + iterationKey.length;
+		while (j < lineLength && line[j] == ' ')
+			j++;
+		int num = 0;
+		int numDigits = 0;
+		while (j < lineLength && line[j] >= '0' && line[j] <= '9') {
+			num = 10 * num + (line[j++] - '0');
+			numDigits++;
+		}
+		return numDigits > 0 && num == n;
+	}
+	
+	// "POSITION *TOTAL-FORCE"
+	private boolean isForcesHeader() {
+		int i = indexOf(positionKey, 0);
+		if (i < 0)
+			return false;
+		i += positionKey.length;
+		while (i < lineLength && line[i] == ' ')
+			i++;
+		return matchesAt(totalForceKey, i);
+	}
+	
+	// the position of the first occurrence of key in the current line at or after from, or -1
+	private int indexOf(byte[] key, int from) {
+		int last = lineLength - key.length;
+		for (int i = from; i <= last; i++)
+			if (line[i] == key[0] && matchesAt(key, i))
+				return i;
+		return -1;
+	}
+	
+	private boolean matchesAt(byte[] key, int i) {
+		if (i + key.length > lineLength)
+			return false;
+		for (int j = 0; j < key.length; j++)
+			if (line[i+j] != key[j])
+				return false;
+		return true;
+	}
+	
+	// n doubles from the whitespace-separated tokens of the current line, starting w/ token skip
+	private double[] parseDoubles(int skip, int n) {
+		double[] result = new double[n];
+		int numFound = 0;
+		int tokenNum = 0;
+		int i = 0;
+		while (numFound < n) {
+			while (i < lineLength && Character.isWhitespace(line[i]))
+				i++;
+			if (i >= lineLength)
+				throw new NumberFormatException("not enough numbers in line: " + getLine());
+			int start = i;
+			while (i < lineLength && !Character.isWhitespace(line[i]))
+				i++;
+			if (tokenNum++ >= skip)
+				result[numFound++] = Double.parseDouble(new String(line, start, i - start, StandardCharsets.US_ASCII));
+		}
+		return result;
+	}
+	
+	private String getLine() {
+		return new String(line, 0, lineLength, StandardCharsets.US_ASCII);
+	}
+	
+	private void setLine(MappedByteBuffer block, int start, int end) {
+		lineLength = 0;
+		for (int i = start; i < end; i++) {
+			byte b = block.get(i);
+			if (b != '\n' && b != '\r')
+				appendToLine(b);
+		}
+	}
+	
+	private void appendToLine(byte b) {
+		if (lineLength == line.length) {
+			byte[] newLine = new byte[2 * line.length];
+			System.arraycopy(line, 0, newLine, 0, lineLength);
+			line = newLine;
+		}
+		line[lineLength++] = b;
+	}
+	
+	// reads the next line into line.  returns false at the end of the file.
+	private boolean nextLine() {
+		lineLength = 0;
+		boolean readAnything = false;
+		try {
+			while (true) {
+				if (window == null || !window.hasRemaining()) {
+					long pos = (window == null ? 0 : windowStart + window.limit());
+					if (pos >= fileSize)
+						return readAnything;
+					windowStart = pos;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(windowSize, fileSize - pos));
+				}
+				byte b = window.get();
+				readAnything = true;
+				if (b == '\n')
+					return true;
+				if (b != '\r')
+					appendToLine(b);
+			}
+		} catch (IOException x) {
+			throw new RuntimeException("Couldn't read OUTCAR: " + x.getMessage());
+		}
+	}
+	
+	// for (a line of output for) each configuration in the given OUTCAR
+	public static void main(String args[]) {
+		if (args.length < 2) {
+			System.out.println("Usage: OutcarScanner <OUTCAR> <POSCAR>");
+			return;
+		}
+		try {
+			scanConfigs(args[0], VaspOut.getPOSCAR(args[1]), new ConfigHandler() {
+				public boolean handleConfig(VaspConfig c) {
+					System.out.println(c.getTotalEnergy() + " " + c.getCell().getVolume());
+					return true;
+				}
+			});
+			System.out.println("final energy: " + getFinalEnergy(args[0], true));
+		} catch (IOException x) {
+			System.out.println(x.getMessage());
+		}
+	}
+}
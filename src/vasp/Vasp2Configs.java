@@ -45,6 +45,7 @@ import utility.Utility;
 import utility.Vect;
 
 import chemistry.Element;
+import crystallography.Cell;
 
 public class Vasp2Configs {
 	
@@ -141,13 +142,22 @@ public class Vasp2Configs {
 				}
 			});
 
+			Cell poscar = VaspOut.getPOSCAR(vaspdir + "/POSCAR");
 			for (File oc : outcarFiles) {
 			
-				List<VaspConfig> iconfigs = VaspOut.getConfigs(oc.getAbsolutePath(), VaspOut.getPOSCAR(vaspdir + "/POSCAR"));
+				// remove configs that fail the mid constraint as they're read, so we 
+				// don't hold on to them
+				final List<VaspConfig> iconfigs = new ArrayList<VaspConfig>();
+				final Double mid = (aParser.hasArguments("mid") ? Double.parseDouble(aParser.getArgument("mid")) : null);
+				VaspOut.getConfigs(oc.getAbsolutePath(), poscar, new OutcarScanner.ConfigHandler() {
+					public boolean handleConfig(VaspConfig c) {
+						if (mid == null || c.getCell().satisfiesMinInteratomicDistance(mid))
+							iconfigs.add(c);
+						return true;
+					}
+				});
 				
-				// remove configs that fail mid and maxsamples constraints
-				if (aParser.hasArguments("mid"))
-					applyMidConstraint(Double.parseDouble(aParser.getArgument("mid")), iconfigs);
+				// and the maxsamples constraint
 				if (aParser.hasArguments("maxsamples"))
 					applyMaxsamplesConstraint(Integer.parseInt(aParser.getArgument("maxsamples")),iconfigs);
 				
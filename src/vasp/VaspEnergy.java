@@ -64,59 +64,19 @@ public class VaspEnergy implements Energy {
 	}
 	
 	// runs VASP on the input file given and returns the results in a String
-	private String runVasp(String inputDir) {
-		StringBuilder vaspOutput = new StringBuilder();
-
-		String s = null;
-		Process p = null;
+	private String runVasp(String inputDir, ProcessRunner.OutputHandler watchdog) {
+		String vaspOutput = "";
 		try {
 			// run the vasp command. in order to avoid hard-coding things which are
 			// probably system-dependent, we call a wrapper script which is probably
 			// just "cd $1; vasp" for simple set ups
-			p = Runtime.getRuntime().exec("callvasp " + inputDir);
-
-			BufferedReader stdInput = new BufferedReader(new InputStreamReader(
-					p.getInputStream()));
-			BufferedReader stdError = new BufferedReader(new InputStreamReader(
-					p.getErrorStream()));
-
-			try {
-				// read the output
-				while ((s = stdInput.readLine()) != null) {
-					vaspOutput.append(s + GAUtils.newline());
-					GAOut.out().stdout(s, GAOut.DEBUG);
-				}
-	
-				// print out any errors
-				while ((s = stdError.readLine()) != null) {
-					System.out.println(s);
-				}
-			} finally {
-				stdInput.close();
-				stdError.close();
-		    	  try {
-		    		  p.getErrorStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-		    	  try {
-		    		  p.getOutputStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-		    	  try {
-		    		  p.getInputStream().close();
-		    	  } catch (IOException e) {
-		    		  e.printStackTrace();
-		    	  }
-			}
-
+			vaspOutput = ProcessRunner.run("callvasp " + inputDir, null, null, watchdog);
 		} catch (IOException e) {
 			System.out.println("IOException in VaspEnergy.runVasp: " + e.getMessage());
 			System.exit(-1);
 		}
 
-		return vaspOutput.toString();
+		return vaspOutput;
 	}
 	
 	private double vaspRun(StructureOrg o) {
@@ -138,9 +98,12 @@ public class VaspEnergy implements Energy {
 		vaspin.makePOTCAR(outDir.getAbsolutePath() + "/");
 	
 		// run vasp
-		String vaspOutput = runVasp(outDir.getAbsolutePath());
+		EnergyWatchdog watchdog = EnergyWatchdog.make(o, EnergyWatchdog.vaspParser);
+		String vaspOutput = runVasp(outDir.getAbsolutePath(), watchdog);
 		
 		GAOut.out().stdout(vaspOutput, GAOut.DEBUG, o.getID());
+		if (watchdog != null && watchdog.aborted())
+			return Double.POSITIVE_INFINITY;
 
 		// store the relaxed structure back into o
 		Cell newCell = VaspOut.getPOSCAR(outDir.getAbsolutePath() + "/CONTCAR");
@@ -126,7 +126,7 @@ public class VaspIn {
 				}
 			
 			/* Write it all to disk */
-			writer.flush();
+			writer.close();
 		} catch (IOException x) {
 			System.out.println("IOException in VaspOut.writePoscar(): " + x.getMessage());
 		}
@@ -131,142 +131,38 @@ public class VaspOut {
 
 	}
 	
+	// reads each ionic step from an OUTCAR.  see OutcarScanner.
 	public static List<VaspConfig> getConfigs(String outcarFileName, Cell origCell) {
-		List<VaspConfig> result = new ArrayList<VaspConfig>();
+		final List<VaspConfig> result = new ArrayList<VaspConfig>();
 		
-		BufferedReader outcarReader = null;
-		try {
-			outcarReader = new BufferedReader(new FileReader(outcarFileName));
-			String line;
-			
-			int currentConfigNum = 0;
-			
-			Pattern newConfigPattern = Pattern.compile("--* *Iteration *"+(currentConfigNum+1));
-			Pattern stressPattern = Pattern.compile("in kB");
-			Pattern energyPattern = Pattern.compile(" energy  without entropy"); // two spaces between energy and without :p
-			Pattern atomsPattern = Pattern.compile("POSITION *TOTAL-FORCE");
-			Pattern lvectsPattern = Pattern.compile("direct lattice vectors");
-			
-			VaspConfig currentConf = null;
-			List<Vect> lVects = new ArrayList<Vect>();
-			List<Site> sites = new ArrayList<Site>();
-			while ((line = outcarReader.readLine()) != null) {
-				if (newConfigPattern.matcher(line).find()) {
-					if (currentConfigNum > 0) {
-						Cell newCell = new Cell(lVects, sites, "Configuration " + currentConfigNum + " from " + outcarFileName);
-						currentConf.setCell(newCell);
-						result.add(currentConf);
-					}
-					currentConf = new VaspConfig();
-					lVects = new ArrayList<Vect>();
-					sites = new ArrayList<Site>();
-					currentConfigNum++;
-					newConfigPattern = Pattern.compile("--* *Iteration *"+(currentConfigNum+1));
-				} else
-				
-				if (atomsPattern.matcher(line).find()) {
-					outcarReader.readLine(); // skip a line of hyphens
-					List<Vect> forces = new ArrayList<Vect>();
-					for (int i = 0; i < origCell.getNumSites(); i++) {	
-						StringTokenizer atomLineTok = new StringTokenizer(outcarReader.readLine());
-						double x = Double.parseDouble(atomLineTok.nextToken());
-						double y = Double.parseDouble(atomLineTok.nextToken());
-						double z = Double.parseDouble(atomLineTok.nextToken());
-						double fx = Double.parseDouble(atomLineTok.nextToken());
-						double fy = Double.parseDouble(atomLineTok.nextToken());
-						double fz = Double.parseDouble(atomLineTok.nextToken());
-						sites.add(new Site(origCell.getSite(i).getElement(),new Vect(x,y,z)));
-						forces.add(new Vect(fx,fy,fz));
-					}
-					currentConf.setForces(forces);
-				} else
-				
-				if (lvectsPattern.matcher(line).find()) {
-					for (int i = 0; i < 3; i++) {
-						StringTokenizer vectLineTok = new StringTokenizer(outcarReader.readLine());
-						double x = Double.parseDouble(vectLineTok.nextToken());
-						double y = Double.parseDouble(vectLineTok.nextToken());
-						double z = Double.parseDouble(vectLineTok.nextToken());
-						lVects.add(new Vect(x,y,z));
-					}
-				} else
-				
-				if (stressPattern.matcher(line).find()) {
-					StringTokenizer energyLineTok = new StringTokenizer(line);
-					energyLineTok.nextToken();energyLineTok.nextToken(); // want 6 tokens starting with the 3rd
-					double stress[] = new double[VaspConfig.STRESS_LEN];
-					for (int i = 0; i < VaspConfig.STRESS_LEN; i++)
-						stress[i] = Double.parseDouble(energyLineTok.nextToken()) / 1602.0;
-					// TODO: the 1602 is copied from the potfit parser. no idea where it came from.
-					currentConf.setStress(stress);
-				} else
-				
-				if (energyPattern.matcher(line).find()) {
-					StringTokenizer energyLineTok = new StringTokenizer(line);
-					energyLineTok.nextToken();energyLineTok.nextToken(); // we want the 7th token
-					energyLineTok.nextToken();energyLineTok.nextToken();
-					energyLineTok.nextToken();energyLineTok.nextToken();
-					currentConf.setTotalEnergy(Double.parseDouble(energyLineTok.nextToken()));
-				}	
-			}
-			if (currentConf != null && currentConf.energyHasBeenSet()) {
-				Cell newCell = new Cell(lVects, sites, "Configuration " + currentConfigNum + " from " + outcarFileName);
-				currentConf.setCell(newCell);
-				result.add(currentConf);
+		getConfigs(outcarFileName, origCell, new OutcarScanner.ConfigHandler() {
+			public boolean handleConfig(VaspConfig c) {
+				result.add(c);
+				return true;
 			}
-			
+		});
+		
+		return result;
+	}
+	
+	// passes each ionic step from an OUTCAR to handler as it's read, so the configurations 
+	// don't all have to be in memory at once
+	public static void getConfigs(String outcarFileName, Cell origCell, OutcarScanner.ConfigHandler handler) {
+		try {
+			OutcarScanner.scanConfigs(outcarFileName, origCell, handler);
 		} catch (Exception x) {
 			GAOut.out().stdout("Warning: VaspOut.getConfigs() failed: " + x.getMessage(), GAOut.NOTICE);
-		} finally {
-			if (outcarReader != null)
-				try {
-					outcarReader.close();
-				} catch (IOException x) {
-					GAOut.out().stdout("Warning: VaspOut.getConfigs() failed to close outcarReader: " + x.getMessage(), GAOut.NOTICE);
-				}
 		}
-		
-		return result;
 	}
-
 	
 	public static double getFinalEnergy(String outcarFileName, boolean cautious) {
-		
-		double energy = Double.POSITIVE_INFINITY;
-		boolean runConvergedSuccessfully = false;
-		
-		BufferedReader outcarReader = null;
 		try {
-			outcarReader = new BufferedReader(new FileReader(outcarFileName));
-			String line;
-			String energyRegexp = "TOTEN *= *[-\\.0-9]* eV";
-			Pattern energyPattern = Pattern.compile(energyRegexp);
-			while ((line = outcarReader.readLine()) != null) {
-				Matcher energyMatcher = energyPattern.matcher(line);
-				if (energyMatcher.find()) {
-					StringTokenizer energyLineTok = new StringTokenizer(energyMatcher.group(energyMatcher.groupCount()));
-					energyLineTok.nextToken();energyLineTok.nextToken();
-					energy = Double.parseDouble(energyLineTok.nextToken());
-				}
-				if (line.contains(vaspSuccessString))
-					runConvergedSuccessfully = true;
-			}
+			return OutcarScanner.getFinalEnergy(outcarFileName, cautious);
 		} catch (Exception x) {
-			GAOut.out().stdout("Warning: VaspOut.getCell() failed: " + x.getMessage(), GAOut.NOTICE);
-		} finally {
-			if (outcarReader != null)
-				try {
-					outcarReader.close();
-				} catch (IOException x) {
-					GAOut.out().stdout("Warning: VaspOut.getCell() failed to close outcarReader: " + x.getMessage(), GAOut.NOTICE);
-				}
-		}		
-		
-		
-		if (cautious && !runConvergedSuccessfully)
-			return Double.POSITIVE_INFINITY;
+			GAOut.out().stdout("Warning: VaspOut.getFinalEnergy() failed: " + x.getMessage(), GAOut.NOTICE);
+		}
 		
-		return energy;
+		return Double.POSITIVE_INFINITY;
 	}
 	/*
 	public static double getFinalEnergy(String outcarFile, boolean cautious) {